@@ -0,0 +1,120 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the latency of reading pages through the {@link CompressedPageStore}
+ * with the {@link RandomAccessPageStore}, for pages of varying compressibility.
+ *
+ * The compression ratio achieved is reported as the secondary result
+ * "compressionRatio" of {@link #readSequentialPages(PageStoreState, CompressionCounters)},
+ * as auxiliary counters are not supported in the sample time mode.
+ */
+public class CompressedPageStoreBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @State(Scope.Thread)
+    public static class PageStoreState {
+
+        @Param({"random-access", "compressed"})
+        private String type;
+
+        /**
+         * The fraction of each page filled with random bytes,
+         * the remainder being repetitive markup.
+         */
+        @Param({"0.0", "0.25", "0.5", "1.0"})
+        private double entropy;
+
+        @Param({"16384"})  // 64 MB of pages
+        private int pages;
+
+        private Path file;
+        private PageStore pageStore;
+        private double compressionRatio = 1.0;
+        private final byte[] page = new byte[PAGE_SIZE];
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("compressed-page-store-benchmark", ".dbx");
+            pageStore = PageStore.Type.fromConfigName(type).create(file, new RandomAccessFile(file.toFile(), "rw"), false, PAGE_SIZE);
+
+            final Random random = new Random(42);
+            final byte[] element = "<l n=\"1\">Arma virumque cano, Troiae qui primus ab oris</l>".getBytes();
+            final int randomBytes = (int) (PAGE_SIZE * entropy);
+            for (int i = 0; i < pages; i++) {
+                for (int j = 0; j < PAGE_SIZE; j++) {
+                    page[j] = j < randomBytes ? (byte) random.nextInt() : element[j % element.length];
+                }
+                pageStore.write((long) i * PAGE_SIZE, page);
+            }
+
+            if (pageStore instanceof CompressedPageStore) {
+                compressionRatio = ((CompressedPageStore) pageStore).getCompressionRatio();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            pageStore.close();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(CompressedPageStore.getMapFile(file));
+        }
+
+        private long randomOffset() {
+            return (long) ThreadLocalRandom.current().nextInt(pages) * PAGE_SIZE;
+        }
+    }
+
+    /**
+     * Reports the compression ratio of the page store alongside the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CompressionCounters {
+        public double compressionRatio;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public byte[] readRandomPage(final PageStoreState state) throws IOException {
+        state.pageStore.read(state.randomOffset(), state.page);
+        return state.page;
+    }
+
+    @Benchmark
+    public byte[] readSequentialPages(final PageStoreState state, final CompressionCounters counters) throws IOException {
+        counters.compressionRatio = state.compressionRatio;
+        for (int i = 0; i < state.pages; i++) {
+            state.pageStore.read((long) i * PAGE_SIZE, state.page);
+        }
+        return state.page;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares reading and writing pages through the
+ * {@link RandomAccessPageStore} and the {@link MappedPageStore}.
+ */
+public class PageStoreBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @State(Scope.Thread)
+    public static class PageStoreState {
+
+        @Param({"random-access", "mapped"})
+        private String type;
+
+        @Param({"16384"})  // 64 MB of pages
+        private int pages;
+
+        private Path file;
+        private PageStore pageStore;
+        private final byte[] page = new byte[PAGE_SIZE];
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("page-store-benchmark", ".dbx");
+            pageStore = PageStore.Type.fromConfigName(type).create(file, new RandomAccessFile(file.toFile(), "rw"), false, PAGE_SIZE);
+            for (int i = 0; i < pages; i++) {
+                ThreadLocalRandom.current().nextBytes(page);
+                pageStore.write((long) i * PAGE_SIZE, page);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            pageStore.close();
+            Files.deleteIfExists(file);
+        }
+
+        private long randomOffset() {
+            return (long) ThreadLocalRandom.current().nextInt(pages) * PAGE_SIZE;
+        }
+    }
+
+    @Benchmark
+    public byte[] readRandomPage(final PageStoreState state) throws IOException {
+        state.pageStore.read(state.randomOffset(), state.page);
+        return state.page;
+    }
+
+    @Benchmark
+    public void writeRandomPage(final PageStoreState state) throws IOException {
+        state.pageStore.write(state.randomOffset(), state.page);
+    }
+
+    @Benchmark
+    public byte[] readSequentialPages(final PageStoreState state) throws IOException {
+        for (int i = 0; i < state.pages; i++) {
+            state.pageStore.read((long) i * PAGE_SIZE, state.page);
+        }
+        return state.page;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import org.exist.storage.btree.PageStore;
+import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Loggable;
+import org.exist.storage.journal.Lsn;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Redoes a large synthetic journal, whose entries each write a page
+ * of one of several files, with a varying number of redo threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class RedoExecutorBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @State(Scope.Benchmark)
+    public static class JournalState {
+
+        @Param({"1", "2", "4"})
+        private int threads;
+
+        @Param({"4"})
+        private int files;
+
+        @Param({"8192"})  // 32 MB of pages per file
+        private int pages;
+
+        @Param({"500000"})
+        private int entries;
+
+        private final List<Path> paths = new ArrayList<>();
+        private final List<PageStore> pageStores = new ArrayList<>();
+        private final List<Loggable> journal = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            for (int i = 0; i < files; i++) {
+                final Path path = Files.createTempFile("redo-benchmark", ".dbx");
+                paths.add(path);
+                pageStores.add(PageStore.Type.RANDOM_ACCESS.create(path, new RandomAccessFile(path.toFile(), "rw"), false, PAGE_SIZE));
+            }
+
+            // the entries of all files are interleaved, as in the journal of a busy database
+            final Random random = new Random(42);
+            for (int i = 0; i < entries; i++) {
+                final PageStore pageStore = pageStores.get(random.nextInt(files));
+                journal.add(new WritePage(i, pageStore, (long) random.nextInt(pages) * PAGE_SIZE));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            for (final PageStore pageStore : pageStores) {
+                pageStore.close();
+            }
+            for (final Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long redo(final JournalState state) throws LogException {
+        try (final RedoExecutor executor = new RedoExecutor(state.threads, Executors.defaultThreadFactory())) {
+            for (final Loggable entry : state.journal) {
+                executor.redo(entry);
+            }
+            executor.await();
+            return executor.getRedone();
+        }
+    }
+
+    private static class WritePage extends AbstractLoggable {
+        private final PageStore pageStore;
+        private final long offset;
+        private final byte[] page = new byte[PAGE_SIZE];
+
+        WritePage(final int id, final PageStore pageStore, final long offset) {
+            super((byte) 0, id);
+            this.pageStore = pageStore;
+            this.offset = offset;
+            setLsn(new Lsn((short) 0, id));
+        }
+
+        @Override
+        public void redo() throws LogException {
+            try {
+                pageStore.write(offset, page);
+            } catch (final IOException e) {
+                throw new LogException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Object getRedoTarget() {
+            return pageStore;
+        }
+
+        @Override
+        public void write(final ByteBuffer out) {
+        }
+
+        @Override
+        public void read(final ByteBuffer in) {
+        }
+
+        @Override
+        public int getLogSize() {
+            return 0;
+        }
+    }
+}
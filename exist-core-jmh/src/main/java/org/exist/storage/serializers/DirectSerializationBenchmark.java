@@ -0,0 +1,156 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.serializers;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.serializer.SAXSerializer;
+import org.exist.util.serializer.SerializerPool;
+import org.exist.xmldb.XmldbURI;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.OutputKeys;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the serialization of a stored document through SAX events with
+ * {@link Serializer#serializeDirect(org.exist.dom.persistent.DocumentImpl, OutputStream)}.
+ */
+public class DirectSerializationBenchmark {
+
+    private static final XmldbURI DOC_URI = XmldbURI.ROOT_COLLECTION_URI.append("benchmark").append("large.xml");
+
+    @State(Scope.Thread)
+    public static class SerializationState {
+
+        @Param({"sax", "direct"})
+        private String path;
+
+        @Param({"100000"})
+        private int records;
+
+        private ExistEmbeddedServer server;
+        private BrokerPool brokerPool;
+        private final Properties outputProperties = new Properties();
+
+        @Setup(Level.Trial)
+        public void setUp() throws DatabaseConfigurationException, EXistException, IOException, SAXException,
+                PermissionDeniedException, LockException {
+            server = new ExistEmbeddedServer(true, true);
+            server.startDb();
+            brokerPool = server.getBrokerPool();
+
+            final StringBuilder xml = new StringBuilder("<records xmlns:x=\"http://example.com/x\">");
+            for (int i = 0; i < records; i++) {
+                xml.append("<record id=\"").append(i).append("\" x:type=\"t").append(i % 7).append("\">")
+                        .append("<title>Record &amp; title number ").append(i).append("</title>")
+                        .append("<description>Some longer text with <em>mixed</em> content, ")
+                        .append("non-ASCII characters like é, ü and ß, and an escaped &lt;tag&gt;.</description>")
+                        .append("</record>");
+            }
+            xml.append("</records>");
+
+            try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()));
+                    final Txn transaction = brokerPool.getTransactionManager().beginTransaction()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, DOC_URI.removeLastSegment());
+                broker.saveCollection(transaction, collection);
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, DOC_URI.lastSegment(), xml.toString());
+                collection.store(transaction, broker, info, xml.toString());
+                transaction.commit();
+            }
+
+            outputProperties.setProperty(OutputKeys.INDENT, "no");
+            outputProperties.setProperty(OutputKeys.ENCODING, "UTF-8");
+            outputProperties.setProperty(EXistOutputKeys.EXPAND_XINCLUDES, "no");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.stopDb();
+        }
+    }
+
+    @Benchmark
+    public void serialize(final SerializationState state, final Blackhole blackhole) throws EXistException,
+            PermissionDeniedException, IOException, SAXException {
+        final OutputStream os = new BlackholeOutputStream(blackhole);
+        try (final DBBroker broker = state.brokerPool.get(Optional.of(state.brokerPool.getSecurityManager().getSystemSubject()));
+                final LockedDocument lockedDoc = broker.getXMLResource(DOC_URI, LockMode.READ_LOCK)) {
+            final Serializer serializer = broker.getSerializer();
+            serializer.reset();
+            serializer.setProperties(state.outputProperties);
+            if ("direct".equals(state.path)) {
+                if (!serializer.serializeDirect(lockedDoc.getDocument(), os)) {
+                    throw new IllegalStateException("Document was not serialized directly");
+                }
+            } else {
+                // as the REST server does for a GET request
+                final SAXSerializer sax = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
+                try {
+                    final OutputStreamWriter writer = new OutputStreamWriter(os, UTF_8);
+                    sax.setOutput(writer, state.outputProperties);
+                    serializer.setSAXHandlers(sax, sax);
+                    serializer.toSAX(lockedDoc.getDocument());
+                    writer.flush();
+                } finally {
+                    SerializerPool.getInstance().returnObject(sax);
+                }
+            }
+        }
+    }
+
+    private static final class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(final int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
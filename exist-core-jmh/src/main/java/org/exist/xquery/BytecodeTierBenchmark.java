@@ -0,0 +1,91 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Compares the evaluation of a query by the interpreter with
+ * the evaluation of the code generated by the {@link BytecodeCompiler}.
+ */
+public class BytecodeTierBenchmark {
+
+    private static final String QUERY =
+            "declare function local:fib($n) {\n" +
+            "    if ($n lt 2) then $n else local:fib($n - 1) + local:fib($n - 2)\n" +
+            "};\n" +
+            "for $i in 1 to 200\n" +
+            "let $j := $i mod 15\n" +
+            "where $j gt 2\n" +
+            "return\n" +
+            "    if ($i mod 2 eq 0) then local:fib($j) * 2 else ($i + $j) div 3";
+
+    @State(Scope.Thread)
+    public static class QueryState {
+
+        @Param({"interpreter", "bytecode"})
+        private String tier;
+
+        private ExistEmbeddedServer server;
+        private BrokerPool brokerPool;
+        private XQuery xquery;
+        private CompiledXQuery compiled;
+
+        @Setup(Level.Trial)
+        public void setUp() throws DatabaseConfigurationException, EXistException, IOException, XPathException,
+                PermissionDeniedException {
+            server = new ExistEmbeddedServer(true, true);
+            server.startDb();
+            brokerPool = server.getBrokerPool();
+            xquery = brokerPool.getXQueryService();
+            try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+                compiled = xquery.compile(broker, new XQueryContext(brokerPool), new StringSource(QUERY));
+            }
+            if ("bytecode".equals(tier) && !BytecodeCompiler.compile(compiled)) {
+                throw new IllegalStateException("Query was not compiled to bytecode");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.stopDb();
+        }
+    }
+
+    @Benchmark
+    public Sequence execute(final QueryState state) throws EXistException, XPathException, PermissionDeniedException {
+        try (final DBBroker broker = state.brokerPool.get(Optional.of(state.brokerPool.getSecurityManager().getSystemSubject()))) {
+            return state.xquery.execute(broker, state.compiled, null);
+        } finally {
+            state.compiled.getContext().runCleanupTasks();
+        }
+    }
+}
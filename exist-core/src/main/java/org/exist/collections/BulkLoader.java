@@ -0,0 +1,530 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.ManagedCollectionLock;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.util.MimeTable;
+import org.exist.util.MimeType;
+import org.exist.util.NamedThreadFactory;
+import org.exist.util.io.InputStreamUtil;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.util.io.VirtualTempPath;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.util.URIUtils;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores a stream of documents, e.g. the entries of a ZIP archive,
+ * into a collection and its sub-collections.
+ *
+ * The documents are added by a single producer. Each document is buffered,
+ * in memory or in a temporary file if it is large, and then parsed, indexed
+ * and stored by one of a pool of workers. Every worker borrows its own broker
+ * and stores the documents in batches, with one transaction per batch.
+ *
+ * The collection lock is released as soon as a document has been validated,
+ * in line with the Asymmetrical Locking scheme, so that workers which store
+ * documents into the same collection index them in parallel.
+ *
+ * A document which cannot be stored is reported as a failure,
+ * it does not abort the bulk load. As a transaction is not rolled back
+ * whilst the database is running, the transaction of its batch is committed
+ * with the documents stored before it, and the documents after it are
+ * stored in a new transaction.
+ *
+ * Usage:
+ * <pre>{@code
+ * try (final BulkLoader loader = new BulkLoader(pool, subject, collectionUri, threads, batchSize)) {
+ *     loader.add(path, null, is);
+ *     ...
+ *     final BulkLoader.Report report = loader.finish();
+ * }
+ * }</pre>
+ */
+public final class BulkLoader implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(BulkLoader.class);
+
+    /**
+     * Documents up to this size are buffered in memory, larger ones in a temporary file.
+     */
+    private static final int IN_MEMORY_SIZE = 64 * 1024;    // 64 KB
+
+    /**
+     * The maximum number of failures which are reported with their path and message.
+     */
+    public static final int MAX_REPORTED_FAILURES = 100;
+
+    private final BrokerPool pool;
+    private final Subject subject;
+    private final XmldbURI collectionUri;
+    private final int threads;
+    private final int batchSize;
+
+    private final BlockingQueue<Entry> queue;
+    private final ExecutorService executor;
+    private final List<Future<Void>> workers;
+    private volatile boolean finishing = false;
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Starts the workers of a bulk load.
+     *
+     * @param pool the database
+     * @param subject the user who stores the documents
+     * @param collectionUri the collection to store the documents into
+     * @param threads the number of workers, each of which borrows a broker
+     * @param batchSize the maximum number of documents which a worker stores in one transaction
+     */
+    public BulkLoader(final BrokerPool pool, final Subject subject, final XmldbURI collectionUri,
+            final int threads, final int batchSize) {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("threads and batchSize must be positive");
+        }
+        this.pool = pool;
+        this.subject = subject;
+        this.collectionUri = collectionUri;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(threads * batchSize);
+        this.executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory(pool, "bulk-load"));
+        this.workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(this::work));
+        }
+    }
+
+    /**
+     * Adds a document to the bulk load.
+     *
+     * The content is read and buffered before this method returns; it blocks
+     * whilst all of the workers are busy.
+     *
+     * @param path the path of the document, relative to the collection of the bulk load
+     * @param mimeType the MIME type of the document, or null to determine it from its name
+     * @param is the content of the document
+     *
+     * @throws IOException if the content cannot be read or buffered
+     * @throws EXistException if all of the workers have stopped
+     * @throws InterruptedException if the thread is interrupted whilst waiting for a worker
+     */
+    public void add(final String path, @Nullable final String mimeType, final InputStream is)
+            throws IOException, EXistException, InterruptedException {
+        if (finishing) {
+            throw new IllegalStateException("The bulk load has finished");
+        }
+
+        final XmldbURI docUri;
+        try {
+            docUri = resolve(path);
+        } catch (final URISyntaxException e) {
+            fail(path, "Invalid path: " + e.getMessage());
+            return;
+        }
+
+        final VirtualTempPath content = new VirtualTempPath(IN_MEMORY_SIZE, TemporaryFileManager.getInstance());
+        try {
+            try (final OutputStream os = content.newOutputStream()) {
+                InputStreamUtil.copy(is, os);
+            }
+
+            final Entry entry = new Entry(docUri, mimeType, content);
+            while (!queue.offer(entry, 1, TimeUnit.SECONDS)) {
+                checkWorkers();
+            }
+        } catch (final IOException | EXistException | InterruptedException | RuntimeException e) {
+            content.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until the workers have stored all of the added documents.
+     *
+     * @return the report of the bulk load
+     *
+     * @throws InterruptedException if the thread is interrupted whilst waiting for the workers
+     */
+    public Report finish() throws InterruptedException {
+        finishing = true;
+        executor.shutdown();
+
+        Throwable error = null;
+        for (final Future<Void> worker : workers) {
+            try {
+                worker.get();
+            } catch (final ExecutionException e) {
+                error = e.getCause();
+            }
+        }
+
+        // if a worker failed, e.g. because it could not borrow a broker, the others have emptied the queue
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            fail(entry.uri.toString(), "Not stored: " + (error != null ? error.getMessage() : "bulk load stopped"));
+            entry.content.close();
+        }
+
+        final Report report = new Report(threads, batchSize, stored.get(), failed.get(), bytes.get(), batches.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), new ArrayList<>(failures));
+        LOG.info("Bulk load into {} stored {} documents ({} bytes) in {} ms, {} documents/s, with {} failures",
+                collectionUri, report.getStored(), report.getBytes(), report.getElapsed(),
+                String.format("%.1f", report.getDocumentsPerSecond()), report.getFailed());
+        return report;
+    }
+
+    /**
+     * Stops the workers and discards any documents which have not been stored.
+     */
+    @Override
+    public void close() {
+        finishing = true;
+        executor.shutdownNow();
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.content.close();
+        }
+    }
+
+    /**
+     * Resolves the path of a document against the collection of the bulk load.
+     */
+    private XmldbURI resolve(final String path) throws URISyntaxException {
+        final List<String> segments = new ArrayList<>();
+        for (final String segment : path.replace('\\', '/').split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                throw new URISyntaxException(path, "the path must not leave the collection");
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            throw new URISyntaxException(path, "the path is empty");
+        }
+        return collectionUri.append(URIUtils.encodeXmldbUriFor(String.join("/", segments)));
+    }
+
+    /**
+     * Throws if all of the workers have stopped, so that
+     * the producer does not wait for them forever.
+     */
+    private void checkWorkers() throws EXistException, InterruptedException {
+        for (final Future<Void> worker : workers) {
+            if (!worker.isDone()) {
+                return;
+            }
+        }
+
+        try {
+            workers.get(0).get();
+        } catch (final ExecutionException e) {
+            throw new EXistException("The workers of the bulk load have stopped: " + e.getCause().getMessage(), e.getCause());
+        }
+        throw new EXistException("The workers of the bulk load have stopped");
+    }
+
+    private Void work() throws EXistException, InterruptedException {
+        try (final DBBroker broker = pool.get(Optional.of(subject))) {
+            final List<Entry> batch = new ArrayList<>(batchSize);
+            while (true) {
+                final Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (finishing) {
+                        // the producer has finished, and the queue is empty
+                        return null;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                try {
+                    storeBatch(broker, batch);
+                } finally {
+                    for (final Entry entry : batch) {
+                        entry.content.close();
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void storeBatch(final DBBroker broker, final List<Entry> batch) {
+        List<Entry> remaining = batch;
+        while (!remaining.isEmpty()) {
+            remaining = tryStoreBatch(broker, remaining);
+        }
+    }
+
+    /**
+     * Stores the documents in one transaction. If a document cannot be stored,
+     * it is reported as a failure, and the documents stored before it are
+     * committed. Aborting the transaction instead would not remove them, it
+     * would only let recovery undo them after a crash. Any changes which the
+     * failed document made before the error are committed with them.
+     *
+     * @return the documents of the batch after the failed one, which have to be
+     *     stored in a new transaction, or an empty list
+     */
+    private List<Entry> tryStoreBatch(final DBBroker broker, final List<Entry> batch) {
+        long batchBytes = 0;
+        int count = 0;
+        List<Entry> remaining = Collections.emptyList();
+        try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            for (; count < batch.size(); count++) {
+                final Entry entry = batch.get(count);
+                try {
+                    store(broker, transaction, entry);
+                    batchBytes += entry.content.size();
+                } catch (final EXistException | PermissionDeniedException | SAXException | LockException | IOException
+                        | RuntimeException e) {
+                    LOG.warn("Bulk load failed to store {}: {}", entry.uri, e.getMessage(), e);
+                    fail(entry.uri.toString(), e.getMessage() != null ? e.getMessage() : e.toString());
+                    remaining = batch.subList(count + 1, batch.size());
+                    break;
+                }
+            }
+
+            transaction.commit();
+
+            stored.addAndGet(count);
+            bytes.addAndGet(batchBytes);
+            batches.incrementAndGet();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Bulk load committed a batch of {} documents into {}", count, collectionUri);
+            }
+        } catch (final EXistException | RuntimeException e) {
+            LOG.error("Bulk load failed to commit a batch of {} documents: {}", count, e.getMessage(), e);
+            for (int i = 0; i < count; i++) {
+                fail(batch.get(i).uri.toString(), "Transaction failed: " + e.getMessage());
+            }
+        }
+        return remaining;
+    }
+
+    private void store(final DBBroker broker, final Txn transaction, final Entry entry)
+            throws EXistException, PermissionDeniedException, SAXException, LockException, IOException {
+        final XmldbURI collUri = entry.uri.removeLastSegment();
+        final XmldbURI docName = entry.uri.lastSegment();
+
+        MimeType mime = entry.mimeType != null ? MimeTable.getInstance().getContentType(entry.mimeType) : null;
+        if (mime == null || mime == MimeType.BINARY_TYPE) {
+            mime = MimeTable.getInstance().getContentTypeFor(docName);
+        }
+        if (mime == null) {
+            mime = MimeType.BINARY_TYPE;
+        }
+
+        try (final ManagedCollectionLock collectionLock = pool.getLockManager().acquireCollectionWriteLock(collUri)) {
+            final Collection collection = broker.getOrCreateCollection(transaction, collUri);
+
+            if (mime.isXMLType()) {
+                final IndexInfo info;
+                try (final InputStream is = entry.content.newInputStream()) {
+                    info = collection.validateXMLResource(transaction, broker, docName, new InputSource(is));
+                }
+                info.getDocument().getMetadata().setMimeType(mime.getName());
+
+                // NOTE: early release of Collection lock inline with Asymmetrical Locking scheme,
+                // the document stays locked until it has been stored
+                collectionLock.close();
+
+                final InputStream is;
+                try {
+                    is = entry.content.newInputStream();
+                } catch (final IOException e) {
+                    info.getDocumentLock().close();
+                    throw e;
+                }
+                try {
+                    collection.store(transaction, broker, info, new InputSource(is));
+                } finally {
+                    is.close();
+                }
+            } else {
+                try (final InputStream is = entry.content.newInputStream()) {
+                    collection.addBinaryResource(transaction, broker, docName, is, mime.getName(), entry.content.size());
+                }
+            }
+        }
+    }
+
+    private void fail(final String path, final String message) {
+        if (failed.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+            failures.add(new Failure(path, message));
+        }
+    }
+
+    private static final class Entry {
+        final XmldbURI uri;
+        @Nullable final String mimeType;
+        final VirtualTempPath content;
+
+        Entry(final XmldbURI uri, @Nullable final String mimeType, final VirtualTempPath content) {
+            this.uri = uri;
+            this.mimeType = mimeType;
+            this.content = content;
+        }
+    }
+
+    /**
+     * A document which could not be stored.
+     */
+    public static final class Failure {
+        private final String path;
+        private final String message;
+
+        private Failure(final String path, final String message) {
+            this.path = path;
+            this.message = message;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * The outcome and throughput of a bulk load.
+     */
+    public static final class Report {
+        private final int threads;
+        private final int batchSize;
+        private final long stored;
+        private final long failed;
+        private final long bytes;
+        private final long batches;
+        private final long elapsed;
+        private final List<Failure> failures;
+
+        private Report(final int threads, final int batchSize, final long stored, final long failed,
+                final long bytes, final long batches, final long elapsed, final List<Failure> failures) {
+            this.threads = threads;
+            this.batchSize = batchSize;
+            this.stored = stored;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.batches = batches;
+            this.elapsed = elapsed;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * @return the number of documents which have been stored
+         */
+        public long getStored() {
+            return stored;
+        }
+
+        /**
+         * @return the number of documents which could not be stored
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the total size of the stored documents in bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of committed transactions
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return the duration of the bulk load in milliseconds
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        public double getDocumentsPerSecond() {
+            return elapsed == 0 ? stored : stored * 1000.0 / elapsed;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsed == 0 ? bytes : bytes * 1000.0 / elapsed;
+        }
+
+        /**
+         * @return the first {@link #MAX_REPORTED_FAILURES} failures
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.exist.dom.memtree.DocumentBuilderReceiver;
 import org.exist.numbering.NodeId;
 import org.exist.stax.IEmbeddedXMLStreamReader;
 import org.exist.storage.DBBroker;
+import org.exist.storage.NodeValueCache;
 import org.exist.storage.RangeIndexSpec;
 import org.exist.storage.StorageAddress;
 import org.exist.storage.lock.LockManager;
@@ -641,20 +642,30 @@ public class NodeProxy implements NodeSet, NodeValue, NodeHandle, DocumentSet, C
 
     public String getNodeValue() {
         try(final DBBroker broker = doc.getBrokerPool().getBroker()) {
+            // values compared several times by a query are only read once
+            final NodeValueCache cache = broker.getNodeValueCache();
+            String value = cache.get(doc.getDocId(), nodeId);
+            if(value != null) {
+                return value;
+            }
             if(isDocument()) {
                 final Element e = doc.getDocumentElement();
                 if(e instanceof NodeProxy) {
-                    return broker.getNodeValue(((StoredNode) e).extract(), false);
+                    value = broker.getNodeValue(((StoredNode) e).extract(), false);
                 } else if(e != null) {
-                    return broker.getNodeValue((ElementImpl) e, false);
+                    value = broker.getNodeValue((ElementImpl) e, false);
                 } else
                 // probably a binary resource
                 {
                     return "";
                 }
             } else {
-                return broker.getNodeValue(this.asStoredNode(), false);
+                value = broker.getNodeValue(this.asStoredNode(), false);
+            }
+            if(value != null) {
+                cache.put(doc.getDocId(), nodeId, value);
             }
+            return value;
         } catch(final EXistException e) {
             //TODO : raise an exception here ! -pb
         }
@@ -218,6 +218,18 @@ public class SymbolTable implements BrokerPoolService, Closeable {
         return (short) namespaceSymbols.getId(ns);
     }
 
+    /**
+     * Checks if an id was registered for the specified namespace URI.
+     * Unlike {@link #getNSSymbol(String)}, an unknown namespace URI
+     * is not registered.
+     *
+     * @param ns namespace uri
+     * @return true if the namespace uri has an id
+     */
+    public synchronized boolean hasNamespace(final String ns) {
+        return namespaceSymbols.contains(ns);
+    }
+
     public synchronized int getMimeTypeId(final String mimeType) {
         return mimeTypeSymbols.getId(mimeType);
     }
@@ -510,6 +522,10 @@ public class SymbolTable implements BrokerPoolService, Closeable {
             return symbolsById[id];
         }
 
+        public synchronized boolean contains(final String name) {
+            return symbolsByName.containsKey(name);
+        }
+
         public synchronized int getId(final String name) {
             int id = symbolsByName.getInt(name);
             if(id != -1) {
@@ -34,12 +34,19 @@ import java.lang.invoke.LambdaMetafactory;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiFunction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.XMLConstants;
@@ -48,10 +55,15 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.TransformerConfigurationException;
 
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.EXistException;
 import org.exist.Namespaces;
+import org.exist.collections.BulkLoader;
 import org.exist.collections.Collection;
 import org.exist.collections.IndexInfo;
 import org.exist.collections.triggers.TriggerException;
@@ -65,6 +77,7 @@ import org.exist.http.servlets.EXistServlet;
 import org.exist.http.servlets.HttpRequestWrapper;
 import org.exist.http.servlets.HttpResponseWrapper;
 import org.exist.http.servlets.ResponseWrapper;
+import org.exist.http.servlets.ServletOutputChannel;
 import org.exist.http.urlrewrite.XQueryURLRewrite;
 import org.exist.dom.memtree.ElementImpl;
 import org.exist.dom.memtree.NodeImpl;
@@ -80,6 +93,8 @@ import org.exist.source.URLSource;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.blob.BlobId;
+import org.exist.storage.blob.BlobLease;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.ManagedCollectionLock;
 import org.exist.storage.serializers.EXistOutputKeys;
@@ -90,6 +105,7 @@ import org.exist.util.io.CachingFilterInputStream;
 import org.exist.util.io.FilterInputStreamCache;
 import org.exist.util.io.FilterInputStreamCacheFactory;
 import org.exist.util.io.FilterInputStreamCacheFactory.FilterInputStreamCacheConfiguration;
+import org.exist.util.io.TarInputStream;
 import org.exist.util.serializer.SAXSerializer;
 import org.exist.util.serializer.SerializerPool;
 import org.exist.util.serializer.XQuerySerializer;
@@ -147,6 +163,12 @@ public class RESTServer {
         defaultOutputKeysProperties.setProperty(OutputKeys.MEDIA_TYPE,
                 MimeType.XML_TYPE.getName());
     }
+    /** Requests for more byte ranges are answered with the complete resource */
+    private final static int MAX_BYTE_RANGES = 32;
+    /** The number of documents which a bulk load stores in one transaction, unless specified by _batch */
+    public final static int DEFAULT_BULK_LOAD_BATCH_SIZE = 100;
+    private final static int MAX_BULK_LOAD_BATCH_SIZE = 10000;
+
     private final static String QUERY_ERROR_HEAD = "<html>" + "<head>"
             + "<title>Query Error</title>" + "<style type=\"text/css\">"
             + ".errmsg {" + "  border: 1px solid black;" + "  padding: 15px;"
@@ -166,6 +188,9 @@ public class RESTServer {
     private final SessionManager sessionManager;
     private final EXistServlet.FeatureEnabled xquerySubmission;
     private final EXistServlet.FeatureEnabled xupdateSubmission;
+    private final EXistServlet.FeatureEnabled bulkLoad;
+    private final BrokerPool pool;
+    private final ValidatorCache validatorCache = new ValidatorCache();
 
     //EXQuery Request Module details
     private String xqueryContextExqueryRequestAttribute = null;
@@ -173,7 +198,8 @@ public class RESTServer {
     
     // Constructor
     public RESTServer(final BrokerPool pool, final String formEncoding,
-                      final String containerEncoding, final boolean useDynamicContentType, final boolean safeMode, final EXistServlet.FeatureEnabled xquerySubmission, final EXistServlet.FeatureEnabled xupdateSubmission) {
+                      final String containerEncoding, final boolean useDynamicContentType, final boolean safeMode, final EXistServlet.FeatureEnabled xquerySubmission, final EXistServlet.FeatureEnabled xupdateSubmission,
+                      final EXistServlet.FeatureEnabled bulkLoad) {
         this.formEncoding = formEncoding;
         this.containerEncoding = containerEncoding;
         this.useDynamicContentType = useDynamicContentType;
@@ -181,6 +207,9 @@ public class RESTServer {
         this.sessionManager = new SessionManager();
         this.xquerySubmission = xquerySubmission;
         this.xupdateSubmission = xupdateSubmission;
+        this.bulkLoad = bulkLoad;
+        this.pool = pool;
+        pool.getNotificationService().subscribe(validatorCache);
         
         //get (optiona) EXQuery Request Module details
         try {
@@ -225,6 +254,193 @@ public class RESTServer {
         return request.getParameter(parameter.queryStringKey());
     }
 
+    /**
+     * Answers a conditional GET or HEAD request for a resource with 304 (Not Modified),
+     * if the validators of the resource recently sent to the user are still current.
+     * Called before a transaction is started; if it returns false the request has
+     * to be processed as usual.
+     *
+     * As the cache is not notified when permissions change or a collection is moved,
+     * the document is looked up again to check that it still exists and that the
+     * user may still read it, before the response is sent.
+     *
+     * @param user the authenticated user
+     * @param request the request
+     * @param response the response
+     * @param path the path of the request
+     *
+     * @return true if the response was sent, false otherwise
+     */
+    public boolean isNotModified(final Subject user, final HttpServletRequest request,
+            final HttpServletResponse response, final String path) {
+        if (request.getQueryString() != null
+                || (request.getHeader("If-None-Match") == null && request.getHeader("If-Modified-Since") == null)) {
+            return false;
+        }
+
+        final XmldbURI pathUri = XmldbURI.createInternal(path);
+        final ValidatorCache.Validators validators = validatorCache.get(pathUri, user.getName());
+        if (validators == null || !isNotModified(request, validators.entityTag, validators.lastModified)) {
+            return false;
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(user));
+                final LockedDocument lockedDocument = broker.getXMLResource(pathUri, LockMode.READ_LOCK)) {
+            if (lockedDocument == null
+                    || !lockedDocument.getDocument().getPermissions().validate(user, Permission.READ)
+                    || lockedDocument.getDocument().getMetadata().getLastModified() != validators.lastModified) {
+                return false;
+            }
+        } catch (final EXistException | PermissionDeniedException e) {
+            // let the request report the error
+            return false;
+        }
+
+        if (validators.entityTag != null) {
+            response.setHeader("ETag", validators.entityTag);
+        }
+        response.addDateHeader("Last-Modified", roundUpToSecond(validators.lastModified));
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * Checks if a POST request is a bulk load, i.e. has the
+     * {@link RESTServerParameter#Bulk} parameter. A bulk load is processed by
+     * {@link #doBulkLoad(Subject, HttpServletRequest, HttpServletResponse, String)}
+     * instead of {@link #doPost(DBBroker, Txn, HttpServletRequest, HttpServletResponse, String)}.
+     *
+     * @param request the request
+     *
+     * @return true if the request is a bulk load
+     */
+    public boolean isBulkLoad(final HttpServletRequest request) {
+        return "yes".equals(getParameter(request, Bulk));
+    }
+
+    /**
+     * Handle a bulk load. Stores every document of the body of the request
+     * into the collection of the path and its sub-collections, which are created
+     * as needed. The body is either a ZIP archive, a tar archive which may be gzip
+     * compressed, or multipart/form-data of which every file is stored.
+     *
+     * The documents are parsed and indexed in parallel, by workers which each
+     * borrow their own broker and commit one transaction per batch of documents,
+     * see {@link BulkLoader}. Hence no broker is borrowed for the request itself.
+     *
+     * The response reports the number of documents stored, the documents which
+     * could not be stored, and the throughput.
+     *
+     * The method also recognizes the following parameters:
+     *
+     * <ul><li>_threads: the number of workers, by default the number of
+     * processors. It is limited to half of the brokers of the database.</li>
+     *
+     * <li>_batch: the number of documents per transaction, by default
+     * {@link #DEFAULT_BULK_LOAD_BATCH_SIZE}.</li></ul>
+     *
+     * @param user the authenticated user
+     * @param request the request
+     * @param response the response
+     * @param path the path of the collection
+     *
+     * @throws BadRequestException if the body is not an archive or multipart/form-data
+     * @throws IOException if the body cannot be read or the response cannot be written
+     * @throws EXistException if the workers of the bulk load fail
+     */
+    public void doBulkLoad(final Subject user, final HttpServletRequest request,
+            final HttpServletResponse response, final String path)
+            throws BadRequestException, IOException, EXistException {
+
+        if (bulkLoad == EXistServlet.FeatureEnabled.FALSE) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        } else if (bulkLoad == EXistServlet.FeatureEnabled.AUTHENTICATED_USERS_ONLY) {
+            if (!user.isAuthenticated() || user.getId() == RealmImpl.GUEST_GROUP_ID) {
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+        }
+
+        final int maxThreads = Math.max(1, pool.getMax() / 2);
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), maxThreads);
+        int batchSize = DEFAULT_BULK_LOAD_BATCH_SIZE;
+        String option;
+        if ((option = getParameter(request, Threads)) != null) {
+            try {
+                threads = Math.min(Math.max(1, Integer.parseInt(option)), maxThreads);
+            } catch (final NumberFormatException nfe) {
+                throw new BadRequestException("Parameter _threads should be an int");
+            }
+        }
+        if ((option = getParameter(request, Batch)) != null) {
+            try {
+                batchSize = Math.min(Math.max(1, Integer.parseInt(option)), MAX_BULK_LOAD_BATCH_SIZE);
+            } catch (final NumberFormatException nfe) {
+                throw new BadRequestException("Parameter _batch should be an int");
+            }
+        }
+
+        String contentType = request.getContentType();
+        if (contentType != null) {
+            final int semicolon = contentType.indexOf(';');
+            if (semicolon > 0) {
+                contentType = contentType.substring(0, semicolon);
+            }
+            contentType = contentType.trim().toLowerCase();
+        }
+
+        final XmldbURI collectionUri = XmldbURI.createInternal(path);
+        try (final BulkLoader loader = new BulkLoader(pool, user, collectionUri, threads, batchSize)) {
+            if (ServletFileUpload.isMultipartContent(request)) {
+                final FileItemIterator items = new ServletFileUpload().getItemIterator(request);
+                while (items.hasNext()) {
+                    final FileItemStream item = items.next();
+                    if (!item.isFormField() && item.getName() != null && !item.getName().isEmpty()) {
+                        try (final InputStream is = item.openStream()) {
+                            loader.add(item.getName(), item.getContentType(), is);
+                        }
+                    }
+                }
+
+            } else if ("application/zip".equals(contentType) || "application/x-zip-compressed".equals(contentType)) {
+                try (final ZipInputStream zis = new ZipInputStream(request.getInputStream())) {
+                    ZipEntry entry;
+                    while ((entry = zis.getNextEntry()) != null) {
+                        if (!entry.isDirectory()) {
+                            loader.add(entry.getName(), null, zis);
+                        }
+                    }
+                }
+
+            } else if ("application/x-tar".equals(contentType) || "application/gzip".equals(contentType)
+                    || "application/x-gzip".equals(contentType) || "application/x-gtar".equals(contentType)) {
+                final InputStream is = "application/x-tar".equals(contentType)
+                        ? request.getInputStream() : new GZIPInputStream(request.getInputStream());
+                try (final TarInputStream tis = new TarInputStream(is)) {
+                    TarInputStream.Entry entry;
+                    while ((entry = tis.getNextEntry()) != null) {
+                        if (!entry.isDirectory()) {
+                            loader.add(entry.getName(), null, tis);
+                        }
+                    }
+                }
+
+            } else {
+                throw new BadRequestException("A bulk load requires a ZIP archive, a tar archive or multipart/form-data, not: " + contentType);
+            }
+
+            writeBulkLoadReport(response, "UTF-8", collectionUri, loader.finish());
+
+        } catch (final FileUploadException e) {
+            throw new BadRequestException("Invalid multipart/form-data: " + e.getMessage());
+        } catch (final InterruptedException e) {
+            // NOTE: must set interrupted flag
+            Thread.currentThread().interrupt();
+            throw new EXistException("Bulk load was interrupted", e);
+        }
+    }
+
     /**
      * Handle GET request. In the simplest case just returns the document or
      * binary resource specified in the path. If the path leads to a collection,
@@ -581,6 +797,13 @@ public class RESTServer {
                             "Permission to read resource " + path + " denied");
                 }
                 final DocumentMetadata metadata = resource.getMetadata();
+                final String entityTag = entityTag(resource, request);
+                if (entityTag != null) {
+                    response.setHeader("ETag", entityTag);
+                }
+                if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
+                    response.setHeader("Accept-Ranges", "bytes");
+                }
                 response.setContentType(metadata.getMimeType());
                 // As HttpServletResponse.setContentLength is limited to integers,
                 // (see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4187336)
@@ -1628,44 +1851,67 @@ public class RESTServer {
     }
 
     public void setCreatedAndLastModifiedHeaders(
-        final HttpServletResponse response, long created, long lastModified) {
+        final HttpServletResponse response, final long created, final long lastModified) {
+        response.addDateHeader("Last-Modified", roundUpToSecond(lastModified));
+        response.addDateHeader("Created", roundUpToSecond(created));
+    }
 
-        /**
-         * Jetty ignores the milliseconds component -
-         * https://bugs.eclipse.org/bugs/show_bug.cgi?id=342712 So lets work
-         * around this by rounding up to the nearest whole second
-         */
-        final long lastModifiedMillisComp = lastModified % 1000;
-        if (lastModifiedMillisComp > 0) {
-            lastModified += 1000 - lastModifiedMillisComp;
-        }
-        final long createdMillisComp = created % 1000;
-        if (createdMillisComp > 0) {
-            created += 1000 - createdMillisComp;
+    /**
+     * Jetty ignores the milliseconds component -
+     * https://bugs.eclipse.org/bugs/show_bug.cgi?id=342712 So lets work
+     * around this by rounding up to the nearest whole second
+     */
+    private static long roundUpToSecond(final long time) {
+        final long millisComp = time % 1000;
+        if (millisComp > 0) {
+            return time + 1000 - millisComp;
         }
-
-        response.addDateHeader("Last-Modified", lastModified);
-        response.addDateHeader("Created", created);
+        return time;
     }
 
-    // writes out a resource, uses asMimeType as the specified mime-type or if
-    // null uses the type of the resource
-    private void writeResourceAs(final DocumentImpl resource, final DBBroker broker, final Txn transaction,
-        final String stylesheet, final String encoding, String asMimeType,
-        final Properties outputProperties, final HttpServletRequest request,
-        final HttpServletResponse response) throws BadRequestException,
-        PermissionDeniedException, IOException {
-
-        // Do we have permission to read the resource
-        if (!resource.getPermissions().validate(broker.getCurrentSubject(), Permission.READ)) {
-            throw new PermissionDeniedException("Not allowed to read resource");
+    /**
+     * Get the entity tag of a resource. Binary resources have a strong tag, derived
+     * from the digest of their content. XML resources have a weak tag, as their
+     * serialization may change with the configuration; it is only given for the
+     * default serialization, i.e. without query parameters.
+     *
+     * @param resource the resource
+     * @param request the request
+     *
+     * @return the quoted entity tag, or null
+     */
+    private static @Nullable String entityTag(final DocumentImpl resource, final HttpServletRequest request) {
+        if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
+            final BlobId blobId = ((BinaryDocument) resource).getBlobId();
+            return blobId == null ? null : '"' + blobId.toString() + '"';
+        } else if (request.getQueryString() == null) {
+            return "W/\"" + Integer.toHexString(resource.getDocId()) + '-'
+                    + Long.toHexString(resource.getMetadata().getLastModified()) + '"';
+        } else {
+            return null;
         }
+    }
 
-        //get the document metadata
-        final DocumentMetadata metadata = resource.getMetadata();
-        final long lastModified = metadata.getLastModified();
-        setCreatedAndLastModifiedHeaders(response, metadata.getCreated(), lastModified);
+    /**
+     * Evaluate the If-None-Match and If-Modified-Since request headers.
+     *
+     * @param request the request
+     * @param entityTag the entity tag of the resource, or null
+     * @param lastModified the last modification time of the resource
+     *
+     * @return true if a 304 (Not Modified) response should be sent
+     */
+    private static boolean isNotModified(final HttpServletRequest request, @Nullable final String entityTag,
+            final long lastModified) {
 
+        /**
+         * HTTP 1.1 RFC 7232 Section 3.2 and 6
+         */
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is present
+            return matchesEntityTag(ifNoneMatch, entityTag, false);
+        }
 
         /**
          * HTTP 1.1 RFC 2616 Section 14.25 *
@@ -1684,22 +1930,240 @@ public class RESTServer {
                     /*
                      b) If the variant has been modified since the If-Modified-Since
                      date, the response is exactly the same as for a normal GET.
+
+                     c) If the variant has not been modified since a valid If-
+                     Modified-Since date, the server SHOULD return a 304 (Not
+                     Modified) response.
                      */
-                    if (lastModified <= ifModifiedSince) {
-
-                        /*
-                         c) If the variant has not been modified since a valid If-
-                         Modified-Since date, the server SHOULD return a 304 (Not
-                         Modified) response.
-                         */
-                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                        return;
-                    }
+                    return lastModified <= ifModifiedSince;
                 }
             }
         } catch (final IllegalArgumentException iae) {
             LOG.warn("Illegal If-Modified-Since HTTP Header sent on request, ignoring. " + iae.getMessage(), iae);
         }
+        return false;
+    }
+
+    /**
+     * Check if the entity tag of a resource is listed in an If-None-Match
+     * or If-Range request header.
+     *
+     * @param header the value of the request header
+     * @param entityTag the entity tag of the resource, or null
+     * @param strong true for the strong comparison, false for the weak comparison
+     *
+     * @return true if the entity tag is listed
+     */
+    private static boolean matchesEntityTag(final String header, @Nullable final String entityTag,
+            final boolean strong) {
+        if ("*".equals(header.trim())) {
+            return true;
+        }
+        if (entityTag == null || (strong && entityTag.startsWith("W/"))) {
+            return false;
+        }
+        final String opaqueTag = entityTag.startsWith("W/") ? entityTag.substring(2) : entityTag;
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                if (strong) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the byte ranges of a binary resource requested by the Range header,
+     * see RFC 7233.
+     *
+     * @param request the request
+     * @param entityTag the entity tag of the resource, or null
+     * @param lastModified the last modification time of the resource
+     * @param contentLength the length of the resource
+     *
+     * @return the satisfiable ranges, empty if none is satisfiable, or null
+     *     if the complete resource is to be sent
+     */
+    private static @Nullable List<ByteRange> getByteRanges(final HttpServletRequest request,
+            @Nullable final String entityTag, final long lastModified, final long contentLength) {
+        final String header = request.getHeader("Range");
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+
+        // the ranges only apply to the representation the client already has
+        final String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!matchesEntityTag(ifRange, entityTag, true)) {
+                    return null;
+                }
+            } else {
+                try {
+                    final long date = request.getDateHeader("If-Range");
+                    if (date < 0 || lastModified > date) {
+                        return null;
+                    }
+                } catch (final IllegalArgumentException iae) {
+                    return null;
+                }
+            }
+        }
+
+        final String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_BYTE_RANGES) {
+            return null;
+        }
+        final List<ByteRange> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                final int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                if (dash == 0) {
+                    // the last n bytes
+                    final long suffixLength = Long.parseLong(spec.substring(1));
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    if (suffixLength > 0 && contentLength > 0) {
+                        ranges.add(new ByteRange(Math.max(0, contentLength - suffixLength), contentLength - 1));
+                    }
+                } else {
+                    final long first = Long.parseLong(spec.substring(0, dash));
+                    final long last = dash == spec.length() - 1 ? contentLength - 1 : Long.parseLong(spec.substring(dash + 1));
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    if (first < contentLength) {
+                        ranges.add(new ByteRange(first, Math.min(last, contentLength - 1)));
+                    }
+                }
+            }
+        } catch (final NumberFormatException nfe) {
+            // invalid ranges are ignored
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * Send byte ranges of a binary resource in a 206 (Partial Content) response.
+     * The ranges are transferred from the leased blob file.
+     */
+    private void writeByteRanges(final BinaryDocument resource, final DBBroker broker, final Txn transaction,
+            final String contentType, final long contentLength, final List<ByteRange> ranges,
+            final HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+        final byte[][] partHeaders;
+        final byte[] closeDelimiter;
+        if (ranges.size() == 1) {
+            final ByteRange range = ranges.get(0);
+            partHeaders = null;
+            closeDelimiter = null;
+            response.setContentType(contentType);
+            response.setHeader("Content-Range", range.toContentRange(contentLength));
+            response.addHeader("Content-Length", Long.toString(range.length()));
+        } else {
+            final String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            partHeaders = new byte[ranges.size()][];
+            long length = 0;
+            for (int i = 0; i < partHeaders.length; i++) {
+                final ByteRange range = ranges.get(i);
+                partHeaders[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                        + "\r\nContent-Range: " + range.toContentRange(contentLength) + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                length += partHeaders[i].length + range.length();
+            }
+            closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            length += closeDelimiter.length;
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            response.addHeader("Content-Length", Long.toString(length));
+        }
+
+        final OutputStream os = ServletOutputChannel.wrap(response.getOutputStream());
+        try (final BlobLease lease = broker.leaseBinaryResource(transaction, resource)) {
+            if (lease == null) {
+                throw new IOException("Blob of " + resource.getURI() + " not found");
+            }
+            for (int i = 0; i < ranges.size(); i++) {
+                if (partHeaders != null) {
+                    os.write(partHeaders[i]);
+                }
+                final ByteRange range = ranges.get(i);
+                lease.transferTo(range.first, range.length(), os);
+            }
+            if (closeDelimiter != null) {
+                os.write(closeDelimiter);
+            }
+        }
+        os.flush();
+    }
+
+    /**
+     * A satisfiable byte range, the positions of the first and last byte are inclusive.
+     */
+    private static final class ByteRange {
+        final long first;
+        final long last;
+
+        ByteRange(final long first, final long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        long length() {
+            return last - first + 1;
+        }
+
+        String toContentRange(final long contentLength) {
+            return "bytes " + first + '-' + last + '/' + contentLength;
+        }
+    }
+
+    // writes out a resource, uses asMimeType as the specified mime-type or if
+    // null uses the type of the resource
+    private void writeResourceAs(final DocumentImpl resource, final DBBroker broker, final Txn transaction,
+        final String stylesheet, final String encoding, String asMimeType,
+        final Properties outputProperties, final HttpServletRequest request,
+        final HttpServletResponse response) throws BadRequestException,
+        PermissionDeniedException, IOException {
+
+        // Do we have permission to read the resource
+        if (!resource.getPermissions().validate(broker.getCurrentSubject(), Permission.READ)) {
+            throw new PermissionDeniedException("Not allowed to read resource");
+        }
+
+        //get the document metadata
+        final DocumentMetadata metadata = resource.getMetadata();
+        final long lastModified = metadata.getLastModified();
+        setCreatedAndLastModifiedHeaders(response, metadata.getCreated(), lastModified);
+
+        final String entityTag = entityTag(resource, request);
+        if (entityTag != null) {
+            response.setHeader("ETag", entityTag);
+        }
+
+        if (request.getQueryString() == null) {
+            // the document is locked, so an update will drop the entry after this
+            validatorCache.put(resource.getURI(), broker.getCurrentSubject().getName(),
+                    new ValidatorCache.Validators(entityTag, lastModified));
+        }
+
+        if (isNotModified(request, entityTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
         if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
             // binary resource
@@ -1708,20 +2172,37 @@ public class RESTServer {
                 asMimeType = resource.getMetadata().getMimeType();
             }
 
+            final String contentType;
             if (asMimeType.startsWith("text/")) {
-                response.setContentType(asMimeType + "; charset=" + encoding);
+                contentType = asMimeType + "; charset=" + encoding;
             } else {
-                response.setContentType(asMimeType);
+                contentType = asMimeType;
+            }
+
+            response.setHeader("Accept-Ranges", "bytes");
+            final long contentLength = resource.getContentLength();
+            final List<ByteRange> ranges = getByteRanges(request, entityTag, lastModified, contentLength);
+            if (ranges != null) {
+                if (ranges.isEmpty()) {
+                    response.setHeader("Content-Range", "bytes */" + contentLength);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                } else {
+                    writeByteRanges((BinaryDocument) resource, broker, transaction, contentType, contentLength,
+                            ranges, response);
+                }
+                return;
             }
 
+            response.setContentType(contentType);
+
             // As HttpServletResponse.setContentLength is limited to integers,
             // (see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4187336)
             // next sentence:
             //	response.setContentLength(resource.getContentLength());
             // must be set so
-            response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
-            final OutputStream os = response.getOutputStream();
-            broker.readBinaryResource((BinaryDocument) resource, os);
+            response.addHeader("Content-Length", Long.toString(contentLength));
+            final OutputStream os = ServletOutputChannel.wrap(response.getOutputStream());
+            broker.readBinaryResource(transaction, (BinaryDocument) resource, os);
             os.flush();
         } else {
             // xml resource
@@ -1774,14 +2255,20 @@ public class RESTServer {
                     outputProperties.setProperty("omit-xml-declaration", "no");
                 }
 
-                final OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), encoding);
-                sax.setOutput(writer, outputProperties);
-                serializer.setSAXHandlers(sax, sax);
+                if (!asMimeType.equals(MimeType.HTML_TYPE.getName())
+                        && serializer.serializeDirect(resource, response.getOutputStream())) {
+                    // written from the stored node records, without SAX events
+                    response.getOutputStream().close();
+                } else {
+                    final OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), encoding);
+                    sax.setOutput(writer, outputProperties);
+                    serializer.setSAXHandlers(sax, sax);
 
-                serializer.toSAX(resource);
+                    serializer.toSAX(resource);
 
-                writer.flush();
-                writer.close(); // DO NOT use in try-write-resources, otherwise ther response stream is always closed, and we can't report the errors
+                    writer.flush();
+                    writer.close(); // DO NOT use in try-write-resources, otherwise ther response stream is always closed, and we can't report the errors
+                }
             } catch (final SAXException saxe) {
                 LOG.warn(saxe);
                 throw new BadRequestException("Error while serializing XML: " + saxe.getMessage());
@@ -1906,6 +2393,73 @@ public class RESTServer {
         writer.close();
     }
 
+    /**
+     * Write the report of a bulk load to the http response.
+     *
+     * @param response the http response to write the result to
+     * @param encoding the character encoding
+     * @param collectionUri the collection of the bulk load
+     * @param report the report of the bulk load
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeBulkLoadReport(final HttpServletResponse response, final String encoding,
+            final XmldbURI collectionUri, final BulkLoader.Report report) throws IOException {
+
+        response.setContentType(MimeType.XML_TYPE.getName() + "; charset=" + encoding);
+
+        final OutputStreamWriter writer =
+                new OutputStreamWriter(response.getOutputStream(), encoding);
+
+        SAXSerializer serializer = null;
+
+        try {
+            serializer = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
+
+            serializer.setOutput(writer, defaultProperties);
+            final AttributesImpl attrs = new AttributesImpl();
+            attrs.addAttribute("", "collection", "collection", "CDATA", collectionUri.toString());
+            attrs.addAttribute("", "stored", "stored", "CDATA", String.valueOf(report.getStored()));
+            attrs.addAttribute("", "failed", "failed", "CDATA", String.valueOf(report.getFailed()));
+            attrs.addAttribute("", "bytes", "bytes", "CDATA", String.valueOf(report.getBytes()));
+            attrs.addAttribute("", "transactions", "transactions", "CDATA", String.valueOf(report.getBatches()));
+            attrs.addAttribute("", "threads", "threads", "CDATA", String.valueOf(report.getThreads()));
+            attrs.addAttribute("", "batch", "batch", "CDATA", String.valueOf(report.getBatchSize()));
+            attrs.addAttribute("", "elapsed", "elapsed", "CDATA", String.valueOf(report.getElapsed()));
+            attrs.addAttribute("", "documents-per-second", "documents-per-second", "CDATA",
+                    String.format("%.1f", report.getDocumentsPerSecond()));
+            attrs.addAttribute("", "bytes-per-second", "bytes-per-second", "CDATA",
+                    String.valueOf(Math.round(report.getBytesPerSecond())));
+
+            serializer.startDocument();
+            serializer.startPrefixMapping("exist", Namespaces.EXIST_NS);
+            serializer.startElement(Namespaces.EXIST_NS, "bulk-load", "exist:bulk-load", attrs);
+
+            for (final BulkLoader.Failure failure : report.getFailures()) {
+                attrs.clear();
+                attrs.addAttribute("", "path", "path", "CDATA", failure.getPath());
+                serializer.startElement(Namespaces.EXIST_NS, "failure", "exist:failure", attrs);
+                final String message = failure.getMessage() == null ? "" : failure.getMessage();
+                serializer.characters(message.toCharArray(), 0, message.length());
+                serializer.endElement(Namespaces.EXIST_NS, "failure", "exist:failure");
+            }
+
+            serializer.endElement(Namespaces.EXIST_NS, "bulk-load", "exist:bulk-load");
+            serializer.endDocument();
+
+            writer.flush();
+            writer.close();
+
+        } catch (final SAXException e) {
+            // should never happen
+            LOG.warn("Error while serializing bulk load report: " + e.getMessage(), e);
+        } finally {
+            if (serializer != null) {
+                SerializerPool.getInstance().returnObject(serializer);
+            }
+        }
+    }
+
     /**
      * Write the details of a Collection to the http response.
      *
@@ -346,7 +346,42 @@ enum RESTServerParameter {
      * <exist:property name = string
      *  value = string/>
      */
-    Property;
+    Property,
+
+    /**
+     * Can be used in the Query String of a POST request to a collection
+     * to store every document of the body of the request into the collection,
+     * see {@link org.exist.collections.BulkLoader}. The body is either a ZIP
+     * archive, a tar archive which may be gzip compressed, or multipart/form-data
+     * of which every file is stored.
+     * 
+     * Contexts: POST
+     * 
+     * The value of the parameter should be either "yes" or "no".
+     */
+    Bulk,
+
+    /**
+     * Can be used in the Query String of a POST request with the Bulk
+     * parameter to specify the number of threads which store the documents.
+     * 
+     * Contexts: POST
+     * 
+     * The value of the parameter should be a number greater than zero, it is
+     * limited to half of the brokers of the database.
+     */
+    Threads,
+
+    /**
+     * Can be used in the Query String of a POST request with the Bulk
+     * parameter to specify the number of documents which are stored in
+     * one transaction.
+     * 
+     * Contexts: POST
+     * 
+     * The value of the parameter should be a number greater than zero.
+     */
+    Batch;
 
     /**
      * Get the parameter key that is
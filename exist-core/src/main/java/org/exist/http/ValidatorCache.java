@@ -0,0 +1,117 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.http;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.numbering.NodeId;
+import org.exist.storage.UpdateListener;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the validators, i.e. the entity tag and the last modification time,
+ * of the resources recently sent by the {@link RESTServer}, so that conditional
+ * GET and HEAD requests can be answered without a transaction and without
+ * reading the content of the resource.
+ *
+ * Validators are kept per user. An entry is dropped when the document is
+ * added, updated or removed. Changes which are not notified, like a changed
+ * mode or a moved collection, are not reflected by the cache, so
+ * {@link RESTServer#isNotModified} checks that the document still exists and
+ * can be read by the user before using an entry.
+ */
+@ThreadSafe
+final class ValidatorCache implements UpdateListener {
+
+    private static final Logger LOG = LogManager.getLogger(ValidatorCache.class);
+
+    private static final int MAX_SIZE = 10_000;
+    private static final long TTL_SECONDS = 60;
+
+    private final Cache<XmldbURI, Map<String, Validators>> cache = Caffeine.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Get the validators last sent to the user for the resource.
+     *
+     * @param uri the URI of the resource
+     * @param user the name of the user
+     *
+     * @return the validators, or null if not known
+     */
+    @Nullable Validators get(final XmldbURI uri, final String user) {
+        final Map<String, Validators> users = cache.getIfPresent(uri);
+        return users == null ? null : users.get(user);
+    }
+
+    /**
+     * Remember the validators sent to the user for the resource. Must be called
+     * while the document is locked, so that a later update drops the entry.
+     *
+     * @param uri the URI of the resource
+     * @param user the name of the user
+     * @param validators the validators sent
+     */
+    void put(final XmldbURI uri, final String user, final Validators validators) {
+        cache.get(uri, k -> new ConcurrentHashMap<>()).put(user, validators);
+    }
+
+    @Override
+    public void documentUpdated(final DocumentImpl document, final int event) {
+        cache.invalidate(document.getURI());
+    }
+
+    @Override
+    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        // the document was already dropped by documentUpdated
+    }
+
+    @Override
+    public void unsubscribe() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void debug() {
+        LOG.debug("ValidatorCache: " + cache.estimatedSize() + " entries");
+    }
+
+    static final class Validators {
+        @Nullable final String entityTag;
+        final long lastModified;
+
+        Validators(@Nullable final String entityTag, final long lastModified) {
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+        }
+    }
+}
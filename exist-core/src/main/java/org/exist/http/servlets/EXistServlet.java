@@ -82,10 +82,11 @@ public class EXistServlet extends AbstractExistHttpServlet {
 
         final FeatureEnabled xquerySubmission = parseFeatureEnabled(config, "xquery-submission", FeatureEnabled.TRUE);
         final FeatureEnabled xupdateSubmission = parseFeatureEnabled(config,"xupdate-submission", FeatureEnabled.TRUE);
+        final FeatureEnabled bulkLoad = parseFeatureEnabled(config,"bulk-load", FeatureEnabled.AUTHENTICATED_USERS_ONLY);
 
         // Instantiate REST Server
         srvREST = new RESTServer(getPool(), getFormEncoding(), getContainerEncoding(), useDynamicContentType.equalsIgnoreCase("yes")
-                || useDynamicContentType.equalsIgnoreCase("true"), isInternalOnly(), xquerySubmission, xupdateSubmission);
+                || useDynamicContentType.equalsIgnoreCase("true"), isInternalOnly(), xquerySubmission, xupdateSubmission, bulkLoad);
 
         // XML lib checks....
         XmlLibraryChecker.check();
@@ -247,7 +248,12 @@ public class EXistServlet extends AbstractExistHttpServlet {
             return;
         }
 
-        // fourth, process the request
+        // fourth, answer a conditional request without a transaction, if possible
+        if (srvREST.isNotModified(user, request, response, path)) {
+            return;
+        }
+
+        // fifth, process the request
         try(final DBBroker broker = getPool().get(Optional.of(user));
                final Txn transaction = getPool().getTransactionManager().beginTransaction()) {
             srvREST.doGet(broker, transaction, request, response, path);
@@ -311,7 +317,12 @@ public class EXistServlet extends AbstractExistHttpServlet {
             return;
         }
 
-        // fourth, process the request
+        // fourth, answer a conditional request without a transaction, if possible
+        if (srvREST.isNotModified(user, request, response, path)) {
+            return;
+        }
+
+        // fifth, process the request
         try(final DBBroker broker = getPool().get(Optional.of(user));
                 final Txn transaction = getPool().getTransactionManager().beginTransaction()) {
             srvREST.doHead(broker, transaction, request, response, path);
@@ -455,10 +466,17 @@ public class EXistServlet extends AbstractExistHttpServlet {
             }
 
             // fourth, process the request
-            try(final DBBroker broker = getPool().get(Optional.of(user));
-                    final Txn transaction = getPool().getTransactionManager().beginTransaction()) {
-                srvREST.doPost(broker, transaction, request, response, path);
-                transaction.commit();
+            try {
+                if (srvREST.isBulkLoad(request)) {
+                    // the workers of a bulk load borrow their own brokers
+                    srvREST.doBulkLoad(user, request, response, path);
+                } else {
+                    try(final DBBroker broker = getPool().get(Optional.of(user));
+                            final Txn transaction = getPool().getTransactionManager().beginTransaction()) {
+                        srvREST.doPost(broker, transaction, request, response, path);
+                        transaction.commit();
+                    }
+                }
             } catch (final PermissionDeniedException e) {
                 // If the current user is the Default User and they do not have permission
                 // then send a challenge request to prompt the client for a username/password.
@@ -39,6 +39,9 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
 public class HttpResponseWrapper implements ResponseWrapper {
 	
 	private HttpServletResponse response;
+
+	/** changes made to the response, see {@link #getModificationCount()} */
+	private int modifications = 0;
 	
 	/**
 	 * @param response the http response
@@ -53,6 +56,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 */
 	public void addCookie(String name, String value)
 	{
+		modifications++;
 		response.addCookie(new Cookie(name, encode(value)));
 	}
 	
@@ -65,6 +69,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
      */
 	public void addCookie(final String name, final String value, final int maxAge)
 	{
+		modifications++;
 		final Cookie cookie = new Cookie(name, encode(value));
 		cookie.setMaxAge(maxAge);
 		response.addCookie(cookie);
@@ -80,6 +85,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
      */
 	public void addCookie(final String name, final String value, final int maxAge, boolean secure)
 	{
+		modifications++;
 		final Cookie cookie = new Cookie(name, encode(value));
 		cookie.setMaxAge(maxAge);
 		cookie.setSecure( secure );
@@ -98,6 +104,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 */
 	public void addCookie(final String name, final String value, final int maxAge, boolean secure, final String domain, final String path)
 	{
+		modifications++;
 		final Cookie cookie = new Cookie(name, encode(value));
 		cookie.setMaxAge(maxAge);
 		cookie.setSecure( secure );
@@ -113,6 +120,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 */
 	public void setContentType(String contentType)
 	{
+		modifications++;
 		response.setContentType(contentType);
 	}
 	
@@ -123,6 +131,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param value the value of the header
 	 */
 	public void addDateHeader(String name, long value) {
+		modifications++;
 		response.addDateHeader(name, value);
 	}
 	
@@ -133,6 +142,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param value the value of the header
 	 */
 	public void addHeader(String name, String value) {
+		modifications++;
 		response.addHeader(name, encode(value));
 	}
 	
@@ -143,6 +153,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param value the value of the header
 	 */
 	public void addIntHeader(String name, int value) {
+		modifications++;
 		response.addIntHeader(name, value);
 	}
 	
@@ -199,6 +210,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public void sendRedirect(String url) throws IOException {
+		modifications++;
 		response.sendRedirect(url);
 	}
 	
@@ -212,6 +224,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param value the header value
 	 */
 	public void setDateHeader(String name, long value) {
+		modifications++;
 		dateHeaders.put(name, Long.valueOf(value) );
 		response.setDateHeader(name, value);
 	}
@@ -238,6 +251,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param value the header value
 	 */
 	public void setHeader(String name, String value) {
+		modifications++;
 		response.setHeader(name, encode(value));
 	}
 
@@ -248,16 +262,19 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param value the header value
 	 */
 	public void setIntHeader(String name, int value) {
+		modifications++;
 		response.setIntHeader(name, value);
 	}
 
 	@Override
 	public void sendError(final int code) throws IOException {
+		modifications++;
 		response.sendError(code);
 	}
 
 	@Override
 	public void sendError(final int code, final String msg) throws IOException {
+		modifications++;
 		response.sendError(code, msg);
 	}
 
@@ -267,6 +284,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
      * @param statusCode the status code.
      */
 	public void setStatusCode(int statusCode) {
+		modifications++;
 		response.setStatus(statusCode);
 	}
 	
@@ -276,13 +294,20 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	 * @param locale the locale.
 	 */
 	public void setLocale(Locale locale) {
+		modifications++;
 		response.setLocale(locale);
 	}
 	
 	public OutputStream getOutputStream() throws IOException {
+		modifications++;
 		return response.getOutputStream();
 	}
 	
+	@Override
+	public int getModificationCount() {
+		return modifications;
+	}
+
 	// TODO: remove this hack after fixing HTTP 1.1 :)
 	private String encode(String value){
         return new String(value.getBytes(), ISO_8859_1);
@@ -189,4 +189,12 @@ public interface ResponseWrapper {
 	public long getDateHeader(String name);
     
     public OutputStream getOutputStream() throws IOException;
+
+	/**
+	 * Get the number of changes made to the response through this wrapper,
+	 * e.g. headers, cookies or the status code which were set.
+	 *
+	 * @return the number of changes
+	 */
+	public int getModificationCount();
 }
@@ -0,0 +1,114 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.http.servlets;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.exist.storage.blob.MappedBufferChannel;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An output stream to a servlet response which can also be written
+ * to as a {@link WritableByteChannel}.
+ *
+ * If the response is written by Jetty, buffers are handed to Jetty as they
+ * are, so that a memory mapped file, e.g. of a {@link org.exist.storage.blob.BlobLease},
+ * is written to the socket without being copied through the heap.
+ * Otherwise the buffers are copied to the output stream.
+ */
+public final class ServletOutputChannel extends FilterOutputStream implements MappedBufferChannel {
+
+    private final byte[] copyBuffer = new byte[16 * 1024];
+    private boolean open = true;
+
+    private ServletOutputChannel(final OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Wrap the output stream of a servlet response.
+     *
+     * @param os the output stream of the response
+     *
+     * @return an output stream which is also a {@link WritableByteChannel}
+     */
+    public static OutputStream wrap(final OutputStream os) {
+        if (os instanceof WritableByteChannel) {
+            return os;
+        }
+        return new ServletOutputChannel(os);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+
+        final int len = src.remaining();
+        if (out instanceof HttpOutput) {
+            // blocking, so all of the buffer has been written when it returns
+            ((HttpOutput) out).write(src);
+            src.position(src.limit());
+        } else if (src.hasArray()) {
+            out.write(src.array(), src.arrayOffset() + src.position(), len);
+            src.position(src.limit());
+        } else {
+            while (src.hasRemaining()) {
+                final int chunk = Math.min(src.remaining(), copyBuffer.length);
+                src.get(copyBuffer, 0, chunk);
+                out.write(copyBuffer, 0, chunk);
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Buffers are only written without being copied if they
+     * are handed to Jetty, rather than to the output stream.
+     *
+     * @return true if the response is written by Jetty
+     */
+    @Override
+    public boolean acceptsMappedBuffers() {
+        return out instanceof HttpOutput;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        super.close();
+    }
+}
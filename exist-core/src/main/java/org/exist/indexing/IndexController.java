@@ -29,6 +29,7 @@ import org.exist.dom.persistent.IStoredNode;
 import org.exist.collections.Collection;
 import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.storage.DBBroker;
+import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
 import org.exist.storage.txn.Txn;
 import org.exist.util.DatabaseConfigurationException;
@@ -37,6 +38,7 @@ import org.exist.xquery.XQueryContext;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -187,11 +189,62 @@ public class IndexController {
     }
 
     /**
-     * Flushes all index workers.
+     * Flushes all index workers, except those whose
+     * updates of the current document are deferred.
      */
     public void flush() {
-        indexWorkers.values().forEach(IndexWorker::flush);
-    }  
+        final IndexSpec asyncUpdateSpec = getAsyncUpdateSpec();
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            if (asyncUpdateSpec == null || !asyncUpdateSpec.isAsyncUpdate(indexWorker)) {
+                indexWorker.flush();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index entries of a single index for a document, whose
+     * updates were deferred to the {@link IndexUpdateQueue}.
+     *
+     * The existing entries of the document are removed first, so applying
+     * the same update more than once is harmless.
+     *
+     * @param transaction the current transaction
+     * @param doc the document to index
+     * @param indexId the id of the index to update
+     */
+    public void applyAsyncUpdate(final Txn transaction, final DocumentImpl doc, final String indexId) {
+        final IndexWorker worker = indexWorkers.get(indexId);
+        if (worker == null) {
+            return;
+        }
+
+        // the worker is driven directly, so the cached chain is no longer valid
+        listener = null;
+        currentDoc = null;
+        currentMode = ReindexMode.UNKNOWN;
+
+        worker.setDocument(doc, ReindexMode.REMOVE_ALL_NODES);
+        worker.flush();
+
+        final IStoredNode root = (IStoredNode) doc.getDocumentElement();
+        worker.setDocument(doc, ReindexMode.STORE);
+        final StreamListener workerListener = worker.getListener();
+        if (root != null && workerListener != null) {
+            final StreamListener next = workerListener.getNextInChain();
+            workerListener.setNextInChain(null);
+            try {
+                workerListener.startIndexDocument(transaction);
+                try {
+                    IndexUtils.scanNode(broker, transaction, root, workerListener);
+                } finally {
+                    workerListener.endIndexDocument(transaction);
+                }
+            } finally {
+                workerListener.setNextInChain(next);
+            }
+        }
+        worker.flush();
+    }
 
     /**
      * Remove all indexes defined on the specified collection.
@@ -310,12 +363,18 @@ public class IndexController {
             }
             return listener;
         }
+        final IndexSpec asyncUpdateSpec = getAsyncUpdateSpec();
         StreamListener first = null;
         StreamListener previous = null;
         for (final IndexWorker worker : indexWorkers.values()) {
             // wolf: setDocument() should have been called before
             //worker.setDocument(currentDoc, currentMode);
-            final StreamListener current = worker.getListener();
+            final StreamListener current;
+            if (asyncUpdateSpec != null && asyncUpdateSpec.isAsyncUpdate(worker)) {
+                current = new AsyncUpdateListener(worker, currentDoc);
+            } else {
+                current = worker.getListener();
+            }
             if (first == null) {
                 first = current;
             } else {
@@ -331,6 +390,28 @@ public class IndexController {
         return listener;
     }
 
+    /**
+     * Returns the index configuration of the current document if any of its
+     * indexes are updated asynchronously in the current mode.
+     *
+     * Only additions and partial removals are deferred; when all the nodes
+     * of a document are removed, the document is about to be deleted or
+     * replaced, so its index entries are removed immediately.
+     *
+     * @return the index configuration, or null if no updates are deferred
+     */
+    private @Nullable IndexSpec getAsyncUpdateSpec() {
+        if (currentDoc == null || (currentMode != ReindexMode.STORE && currentMode != ReindexMode.REMOVE_SOME_NODES)) {
+            return null;
+        }
+        final Collection collection = currentDoc.getCollection();
+        if (collection == null) {
+            return null;
+        }
+        final IndexSpec indexSpec = collection.getIndexConfiguration(broker);
+        return indexSpec != null && indexSpec.hasAsyncUpdates() ? indexSpec : null;
+    }
+
     /**
      * Helper method: index a single node which has been added during an XUpdate or XQuery update expression.
      *
@@ -469,4 +550,59 @@ public class IndexController {
         }
         return rewriters;
     }
+
+    /**
+     * Takes the place of the listener of an index worker whose updates
+     * are deferred. Instead of indexing the events, the document is
+     * enqueued once per transaction with the {@link IndexUpdateQueue},
+     * and the events are passed on to the rest of the chain.
+     */
+    private class AsyncUpdateListener extends AbstractStreamListener {
+        private final IndexWorker worker;
+        private final DocumentImpl document;
+        private boolean enqueued = false;
+        private Txn enqueuedTransaction = null;
+
+        AsyncUpdateListener(final IndexWorker worker, final DocumentImpl document) {
+            this.worker = worker;
+            this.document = document;
+        }
+
+        private void enqueue(final Txn transaction) {
+            if (!enqueued || transaction != enqueuedTransaction) {
+                broker.getBrokerPool().getIndexUpdateQueue().enqueue(transaction, worker.getIndexId(), document);
+                enqueued = true;
+                enqueuedTransaction = transaction;
+            }
+        }
+
+        @Override
+        public void startIndexDocument(final Txn transaction) {
+            enqueue(transaction);
+            super.startIndexDocument(transaction);
+        }
+
+        @Override
+        public void startElement(final Txn transaction, final ElementImpl element, final NodePath path) {
+            enqueue(transaction);
+            super.startElement(transaction, element, path);
+        }
+
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            enqueue(transaction);
+            super.attribute(transaction, attrib, path);
+        }
+
+        @Override
+        public void characters(final Txn transaction, final AbstractCharacterData text, final NodePath path) {
+            enqueue(transaction);
+            super.characters(transaction, text, path);
+        }
+
+        @Override
+        public IndexWorker getWorker() {
+            return worker;
+        }
+    }
 }
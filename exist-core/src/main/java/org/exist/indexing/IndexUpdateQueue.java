@@ -0,0 +1,584 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.BrokerPoolServiceException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.ManagedDocumentLock;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnListener;
+import org.exist.util.Configuration;
+import org.exist.util.LockException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
+/**
+ * Applies the updates of the indexes which are configured to be
+ * updated asynchronously, i.e. which have an &lt;async-update index="..."/&gt;
+ * in the collection configuration.
+ *
+ * Instead of indexing a changed document within the updating transaction,
+ * the {@link IndexController} enqueues the document once per transaction
+ * and index. The updates are written to the queue file before the transaction
+ * commits, and after the commit a background thread rebuilds the index entries
+ * of the documents in batches, each within a single transaction. The queue file
+ * is replayed when the database starts, and truncated whenever all of the
+ * updates have been applied. A batch which cannot be applied is retried a few
+ * times, and then split into its documents, each of which is applied within its
+ * own transaction. An update which still fails is quarantined: it is logged and
+ * recorded in the file {@value #QUARANTINE_FILE_NAME}, so that the watermark can
+ * move past it, and the index of its document is incomplete until it is rebuilt.
+ *
+ * Each update is given a sequence number; the sequence of the last applied
+ * update is the visibility watermark. Readers which need to see their own
+ * writes in the index can wait for the watermark, see {@link #await(long, long)}.
+ */
+@ThreadSafe
+public class IndexUpdateQueue implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(IndexUpdateQueue.class);
+
+    private static final String QUEUE_FILE_NAME = "index-updates.log";
+    private static final String QUARANTINE_FILE_NAME = "index-updates.failed";
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long POLL_INTERVAL = 1000;
+    private static final int MAX_BATCH_FAILURES = 3;
+    private static final int MAX_UPDATE_FAILURES = 5;
+
+    private Path queueFile;
+    private Path quarantineFile;
+    private BrokerPool pool;
+
+    /**
+     * Guards the queue file.
+     */
+    private final Object fileLock = new Object();
+    private FileChannel channel;
+
+    /**
+     * Updates recovered from the queue file at startup.
+     */
+    private List<Update> recovered = Collections.emptyList();
+
+    /**
+     * Updates of the transactions which have not yet completed, by transaction id.
+     */
+    private final ConcurrentMap<Long, PendingUpdates> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Guards the sequence numbers, so that the order of the updates in
+     * the queue is the order of their sequence numbers.
+     */
+    private final Object publishLock = new Object();
+    private final BlockingQueue<Update> queue = new LinkedBlockingQueue<>();
+    private long enqueued = 0;
+
+    private final Object watermarkLock = new Object();
+    private long applied = 0;
+
+    private volatile boolean running = false;
+    private Thread applier;
+
+    @Override
+    public void configure(final Configuration configuration) throws BrokerPoolServiceException {
+        final Path dataDir = (Path) configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR);
+        if (dataDir == null) {
+            throw new BrokerPoolServiceException("Could not determine " + BrokerPool.PROPERTY_DATA_DIR + " from the configuration");
+        }
+        this.queueFile = dataDir.resolve(QUEUE_FILE_NAME);
+        this.quarantineFile = dataDir.resolve(QUARANTINE_FILE_NAME);
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) throws BrokerPoolServiceException {
+        this.pool = brokerPool;
+        try {
+            if (Files.exists(queueFile)) {
+                this.recovered = readQueueFile();
+            }
+            this.channel = FileChannel.open(queueFile, CREATE, WRITE, APPEND);
+        } catch (final IOException e) {
+            throw new BrokerPoolServiceException("Unable to open the index update queue: " + queueFile, e);
+        }
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (!recovered.isEmpty()) {
+            LOG.info("Replaying " + recovered.size() + " deferred index updates from " + queueFile.getFileName());
+            publish(recovered);
+            recovered = Collections.emptyList();
+        }
+
+        running = true;
+        applier = newInstanceThread(pool, "index-update-queue", this::applyUpdates);
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    @Override
+    public void stop(final DBBroker systemBroker) {
+        running = false;
+        if (applier != null) {
+            // not interrupted, as that would close the files of the index being updated
+            try {
+                applier.join(POLL_INTERVAL * 10);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applier = null;
+        }
+        synchronized (watermarkLock) {
+            watermarkLock.notifyAll();
+        }
+        truncateIfIdle();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (fileLock) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    LOG.error("Unable to close the index update queue: " + e.getMessage(), e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Enqueues an update of an index for a document. The update is
+     * applied after the transaction has completed.
+     *
+     * @param transaction the transaction which changes the document,
+     *     or null to enqueue the update immediately
+     * @param indexId the id of the index
+     * @param doc the changed document
+     */
+    public void enqueue(@Nullable final Txn transaction, final String indexId, final DocumentImpl doc) {
+        final Update update = new Update(indexId, doc.getCollection().getId(), doc.getDocId());
+        if (transaction == null) {
+            final List<Update> updates = Collections.singletonList(update);
+            write(updates, false);
+            publish(updates);
+            return;
+        }
+
+        pending.computeIfAbsent(transaction.getId(), id -> {
+            final PendingUpdates pendingUpdates = new PendingUpdates(id);
+            transaction.registerListener(pendingUpdates);
+            return pendingUpdates;
+        }).add(update);
+    }
+
+    /**
+     * Returns the sequence number of the last enqueued update,
+     * i.e. the watermark which includes all of the committed updates.
+     *
+     * @return the sequence number
+     */
+    public long getEnqueuedSequence() {
+        synchronized (publishLock) {
+            return enqueued;
+        }
+    }
+
+    /**
+     * Returns the visibility watermark, the sequence number
+     * of the last update which has been applied.
+     *
+     * @return the sequence number
+     */
+    public long getAppliedSequence() {
+        synchronized (watermarkLock) {
+            return applied;
+        }
+    }
+
+    /**
+     * Waits until the update with the given sequence
+     * number, and all of those before it, have been applied.
+     *
+     * @param sequence the sequence number to wait for
+     * @param timeout the maximum time to wait in milliseconds, or a negative value to wait without a limit
+     *
+     * @return true if the updates have been applied, false if the timeout
+     *     elapsed or the queue was stopped first
+     *
+     * @throws InterruptedException if the thread is interrupted whilst waiting
+     */
+    public boolean await(final long sequence, final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        synchronized (watermarkLock) {
+            while (applied < sequence) {
+                if (!running) {
+                    return false;
+                }
+                if (timeout < 0) {
+                    watermarkLock.wait();
+                } else {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    watermarkLock.wait(remaining);
+                }
+            }
+            return true;
+        }
+    }
+
+    private void publish(final Collection<Update> updates) {
+        synchronized (publishLock) {
+            for (final Update update : updates) {
+                update.sequence = ++enqueued;
+                queue.add(update);
+            }
+        }
+    }
+
+    private void applyUpdates() {
+        final List<Update> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        int failures = 0;
+        while (running && !pool.isShuttingDown()) {
+            try {
+                if (batch.isEmpty()) {
+                    final Update first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        truncateIfIdle();
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                }
+
+                // the watermark stays behind a batch which is not applied, so that it is
+                // kept in the queue file and replayed on restart if the database stops first
+                if (!apply(batch, failures)) {
+                    failures++;
+                    if (failures < MAX_BATCH_FAILURES) {
+                        pause(POLL_INTERVAL * failures);
+                        continue;
+                    }
+                    // a single document which cannot be indexed must not hold up the others
+                    if (!applySeparately(batch)) {
+                        continue;
+                    }
+                }
+                failures = 0;
+
+                synchronized (watermarkLock) {
+                    applied = batch.get(batch.size() - 1).sequence;
+                    watermarkLock.notifyAll();
+                }
+                batch.clear();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of updates within a single transaction.
+     *
+     * @param batch the updates
+     * @param failures the number of times the batch has failed before
+     *
+     * @return true if the updates have been applied, false if they have to be retried
+     */
+    private boolean apply(final List<Update> batch, final int failures) {
+        // a document which changed several times needs to be indexed only once
+        final Set<Update> distinct = new LinkedHashSet<>(batch);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            for (final Update update : distinct) {
+                apply(broker, transaction, update);
+            }
+            transaction.commit();
+            if (failures > 0) {
+                LOG.info("Applied " + distinct.size() + " deferred index updates after " + failures + " failed attempts");
+            }
+            return true;
+        } catch (final EXistException | PermissionDeniedException | LockException | RuntimeException e) {
+            if (running && !pool.isShuttingDown()) {
+                LOG.error("Unable to apply " + distinct.size() + " deferred index updates, retrying: " +
+                        e.getMessage(), e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Applies each update of a batch within its own transaction. An update which
+     * keeps failing is quarantined.
+     *
+     * @param batch the updates
+     *
+     * @return true if all of the updates have been applied or quarantined,
+     *     false if the queue was stopped first
+     */
+    private boolean applySeparately(final List<Update> batch) throws InterruptedException {
+        for (final Update update : new LinkedHashSet<>(batch)) {
+            int failures = 0;
+            while (!apply(Collections.singletonList(update), failures)) {
+                if (!running || pool.isShuttingDown()) {
+                    return false;
+                }
+                if (++failures >= MAX_UPDATE_FAILURES) {
+                    quarantine(update);
+                    break;
+                }
+                pause(POLL_INTERVAL * failures);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives up on an update, so that the updates after it can become visible.
+     */
+    private void quarantine(final Update update) {
+        LOG.error("Giving up on the deferred update of index " + update.indexId + " for document " + update.docId +
+                " in collection " + update.collectionId + " after " + MAX_UPDATE_FAILURES +
+                " failed attempts, the collection has to be reindexed. The update is recorded in " + quarantineFile);
+        final String line = update.indexId + ' ' + update.collectionId + ' ' + update.docId + '\n';
+        try {
+            Files.write(quarantineFile, line.getBytes(StandardCharsets.UTF_8), CREATE, APPEND);
+        } catch (final IOException e) {
+            LOG.error("Unable to write to " + quarantineFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void apply(final DBBroker broker, final Txn transaction, final Update update)
+            throws PermissionDeniedException, LockException {
+        final DocumentImpl doc = broker.getResourceById(update.collectionId, DocumentImpl.XML_FILE, update.docId);
+        if (doc == null) {
+            // the document has been removed since
+            return;
+        }
+        try (final ManagedDocumentLock documentLock = pool.getLockManager().acquireDocumentReadLock(doc.getURI())) {
+            broker.getIndexController().applyAsyncUpdate(transaction, doc, update.indexId);
+        }
+    }
+
+    /**
+     * Waits before a batch is retried, unless the queue is stopped.
+     */
+    private void pause(final long delay) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + delay;
+        long remaining = delay;
+        while (running && !pool.isShuttingDown() && remaining > 0) {
+            Thread.sleep(Math.min(remaining, POLL_INTERVAL));
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Writes updates to the queue file.
+     *
+     * @param updates the updates to write
+     * @param sync true if the updates must be on disk before returning
+     */
+    private void write(final Collection<Update> updates, final boolean sync) {
+        final StringBuilder builder = new StringBuilder();
+        for (final Update update : updates) {
+            builder.append(update.indexId).append(' ')
+                    .append(update.collectionId).append(' ')
+                    .append(update.docId).append('\n');
+        }
+        final ByteBuffer buffer = StandardCharsets.UTF_8.encode(builder.toString());
+
+        synchronized (fileLock) {
+            if (channel == null) {
+                LOG.error("Unable to write to the index update queue, it has been shut down");
+                return;
+            }
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (final IOException e) {
+                // the updates are still applied, but would not survive a crash
+                LOG.error("Unable to write to the index update queue: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private List<Update> readQueueFile() throws IOException {
+        final List<Update> updates = new ArrayList<>();
+        for (final String line : Files.readAllLines(queueFile, StandardCharsets.UTF_8)) {
+            final String[] fields = line.split(" ");
+            if (fields.length != 3) {
+                // a partially written update, whose transaction did not commit
+                LOG.warn("Skipping invalid entry in index update queue: " + line);
+                continue;
+            }
+            try {
+                updates.add(new Update(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2])));
+            } catch (final NumberFormatException e) {
+                LOG.warn("Skipping invalid entry in index update queue: " + line);
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Truncates the queue file when all of the updates
+     * written to it have been applied.
+     */
+    private void truncateIfIdle() {
+        synchronized (fileLock) {
+            if (channel == null || !pending.isEmpty() || !queue.isEmpty() || getAppliedSequence() < getEnqueuedSequence()) {
+                return;
+            }
+            try {
+                if (channel.size() > 0) {
+                    channel.truncate(0);
+                    channel.force(true);
+                }
+            } catch (final IOException e) {
+                LOG.error("Unable to truncate the index update queue: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * The updates of a single transaction.
+     */
+    private class PendingUpdates implements TxnListener {
+        private final long transactionId;
+        private final Set<Update> updates = new LinkedHashSet<>();
+        private boolean written = false;
+
+        PendingUpdates(final long transactionId) {
+            this.transactionId = transactionId;
+        }
+
+        void add(final Update update) {
+            synchronized (updates) {
+                updates.add(update);
+            }
+        }
+
+        @Override
+        public void beforeCommit() {
+            synchronized (updates) {
+                write(updates, true);
+                written = true;
+            }
+        }
+
+        @Override
+        public void commit() {
+            complete();
+        }
+
+        @Override
+        public void abort() {
+            // changes to the document are not rolled back by an abort
+            complete();
+        }
+
+        private void complete() {
+            synchronized (updates) {
+                if (!written) {
+                    write(updates, false);
+                    written = true;
+                }
+                publish(updates);
+            }
+            // removed after publishing, so that the queue file is not truncated in between
+            pending.remove(transactionId);
+        }
+    }
+
+    /**
+     * An update of an index for a document.
+     */
+    private static final class Update {
+        private final String indexId;
+        private final int collectionId;
+        private final int docId;
+        private long sequence;
+
+        Update(final String indexId, final int collectionId, final int docId) {
+            this.indexId = indexId;
+            this.collectionId = collectionId;
+            this.docId = docId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Update other = (Update) o;
+            return collectionId == other.collectionId && docId == other.docId && indexId.equals(other.indexId);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = indexId.hashCode();
+            result = 31 * result + collectionId;
+            result = 31 * result + docId;
+            return result;
+        }
+    }
+}
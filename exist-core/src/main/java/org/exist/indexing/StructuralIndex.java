@@ -46,12 +46,53 @@ public interface StructuralIndex {
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent);
 
+    /**
+     * Find all nodes matching a given QName, optionally splitting the scan by document and running
+     * the parts in parallel. In parallel mode, the selector is called from several threads, so its
+     * context set has to be sorted before the call.
+     *
+     * The default implementation always scans serially.
+     *
+     * @param type the type of the element
+     * @param docs the document working set
+     * @param qname the name
+     * @param selector the selector, or null
+     * @param parent the calling expression, or null
+     * @param parallel true if the scan may run in parallel
+     * @return the matching nodes
+     */
+    public default NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector,
+            Expression parent, boolean parallel) {
+        return findElementsByTagName(type, docs, qname, selector, parent);
+    }
+
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
         DocumentSet docs, NodeSet contextSet,  int contextId);
 
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
                                             DocumentSet docs, NodeSet contextSet,  int contextId, Expression parent);
 
+    /**
+     * Find all descendants (or children) of the context set matching the given QName, optionally
+     * splitting the context set by document and running the lookups in parallel.
+     *
+     * The default implementation always looks up serially.
+     *
+     * @param type the type of node to find
+     * @param qname the node name
+     * @param axis the node axis
+     * @param docs the document set
+     * @param contextSet the context set
+     * @param contextId the id of the context
+     * @param parent the calling expression, or null
+     * @param parallel true if the lookups may run in parallel
+     * @return the matching descendants
+     */
+    public default NodeSet findDescendantsByTagName(byte type, QName qname, int axis, DocumentSet docs,
+            NodeSet contextSet, int contextId, Expression parent, boolean parallel) {
+        return findDescendantsByTagName(type, qname, axis, docs, contextSet, contextId, parent);
+    }
+
     public NodeSet findAncestorsByTagName(byte type, QName qname, int axis,
             DocumentSet docs, NodeSet contextSet, int contextId);
 
@@ -76,6 +76,11 @@ public class Cache implements CacheMXBean {
         return cache.getFails();
     }
 
+    @Override
+    public int getEvictions() {
+        return cache.getEvictions();
+    }
+
     @Override
     public String getCacheName() {
         return cache.getName();
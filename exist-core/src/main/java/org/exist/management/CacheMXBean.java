@@ -38,5 +38,7 @@ public interface CacheMXBean extends PerInstanceMBean {
 
     int getFails();
 
+    int getEvictions();
+
     String getCacheName();
 }
\ No newline at end of file
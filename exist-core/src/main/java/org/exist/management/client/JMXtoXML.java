@@ -95,11 +95,13 @@ public class JMXtoXML {
         putCategory("instances", Database.getAllInstancesQuery());
         putCategory("locking", LockTable.getAllInstancesQuery());
         putCategory("disk", DiskUsage.getAllInstancesQuery());
+        putCategory("journal", Journal.getAllInstancesQuery());
         putCategory("collectioncaches", CollectionCache.getAllInstancesQuery());
         putCategory("caches",
                 CacheManager.getAllInstancesQuery(),
                 Cache.getAllInstancesQuery()
         );
+        putCategory("bufferpool", BufferPool.getAllInstancesQuery());
         putCategory("binarystreamcaches", BinaryValues.getAllInstancesQuery());
         putCategory("processes", ProcessReport.getAllInstancesQuery());
         putCategory("sanity", SanityReport.getAllInstancesQuery());
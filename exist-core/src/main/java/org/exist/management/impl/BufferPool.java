@@ -0,0 +1,121 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.btree.PageBufferPool;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * JMX MXBean for examining the off-heap page buffer pool
+ */
+public class BufferPool implements BufferPoolMXBean {
+
+    private final BrokerPool instance;
+
+    public BufferPool(final BrokerPool instance) {
+        this.instance = instance;
+    }
+
+    public static String getAllInstancesQuery() {
+        return getName("*");
+    }
+
+    private static String getName(final String instanceId) {
+        return "org.exist.management." + instanceId + ":type=BufferPool";
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        return new ObjectName(getName(instance.getId()));
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instance.getId();
+    }
+
+    private PageBufferPool getPool() {
+        return instance.getPageBufferPool();
+    }
+
+    @Override
+    public long getSize() {
+        return getPool().getSize();
+    }
+
+    @Override
+    public long getAllocated() {
+        return getPool().getAllocated();
+    }
+
+    @Override
+    public long getFrames() {
+        return getPool().getFrames();
+    }
+
+    @Override
+    public long getUsedFrames() {
+        return getPool().getUsedFrames();
+    }
+
+    @Override
+    public long getHits() {
+        return getPool().getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return getPool().getMisses();
+    }
+
+    @Override
+    public long getEvictions() {
+        return getPool().getEvictions();
+    }
+
+    @Override
+    public Map<String, Long> getFramesByFile() {
+        return byFile(PageBufferPool.PagedFile::getFrames);
+    }
+
+    @Override
+    public Map<String, Long> getHitsByFile() {
+        return byFile(PageBufferPool.PagedFile::getHits);
+    }
+
+    @Override
+    public Map<String, Long> getMissesByFile() {
+        return byFile(PageBufferPool.PagedFile::getMisses);
+    }
+
+    private Map<String, Long> byFile(final ToLongFunction<PageBufferPool.PagedFile> getter) {
+        final Map<String, Long> byFile = new TreeMap<>();
+        for (final Map.Entry<String, PageBufferPool.PagedFile> file : getPool().getFiles().entrySet()) {
+            byFile.put(file.getKey(), getter.applyAsLong(file.getValue()));
+        }
+        return byFile;
+    }
+}
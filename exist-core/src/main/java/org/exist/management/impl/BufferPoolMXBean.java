@@ -0,0 +1,80 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import java.util.Map;
+
+/**
+ * JMX MXBean interface for examining the off-heap page buffer pool.
+ *
+ * All values are 0 if the pool is disabled.
+ */
+public interface BufferPoolMXBean extends PerInstanceMBean {
+
+    /**
+     * @return the configured size of the pool, in bytes
+     */
+    long getSize();
+
+    /**
+     * @return the direct memory allocated by the pool so far, in bytes
+     */
+    long getAllocated();
+
+    /**
+     * @return the number of page frames of the pool
+     */
+    long getFrames();
+
+    /**
+     * @return the number of page frames holding a page
+     */
+    long getUsedFrames();
+
+    /**
+     * @return the number of pages read from the pool instead of from disk
+     */
+    long getHits();
+
+    /**
+     * @return the number of pages which had to be read from disk
+     */
+    long getMisses();
+
+    /**
+     * @return the number of pages evicted from the pool
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of page frames used by each file
+     */
+    Map<String, Long> getFramesByFile();
+
+    /**
+     * @return the number of hits of each file
+     */
+    Map<String, Long> getHitsByFile();
+
+    /**
+     * @return the number of misses of each file
+     */
+    Map<String, Long> getMissesByFile();
+}
@@ -94,7 +94,9 @@ public class JMXAgent implements Agent {
                 new DiskUsage(instance),
                 new ProcessReport(instance),
                 new BinaryValues(instance),
-                new CollectionCache(instance)
+                new CollectionCache(instance),
+                new Journal(instance),
+                new BufferPool(instance)
         );
 
         for (final PerInstanceMBean perInstanceMBean : perInstanceMBeans) {
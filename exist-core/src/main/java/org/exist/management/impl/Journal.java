@@ -0,0 +1,118 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.management.impl;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.journal.JournalManager;
+import org.exist.storage.journal.JournalStatistics;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * JMX MXBean for examining the syncs of the Journal
+ */
+public class Journal implements JournalMXBean {
+
+    private final BrokerPool instance;
+
+    public Journal(final BrokerPool instance) {
+        this.instance = instance;
+    }
+
+    public static String getAllInstancesQuery() {
+        return getName("*");
+    }
+
+    private static String getName(final String instanceId) {
+        return "org.exist.management." + instanceId + ":type=Journal";
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        return new ObjectName(getName(instance.getId()));
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instance.getId();
+    }
+
+    private Optional<JournalStatistics> getStatistics() {
+        return instance.getJournalManager().flatMap(JournalManager::getStatistics);
+    }
+
+    private long getLong(final ToLongFunction<JournalStatistics> getter) {
+        return getStatistics().map(getter::applyAsLong).orElse(0L);
+    }
+
+    private double getDouble(final ToDoubleFunction<JournalStatistics> getter) {
+        return getStatistics().map(getter::applyAsDouble).orElse(0.0);
+    }
+
+    @Override
+    public boolean isGroupCommit() {
+        return instance.getConfiguration().getProperty(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, false);
+    }
+
+    @Override
+    public long getSyncCount() {
+        return getLong(JournalStatistics::getSyncCount);
+    }
+
+    @Override
+    public long getCommitCount() {
+        return getLong(JournalStatistics::getCommitCount);
+    }
+
+    @Override
+    public int getLastBatchSize() {
+        return (int) getLong(JournalStatistics::getLastBatchSize);
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return (int) getLong(JournalStatistics::getMaxBatchSize);
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        return getDouble(JournalStatistics::getAverageBatchSize);
+    }
+
+    @Override
+    public long getTotalSyncTime() {
+        return getLong(JournalStatistics::getTotalSyncTime);
+    }
+
+    @Override
+    public long getAverageSyncTime() {
+        return getLong(JournalStatistics::getAverageSyncTime);
+    }
+
+    @Override
+    public long getMaxSyncTime() {
+        return getLong(JournalStatistics::getMaxSyncTime);
+    }
+}
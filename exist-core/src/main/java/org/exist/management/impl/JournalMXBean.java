@@ -0,0 +1,74 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.management.impl;
+
+/**
+ * JMX MXBean interface for examining the syncs of the Journal.
+ *
+ * All values are 0 if journalling is disabled.
+ */
+public interface JournalMXBean extends PerInstanceMBean {
+
+    /**
+     * @return true if concurrent commits are grouped into a single sync
+     */
+    boolean isGroupCommit();
+
+    /**
+     * @return the number of syncs of the journal
+     */
+    long getSyncCount();
+
+    /**
+     * @return the number of commits made durable by syncs
+     */
+    long getCommitCount();
+
+    /**
+     * @return the number of commits made durable by the last sync
+     */
+    int getLastBatchSize();
+
+    /**
+     * @return the largest number of commits made durable by a single sync
+     */
+    int getMaxBatchSize();
+
+    /**
+     * @return the average number of commits made durable by a sync
+     */
+    double getAverageBatchSize();
+
+    /**
+     * @return the total time spent syncing, in milliseconds
+     */
+    long getTotalSyncTime();
+
+    /**
+     * @return the average duration of a sync, in microseconds
+     */
+    long getAverageSyncTime();
+
+    /**
+     * @return the longest duration of a sync, in microseconds
+     */
+    long getMaxSyncTime();
+}
@@ -141,6 +141,23 @@ public class Deployment {
         return Optional.empty();
     }
 
+    /**
+     * Get the collection into which an installed package was deployed.
+     *
+     * @param broker the database broker
+     * @param pkgName the name of the package
+     * @param repo the package repository
+     * @return the path of the target collection, or empty if the package is not installed
+     * @throws PackageException if the repo.xml of the package can't be read
+     */
+    public Optional<String> getTargetCollection(final DBBroker broker, final String pkgName, final Optional<ExistRepository> repo) throws PackageException {
+        final Optional<Package> pkg = getPackage(pkgName, repo);
+        if (!pkg.isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(getTargetCollection(broker, pkg.get(), getPackageDir(pkg.get())));
+    }
+
     protected DocumentImpl getRepoXML(final DBBroker broker, final Path packageDir) throws PackageException {
         // find and parse the repo.xml descriptor
         final Path repoFile = packageDir.resolve("repo.xml");
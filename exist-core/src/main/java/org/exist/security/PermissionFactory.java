@@ -36,6 +36,7 @@ import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.internal.aider.ACEAider;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ResultCache;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.txn.Txn;
 import com.evolvedbinary.j8fu.function.ConsumerE;
@@ -303,6 +304,10 @@ public class PermissionFactory {
         if (changeGroup) {
             permission.setGroup(group.get());
         }
+
+        if (changeOwner || changeGroup) {
+            invalidateCachedResults(broker);
+        }
     }
 
     /**
@@ -497,6 +502,10 @@ public class PermissionFactory {
                     aclPermission.addACE(ace.getAccessType(), ace.getTarget(), ace.getWho(), ace.getMode());
                 }
             }
+
+            if (changeMode || changeAcl) {
+                invalidateCachedResults(broker);
+            }
         } catch (final SyntaxException se) {
             throw new PermissionDeniedException("Unrecognised mode syntax: " + se.getMessage(), se);
         }
@@ -538,6 +547,7 @@ public class PermissionFactory {
                 throw new PermissionDeniedException("ACL like permissions have not been enabled");
             }
         });
+        invalidateCachedResults(broker);
     }
 
     public static void chacl(final SimpleACLPermission permission, final ConsumerE<ACLPermission, PermissionDeniedException> permissionModifier) throws PermissionDeniedException {
@@ -557,6 +567,19 @@ public class PermissionFactory {
         permissionModifier.accept(permission);
     }
 
+    /**
+     * Cached query results depend on the access rights of their user,
+     * so they are dropped whenever permissions change.
+     *
+     * @param broker the database broker.
+     */
+    private static void invalidateCachedResults(final DBBroker broker) {
+        final ResultCache resultCache = broker.getBrokerPool().getResultCache();
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+    }
+
     /**
      * Compares the ACEs in a permission's ACL against the provides ACEs.
      *
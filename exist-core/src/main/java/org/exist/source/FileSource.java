@@ -91,6 +91,10 @@ public class FileSource extends AbstractSource {
     	return path;
     }
 
+    public long getLastModified() {
+        return lastModified;
+    }
+
     @Override
     public Validity isValid(final DBBroker broker) {
         final long currentLastModified = lastModifiedSafe(path);
@@ -41,6 +41,7 @@ import org.exist.debuggee.Debuggee;
 import org.exist.debuggee.DebuggeeFactory;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.indexing.IndexManager;
+import org.exist.indexing.IndexUpdateQueue;
 import org.exist.management.AgentFactory;
 import org.exist.numbering.DLNFactory;
 import org.exist.numbering.NodeIdFactory;
@@ -57,6 +58,9 @@ import org.exist.security.internal.SecurityManagerImpl;
 import org.exist.storage.blob.BlobStore;
 import org.exist.storage.blob.BlobStoreImplService;
 import org.exist.storage.blob.BlobStoreService;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.PageBufferPool;
+import org.exist.storage.btree.PageWriter;
 import org.exist.storage.journal.JournalManager;
 import org.exist.storage.lock.FileLockService;
 import org.exist.storage.lock.LockManager;
@@ -131,6 +135,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private final boolean recoveryEnabled;
 
+    /**
+     * <code>true</code> if periodic major syncs write fuzzy checkpoints
+     * instead of writing all dirty pages to disk.
+     */
+    private final boolean fuzzyCheckpoints;
+
     /**
      * The name of the database instance
      */
@@ -281,6 +291,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private IndexManager indexManager;
 
+    /**
+     * Applies the deferred updates of asynchronously updated indexes.
+     */
+    private IndexUpdateQueue indexUpdateQueue;
+
     /**
      * Global symbol table used to encode element and attribute qnames.
      */
@@ -323,6 +338,16 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
     private DefaultCacheManager cacheManager;
 
+    /**
+     * The off-heap pool of page frames shared by the paged files.
+     */
+    private PageBufferPool pageBufferPool;
+
+    /**
+     * The background writer for the dirty pages of the paged files.
+     */
+    private PageWriter pageWriter;
+
     private long reservedMem;
 
     /**
@@ -330,6 +355,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private XQueryPool xQueryPool;
 
+    /**
+     * The cache in which the results of XQuery functions and main modules are stored.
+     */
+    private ResultCache resultCache;
+
     /**
      * The monitor in which the database instance's strong>running</strong> XQueries are managed.
      */
@@ -402,6 +432,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.recoveryEnabled = conf.getProperty(PROPERTY_RECOVERY_ENABLED, true);
         LOG.info("database instance '" + instanceName + "' is enabled for recovery : " + this.recoveryEnabled);
 
+        this.fuzzyCheckpoints = recoveryEnabled && conf.getProperty(PROPERTY_RECOVERY_FUZZY_CHECKPOINTS, false);
+
         this.minBrokers = conf.getProperty(PROPERTY_MIN_CONNECTIONS, minBrokers);
         this.maxBrokers = conf.getProperty(PROPERTY_MAX_CONNECTIONS, maxBrokers);
         LOG.info("database instance '" + instanceName + "' will have between " + nf.format(this.minBrokers) + " and " + nf.format(this.maxBrokers) + " brokers");
@@ -472,6 +504,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.securityManager = servicesManager.register(new SecurityManagerImpl(this));
 
         this.cacheManager = servicesManager.register(new DefaultCacheManager(this));
+        this.pageBufferPool = servicesManager.register(new PageBufferPool());
+        this.pageWriter = servicesManager.register(new PageWriter());
         this.xQueryPool = servicesManager.register(new XQueryPool());
         this.processMonitor = servicesManager.register(new ProcessMonitor());
         this.xqueryStats = servicesManager.register(new PerformanceStats(this));
@@ -482,6 +516,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 .orElse(DEFAULT_COLLECTION_BUFFER_SIZE);
         this.collectionCache = servicesManager.register(new CollectionCache());
         this.notificationService = servicesManager.register(new NotificationService());
+        this.resultCache = servicesManager.register(new ResultCache());
 
         this.journalManager = recoveryEnabled ? Optional.of(new JournalManager()) : Optional.empty();
         if(journalManager.isPresent()) {
@@ -502,6 +537,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         servicesManager.register(new ClasspathHelper());
 
         this.indexManager = servicesManager.register(new IndexManager(this));
+        this.indexUpdateQueue = servicesManager.register(new IndexUpdateQueue());
 
         //prepare those services that require system (single-user) mode
         this.pluginManager = servicesManager.register(new PluginsManagerImpl());
@@ -778,11 +814,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     public boolean runRecovery(final DBBroker broker) throws EXistException {
         final boolean forceRestart = conf.getProperty(PROPERTY_RECOVERY_FORCE_RESTART, false);
+        final int redoThreads = conf.getProperty(PROPERTY_RECOVERY_REDO_THREADS, DEFAULT_RECOVERY_REDO_THREADS);
         if(LOG.isDebugEnabled()) {
-            LOG.debug("ForceRestart = " + forceRestart);
+            LOG.debug("ForceRestart = " + forceRestart + "; RedoThreads = " + redoThreads);
         }
         if(journalManager.isPresent()) {
-            final RecoveryManager recovery = new RecoveryManager(broker, journalManager.get(), forceRestart);
+            final RecoveryManager recovery = new RecoveryManager(broker, journalManager.get(), forceRestart, redoThreads);
             return recovery.recover();
         } else {
             throw new IllegalStateException("Cannot run recovery without a JournalManager");
@@ -1021,6 +1058,24 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return cacheManager;
     }
 
+    /**
+     * Returns the off-heap pool of page frames shared by the paged files.
+     *
+     * @return The page buffer pool, which is disabled unless a size is configured
+     */
+    public PageBufferPool getPageBufferPool() {
+        return pageBufferPool;
+    }
+
+    /**
+     * Returns the background writer for the dirty pages of the paged files.
+     *
+     * @return The page writer
+     */
+    public PageWriter getPageWriter() {
+        return pageWriter;
+    }
+
     /**
      * Returns the index manager which handles all additional indexes not
      * being part of the database core.
@@ -1032,6 +1087,16 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return indexManager;
     }
 
+    /**
+     * Returns the queue of deferred updates for the
+     * indexes which are updated asynchronously.
+     *
+     * @return The IndexUpdateQueue
+     */
+    public IndexUpdateQueue getIndexUpdateQueue() {
+        return indexUpdateQueue;
+    }
+
     /**
      * Returns a pool in which the database instance's <strong>compiled</strong> XQueries are stored.
      *
@@ -1041,6 +1106,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xQueryPool;
     }
 
+    /**
+     * Returns the cache in which the results of XQuery functions and main modules are stored.
+     *
+     * @return The cache
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
     /**
      * Retuns the XQuery Service
      *
@@ -1452,6 +1526,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             journalManager.get().flush(true, true);
         }
 
+        if (syncEvent == Sync.MAJOR && fuzzySync(broker)) {
+            return;
+        }
+
         // sync various DBX files
         broker.sync(syncEvent);
 
@@ -1488,6 +1566,51 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         }
     }
 
+    /**
+     * Executes a periodic major sync as fuzzy checkpoint, if fuzzy checkpoints are enabled.
+     *
+     * The dirty pages of the paged files are left to the {@link PageWriter} and to
+     * the caches, the checkpoint records the oldest LSN of the dirty page tables
+     * instead, from which recovery redoes the journal. The indexes are still synced,
+     * as not all of them are recovered from the journal. A checkpoint which switches
+     * journal files is always sharp, as recovery only reads the last journal file.
+     *
+     * @param broker A broker responsible for executing the job
+     *
+     * @return true if a fuzzy checkpoint was written, false if a sharp
+     *     checkpoint is required
+     */
+    private boolean fuzzySync(final DBBroker broker) {
+        if (!fuzzyCheckpoints || checkpoint) {
+            return false;
+        }
+
+        try {
+            broker.pushSubject(securityManager.getSystemSubject());
+
+            if (!transactionManager.fuzzyCheckpoint(pageWriter.getRedoLsn())) {
+                LOG.debug("Redo LSN is not in the current journal file, writing a sharp checkpoint");
+                return false;
+            }
+            LOG.debug("Major sync (fuzzy checkpoint)");
+
+            indexManager.sync();
+            cacheManager.checkCaches();
+
+            if (pluginManager != null) {
+                pluginManager.sync(broker);
+            }
+
+            lastMajorSync = System.currentTimeMillis();
+            return true;
+        } catch (final TransactionException | DBException e) {
+            LOG.warn(e.getMessage(), e);
+            return false;
+        } finally {
+            broker.popSubject();
+        }
+    }
+
     /**
      * Schedules a cache synchronization for the database instance. If the database instance is idle,
      * the cache synchronization will be run immediately. Otherwise, the task will be deferred
@@ -1711,10 +1834,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 transactionManager = null;
                 collectionCache = null;
                 xQueryPool = null;
+                resultCache = null;
                 processMonitor = null;
                 collectionConfigurationManager = null;
                 notificationService = null;
                 indexManager = null;
+                indexUpdateQueue = null;
                 xmlReaderPool = null;
                 shutdownListener = null;
                 securityManager = null;
@@ -87,6 +87,10 @@ public interface BrokerPoolConstants {
     String RECOVERY_GROUP_COMMIT_ATTRIBUTE = "group-commit";
     String PROPERTY_RECOVERY_FORCE_RESTART = "db-connection.recovery.force-restart";
     String RECOVERY_FORCE_RESTART_ATTRIBUTE = "force-restart";
+    String PROPERTY_RECOVERY_FUZZY_CHECKPOINTS = "db-connection.recovery.fuzzy-checkpoints";
+    String RECOVERY_FUZZY_CHECKPOINTS_ATTRIBUTE = "fuzzy-checkpoints";
+    String PROPERTY_RECOVERY_REDO_THREADS = "db-connection.recovery.redo-threads";
+    String RECOVERY_REDO_THREADS_ATTRIBUTE = "redo-threads";
 
     String DOC_ID_MODE_ATTRIBUTE = "doc-ids";
     String DOC_ID_MODE_PROPERTY = "db-connection.doc-ids.mode";
@@ -102,4 +106,6 @@ public interface BrokerPoolConstants {
     int DEFAULT_COLLECTION_BUFFER_SIZE = 64;
     int DEFAULT_PAGE_SIZE = 4096;
     short DEFAULT_DISK_SPACE_MIN = 64; // 64 MB
+    // one thread for each of the dom.dbx, collections.dbx, values.dbx and blob store
+    int DEFAULT_RECOVERY_REDO_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
 }
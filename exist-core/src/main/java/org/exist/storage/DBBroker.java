@@ -39,8 +39,10 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.security.Subject;
 import org.exist.stax.IEmbeddedXMLStreamReader;
 import org.exist.storage.blob.BlobId;
+import org.exist.storage.blob.BlobLease;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.dom.INodeIterator;
+import org.exist.storage.dom.IRawNodeIterator;
 import org.exist.storage.lock.EnsureLocked;
 import org.exist.storage.lock.EnsureUnlocked;
 import org.exist.storage.lock.Lock.LockMode;
@@ -132,6 +134,8 @@ public abstract class DBBroker implements AutoCloseable {
 
     private boolean triggersEnabled = true;
 
+    private NodeValueCache nodeValueCache = null;
+
     public DBBroker(final BrokerPool pool, final Configuration config) {
         this.config = config;
         final Boolean temp = (Boolean) config.getProperty(NativeValueIndex.PROPERTY_INDEX_CASE_SENSITIVE);
@@ -453,6 +457,19 @@ public abstract class DBBroker implements AutoCloseable {
         throw new RuntimeException("not implemented for this storage backend");
     }
 
+    /**
+     * Get the cache for the string values of nodes, which is used while
+     * this broker executes a query.
+     *
+     * @return the cache
+     */
+    public NodeValueCache getNodeValueCache() {
+        if (nodeValueCache == null) {
+            nodeValueCache = new NodeValueCache(pool.getNotificationService());
+        }
+        return nodeValueCache;
+    }
+
     /**
      * Get an instance of the Serializer used for converting nodes back to XML.
      * Subclasses of DBBroker may have specialized subclasses of Serializer to
@@ -745,6 +762,21 @@ public abstract class DBBroker implements AutoCloseable {
     public abstract <T> T withBinaryFile(final Txn transaction, @EnsureLocked(mode=LockMode.READ_LOCK) final BinaryDocument binaryDocument,
             final Function<Path, T> fnFile) throws IOException;
 
+    /**
+     * Lease the BLOB file backing a Binary Document for reading,
+     * see {@link org.exist.storage.blob.BlobStore#lease(Txn, org.exist.storage.blob.BlobId)}.
+     *
+     * @param transaction the current database transaction.
+     * @param binaryDocument the binary document to lease the backing BLOB file of.
+     *
+     * @return the lease, or null if the Blob does not exist in the Blob Store.
+     *     The lease MUST be closed when the caller has finished with it.
+     *
+     * @throws IOException if an error occurs whilst leasing the BLOB file.
+     */
+    public abstract @Nullable BlobLease leaseBinaryResource(final Txn transaction,
+            @EnsureLocked(mode=LockMode.READ_LOCK) final BinaryDocument binaryDocument) throws IOException;
+
     /**
      * @deprecated use {@link #getBinaryResource(Txn, BinaryDocument)}
      * @param blob
@@ -1094,6 +1126,16 @@ public abstract class DBBroker implements AutoCloseable {
     public abstract IEmbeddedXMLStreamReader newXMLStreamReader(NodeHandle node, boolean reportAttributes)
             throws IOException, XMLStreamException;
 
+    /**
+     * Returns an iterator over the raw data of the stored nodes, in document
+     * order, starting at the given node.
+     *
+     * @param node the node to start at
+     * @return the iterator, to be closed by the caller
+     * @throws IOException if the node cannot be found
+     */
+    public abstract IRawNodeIterator newRawNodeIterator(NodeHandle node) throws IOException;
+
     public abstract void backupToArchive(RawDataBackup backup) throws IOException, EXistException;
 
     /**
@@ -26,7 +26,12 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
+import org.exist.storage.cache.BTreeCache;
+import org.exist.storage.cache.BTreeCacheable;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.Cacheable;
+import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.TwoQueueCache;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
@@ -76,6 +81,51 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    public static final String  CACHE_POLICY_ATTRIBUTE                  = "cachePolicy";
+    public static final String  PROPERTY_CACHE_POLICY                   = "db-connection.cache-policy";
+
+    /**
+     * The replacement policy of the page caches created by {@link #newBTreeCache(String, int, double, double)}
+     * and {@link #newDataCache(String, int, double, double)}.
+     */
+    public enum CachePolicy {
+        /**
+         * {@link LRUCache}, or {@link BTreeCache} for btree pages.
+         */
+        LRU("lru"),
+
+        /**
+         * Scan resistant {@link TwoQueueCache}.
+         */
+        TWO_QUEUE("2q");
+
+        private final String configName;
+
+        CachePolicy(final String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        /**
+         * @param configName the name of the policy in the configuration
+         *
+         * @return the policy, or null if there is no policy with the name
+         */
+        public static CachePolicy fromConfigName(final String configName) {
+            for (final CachePolicy policy : values()) {
+                if (policy.configName.equalsIgnoreCase(configName)) {
+                    return policy;
+                }
+            }
+            return null;
+        }
+    }
+
+    public static final CachePolicy DEFAULT_CACHE_POLICY = CachePolicy.LRU;
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<Cache>();
 
@@ -107,6 +157,8 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    private final CachePolicy   cachePolicy;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -125,6 +177,8 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         shrinkThreshold = configuration.getInteger( SHRINK_THRESHOLD_PROPERTY );
 
+        cachePolicy = configuration.getProperty( PROPERTY_CACHE_POLICY, DEFAULT_CACHE_POLICY );
+
         totalMem        = cacheSize * 1024L * 1024L;
 
         final Boolean checkMaxCache = (Boolean)configuration.getProperty( PROPERTY_CACHE_CHECK_MAX_SIZE );
@@ -153,12 +207,64 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         LOG.info( "Cache settings: " + nf.format( totalMem / 1024L ) + "k; totalPages: " + nf.format( totalPageCount ) +
                 "; maxCacheSize: " + nf.format( maxCacheSize ) +
-                "; cacheShrinkThreshold: " + nf.format( shrinkThreshold )
+                "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) +
+                "; cachePolicy: " + cachePolicy.getConfigName()
         );
 
         registerMBean();
     }
 
+    /**
+     * Creates a cache for btree pages, using the configured cache policy.
+     * The cache still has to be registered with {@link #registerCache(Cache)}.
+     *
+     * @param <T> the type of the btree pages
+     * @param name the name of the cache, usually the file name
+     * @param size the initial size of the cache in pages
+     * @param growthFactor the factor by which the cache grows, see {@link Cache#getGrowthFactor()}
+     * @param growthThreshold the thrashing factor above which the cache asks to grow
+     *
+     * @return the new cache
+     */
+    public <T extends BTreeCacheable> Cache<T> newBTreeCache( final String name, final int size, final double growthFactor, final double growthThreshold )
+    {
+        switch( cachePolicy ) {
+            case TWO_QUEUE:
+                return( new TwoQueueCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.BTREE ) );
+
+            default:
+                return( new BTreeCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.BTREE ) );
+        }
+    }
+
+    /**
+     * Creates a cache for data pages, using the configured cache policy.
+     * The cache still has to be registered with {@link #registerCache(Cache)}.
+     *
+     * @param <T> the type of the data pages
+     * @param name the name of the cache, usually the file name
+     * @param size the initial size of the cache in pages
+     * @param growthFactor the factor by which the cache grows, see {@link Cache#getGrowthFactor()}
+     * @param growthThreshold the thrashing factor above which the cache asks to grow
+     *
+     * @return the new cache
+     */
+    public <T extends Cacheable> Cache<T> newDataCache( final String name, final int size, final double growthFactor, final double growthThreshold )
+    {
+        switch( cachePolicy ) {
+            case TWO_QUEUE:
+                return( new TwoQueueCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.DATA ) );
+
+            default:
+                return( new LRUCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.DATA ) );
+        }
+    }
+
+    public CachePolicy getCachePolicy()
+    {
+        return( cachePolicy );
+    }
+
     @Override
     public void registerCache( Cache cache )
     {
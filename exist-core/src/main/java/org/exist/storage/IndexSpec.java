@@ -23,6 +23,9 @@ import org.exist.Namespaces;
 import org.exist.collections.CollectionConfiguration;
 import org.exist.dom.QName;
 import org.exist.dom.TypedQNameComparator;
+import org.exist.indexing.IndexWorker;
+import org.exist.indexing.StructuralIndex;
+import org.exist.storage.structural.NativeStructuralIndex;
 import org.exist.util.DatabaseConfigurationException;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
@@ -31,8 +34,10 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 
@@ -46,8 +51,13 @@ import java.util.stream.Collectors;
  *  <pre>
  *  &lt;index index-depth="idx-depth"&gt;
  *      &lt;create path="node-path" type="schema-type"&gt;
+ *      &lt;async-update index="index-id"/&gt;
  *  &lt;/index&gt;
  *  </pre>
+ *
+ *  An "async-update" element moves the maintenance of the pluggable index
+ *  with the given id (the id of its module in conf.xml) out of the updating
+ *  transaction and into the {@link org.exist.indexing.IndexUpdateQueue}.
  *  
  * @author wolf
  */
@@ -58,12 +68,16 @@ public class IndexSpec {
     private static final String PATH_ATTRIB = "path";
     private static final String CREATE_ELEMENT = "create";
     private static final String QNAME_ATTRIB = "qname";
+    private static final String ASYNC_UPDATE_ELEMENT = "async-update";
+    private static final String INDEX_ATTRIB = "index";
 
     private GeneralRangeIndexSpec specs[] = null;
     private Map<QName, QNameRangeIndexSpec> qnameSpecs = new TreeMap<>(new TypedQNameComparator());
 
     private Map<String, Object> customIndexSpecs = null;
 
+    private final Set<String> asyncUpdates = new HashSet<>();
+
     public IndexSpec(DBBroker broker, Element index) throws DatabaseConfigurationException {
         read(broker, index);
     }
@@ -100,6 +114,17 @@ public class IndexSpec {
                             " must have attribute " + PATH_ATTRIB + " or " + QNAME_ATTRIB;
                         throw new DatabaseConfigurationException(error_message);
                     }
+                } else if (ASYNC_UPDATE_ELEMENT.equals(node.getLocalName())) {
+                    final String indexId = ((Element) node).getAttribute(INDEX_ATTRIB);
+                    if (indexId.isEmpty()) {
+                        throw new DatabaseConfigurationException("Configuration error: element " + node.getNodeName() +
+                                " must have attribute " + INDEX_ATTRIB);
+                    }
+                    if (StructuralIndex.STRUCTURAL_INDEX_ID.equals(indexId) || NativeStructuralIndex.ID.equals(indexId)) {
+                        throw new DatabaseConfigurationException("Configuration error: the structural index " +
+                                "can not be updated asynchronously");
+                    }
+                    asyncUpdates.add(indexId);
                 }
             }
         }
@@ -120,6 +145,23 @@ public class IndexSpec {
         return customIndexSpecs == null ? null : customIndexSpecs.get(id);
     }
 
+    /**
+     * Returns true if the non-core index of the worker should be
+     * updated asynchronously, by the {@link org.exist.indexing.IndexUpdateQueue}.
+     * The index may be identified by either its name or its id.
+     *
+     * @param worker the worker of the index.
+     * @return true if the updates of the index are deferred
+     */
+    public boolean isAsyncUpdate(IndexWorker worker) {
+        return asyncUpdates.contains(worker.getIndexId())
+                || (worker.getIndexName() != null && asyncUpdates.contains(worker.getIndexName()));
+    }
+
+    public boolean hasAsyncUpdates() {
+        return !asyncUpdates.isEmpty();
+    }
+
     /**
      * @return the {@link GeneralRangeIndexSpec} defined for the given
      * node path or null if no index has been configured.
@@ -42,12 +42,14 @@ import org.exist.security.internal.aider.ACEAider;
 import org.exist.stax.EmbeddedXMLStreamReader;
 import org.exist.stax.IEmbeddedXMLStreamReader;
 import org.exist.storage.blob.BlobId;
+import org.exist.storage.blob.BlobLease;
 import org.exist.storage.blob.BlobStore;
 import org.exist.storage.btree.*;
 import org.exist.storage.btree.Paged.Page;
 import org.exist.storage.dom.DOMFile;
 import org.exist.storage.dom.DOMTransaction;
 import org.exist.storage.dom.NodeIterator;
+import org.exist.storage.dom.IRawNodeIterator;
 import org.exist.storage.dom.RawNodeIterator;
 import org.exist.storage.index.BFile;
 import org.exist.storage.index.CollectionStore;
@@ -89,7 +91,7 @@ import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.function.Function;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -98,7 +100,6 @@ import com.evolvedbinary.j8fu.tuple.Tuple2;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.exist.security.Permission.DEFAULT_TEMPORARY_COLLECTION_PERM;
-import static org.exist.util.io.InputStreamUtil.copy;
 
 /**
  * Main class for the native XML storage backend.
@@ -507,6 +508,11 @@ public class NativeBroker extends DBBroker {
         return new EmbeddedXMLStreamReader(this, node.getOwnerDocument(), iterator, null, reportAttributes);
     }
 
+    @Override
+    public IRawNodeIterator newRawNodeIterator(final NodeHandle node) throws IOException {
+        return new RawNodeIterator(this, domDb, node);
+    }
+
     @Override
     public INodeIterator getNodeIterator(final NodeHandle node) {
         if(node == null) {
@@ -811,7 +817,7 @@ public class NativeBroker extends DBBroker {
     private @Nullable @EnsureLocked(mode=LockMode.READ_LOCK, type=LockType.COLLECTION) Collection loadCollection(
             @EnsureLocked(mode=LockMode.READ_LOCK, type=LockType.COLLECTION) final XmldbURI collectionUri)
             throws PermissionDeniedException, LockException, IOException {
-        try (final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try (final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(collectionUri.toString());
             final VariableByteInput is = collectionsDb.getAsStream(key);
             return is == null ? null : MutableCollection.load(this, collectionUri, is);
@@ -905,7 +911,7 @@ public class NativeBroker extends DBBroker {
         final Pattern p = Pattern.compile(regexp);
         final Matcher m = p.matcher("");
 
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
 
             //TODO write a regexp lookup for key data in BTree.query
             //final IndexQuery idxQuery = new IndexQuery(IndexQuery.REGEXP, regexp);
@@ -944,7 +950,7 @@ public class NativeBroker extends DBBroker {
         final CollectionCache collectionsCache = pool.getCollectionsCache();
         final Collection collection = collectionsCache.getIfPresent(uri);
         if(collection == null) {
-            try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
 
                 final Value key = new CollectionStore.CollectionKey(uri.toString());
                 final VariableByteInput is = collectionsDb.getAsStream(key);
@@ -1044,6 +1050,7 @@ public class NativeBroker extends DBBroker {
             }
 
         } finally {
+            invalidateCachedResults(destinationCollectionUri);
             pool.getProcessMonitor().endJob();
         }
     }
@@ -1339,6 +1346,7 @@ public class NativeBroker extends DBBroker {
                 }
                 trigger.afterMoveCollection(this, transaction, sourceCollection, sourceCollectionUri);
             } finally {
+                invalidateCachedResults(sourceCollectionUri, destinationCollectionUri);
                 pool.getProcessMonitor().endJob();
             }
         }
@@ -1484,7 +1492,7 @@ public class NativeBroker extends DBBroker {
         collectionsCache.invalidate(sourceCollection.getURI());
 
         // remove source from disk
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(sourceCollectionUri.toString());
             collectionsDb.remove(transaction, key);
         }
@@ -1530,6 +1538,21 @@ public class NativeBroker extends DBBroker {
         } catch(final LockException e) {
             LOG.error("Unable to lock Collection: {}", collection.getURI(), e);
             return false;
+        } finally {
+            invalidateCachedResults(collection.getURI());
+        }
+    }
+
+    /**
+     * Drops the cached query results concerned by collections
+     * which were removed, moved, renamed or copied.
+     *
+     * @param collectionUris the URIs of the collections
+     */
+    private void invalidateCachedResults(final XmldbURI... collectionUris) {
+        final ResultCache resultCache = pool.getResultCache();
+        if(resultCache != null) {
+            resultCache.invalidate(collectionUris);
         }
     }
 
@@ -1574,7 +1597,7 @@ public class NativeBroker extends DBBroker {
 
             // 5) remove Collection from collections.dbx
             if(parentCollection != null) {
-                try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                     final Value key = new CollectionStore.CollectionKey(collectionUri.getRawCollectionPath());
                     collectionsDb.remove(transaction, key);
 
@@ -1597,7 +1620,7 @@ public class NativeBroker extends DBBroker {
 
             //TODO(AR) this could possibly be executed asynchronously as a task, we don't need to know when it completes (this is because access to documents is through a Collection, and the Collection was removed above), however we cannot recycle the collectionId until all docs are gone
             // 6) unlink all documents from the Collection
-            try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                 final Value docKey = new CollectionStore.DocumentKey(collection.getId());
                 final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, docKey);
                 collectionsDb.removeAll(transaction, query);
@@ -1760,7 +1783,7 @@ public class NativeBroker extends DBBroker {
         final CollectionCache collectionsCache = pool.getCollectionsCache();
         collectionsCache.put(collection);
 
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value name = new CollectionStore.CollectionKey(collection.getURI().toString());
             try(final VariableByteOutputStream os = new VariableByteOutputStream(8)) {
                 collection.serialize(os);
@@ -1787,7 +1810,7 @@ public class NativeBroker extends DBBroker {
             return nextCollectionId;
         }
 
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(CollectionStore.NEXT_COLLECTION_ID_KEY);
             final Value data = collectionsDb.get(key);
             if(data != null) {
@@ -2009,7 +2032,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public DocumentImpl getResourceById(final int collectionId, final byte resourceType, final int documentId) throws PermissionDeniedException {
         XmldbURI uri = null;
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             //final VariableByteOutputStream os = new VariableByteOutputStream(8);
             //doc.write(os);
             //Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
@@ -2041,6 +2064,10 @@ public class NativeBroker extends DBBroker {
             //get the resource uri
             final Value key = new CollectionStore.DocumentKey(collectionId, resourceType, documentId);
             final VariableByteInput vbi = collectionsDb.getAsStream(key);
+            if(vbi == null) {
+                // the document or its collection has been removed
+                return null;
+            }
             vbi.readInt(); //skip doc id
             final String resourceUri = vbi.readUTF();
 
@@ -2070,7 +2097,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public void storeXMLResource(final Txn transaction, final DocumentImpl doc) {
         try(final VariableByteOutputStream os = new VariableByteOutputStream(8);
-                final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             doc.write(os);
             final Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
             collectionsDb.put(transaction, key, os.data(), true);
@@ -2211,12 +2238,17 @@ public class NativeBroker extends DBBroker {
     public void readBinaryResource(final Txn transaction, final BinaryDocument blob, final OutputStream os)
             throws IOException {
         final BlobStore blobStore = pool.getBlobStore();
-        try (final InputStream is = blobStore.get(transaction, blob.getBlobId())) {
-            if (is != null) {
-                if (os instanceof FastByteArrayOutputStream) {
-                    ((FastByteArrayOutputStream)os).write(is);
-                } else {
-                    copy(is, os);
+        if (os instanceof FastByteArrayOutputStream) {
+            try (final InputStream is = blobStore.get(transaction, blob.getBlobId())) {
+                if (is != null) {
+                    ((FastByteArrayOutputStream) os).write(is);
+                }
+            }
+        } else {
+            // transfer from the blob file, instead of copying through a stream
+            try (final BlobLease lease = blobStore.lease(transaction, blob.getBlobId())) {
+                if (lease != null) {
+                    lease.transferTo(0, lease.getChannel().size(), os);
                 }
             }
         }
@@ -2248,6 +2280,13 @@ public class NativeBroker extends DBBroker {
         return blobStore.with(transaction, binaryDocument.getBlobId(), fnFile);
     }
 
+    @Override
+    public @Nullable BlobLease leaseBinaryResource(final Txn transaction, final BinaryDocument binaryDocument)
+            throws IOException {
+        final BlobStore blobStore = pool.getBlobStore();
+        return blobStore.lease(transaction, binaryDocument.getBlobId());
+    }
+
     @Override
     public InputStream getBinaryResource(final BinaryDocument blob)
             throws IOException {
@@ -2273,7 +2312,7 @@ public class NativeBroker extends DBBroker {
     //TODO : consider a better cooperation with Collection -pb
     @Override
     public void getCollectionResources(final Collection.InternalAccess collectionInternalAccess) {
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.DocumentKey(collectionInternalAccess.getId());
             final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, key);
 
@@ -2288,7 +2327,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public void getResourcesFailsafe(final Txn transaction, final BTreeCallback callback, final boolean fullScan) throws TerminatedException {
         assert(transaction != null && transaction.getState() == Txn.State.STARTED);
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.DocumentKey();
             final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, key);
             if(fullScan) {
@@ -2306,7 +2345,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public void getCollectionsFailsafe(final Txn transaction, final BTreeCallback callback) throws TerminatedException {
         assert(transaction != null && transaction.getState() == Txn.State.STARTED);
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey();
             final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, key);
             collectionsDb.query(query, callback);
@@ -2418,6 +2457,8 @@ public class NativeBroker extends DBBroker {
             }
 
             doCopyDocument(transaction, trigger, sourceDocument, targetCollection, newDocName, oldDoc, preserve);
+        } finally {
+            invalidateCachedResults(targetCollectionUri);
         }
     }
 
@@ -2705,6 +2746,8 @@ public class NativeBroker extends DBBroker {
         storeXMLResource(transaction, sourceDocument);
         saveCollection(transaction, targetCollection);
 
+        invalidateCachedResults(sourceCollection.getURI(), targetCollectionUri);
+
         trigger.afterMoveDocument(this, transaction, sourceDocument, sourceDocumentUri);
     }
 
@@ -2820,7 +2863,7 @@ public class NativeBroker extends DBBroker {
     public void removeResourceMetadata(final Txn transaction,
             @EnsureLocked(mode=LockMode.WRITE_LOCK) final DocumentImpl document) {
         // remove document metadata
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             if(LOG.isDebugEnabled()) {
                 LOG.debug("Removing resource metadata for " + document.getDocId());
             }
@@ -2852,7 +2895,7 @@ public class NativeBroker extends DBBroker {
             return nextDocId;
         }
         nextDocId = 1;
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(CollectionStore.NEXT_DOC_ID_KEY);
             final Value data = collectionsDb.get(key);
             if(data != null) {
@@ -3607,7 +3650,7 @@ public class NativeBroker extends DBBroker {
 
     protected void rebuildIndex(final byte indexId) {
         final BTree btree = getStorage(indexId);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
             LOG.info("Rebuilding index " + FileUtils.fileName(btree.getFile()));
             btree.rebuild();
             LOG.info("Index " + FileUtils.fileName(btree.getFile()) + " was rebuilt.");
@@ -3648,7 +3691,7 @@ public class NativeBroker extends DBBroker {
                 }
             }.run();
             if(syncEvent == Sync.MAJOR) {
-                try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                     collectionsDb.flush();
                 } catch(final LockException e) {
                     LOG.error("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
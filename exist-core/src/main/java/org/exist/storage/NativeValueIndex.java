@@ -62,7 +62,7 @@ import org.w3c.dom.Node;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Maintains an index on typed node values (optionally by QName).
@@ -187,6 +187,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
             config.setProperty(getConfigKeyForFile(), nativeFile);
         }
         dbValues = nativeFile;
+        lockManager.registerBtreeMultiReader(dbValues.getLockName());
         caseSensitive = Optional.ofNullable((Boolean) config.getProperty(NativeValueIndex.PROPERTY_INDEX_CASE_SENSITIVE)).orElse(false);
 
         broker.addContentLoadingObserver(getInstance());
@@ -344,7 +345,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void sync() {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             dbValues.flush();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(dbValues.getFile()) + "'", e);
@@ -399,7 +400,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
             //Write (variable) length of node IDs
             os.writeFixedInt(nodeIDsLength, os.position() - nodeIDsLength - LENGTH_NODE_IDS);
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
                 final Value v = dbKeyFn.apply(key);
 
                 if (dbValues.append(v, os.data()) == BFile.UNKNOWN_ADDRESS) {
@@ -442,7 +443,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
             final List<NodeId> newGIDList = new ArrayList<>();
             os.clear();
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
 
                 //Compute a key for the value
                 final Value searchKey = dbKeyFn.apply(key);
@@ -546,7 +547,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void dropIndex(final Collection collection) {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
 
             flush();
 
@@ -567,7 +568,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
     @Override
     public void dropIndex(final DocumentImpl document) {
         final int collectionId = document.getCollection().getId();
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             dropIndex(document.getDocId(), pendingGeneric, key -> new SimpleValue(collectionId, (Indexable) key));
             dropIndex(document.getDocId(), pendingQName, key -> new QNameValue(collectionId, key.qname, key.value, broker.getBrokerPool().getSymbols()));
         } catch (final LockException e) {
@@ -692,7 +693,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
             watchDog.proceed(null);
 
             if (qnames == null) {
-                try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
                     final Value searchKey = new SimpleValue(collectionId, value);
                     final IndexQuery query = new IndexQuery(idxOp, searchKey);
 
@@ -709,7 +710,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 }
             } else {
                 for (final QName qname : qnames) {
-                    try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                    try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
 
                         //Compute a key for the value in the collection
                         final Value searchKey = new QNameValue(collectionId, qname, value, broker.getBrokerPool().getSymbols());
@@ -849,7 +850,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
             watchDog.proceed(null);
             if (qnames == null) {
-                try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
 
                     final Value searchKey;
                     if (startTerm != null) {
@@ -868,7 +869,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 }
             } else {
                 for (final QName qname : qnames) {
-                    try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                    try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
 
                         final Value searchKey;
                         if (startTerm != null) {
@@ -897,7 +898,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
         for (final Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
                 final Collection c = i.next();
                 final int collectionId = c.getId();
 
@@ -947,7 +948,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
         for (final QName qname : qnames) {
 
             for (final Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
-                try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
                     final int collectionId = i.next().getId();
 
                     //Compute a key for the start value in the collection
@@ -1049,7 +1050,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void closeAndRemove() {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             config.setProperty(getConfigKeyForFile(), null);
             dbValues.closeAndRemove();
         } catch (final LockException e) {
@@ -1059,7 +1060,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void close() throws DBException {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             config.setProperty(getConfigKeyForFile(), null);
             dbValues.close();
         } catch (final LockException e) {
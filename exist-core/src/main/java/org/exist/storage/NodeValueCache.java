@@ -0,0 +1,160 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.exist.numbering.NodeId;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the string values of stored nodes while a query is executed, so that
+ * comparing the same nodes again does not read and concatenate their text nodes
+ * from the DOM file again.
+ *
+ * Each {@link DBBroker} owns one cache, which is only used between
+ * {@link #open()} and the matching {@link #close()}, i.e. while the broker executes
+ * a query. The cache holds the most recently used values, and is cleared as soon as
+ * the {@link NotificationService} reports that a document was changed.
+ */
+@NotThreadSafe
+public class NodeValueCache {
+
+    /** Maximum number of values held by the cache */
+    static final int MAX_ENTRIES = 4096;
+
+    /** Longer values are not cached, as they are unlikely to be compared */
+    static final int MAX_VALUE_LENGTH = 4096;
+
+    private final NotificationService notificationService;
+
+    private final Map<Key, String> values = new LinkedHashMap<Key, String>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private int depth = 0;
+    private long updateCount = -1;
+
+    NodeValueCache(final NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    /**
+     * Start using the cache. Calls may be nested, e.g. for a query evaluated
+     * by another query.
+     */
+    public void open() {
+        depth++;
+    }
+
+    /**
+     * Stop using the cache. The values are dropped once the outermost
+     * query has finished.
+     */
+    public void close() {
+        if (depth > 0 && --depth == 0) {
+            values.clear();
+            updateCount = -1;
+        }
+    }
+
+    /**
+     * Get the cached string value of a node.
+     *
+     * @param docId the id of the document
+     * @param nodeId the id of the node
+     *
+     * @return the value, or null if it is not cached
+     */
+    public @Nullable String get(final int docId, final NodeId nodeId) {
+        if (depth == 0 || !isCurrent()) {
+            return null;
+        }
+        return values.get(new Key(docId, nodeId));
+    }
+
+    /**
+     * Cache the string value of a node, if a query is executed.
+     *
+     * @param docId the id of the document
+     * @param nodeId the id of the node
+     * @param value the string value of the node
+     */
+    public void put(final int docId, final NodeId nodeId, final String value) {
+        if (depth == 0 || value.length() > MAX_VALUE_LENGTH) {
+            return;
+        }
+        isCurrent();
+        values.put(new Key(docId, nodeId), value);
+    }
+
+    /**
+     * Drop the values if a document was changed since they were cached.
+     *
+     * @return false if the cache was cleared
+     */
+    private boolean isCurrent() {
+        final long current = notificationService.getUpdateCount();
+        if (current != updateCount) {
+            values.clear();
+            updateCount = current;
+            return false;
+        }
+        return true;
+    }
+
+    private static final class Key {
+        private final int docId;
+        private final NodeId nodeId;
+        private final int hashCode;
+
+        Key(final int docId, final NodeId nodeId) {
+            this.docId = docId;
+            this.nodeId = nodeId;
+            // node ids only compare by identity, so hash their serialized form
+            final byte[] data = new byte[nodeId.size()];
+            nodeId.serialize(data, 0);
+            this.hashCode = 31 * (31 * docId + nodeId.units()) + Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return docId == other.docId && nodeId.equals(other.nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.exist.numbering.NodeId;
 
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.exist.dom.persistent.IStoredNode;
 
@@ -47,6 +48,8 @@ public class NotificationService implements BrokerPoolService {
 
     private final Map<UpdateListener, Object> listeners = new IdentityHashMap<>();
 
+    private final AtomicLong updateCount = new AtomicLong();
+
     public NotificationService() {
         super();
     }
@@ -81,6 +84,7 @@ public class NotificationService implements BrokerPoolService {
      * @param event that triggers the notify
      */
     public synchronized void notifyUpdate(final DocumentImpl document, final int event) {
+        updateCount.incrementAndGet();
         listeners.keySet().forEach(listener -> listener.documentUpdated(document, event));
     }
 
@@ -91,9 +95,20 @@ public class NotificationService implements BrokerPoolService {
      * @param oldNodeId old node that have been moved
      */
     public synchronized void notifyMove(final NodeId oldNodeId, final IStoredNode newNode) {
+        updateCount.incrementAndGet();
         listeners.keySet().forEach(listener -> listener.nodeMoved(oldNodeId, newNode));
     }
 
+    /**
+     * Get the number of notifications sent so far. Caches which do not subscribe
+     * can compare it to detect that documents were changed in the meantime.
+     *
+     * @return the number of updates and moves notified
+     */
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
     public synchronized void debug() {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Registered UpdateListeners:");
@@ -0,0 +1,202 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.util.crypto.digest.DigestType;
+import org.exist.util.crypto.digest.MessageDigest;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which stored queries were compiled into the {@link XQueryPool}, so that
+ * the pool can be warmed up again after a restart.
+ *
+ * The manifest is a text file in the data directory. After a version header, each line
+ * holds the path of a main module and the digest of its content, followed by the path
+ * and digest of every library module it imports, separated by tabs. A query is only
+ * precompiled at startup if none of these digests changed.
+ */
+final class QueryPoolManifest {
+
+    private static final Logger LOG = LogManager.getLogger(QueryPoolManifest.class);
+
+    static final String FILE_NAME = "query-pool.manifest";
+
+    private static final String HEADER = "exist-query-pool\t1";
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The digest type of the blob store, for which the digest is the blob id and
+     * does not need to be calculated.
+     */
+    private static final DigestType DIGEST_TYPE = DigestType.BLAKE_256;
+
+    /**
+     * A query recorded in the manifest.
+     */
+    static final class Entry {
+        final XmldbURI path;
+        final String digest;
+        final Map<XmldbURI, String> dependencies;
+
+        Entry(final XmldbURI path, final String digest, final Map<XmldbURI, String> dependencies) {
+            this.path = path;
+            this.digest = digest;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private QueryPoolManifest() {
+    }
+
+    /**
+     * Write the manifest for the given queries, skipping queries which no longer exist.
+     *
+     * @param broker the database broker
+     * @param file the manifest file
+     * @param queries the paths of the main modules, mapped to the paths of the
+     *     stored modules they import
+     *
+     * @throws IOException if the manifest can't be written
+     */
+    static void write(final DBBroker broker, final Path file, final Map<XmldbURI, Set<XmldbURI>> queries)
+            throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (final Map.Entry<XmldbURI, Set<XmldbURI>> query : queries.entrySet()) {
+                final String digest = digest(broker, query.getKey());
+                if (digest == null) {
+                    continue;
+                }
+                final StringBuilder line = new StringBuilder();
+                line.append(query.getKey()).append(SEPARATOR).append(digest);
+                for (final XmldbURI dependency : query.getValue()) {
+                    final String dependencyDigest = digest(broker, dependency);
+                    if (dependencyDigest != null) {
+                        line.append(SEPARATOR).append(dependency).append(SEPARATOR).append(dependencyDigest);
+                    }
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the entries of the manifest. A manifest written by a different version
+     * is ignored.
+     *
+     * @param file the manifest file
+     * @return the entries, or an empty list if the manifest doesn't exist
+     *
+     * @throws IOException if the manifest can't be read
+     */
+    static List<Entry> read(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        final List<Entry> entries = new ArrayList<>();
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                LOG.warn("Ignoring query pool manifest of unknown version: " + file.toAbsolutePath());
+                return Collections.emptyList();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(String.valueOf(SEPARATOR));
+                if (fields.length < 2 || fields.length % 2 != 0) {
+                    LOG.warn("Ignoring malformed line in query pool manifest: " + line);
+                    continue;
+                }
+                final Map<XmldbURI, String> dependencies = new LinkedHashMap<>();
+                for (int i = 2; i < fields.length; i += 2) {
+                    dependencies.put(XmldbURI.create(fields[i]), fields[i + 1]);
+                }
+                entries.add(new Entry(XmldbURI.create(fields[0]), fields[1], dependencies));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Check that neither the query nor any of the modules it imports
+     * changed since the manifest was written.
+     *
+     * @param broker the database broker
+     * @param entry the entry of the manifest
+     * @return true if the query can be precompiled
+     */
+    static boolean isCurrent(final DBBroker broker, final Entry entry) {
+        if (!entry.digest.equals(digest(broker, entry.path))) {
+            return false;
+        }
+        for (final Map.Entry<XmldbURI, String> dependency : entry.dependencies.entrySet()) {
+            if (!dependency.getValue().equals(digest(broker, dependency.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the hex encoded digest of the binary document, or null if it doesn't exist
+     */
+    private static @Nullable String digest(final DBBroker broker, final XmldbURI path) {
+        try (final LockedDocument lockedDoc = broker.getXMLResource(path, LockMode.READ_LOCK)) {
+            if (lockedDoc == null) {
+                return null;
+            }
+            final DocumentImpl doc = lockedDoc.getDocument();
+            if (doc.getResourceType() != DocumentImpl.BINARY_FILE) {
+                return null;
+            }
+            // the digest is the blob id, so no transaction is needed
+            final MessageDigest digest = broker.getBinaryResourceContentDigest(null, (BinaryDocument) doc, DIGEST_TYPE);
+            return digest == null ? null : digest.toHexString();
+        } catch (final PermissionDeniedException | IOException e) {
+            LOG.warn("Unable to compute digest of " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
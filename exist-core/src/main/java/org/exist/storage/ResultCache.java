@@ -0,0 +1,524 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.collections.Collection;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.source.FileSource;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global cache for the results of XQuery functions annotated with {@code %exist:cache}
+ * and of main modules declaring {@code option exist:cache}.
+ *
+ * Results are cached by the caller's key, typically the function name, the user
+ * and the argument values, for the time to live given by the {@link Policy}. An entry
+ * is dropped as soon as a document is added, updated or removed in one of the
+ * collections listed by its policy, or anywhere in the database if the policy
+ * does not list any collection. Regardless of the policy, an entry is also dropped
+ * when the document of a node in its key or its result is changed. Collections which
+ * are removed, moved or copied drop the entries whose policy or nodes they concern,
+ * and changes of permissions drop all entries.
+ *
+ * Only sequences of atomic values and stored nodes are cached, as in-memory
+ * nodes belong to the query which constructed them.
+ */
+@ThreadSafe
+public class ResultCache implements BrokerPoolService, UpdateListener {
+
+    private static final Logger LOG = LogManager.getLogger(ResultCache.class);
+
+    public static final String RESULT_CACHE_SIZE_ATTRIBUTE = "result-cache-size";
+    public static final String PROPERTY_RESULT_CACHE_SIZE = "db-connection.query-pool.result-cache-size";
+
+    /** Name of the function annotation and of the query option enabling the cache */
+    public static final QName CACHE_QNAME = new QName("cache", Namespaces.EXIST_NS, "exist");
+
+    private static final int DEFAULT_MAX_SIZE = 256;
+
+    /** Keys and results of more items are not cached */
+    private static final int MAX_ITEMS = 1024;
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    private Cache<List<Object>, Entry> cache;
+
+    /** Incremented on every update, see {@link #getGeneration()} */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final Integer size = (Integer) configuration.getProperty(PROPERTY_RESULT_CACHE_SIZE);
+        this.maxSize = size != null ? size : DEFAULT_MAX_SIZE;
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxSize))
+                .expireAfter(new Expiry<List<Object>, Entry>() {
+                    @Override
+                    public long expireAfterCreate(final List<Object> key, final Entry value, final long currentTime) {
+                        return value.policy.ttl;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(final List<Object> key, final Entry value, final long currentTime,
+                            final long currentDuration) {
+                        return value.policy.ttl;
+                    }
+
+                    @Override
+                    public long expireAfterRead(final List<Object> key, final Entry value, final long currentTime,
+                            final long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        LOG.info("ResultCache: size = " + maxSize);
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        if (maxSize > 0) {
+            brokerPool.getNotificationService().subscribe(this);
+        }
+    }
+
+    /**
+     * Create the key for a cached result.
+     *
+     * @param owner identifies what is cached, e.g. the function or the source of the query
+     * @param user the name of the user, as results depend on access rights
+     * @param values the values the result depends on, e.g. the arguments of the function
+     *
+     * @return the key, or null if one of the values can't be part of a key
+     *
+     * @throws XPathException if a value can't be read
+     */
+    public @Nullable List<Object> createKey(final Object owner, final String user, final Sequence... values)
+            throws XPathException {
+        if (maxSize <= 0) {
+            return null;
+        }
+        final List<Object> key = new ArrayList<>();
+        key.add(owner);
+        key.add(user);
+        int count = 0;
+        for (final Sequence value : values) {
+            // separate the values, so that (a, b), () differs from (a), (b)
+            key.add(value.getItemCount());
+            for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+                final Item item = i.nextItem();
+                if (++count > MAX_ITEMS) {
+                    return null;
+                }
+                if (item instanceof AtomicValue) {
+                    key.add(Type.getTypeName(item.getType()) + ':' + item.getStringValue());
+                } else if (item instanceof NodeProxy) {
+                    final NodeProxy node = (NodeProxy) item;
+                    key.add(new NodeKey(node.getOwnerDocument().getDocId(), node.getNodeId().toString(),
+                            node.getOwnerDocument().getURI().removeLastSegment()));
+                } else {
+                    return null;
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Identify the version of the source of a query or module, so that results
+     * computed by its code are not returned once the source was changed.
+     *
+     * @param source the source
+     *
+     * @return the key of the source and its last modification time, or its
+     *     content, or null if the version of the source is unknown
+     */
+    public static @Nullable Object getSourceVersion(@Nullable final Source source) {
+        if (source instanceof DBSource) {
+            return Arrays.asList(source.getKey(), ((DBSource) source).getLastModified());
+        } else if (source instanceof FileSource) {
+            return Arrays.asList(source.getKey(), ((FileSource) source).getLastModified());
+        } else if (source instanceof StringSource) {
+            // the key is the content
+            return source.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key the key created by {@link #createKey(Object, String, Sequence...)}
+     * @param broker the broker of the caller
+     *
+     * @return a copy of the cached result, or null if there is none
+     *
+     * @throws XPathException if the copy can't be created
+     */
+    public @Nullable Sequence get(final List<Object> key, final DBBroker broker) throws XPathException {
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        // the id of a removed document may already be used by another document
+        final Set<Integer> checked = new HashSet<>();
+        for (final Item item : entry.items) {
+            if (item instanceof NodeProxy) {
+                final DocumentImpl document = ((NodeProxy) item).getOwnerDocument();
+                if (checked.add(document.getDocId()) && !exists(broker, document)) {
+                    cache.invalidate(key);
+                    return null;
+                }
+            }
+        }
+        // callers may modify the sequence and the context of its nodes
+        final ValueSequence result = new ValueSequence(entry.items.size());
+        for (final Item item : entry.items) {
+            if (item instanceof NodeProxy) {
+                final NodeProxy node = (NodeProxy) item;
+                result.add(new NodeProxy(node.getOwnerDocument(), node.getNodeId(), node.getNodeType(),
+                        node.getInternalAddress()));
+            } else {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static boolean exists(final DBBroker broker, final DocumentImpl document) {
+        try {
+            final Collection collection = broker.getCollection(document.getURI().removeLastSegment());
+            if (collection == null) {
+                return false;
+            }
+            final DocumentImpl current = collection.getDocument(broker, document.getFileURI());
+            return current != null && current.getDocId() == document.getDocId();
+        } catch (final PermissionDeniedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the current generation of the cache, which must be passed to
+     * {@link #put(List, Sequence, Policy, long)} once the result was computed.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Cache a result, if it only consists of atomic values and stored nodes.
+     *
+     * @param key the key created by {@link #createKey(Object, String, Sequence...)}
+     * @param result the result
+     * @param policy the policy for the result
+     * @param generation the generation of the cache before the result was computed,
+     *     the result is not cached if a document was changed in the meantime
+     *
+     * @throws XPathException if the result can't be read
+     */
+    public void put(final List<Object> key, final Sequence result, final Policy policy, final long generation)
+            throws XPathException {
+        if (result.getItemCount() > MAX_ITEMS || generation != this.generation.get()) {
+            return;
+        }
+        final Set<Integer> documents = new HashSet<>();
+        final Set<XmldbURI> collections = new HashSet<>();
+        for (final Object value : key) {
+            if (value instanceof NodeKey) {
+                documents.add(((NodeKey) value).docId);
+                collections.add(((NodeKey) value).collection);
+            }
+        }
+        final List<Item> items = new ArrayList<>(result.getItemCount());
+        for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            if (item instanceof NodeProxy) {
+                final DocumentImpl document = ((NodeProxy) item).getOwnerDocument();
+                documents.add(document.getDocId());
+                collections.add(document.getURI().removeLastSegment());
+            } else if (!(item instanceof AtomicValue)) {
+                return;
+            }
+            items.add(item);
+        }
+        cache.put(key, new Entry(items, documents, collections, policy));
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Drops all entries, e.g. when permissions were changed, as every
+     * cached result depends on the access rights of its user.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Drops the entries concerned by collections which were removed, moved,
+     * renamed or copied: entries with nodes in or below the collections, and
+     * entries whose policy watches the collections, their ancestors or descendants.
+     *
+     * @param collections the paths of the collections
+     */
+    public void invalidate(final XmldbURI... collections) {
+        generation.incrementAndGet();
+        cache.asMap().values().removeIf(entry -> {
+            for (final XmldbURI collection : collections) {
+                if (entry.policy.overlaps(collection)) {
+                    return true;
+                }
+                for (final XmldbURI entryCollection : entry.collections) {
+                    if (entryCollection.startsWith(collection)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void documentUpdated(final DocumentImpl document, final int event) {
+        generation.incrementAndGet();
+        final XmldbURI collection = document.getURI().removeLastSegment();
+        final int docId = document.getDocId();
+        cache.asMap().values().removeIf(entry ->
+                entry.documents.contains(docId) || entry.policy.isAffectedBy(collection));
+    }
+
+    @Override
+    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        // cached nodes of the document were already dropped by documentUpdated
+    }
+
+    @Override
+    public void unsubscribe() {
+        clear();
+    }
+
+    @Override
+    public void debug() {
+        LOG.debug("ResultCache: " + cache.estimatedSize() + " entries");
+    }
+
+    private static final class Entry {
+        final List<Item> items;
+        /** ids of the documents of the nodes in the key and the result */
+        final Set<Integer> documents;
+        /** collections of these documents */
+        final Set<XmldbURI> collections;
+        final Policy policy;
+
+        Entry(final List<Item> items, final Set<Integer> documents, final Set<XmldbURI> collections,
+                final Policy policy) {
+            this.items = items;
+            this.documents = documents;
+            this.collections = collections;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * A stored node in a key.
+     */
+    private static final class NodeKey {
+        final int docId;
+        final String nodeId;
+        /** the collection of the document, not part of the key */
+        final XmldbURI collection;
+
+        NodeKey(final int docId, final String nodeId, final XmldbURI collection) {
+            this.docId = docId;
+            this.nodeId = nodeId;
+            this.collection = collection;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NodeKey)) {
+                return false;
+            }
+            final NodeKey other = (NodeKey) obj;
+            return docId == other.docId && nodeId.equals(other.nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * docId + nodeId.hashCode();
+        }
+    }
+
+    /**
+     * How long a result is cached, and which updates invalidate it. Parsed from options
+     * such as {@code ttl=60s} and {@code collection=/db/data}.
+     */
+    public static final class Policy {
+
+        private static final long DEFAULT_TTL = TimeUnit.MINUTES.toNanos(1);
+
+        /** time to live in nanoseconds */
+        private final long ttl;
+        private final Set<XmldbURI> collections;
+
+        private Policy(final long ttl, final Set<XmldbURI> collections) {
+            this.ttl = ttl;
+            this.collections = collections;
+        }
+
+        /**
+         * Parse the options of a cache annotation or option. Supported are {@code ttl=},
+         * followed by a number and a unit of ms, s, m or h, and {@code collection=},
+         * followed by the path of a collection whose updates invalidate the result.
+         *
+         * @param options the options
+         * @return the policy
+         * @throws IllegalArgumentException if an option is invalid
+         */
+        public static Policy parse(final String... options) {
+            long ttl = DEFAULT_TTL;
+            final Set<XmldbURI> collections = new LinkedHashSet<>();
+            for (final String option : options) {
+                final int eq = option.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected name=value: " + option);
+                }
+                final String name = option.substring(0, eq).trim();
+                final String value = option.substring(eq + 1).trim();
+                switch (name) {
+                    case "ttl":
+                        ttl = parseDuration(value);
+                        break;
+                    case "collection":
+                        collections.add(XmldbURI.create(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            }
+            return new Policy(ttl, collections.isEmpty() ? Collections.emptySet() : collections);
+        }
+
+        private static long parseDuration(final String value) {
+            int unitStart = 0;
+            while (unitStart < value.length() && Character.isDigit(value.charAt(unitStart))) {
+                unitStart++;
+            }
+            if (unitStart == 0) {
+                throw new IllegalArgumentException("Invalid time to live: " + value);
+            }
+            final long amount = Long.parseLong(value.substring(0, unitStart));
+            switch (value.substring(unitStart)) {
+                case "ms":
+                    return TimeUnit.MILLISECONDS.toNanos(amount);
+                case "":
+                case "s":
+                    return TimeUnit.SECONDS.toNanos(amount);
+                case "m":
+                    return TimeUnit.MINUTES.toNanos(amount);
+                case "h":
+                    return TimeUnit.HOURS.toNanos(amount);
+                default:
+                    throw new IllegalArgumentException("Invalid time unit: " + value);
+            }
+        }
+
+        /**
+         * @param collection the collection of a document which was changed
+         * @return true if a result cached with this policy is no longer valid
+         */
+        boolean isAffectedBy(final XmldbURI collection) {
+            if (collections.isEmpty()) {
+                return true;
+            }
+            for (final XmldbURI watched : collections) {
+                // compares path segments, so /db/data2 is not affected by /db/data
+                if (collection.startsWith(watched)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param collection a collection which was removed, moved or copied
+         * @return true if the collection, one of its ancestors or one of
+         *     its descendants is watched by this policy
+         */
+        boolean overlaps(final XmldbURI collection) {
+            if (collections.isEmpty()) {
+                return true;
+            }
+            for (final XmldbURI watched : collections) {
+                if (collection.startsWith(watched) || watched.startsWith(collection)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -19,9 +19,20 @@
  */
 package org.exist.storage;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import com.github.benmanes.caffeine.cache.Cache;
@@ -29,12 +40,27 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
 import org.exist.source.Source;
+import org.exist.storage.lock.Lock.LockMode;
 import org.exist.util.Configuration;
 import org.exist.util.Holder;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
+import org.exist.xquery.Module;
+
+import javax.annotation.Nullable;
+
+import static org.exist.util.ThreadUtils.newInstanceThread;
 
 /**
  * Global pool for compiled XQuery expressions.
@@ -48,6 +74,11 @@ import org.exist.xquery.*;
  * used for a pre-defined timeout (default is {@link #DEFAULT_TIMEOUT}); these
  * settings can be configured in conf.xml.
  *
+ * If persist is enabled, the paths of the stored queries compiled into the pool are
+ * written to a manifest in the data directory on shutdown, see {@link QueryPoolManifest}.
+ * On the next startup, the unchanged queries are compiled again by a background
+ * thread, so that the first requests do not have to wait for the compilation.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
@@ -59,18 +90,31 @@ public class XQueryPool implements BrokerPoolService {
     public static final String MAX_STACK_SIZE_ATTRIBUTE = "max-stack-size";
     public static final String POOL_SIZE_ATTTRIBUTE = "size";
     public static final String TIMEOUT_ATTRIBUTE = "timeout";
+    public static final String PERSIST_ATTRIBUTE = "persist";
 
     public static final String PROPERTY_MAX_STACK_SIZE = "db-connection.query-pool.max-stack-size";
     public static final String PROPERTY_POOL_SIZE = "db-connection.query-pool.size";
     public static final String PROPERTY_TIMEOUT = "db-connection.query-pool.timeout";
+    public static final String PROPERTY_PERSIST = "db-connection.query-pool.persist";
 
     private static final int DEFAULT_MAX_POOL_SIZE = 128;
     private static final int DEFAULT_MAX_QUERY_STACK_SIZE = 64;
     private static final long DEFAULT_TIMEOUT = 120_000L;   // ms (i.e. 2 mins)
+    private static final boolean DEFAULT_PERSIST = false;
 
     private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
     private int maxQueryStackSize = DEFAULT_MAX_QUERY_STACK_SIZE;
     private long timeout = DEFAULT_TIMEOUT;
+    private boolean persist = DEFAULT_PERSIST;
+
+    @Nullable private Path manifestFile = null;
+    @Nullable private volatile Thread warmUpThread = null;
+
+    /**
+     * Path of stored main module -> paths of the stored modules it imports,
+     * for all stored queries compiled into the pool since startup
+     */
+    private final ConcurrentMap<XmldbURI, Set<XmldbURI>> storedQueries = new ConcurrentHashMap<>();
 
     /**
      * Source -> Deque of compiled Queries
@@ -82,6 +126,7 @@ public class XQueryPool implements BrokerPoolService {
         final Integer maxStSz = (Integer) configuration.getProperty(PROPERTY_MAX_STACK_SIZE);
         final Integer maxPoolSz = (Integer) configuration.getProperty(PROPERTY_POOL_SIZE);
         final Long t = (Long) configuration.getProperty(PROPERTY_TIMEOUT);
+        final Boolean p = (Boolean) configuration.getProperty(PROPERTY_PERSIST);
         final NumberFormat nf = NumberFormat.getNumberInstance();
 
         if (maxPoolSz != null) {
@@ -102,6 +147,12 @@ public class XQueryPool implements BrokerPoolService {
             this.timeout = DEFAULT_TIMEOUT;
         }
 
+        if (p != null) {
+            this.persist = p;
+        } else {
+            this.persist = DEFAULT_PERSIST;
+        }
+
         this.cache = Caffeine.newBuilder()
                 .maximumSize(maxPoolSize)
                 .expireAfterAccess(timeout, TimeUnit.MILLISECONDS)
@@ -109,7 +160,171 @@ public class XQueryPool implements BrokerPoolService {
 
         LOG.info("QueryPool: " + "size = " + nf.format(maxPoolSize) + "; "
                 + "maxQueryStackSize = " + nf.format(maxQueryStackSize) + "; "
-                + "timeout = " + nf.format(timeout) + "; ");
+                + "timeout = " + nf.format(timeout) + "; "
+                + "persist = " + persist + "; ");
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        if (persist) {
+            this.manifestFile = brokerPool.getStoragePlace().resolve(QueryPoolManifest.FILE_NAME);
+        }
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (manifestFile == null) {
+            return;
+        }
+        final List<QueryPoolManifest.Entry> entries;
+        try {
+            entries = QueryPoolManifest.read(manifestFile);
+        } catch (final IOException e) {
+            LOG.warn("Unable to read query pool manifest: " + e.getMessage(), e);
+            return;
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        final Thread warmUp = newInstanceThread(brokerPool, "query-pool.warm-up", () -> warmUp(brokerPool, entries));
+        warmUp.setDaemon(true);
+        this.warmUpThread = warmUp;
+        warmUp.start();
+    }
+
+    /**
+     * Waits for the warm-up of the pool after startup to finish.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     *
+     * @return true if the warm-up has finished, or there was none
+     *
+     * @throws InterruptedException if the thread is interrupted whilst waiting
+     */
+    boolean awaitWarmUp(final long timeout) throws InterruptedException {
+        final Thread warmUp = this.warmUpThread;
+        if (warmUp == null) {
+            return true;
+        }
+        warmUp.join(timeout);
+        return !warmUp.isAlive();
+    }
+
+    @Override
+    public void stop(final DBBroker systemBroker) {
+        if (manifestFile == null) {
+            return;
+        }
+        try {
+            QueryPoolManifest.write(systemBroker, manifestFile, storedQueries);
+        } catch (final IOException e) {
+            LOG.warn("Unable to write query pool manifest: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compiles the queries recorded in the manifest, unless they have
+     * changed since, and adds them to the pool.
+     */
+    private void warmUp(final BrokerPool brokerPool, final List<QueryPoolManifest.Entry> entries) {
+        final long start = System.currentTimeMillis();
+        int compiled = 0;
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            for (final QueryPoolManifest.Entry entry : entries) {
+                if (brokerPool.isShuttingDown()) {
+                    break;
+                }
+                if (QueryPoolManifest.isCurrent(broker, entry) && precompile(broker, entry.path)) {
+                    compiled++;
+                }
+            }
+        } catch (final EXistException e) {
+            LOG.warn("Unable to warm up the query pool: " + e.getMessage(), e);
+        }
+        LOG.info("Precompiled " + compiled + " of " + entries.size() + " queries into the query pool in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Compiles a main module stored in the database and adds it to the pool.
+     * Library modules are skipped.
+     *
+     * @param broker the database broker
+     * @param path the path of the stored query
+     *
+     * @return true if the query was compiled, false if it is not an XQuery
+     *     main module or could not be compiled
+     */
+    public boolean precompile(final DBBroker broker, final XmldbURI path) {
+        try (final LockedDocument lockedDoc = broker.getXMLResource(path, LockMode.READ_LOCK)) {
+            if (lockedDoc == null) {
+                return false;
+            }
+            final DocumentImpl doc = lockedDoc.getDocument();
+            if (doc.getResourceType() != DocumentImpl.BINARY_FILE
+                    || !MimeType.XQUERY_TYPE.getName().equals(doc.getMetadata().getMimeType())) {
+                return false;
+            }
+
+            final DBSource source = new DBSource(broker, (BinaryDocument) doc, true);
+            if (source.isModule() != null) {
+                return false;
+            }
+
+            final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+            context.setModuleLoadPath(XmldbURI.EMBEDDED_SERVER_URI_PREFIX + path.removeLastSegment().getCollectionPath());
+            final CompiledXQuery compiled = broker.getBrokerPool().getXQueryService().compile(broker, context, source);
+            returnCompiledXQuery(source, compiled);
+            return true;
+        } catch (final XPathException | IOException | PermissionDeniedException e) {
+            LOG.warn("Unable to precompile " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Compiles all main modules stored in a collection and its sub-collections,
+     * and adds them to the pool.
+     *
+     * @param broker the database broker
+     * @param collectionPath the path of the collection
+     *
+     * @return the paths of the queries which were compiled
+     *
+     * @throws PermissionDeniedException if the collection can't be read
+     * @throws LockException if the collection can't be locked
+     */
+    public List<XmldbURI> precompileCollection(final DBBroker broker, final XmldbURI collectionPath)
+            throws PermissionDeniedException, LockException {
+        final List<XmldbURI> documents = new ArrayList<>();
+        final List<XmldbURI> subCollections = new ArrayList<>();
+        // collect the paths first, so that no collection lock is held during compilation
+        try (final Collection collection = broker.openCollection(collectionPath, LockMode.READ_LOCK)) {
+            if (collection == null) {
+                return Collections.emptyList();
+            }
+            for (final Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
+                final DocumentImpl doc = i.next();
+                if (doc.getResourceType() == DocumentImpl.BINARY_FILE
+                        && MimeType.XQUERY_TYPE.getName().equals(doc.getMetadata().getMimeType())) {
+                    documents.add(doc.getURI());
+                }
+            }
+            for (final Iterator<XmldbURI> i = collection.collectionIterator(broker); i.hasNext(); ) {
+                subCollections.add(collectionPath.append(i.next()));
+            }
+        }
+
+        final List<XmldbURI> compiled = new ArrayList<>();
+        for (final XmldbURI document : documents) {
+            if (precompile(broker, document)) {
+                compiled.add(document);
+            }
+        }
+        for (final XmldbURI subCollection : subCollections) {
+            compiled.addAll(precompileCollection(broker, subCollection));
+        }
+        return compiled;
     }
 
     /**
@@ -123,6 +338,11 @@ public class XQueryPool implements BrokerPoolService {
             return;
         }
 
+        if (manifestFile != null && source instanceof DBSource) {
+            storedQueries.computeIfAbsent(((DBSource) source).getDocumentPath(),
+                    key -> getStoredModules(compiledXQuery.getContext()));
+        }
+
         cache.asMap().compute(source, (key, value) -> {
             final Deque<CompiledXQuery> deque;
             if (value != null) {
@@ -222,6 +442,20 @@ public class XQueryPool implements BrokerPoolService {
         return true;
     }
 
+    /**
+     * @return the paths of the stored library modules imported by the query
+     */
+    private static Set<XmldbURI> getStoredModules(final XQueryContext context) {
+        final Set<XmldbURI> modules = new LinkedHashSet<>();
+        for (final Iterator<Module> i = context.getAllModules(); i.hasNext(); ) {
+            final Module module = i.next();
+            if (module instanceof ExternalModule && ((ExternalModule) module).getSource() instanceof DBSource) {
+                modules.add(((DBSource) ((ExternalModule) module).getSource()).getDocumentPath());
+            }
+        }
+        return modules;
+    }
+
     /**
      * Removes all entries from the XQuery Pool.
      */
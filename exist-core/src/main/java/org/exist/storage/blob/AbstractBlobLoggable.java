@@ -53,6 +53,11 @@ public abstract class AbstractBlobLoggable extends AbstractLoggable implements B
         this.blobId = new BlobId(id);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return broker.getBrokerPool().getBlobStore();
+    }
+
     @Override
     public int getLogSize() {
         return 4 + blobId.getId().length;
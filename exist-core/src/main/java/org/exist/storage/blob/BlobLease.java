@@ -0,0 +1,179 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.blob;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A read lease of the file of a BLOB in the {@link BlobStore}.
+ *
+ * Whilst the lease is held the BLOB file will not be deleted, even
+ * if the last reference to the BLOB is removed. The lease MUST be
+ * closed when the caller has finished with the file.
+ *
+ * WARNING: The file MUST ONLY be used for READ operations, any
+ * WRITE/DELETE operation will corrupt the integrity of the blob store.
+ */
+@NotThreadSafe
+public final class BlobLease implements Closeable {
+
+    /**
+     * Ranges of at least this size are memory mapped when they are
+     * written to a {@link MappedBufferChannel} which accepts them.
+     */
+    private static final long MAP_THRESHOLD = 64 * 1024;    // 64 KB
+
+    /**
+     * Size of the memory mapped regions.
+     */
+    private static final long MAP_REGION_SIZE = 16 * 1024 * 1024;   // 16 MB
+
+    private final Path path;
+    private final Runnable release;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private FileChannel channel;
+
+    /**
+     * @param path the blob file
+     * @param release the action to run to release the lease
+     */
+    BlobLease(final Path path, final Runnable release) {
+        this.path = path;
+        this.release = release;
+    }
+
+    /**
+     * Get the path of the leased BLOB file.
+     *
+     * @return the path of the BLOB file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get a read-only channel to the leased BLOB file. The channel is
+     * opened on first use and closed together with the lease.
+     *
+     * @return the channel
+     *
+     * @throws IOException if the channel cannot be opened
+     */
+    public FileChannel getChannel() throws IOException {
+        if (closed.get()) {
+            throw new IOException("Blob lease has been released: " + path);
+        }
+        if (channel == null) {
+            channel = FileChannel.open(path, READ);
+        }
+        return channel;
+    }
+
+    /**
+     * Transfer bytes of the BLOB to an output stream.
+     *
+     * If the output stream is also a {@link WritableByteChannel}, the bytes
+     * are written to it as a channel, see {@link #transferTo(long, long, WritableByteChannel)}.
+     *
+     * @param position the position of the first byte to transfer
+     * @param count the number of bytes to transfer
+     * @param os the output stream
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void transferTo(final long position, final long count, final OutputStream os) throws IOException {
+        final WritableByteChannel target = os instanceof WritableByteChannel ? (WritableByteChannel) os : Channels.newChannel(os);
+        transferTo(position, count, target);
+    }
+
+    /**
+     * Transfer bytes of the BLOB to a channel.
+     *
+     * The bytes are transferred through
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets
+     * the operating system copy them to file and socket channels. A
+     * {@link MappedBufferChannel} which accepts mapped buffers, e.g. a servlet
+     * response written by Jetty, instead receives larger ranges as memory
+     * mapped buffers of the file.
+     *
+     * @param position the position of the first byte to transfer
+     * @param count the number of bytes to transfer
+     * @param target the channel
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void transferTo(long position, long count, final WritableByteChannel target) throws IOException {
+        final FileChannel source = getChannel();
+        if (count >= MAP_THRESHOLD && target instanceof MappedBufferChannel
+                && ((MappedBufferChannel) target).acceptsMappedBuffers()) {
+            while (count > 0) {
+                final long size = Math.min(count, MAP_REGION_SIZE);
+                final ByteBuffer buf = source.map(FileChannel.MapMode.READ_ONLY, position, size);
+                while (buf.hasRemaining()) {
+                    target.write(buf);
+                }
+                position += size;
+                count -= size;
+            }
+        } else {
+            while (count > 0) {
+                final long transferred = source.transferTo(position, count, target);
+                if (transferred <= 0) {
+                    throw new EOFException("Unexpected end of blob file: " + path);
+                }
+                position += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    /**
+     * Closes the channel, if it was opened, and releases the lease.
+     *
+     * This method is idempotent.
+     *
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } finally {
+                release.run();
+            }
+        }
+    }
+}
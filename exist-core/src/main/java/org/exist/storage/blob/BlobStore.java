@@ -156,6 +156,25 @@ public interface BlobStore extends Closeable {
      */
     <T> T with(final Txn transaction, final BlobId blobId, final Function<Path, T> fnFile) throws IOException;
 
+    /**
+     * Lease the file of a BLOB for reading.
+     *
+     * Unlike {@link #with(Txn, BlobId, Function)} the lease may be held
+     * beyond the scope of a function, e.g. to transfer the BLOB to a socket
+     * or to memory map it. The BLOB file is not deleted before the lease is
+     * released by {@link BlobLease#close()}.
+     *
+     * @param transaction the current database transaction.
+     * @param blobId the identifier representing the blob to be leased.
+     *
+     * @return the lease of the BLOB file, or null if there is no such BLOB.
+     *     NOTE the lease MUST be closed when the caller has finished
+     *     with it to release any associated resources.
+     *
+     * @throws IOException if an error occurs whilst leasing the BLOB file.
+     */
+    @Nullable BlobLease lease(final Txn transaction, final BlobId blobId) throws IOException;
+
     /**
      * Remove a BLOB from the BLOB Store.
      *
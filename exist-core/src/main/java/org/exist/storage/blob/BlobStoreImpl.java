@@ -891,6 +891,15 @@ public class BlobStoreImpl implements BlobStore {
         }
     }
 
+    @Override
+    @Nullable public BlobLease lease(final Txn transaction, final BlobId blobId) throws IOException {
+        final BlobFileLease blobFileLease = readLeaseBlobFile(transaction, blobId);
+        if (blobFileLease == null) {
+            return null;
+        }
+        return new BlobLease(blobFileLease.path, blobFileLease.release);
+    }
+
     /**
      * Lease a Blob file for reading from the Blob Store.
      *
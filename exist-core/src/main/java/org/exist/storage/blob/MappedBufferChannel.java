@@ -0,0 +1,41 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.blob;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel which may write memory mapped buffers of a file
+ * without copying them through the heap.
+ *
+ * {@link BlobLease#transferTo(long, long, WritableByteChannel)} maps
+ * larger ranges of a BLOB file for such a channel, instead of
+ * copying them with {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}.
+ */
+public interface MappedBufferChannel extends WritableByteChannel {
+
+    /**
+     * Check if memory mapped buffers written to this channel are
+     * written without being copied.
+     *
+     * @return true if mapped buffers should be written to this channel
+     */
+    boolean acceptsMappedBuffers();
+}
@@ -48,6 +48,11 @@ public abstract class BTAbstractLoggable extends AbstractLoggable {
         return broker.getStorage(fileId);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return getStorage();
+    }
+
     @Override
     public void read(final ByteBuffer in) {
         fileId = in.get();
@@ -118,6 +118,9 @@ public class BTree extends Paged implements Lockable {
 
     protected final static int MIN_SPACE_PER_KEY = 32;
 
+    /** Longest prefix a leaf key can share with its predecessor, its length is stored in one unsigned byte */
+    protected final static int MAX_LEAF_PREFIX_LEN = 0xFF;
+
     /** Log entry type for an insert value operation */
     public final static byte LOG_INSERT_VALUE = 0x20;
     /** Log entry type for creation of a new BTree node */
@@ -219,18 +222,34 @@ public class BTree extends Paged implements Lockable {
 
     @Override
     public void closeAndRemove() {
+        deregisterPageWriter();
         super.closeAndRemove();
         cacheManager.deregisterCache(cache);
     }
 
+    private void deregisterPageWriter() {
+        final PageWriter pageWriter = pool.getPageWriter();
+        if (pageWriter != null) {
+            pageWriter.deregister(this);
+        }
+    }
+
+    @Override
+    protected boolean writeCachedPage(final long pageNum) {
+        return cache != null && cache.flush(pageNum);
+    }
+
     @Override
     public String getLockName() {
         return null;
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
-            0, Cache.CacheType.BTREE);
+        this.cache = cacheManager.newBTreeCache(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5, 0);
+        final PageWriter pageWriter = pool.getPageWriter();
+        if (pageWriter != null) {
+            pageWriter.register(this);
+        }
         cacheManager.registerCache(cache);
     }
 
@@ -261,6 +280,35 @@ public class BTree extends Paged implements Lockable {
         return getRootNode().addValue(transaction, value, pointer);
     }
 
+    /**
+     * addValues adds a run of Values to the BTree and associates a pointer with
+     * each of them, as if {@link #addValue(Value, long)} was called for every Value.
+     * If the Values are sorted in ascending order, the tree is descended only
+     * once per leaf page instead of once per Value, which makes this the preferred
+     * way to bulk load an index.
+     *
+     * @param  values              The Values to add
+     * @param  pointers            The pointers to associate with them
+     * @throws  IOException     if an I/O error occurs
+     * @throws  BTreeException  if an error occurs with the tree
+     */
+    public void addValues(final Value[] values, final long[] pointers) throws IOException, BTreeException {
+        addValues(null, values, pointers);
+    }
+
+    public void addValues(final Txn transaction, final Value[] values, final long[] pointers) throws IOException, BTreeException {
+        if (values.length != pointers.length) {
+            throw new IllegalArgumentException("Number of values and pointers differ: " + values.length + " != " + pointers.length);
+        }
+        for (int i = 0; i < values.length; ) {
+            if (values[i] == null) {
+                i++;
+            } else {
+                i = getRootNode().addValues(transaction, values, pointers, i, null);
+            }
+        }
+    }
+
     /**
      * removeValue removes a Value from the BTree and returns the associated
      * pointer for it.
@@ -543,6 +591,7 @@ public class BTree extends Paged implements Lockable {
 
     @Override
 	public void close() throws DBException {
+        deregisterPageWriter();
         if (!isReadOnly()) {
             flush();
         }
@@ -689,6 +738,7 @@ public class BTree extends Paged implements Lockable {
             cache.add(node);
 
             // scan through chain of pages and add them to the tree
+            Value lastKey = node.nKeys > 0 ? node.keys[node.nKeys - 1] : null;
             long rightPageNum = node.pageHeader.getNextPage();
             while (rightPageNum != Page.NO_PAGE) {
 
@@ -696,12 +746,14 @@ public class BTree extends Paged implements Lockable {
 
                 rightPageNum = node.pageHeader.getNextPage();
 
-                // promote first key of page to parent
+                // promote the shortest key separating the page from its left sibling to parent
                 if (node.nKeys < 1) {
     //                throw new IOException("No keys found in page " + node.page.getPageNum());
                     continue;
                 }
-                final Value key = node.keys[0];
+                final Value key = lastKey == null || lastKey.compareTo(node.keys[0]) >= 0 ?
+                        node.keys[0] : lastKey.getSeparator(node.keys[0]);
+                lastKey = node.keys[node.nKeys - 1];
                 final BTreeNode parent = findParent(key);
                 if (parent == null) {
                     throw new IOException("Parent is null for page " + node.page.getPageNum());
@@ -888,6 +940,19 @@ public class BTree extends Paged implements Lockable {
         }
     }
 
+    /**
+     * Number of leading bytes of a leaf key which are not stored
+     * because they are shared with the preceding key.
+     *
+     * @param key the key
+     * @param previous the preceding key on the leaf page
+     *
+     * @return the length of the shared prefix
+     */
+    private static int leafPrefixLen(final Value key, final Value previous) {
+        return Math.min(key.commonPrefix(previous), MAX_LEAF_PREFIX_LEN);
+    }
+
     /**
      * A node in the B+-tree. Every node is backed by a Page for
      * storing the node's data. Both, branch and leaf nodes are represented
@@ -1098,10 +1163,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
+                    final int prefix = leafPrefixLen(keys[i], keys[i - 1]);
                     currentDataLen += keys[i].getLength() - prefix;
                 } else {
                     currentDataLen += keys[i].getLength();
@@ -1149,11 +1211,7 @@ public class BTree extends Paged implements Lockable {
         }
 
         private int calculatePrefixLen(final int idx0, final int idx1) {
-            int prefix = keys[idx0].commonPrefix(keys[idx1]);
-            if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                prefix = 0;
-            }
-            return prefix;
+            return leafPrefixLen(keys[idx0], keys[idx1]);
         }
 
         /**
@@ -1174,10 +1232,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
+                    final int prefix = leafPrefixLen(keys[i], keys[i - 1]);
                     currentLen += keys[i].getLength() - prefix;
                 } else {
                     currentLen += keys[i].getLength();
@@ -1196,10 +1251,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
+                    final int prefix = leafPrefixLen(keys[i], keys[i - 1]);
                     totalLen += keys[i].getLength() - prefix;
                 } else {
                     totalLen += keys[i].getLength();
@@ -1311,9 +1363,7 @@ public class BTree extends Paged implements Lockable {
                     // keys that can be stored on one page. Each key is stored as follows:
                     // [valSize, prefixLen, value], where prefixLen specifies the number of
                     // leading bytes the key has in common with the previous key.
-                    int prefixLen = keys[i].commonPrefix(keys[i - 1]); // determine the common prefix
-                    if (prefixLen < 0 || prefixLen > Byte.MAX_VALUE)
-                        {prefixLen = 0;}
+                    final int prefixLen = leafPrefixLen(keys[i], keys[i - 1]); // determine the common prefix
                     // store the length of the prefix
                     temp[p++] = (byte) prefixLen;
                     // copy the remaining bytes, starting at prefixLen
@@ -1419,44 +1469,10 @@ public class BTree extends Paged implements Lockable {
                 case LEAF :
                     try {
                         allowUnload = false;
-                        if (idx >= 0) {
-                            // Value was found... Overwrite
-                            final long oldPtr = ptrs[idx];
-                            if (transaction != null && isRecoveryEnabled()) {
-                                final UpdateValueLoggable loggable = new UpdateValueLoggable(transaction,
-                                    fileId, page.getPageNum(), idx, value, pointer, oldPtr);
-                                    writeToLog(loggable, this);
-                            }
-                            ptrs[idx] = pointer;
-                            saved = false;
-                            return oldPtr;
-                        } else {
-                            // Value was not found
-                            idx = - (idx + 1);
-                            if (transaction != null && isRecoveryEnabled()) {
-                                final InsertValueLoggable loggable = new InsertValueLoggable(transaction,
-                                    fileId, page.getPageNum(), idx, value, idx, pointer);
-                                    writeToLog(loggable, this);
-                                }
-                                insertKey(value, idx);
-                                insertPointer(pointer, idx);
-                                adjustDataLen(idx);
-                                if (mustSplit()) {
-                                    // we normally split a node at its median value.
-                                    // however, if the inserted key is in the upper or lower
-                                    // section of the node, we split directly at the key. this
-                                    // has advantages if keys are inserted in ascending order
-                                    if (splitFactor > 0 && idx > (nKeys * splitFactor) && value.getLength() < fileHeader.getWorkSize() / 4) {
-                                        split(transaction, idx == 0 ? 1 : idx);
-                                    } else {
-                                        split(transaction);
-                                    }
-                                }
-                        }
+                        return addLeafValue(transaction, idx, value, pointer);
                     } finally {
                         allowUnload = true;
                     }
-                    return -1;
 
                 default :
                     throw new BTreeException("Invalid Page Type In addValue: " +
@@ -1464,6 +1480,124 @@ public class BTree extends Paged implements Lockable {
             }
         }
 
+        /**
+         * Add a run of keys and their pointers, starting at the first key. Consecutive
+         * keys are added to the same leaf as long as they are ascending and fall below
+         * the upper bound of the leaf, so a sorted run needs only one descent per leaf.
+         *
+         * @param transaction the database transaction
+         * @param values the keys
+         * @param pointers the pointers
+         * @param from the index of the first key to add
+         * @param upper the smallest key not covered by this node, or null if unbounded
+         *
+         * @return the index of the first key which has not been added
+         */
+        private int addValues(final Txn transaction, final Value[] values, final long[] pointers, final int from,
+                final Value upper) throws IOException, BTreeException {
+            int idx = searchKey(values[from]);
+            switch (pageHeader.getStatus()) {
+                case BRANCH :
+                    idx = idx < 0 ? - (idx + 1) : idx + 1;
+                    return getChildNode(idx).addValues(transaction, values, pointers, from,
+                            idx < nKeys ? getFullKey(idx) : upper);
+
+                case LEAF :
+                    try {
+                        allowUnload = false;
+                        final long nextPage = pageHeader.getNextPage();
+                        int i = from;
+                        do {
+                            addLeafValue(transaction, idx, values[i], pointers[i]);
+                            i++;
+                            if (pageHeader.getNextPage() != nextPage) {
+                                // the leaf has been split: descend again for the remaining keys
+                                break;
+                            }
+                            if (i == values.length || values[i] == null || values[i].compareTo(values[i - 1]) < 0
+                                    || (upper != null && values[i].compareTo(upper) >= 0)) {
+                                break;
+                            }
+                            idx = searchKey(values[i]);
+                        } while (true);
+                        return i;
+                    } finally {
+                        allowUnload = true;
+                    }
+
+                default :
+                    throw new BTreeException("Invalid Page Type In addValues: " +
+                        pageHeader.getStatus() + "; " + page.getPageInfo());
+            }
+        }
+
+        /**
+         * Add a key and the corresponding pointer to this leaf.
+         *
+         * @param transaction the database transaction
+         * @param idx the result of searching the key in this leaf
+         * @param value the value
+         * @param pointer the pointer
+         *
+         * @return the previous pointer of the key, or -1
+         */
+        private long addLeafValue(final Txn transaction, int idx, final Value value, final long pointer)
+                throws IOException, BTreeException {
+            if (idx >= 0) {
+                // Value was found... Overwrite
+                final long oldPtr = ptrs[idx];
+                if (transaction != null && isRecoveryEnabled()) {
+                    final UpdateValueLoggable loggable = new UpdateValueLoggable(transaction,
+                        fileId, page.getPageNum(), idx, value, pointer, oldPtr);
+                    writeToLog(loggable, this);
+                }
+                ptrs[idx] = pointer;
+                saved = false;
+                return oldPtr;
+            } else {
+                // Value was not found
+                idx = - (idx + 1);
+                if (transaction != null && isRecoveryEnabled()) {
+                    final InsertValueLoggable loggable = new InsertValueLoggable(transaction,
+                        fileId, page.getPageNum(), idx, value, idx, pointer);
+                    writeToLog(loggable, this);
+                }
+                insertKey(value, idx);
+                insertPointer(pointer, idx);
+                adjustDataLen(idx);
+                if (mustSplit()) {
+                    // we normally split a node at its median value.
+                    // however, if the inserted key is in the upper or lower
+                    // section of the node, we split directly at the key. this
+                    // has advantages if keys are inserted in ascending order
+                    if (splitFactor > 0 && idx > (nKeys * splitFactor) && value.getLength() < fileHeader.getWorkSize() / 4) {
+                        split(transaction, idx == 0 ? 1 : idx);
+                    } else {
+                        split(transaction);
+                    }
+                }
+                return -1;
+            }
+        }
+
+        /**
+         * Get the key at the given index of a branch, including the
+         * prefix shared by all keys of the branch.
+         *
+         * @param idx the index
+         *
+         * @return the key
+         */
+        private Value getFullKey(final int idx) {
+            if (prefix == null || prefix.getLength() == 0) {
+                return keys[idx];
+            }
+            final byte[] data = new byte[prefix.getLength() + keys[idx].getLength()];
+            System.arraycopy(prefix.data(), prefix.start(), data, 0, prefix.getLength());
+            System.arraycopy(keys[idx].data(), keys[idx].start(), data, prefix.getLength(), keys[idx].getLength());
+            return new Value(data);
+        }
+
         /**
          * Promote a key to the parent node. Called by {@link #split(Txn)}.
          *
@@ -1539,7 +1673,9 @@ public class BTree extends Paged implements Lockable {
                     System.arraycopy(ptrs, 0, leftPtrs, 0, leftPtrs.length);
                     System.arraycopy(keys, leftVals.length, rightVals, 0, rightVals.length);
                     System.arraycopy(ptrs, leftPtrs.length, rightPtrs, 0, rightPtrs.length);
-                    separator = keys[leftVals.length];
+                    // promote the shortest prefix of the first right key which is still
+                    // greater than the last left key (suffix truncation)
+                    separator = leftVals.length == 0 ? keys[0] : keys[leftVals.length - 1].getSeparator(keys[leftVals.length]);
                     break;
 
                 default :
@@ -0,0 +1,554 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.jcip.annotations.GuardedBy;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.exist.util.ByteConversion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Page store which compresses every page with LZ4.
+ *
+ * The logical content of the store is a sequence of fixed size pages,
+ * as seen by {@link Paged}. Each page is compressed on its own and stored
+ * in a run of 512 byte sectors of the data file, so a page which compresses
+ * to a quarter of its size occupies a quarter of the space on disk. Pages
+ * which do not compress are stored as they are, and pages which only contain
+ * zeros, e.g. removed pages, are not stored at all.
+ *
+ * The compressed page map, which records the sectors and the compressed
+ * length of every page, is kept in memory (8 bytes per page) and written
+ * through to a second file next to the data file, see {@link #getMapFile(Path)}.
+ * Sectors which are no longer used are found when the store is opened, and
+ * are reused for pages which compress to the same or a smaller number of sectors.
+ * Sectors which are released whilst the store is open are only reused after
+ * the data file and the map have been forced to disk, so that after a crash
+ * the map never points a page at sectors which hold the data of another page.
+ *
+ * The store can only read and write whole pages, reading a part of a page
+ * decompresses the whole page.
+ */
+public class CompressedPageStore implements PageStore {
+
+    public static final String MAP_FILE_SUFFIX = ".map";
+
+    static final int SECTOR_SIZE = 512;
+
+    private static final int MAP_MAGIC = 0x4550434d;  // "EPCM"
+    private static final int MAP_HEADER_LENGTH = 16;
+    private static final int MAP_ENTRY_LENGTH = 8;
+    private static final int MAP_CHUNK_SIZE = 1 << 16;
+
+    private static final int LENGTH_BITS = 24;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestJavaInstance();
+
+    private final RandomAccessFile raf;
+    private final FileChannel data;
+    private final FileChannel map;
+    private final boolean readOnly;
+    private final int pageSize;
+    private final int maxSectors;
+    private final LZ4Compressor compressor = LZ4.fastCompressor();
+    private final LZ4SafeDecompressor decompressor = LZ4.safeDecompressor();
+
+    /**
+     * The compressed page map: for each page, the first sector plus one
+     * in the high bits and the stored length in the low {@link #LENGTH_BITS}
+     * bits, or 0 if the page only contains zeros.
+     */
+    private volatile long[][] entries = new long[0][];
+
+    @GuardedBy("this") private long pages = 0;
+    @GuardedBy("this") private long sectors = 0;
+    @GuardedBy("this") private long storedBytes = 0;
+
+    /**
+     * Free runs of sectors, indexed by their length in sectors.
+     */
+    @GuardedBy("this") private final LongArrayList[] freeSectors;
+
+    /**
+     * Runs of sectors which have been released since the map was last
+     * forced, indexed by their length in sectors. The map on disk may still
+     * point at them, so they must not be reused until it has been forced.
+     */
+    @GuardedBy("this") private final LongArrayList[] releasedSectors;
+    @GuardedBy("this") private boolean hasReleasedSectors = false;
+
+    @GuardedBy("this") private final byte[] compressed;
+    @GuardedBy("this") private final byte[] mapEntry = new byte[MAP_ENTRY_LENGTH];
+
+    /**
+     * @param file the data file
+     * @param raf the opened data file
+     * @param readOnly true if the file was opened read-only
+     * @param pageSize the size of a page
+     *
+     * @throws IOException if the compressed page map cannot be read
+     */
+    public CompressedPageStore(final Path file, final RandomAccessFile raf, final boolean readOnly, final int pageSize) throws IOException {
+        if (pageSize % SECTOR_SIZE != 0 || pageSize > LENGTH_MASK) {
+            throw new IOException("Page size " + pageSize + " cannot be used with the compressed page store");
+        }
+        this.raf = raf;
+        this.data = raf.getChannel();
+        this.readOnly = readOnly;
+        this.pageSize = pageSize;
+        this.maxSectors = pageSize / SECTOR_SIZE;
+        this.compressed = new byte[Math.max(pageSize, compressor.maxCompressedLength(pageSize))];
+        this.freeSectors = new LongArrayList[maxSectors + 1];
+        this.releasedSectors = new LongArrayList[maxSectors + 1];
+        for (int i = 1; i <= maxSectors; i++) {
+            freeSectors[i] = new LongArrayList();
+            releasedSectors[i] = new LongArrayList();
+        }
+
+        final Path mapFile = getMapFile(file);
+        if (readOnly) {
+            this.map = FileChannel.open(mapFile, StandardOpenOption.READ);
+        } else {
+            this.map = FileChannel.open(mapFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        try {
+            readMap();
+        } catch (final IOException e) {
+            map.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the file of the compressed page map of a data file.
+     *
+     * @param file the data file
+     *
+     * @return the file of the compressed page map
+     */
+    public static Path getMapFile(final Path file) {
+        return file.resolveSibling(file.getFileName().toString() + MAP_FILE_SUFFIX);
+    }
+
+    /**
+     * Checks whether a data file has been written by a compressed page store.
+     *
+     * @param file the data file
+     *
+     * @return true if the data file has a compressed page map
+     */
+    public static boolean isCompressed(final Path file) {
+        return Files.exists(getMapFile(file));
+    }
+
+    private synchronized void readMap() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(MAP_HEADER_LENGTH);
+        if (map.size() == 0) {
+            if (!readOnly) {
+                header.putInt(MAP_MAGIC).putInt(pageSize).putInt(SECTOR_SIZE).putInt(0).flip();
+                writeFully(map, header, 0);
+            }
+            return;
+        }
+
+        readFully(map, header, 0);
+        header.flip();
+        if (header.getInt() != MAP_MAGIC) {
+            throw new IOException("Not a compressed page map");
+        }
+        final int mapPageSize = header.getInt();
+        if (mapPageSize != pageSize || header.getInt() != SECTOR_SIZE) {
+            throw new IOException("Compressed page map was written for a page size of " + mapPageSize + " but the page size is " + pageSize);
+        }
+
+        pages = (map.size() - MAP_HEADER_LENGTH) / MAP_ENTRY_LENGTH;
+        long[][] entries = new long[(int) ((pages + MAP_CHUNK_SIZE - 1) / MAP_CHUNK_SIZE)][];
+        final ByteBuffer buf = ByteBuffer.allocate(MAP_CHUNK_SIZE * MAP_ENTRY_LENGTH);
+        for (int chunk = 0; chunk < entries.length; chunk++) {
+            buf.clear();
+            final long position = MAP_HEADER_LENGTH + (long) chunk * MAP_CHUNK_SIZE * MAP_ENTRY_LENGTH;
+            buf.limit((int) Math.min(buf.capacity(), map.size() - position));
+            readFully(map, buf, position);
+            buf.flip();
+            entries[chunk] = new long[MAP_CHUNK_SIZE];
+            for (int i = 0; buf.remaining() >= MAP_ENTRY_LENGTH; i++) {
+                entries[chunk][i] = buf.getLong();
+            }
+        }
+        this.entries = entries;
+
+        // find the sectors which are in use, the others are free
+        sectors = (data.size() + SECTOR_SIZE - 1) / SECTOR_SIZE;
+        final long[] used = new long[(int) ((sectors + 63) / 64)];
+        for (long page = 0; page < pages; page++) {
+            final long entry = entry(page);
+            if (entry != 0) {
+                final long first = firstSector(entry);
+                final int length = length(entry);
+                if (first < 0 || first + sectorCount(length) > sectors) {
+                    throw new IOException("Compressed page " + page + " is corrupt: its sectors " + first + " to "
+                            + (first + sectorCount(length) - 1) + " are beyond the " + sectors + " sectors of the data file");
+                }
+                storedBytes += length;
+                for (long sector = first; sector < first + sectorCount(length); sector++) {
+                    used[(int) (sector >>> 6)] |= 1L << sector;
+                }
+            }
+        }
+        long runStart = -1;
+        for (long sector = 0; sector <= sectors; sector++) {
+            final boolean free = sector < sectors && (used[(int) (sector >>> 6)] & (1L << sector)) == 0;
+            if (free && runStart < 0) {
+                runStart = sector;
+            } else if (!free && runStart >= 0) {
+                for (long start = runStart; start < sector; start += maxSectors) {
+                    free(start, (int) Math.min(maxSectors, sector - start));
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    @Override
+    public boolean isPageGranular() {
+        return true;
+    }
+
+    @Override
+    public void read(final long offset, final byte[] buf) throws IOException {
+        final byte[] page = new byte[pageSize];
+        int pos = 0;
+        while (pos < buf.length) {
+            final long current = offset + pos;
+            final long pageNum = current / pageSize;
+            final int pageOffset = (int) (current % pageSize);
+            final int len = Math.min(buf.length - pos, pageSize - pageOffset);
+            if (pageOffset == 0 && len == pageSize) {
+                readPage(pageNum, buf, pos);
+            } else {
+                readPage(pageNum, page, 0);
+                System.arraycopy(page, pageOffset, buf, pos, len);
+            }
+            pos += len;
+        }
+    }
+
+    private void readPage(final long pageNum, final byte[] buf, final int off) throws IOException {
+        final long entry = entry(pageNum);
+        if (entry == 0) {
+            Arrays.fill(buf, off, off + pageSize, (byte) 0);
+            return;
+        }
+
+        final int length = length(entry);
+        final long position = firstSector(entry) * SECTOR_SIZE;
+        if (length == pageSize) {
+            // stored uncompressed
+            readFully(data, ByteBuffer.wrap(buf, off, pageSize), position);
+            return;
+        }
+
+        final byte[] src = new byte[length];
+        readFully(data, ByteBuffer.wrap(src), position);
+        try {
+            final int decompressed = decompressor.decompress(src, 0, length, buf, off, pageSize);
+            if (decompressed != pageSize) {
+                throw new IOException("Compressed page " + pageNum + " has " + decompressed + " bytes, expected " + pageSize);
+            }
+        } catch (final LZ4Exception e) {
+            throw new IOException("Compressed page " + pageNum + " is corrupt: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void write(final long offset, final byte[] buf) throws IOException {
+        if (readOnly) {
+            throw new IOException("Page store is read-only");
+        }
+
+        int pos = 0;
+        while (pos < buf.length) {
+            final long current = offset + pos;
+            final long pageNum = current / pageSize;
+            final int pageOffset = (int) (current % pageSize);
+            final int len = Math.min(buf.length - pos, pageSize - pageOffset);
+            if (pageOffset == 0 && len == pageSize) {
+                writePage(pageNum, buf, pos);
+            } else {
+                // only a part of the page is written
+                final byte[] page = new byte[pageSize];
+                readPage(pageNum, page, 0);
+                System.arraycopy(buf, pos, page, pageOffset, len);
+                writePage(pageNum, page, 0);
+            }
+            pos += len;
+        }
+    }
+
+    @GuardedBy("this")
+    private void writePage(final long pageNum, final byte[] buf, final int off) throws IOException {
+        final long oldEntry = entry(pageNum);
+
+        if (isZero(buf, off)) {
+            if (oldEntry != 0) {
+                setEntry(pageNum, 0);
+                storedBytes -= length(oldEntry);
+                release(firstSector(oldEntry), sectorCount(length(oldEntry)));
+            } else if (pageNum >= pages) {
+                setEntry(pageNum, 0);
+            }
+            return;
+        }
+
+        int length = compressor.compress(buf, off, pageSize, compressed, 0, compressed.length);
+        final byte[] src;
+        final int srcOff;
+        if (length >= pageSize) {
+            // not compressible
+            length = pageSize;
+            src = buf;
+            srcOff = off;
+        } else {
+            src = compressed;
+            srcOff = 0;
+        }
+
+        final int count = sectorCount(length);
+        final long first;
+        if (oldEntry != 0 && sectorCount(length(oldEntry)) == count) {
+            // rewrite in place
+            first = firstSector(oldEntry);
+        } else {
+            if (oldEntry != 0) {
+                release(firstSector(oldEntry), sectorCount(length(oldEntry)));
+            }
+            first = allocate(count);
+        }
+        writeFully(data, ByteBuffer.wrap(src, srcOff, length), first * SECTOR_SIZE);
+        setEntry(pageNum, ((first + 1) << LENGTH_BITS) | length);
+
+        if (oldEntry != 0) {
+            storedBytes -= length(oldEntry);
+        }
+        storedBytes += length;
+    }
+
+    /**
+     * Allocates a run of sectors, reusing free sectors if possible.
+     *
+     * When there are no suitable free sectors, but sectors have been released
+     * since the map was last forced, the data file and the map are forced
+     * so that the released sectors can be reused.
+     *
+     * @param count the number of sectors
+     *
+     * @return the first sector
+     *
+     * @throws IOException if the files cannot be forced to disk
+     */
+    @GuardedBy("this")
+    private long allocate(final int count) throws IOException {
+        long first = allocateFree(count);
+        if (first < 0 && hasReleasedSectors) {
+            data.force(false);
+            map.force(false);
+            for (int i = 1; i <= maxSectors; i++) {
+                freeSectors[i].addAll(releasedSectors[i]);
+                releasedSectors[i].clear();
+            }
+            hasReleasedSectors = false;
+            first = allocateFree(count);
+        }
+        if (first < 0) {
+            first = sectors;
+            sectors += count;
+        }
+        return first;
+    }
+
+    @GuardedBy("this")
+    private long allocateFree(final int count) {
+        for (int i = count; i <= maxSectors; i++) {
+            final LongArrayList free = freeSectors[i];
+            if (!free.isEmpty()) {
+                final long first = free.popLong();
+                if (i > count) {
+                    free(first + count, i - count);
+                }
+                return first;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes a run of sectors, which no page on disk points at, available for reuse.
+     */
+    @GuardedBy("this")
+    private void free(final long first, final int count) {
+        freeSectors[count].add(first);
+    }
+
+    /**
+     * Releases the sectors of a page which has been moved or removed, they
+     * are only reused after the map has been forced, see {@link #allocate(int)}.
+     */
+    @GuardedBy("this")
+    private void release(final long first, final int count) {
+        releasedSectors[count].add(first);
+        hasReleasedSectors = true;
+    }
+
+    private long entry(final long pageNum) {
+        final long[][] entries = this.entries;
+        final int chunk = (int) (pageNum / MAP_CHUNK_SIZE);
+        if (chunk >= entries.length || entries[chunk] == null) {
+            return 0;
+        }
+        return entries[chunk][(int) (pageNum % MAP_CHUNK_SIZE)];
+    }
+
+    @GuardedBy("this")
+    private void setEntry(final long pageNum, final long entry) throws IOException {
+        final int chunk = (int) (pageNum / MAP_CHUNK_SIZE);
+        if (chunk >= entries.length) {
+            entries = Arrays.copyOf(entries, chunk + 1);
+        }
+        if (entries[chunk] == null) {
+            entries[chunk] = new long[MAP_CHUNK_SIZE];
+        }
+        entries[chunk][(int) (pageNum % MAP_CHUNK_SIZE)] = entry;
+
+        ByteConversion.longToByte(entry, mapEntry, 0);
+        writeFully(map, ByteBuffer.wrap(mapEntry), MAP_HEADER_LENGTH + pageNum * MAP_ENTRY_LENGTH);
+        if (pageNum >= pages) {
+            pages = pageNum + 1;
+        }
+    }
+
+    private static long firstSector(final long entry) {
+        return (entry >>> LENGTH_BITS) - 1;
+    }
+
+    private static int length(final long entry) {
+        return (int) (entry & LENGTH_MASK);
+    }
+
+    private static int sectorCount(final int length) {
+        return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    }
+
+    private boolean isZero(final byte[] buf, final int off) {
+        for (int i = off; i < off + pageSize; i++) {
+            if (buf[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the uncompressed size of the store, i.e. the size of the
+     * file as seen by {@link Paged}.
+     */
+    @Override
+    public synchronized long size() {
+        return pages * pageSize;
+    }
+
+    /**
+     * Returns the number of bytes of the compressed pages.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Returns the ratio of the uncompressed size to the
+     * size of the compressed pages.
+     *
+     * @return the compression ratio
+     */
+    public synchronized double getCompressionRatio() {
+        return storedBytes == 0 ? 1.0 : (double) (pages * pageSize) / storedBytes;
+    }
+
+    /**
+     * Copies the uncompressed content of the store to the output stream,
+     * so that a backup can be restored with any page store.
+     *
+     * @param os the output stream
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void transferTo(final OutputStream os) throws IOException {
+        final byte[] page = new byte[pageSize];
+        final long pages;
+        synchronized (this) {
+            pages = this.pages;
+        }
+        for (long pageNum = 0; pageNum < pages; pageNum++) {
+            readPage(pageNum, page, 0);
+            os.write(page);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            map.close();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            final int read = channel.read(buf, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Page store which maps the file into memory in fixed size
+ * regions, so that reading or writing a page is a memory copy
+ * from or to the OS page cache rather than a system call.
+ *
+ * The mapping never extends past the end of the file, so the
+ * size of the file on disk is the same as with the
+ * {@link RandomAccessPageStore}. Writes which grow the file are
+ * performed through the {@link FileChannel}; the new tail of the
+ * file is mapped lazily the next time it is read.
+ */
+public class MappedPageStore implements PageStore {
+
+    /**
+     * Size of a mapped region, a multiple of any sensible page size.
+     */
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;  // 64 MB
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final int regionSize;
+
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    /**
+     * Number of bytes from the start of the file which are mapped.
+     */
+    private volatile long mappedSize = 0;
+
+    public MappedPageStore(final RandomAccessFile raf, final boolean readOnly) throws IOException {
+        this(raf, readOnly, DEFAULT_REGION_SIZE);
+    }
+
+    MappedPageStore(final RandomAccessFile raf, final boolean readOnly, final int regionSize) throws IOException {
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.readOnly = readOnly;
+        this.regionSize = regionSize;
+        map(channel.size());
+    }
+
+    /**
+     * Maps the file up to {@code size} bytes. Regions which are already
+     * completely mapped are kept, only the (partial) last region and any
+     * new regions are mapped.
+     *
+     * @param size the number of bytes to map
+     *
+     * @throws IOException if the file cannot be mapped
+     */
+    private synchronized void map(final long size) throws IOException {
+        if (size <= mappedSize) {
+            return;
+        }
+
+        final int count = (int) ((size + regionSize - 1) / regionSize);
+        final MappedByteBuffer[] newRegions = count > regions.length ? Arrays.copyOf(regions, count) : regions;
+        final FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        for (int i = (int) (mappedSize / regionSize); i < count; i++) {
+            final long position = (long) i * regionSize;
+            newRegions[i] = channel.map(mode, position, Math.min(regionSize, size - position));
+        }
+        this.regions = newRegions;
+        this.mappedSize = size;
+    }
+
+    @Override
+    public void read(final long offset, final byte[] buf) throws IOException {
+        if (offset + buf.length > mappedSize) {
+            // the file may have grown since it was last mapped
+            final long size = channel.size();
+            if (size > mappedSize) {
+                map(size);
+            }
+        }
+
+        // read mappedSize before regions, map() publishes them in the opposite order
+        final long mappedSize = this.mappedSize;
+        final MappedByteBuffer[] regions = this.regions;
+        int pos = 0;
+        long current = offset;
+        while (pos < buf.length && current < mappedSize) {
+            final MappedByteBuffer region = regions[(int) (current / regionSize)];
+            final int regionOffset = (int) (current % regionSize);
+            final int len = Math.min(buf.length - pos, region.capacity() - regionOffset);
+
+            final ByteBuffer src = region.duplicate();
+            src.position(regionOffset);
+            src.get(buf, pos, len);
+
+            pos += len;
+            current += len;
+        }
+
+        if (pos < buf.length) {
+            // past the end of the file
+            Arrays.fill(buf, pos, buf.length, (byte) 0);
+        }
+    }
+
+    @Override
+    public void write(final long offset, final byte[] buf) throws IOException {
+        if (readOnly) {
+            throw new IOException("Page store is read-only");
+        }
+
+        // read mappedSize before regions, map() publishes them in the opposite order
+        final long mappedSize = this.mappedSize;
+        final MappedByteBuffer[] regions = this.regions;
+        int pos = 0;
+        long current = offset;
+        while (pos < buf.length && current < mappedSize) {
+            final MappedByteBuffer region = regions[(int) (current / regionSize)];
+            final int regionOffset = (int) (current % regionSize);
+            final int len = Math.min(buf.length - pos, region.capacity() - regionOffset);
+
+            final ByteBuffer dest = region.duplicate();
+            dest.position(regionOffset);
+            dest.put(buf, pos, len);
+
+            pos += len;
+            current += len;
+        }
+
+        if (pos < buf.length) {
+            // grows the file, the new tail is mapped on the next read
+            final ByteBuffer src = ByteBuffer.wrap(buf, pos, buf.length - pos);
+            while (src.hasRemaining()) {
+                current += channel.write(src, current);
+            }
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void transferTo(final OutputStream os) throws IOException {
+        final WritableByteChannel target = Channels.newChannel(os);
+        final long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // the mappings are released when the buffers are garbage collected
+        this.regions = new MappedByteBuffer[0];
+        this.mappedSize = 0;
+        raf.close();
+    }
+}
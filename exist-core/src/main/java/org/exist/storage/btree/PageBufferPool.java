@@ -0,0 +1,518 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.util.Configuration;
+
+import java.nio.ByteBuffer;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Off-heap pool of page frames shared by all {@link Paged} files.
+ *
+ * The pool holds a copy of the raw pages as they are on disk, in
+ * fixed size frames of direct {@link ByteBuffer} slabs outside of the
+ * Java heap. It sits below the object caches of the paged files
+ * ({@link org.exist.storage.cache.Cache}): a page which is not in the
+ * object cache of a file is copied from the pool instead of being read
+ * from disk. Pages are written through to disk, so the frames are never
+ * dirty and can be dropped at any time.
+ *
+ * The memory of the pool is a single global budget, configured by
+ * the {@code bufferPoolSize} attribute of {@code db-connection}, which is
+ * independent of the heap based {@code cacheSize} budget of the
+ * {@link org.exist.storage.DefaultCacheManager}. Slabs are only allocated
+ * when their frames are first used. The frames are split into stripes by
+ * page, each with its own lock and CLOCK replacement.
+ *
+ * Every paged file borrows frames through its own {@link PagedFile},
+ * which accounts for the frames, hits and misses of the file.
+ */
+@ThreadSafe
+public class PageBufferPool implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(PageBufferPool.class);
+
+    public static final String BUFFER_POOL_SIZE_ATTRIBUTE = "bufferPoolSize";
+    public static final String PROPERTY_BUFFER_POOL_SIZE = "db-connection.buffer-pool-size";
+
+    /**
+     * Size of the pool in megabytes, 0 disables the pool.
+     */
+    public static final int DEFAULT_BUFFER_POOL_SIZE = 0;
+
+    /**
+     * Maximum number of stripes of the pool.
+     */
+    static final int MAX_STRIPES = 64;
+
+    /**
+     * Minimum number of frames in a stripe.
+     */
+    static final int MIN_STRIPE_FRAMES = 64;
+
+    /**
+     * Maximum size of a single direct buffer.
+     */
+    static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;  // 64 MB
+
+    private static final int FILE_ID_SHIFT = 40;
+    private static final long PAGE_NUM_MASK = (1L << FILE_ID_SHIFT) - 1;
+    private static final long NO_KEY = -1;
+
+    private int pageSize;
+    private long size;
+    private Stripe[] stripes = null;
+    private int stripeMask;
+
+    private final AtomicInteger nextFileId = new AtomicInteger();
+    private final ConcurrentMap<Integer, PagedFile> files = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+
+    public PageBufferPool() {
+    }
+
+    PageBufferPool(final int pageSize, final long size) {
+        init(pageSize, size);
+    }
+
+    @Override
+    public void configure(final Configuration configuration) {
+        int pageSize = configuration.getInteger(BrokerPool.PROPERTY_PAGE_SIZE);
+        if (pageSize < 0) {
+            pageSize = BrokerPool.DEFAULT_PAGE_SIZE;
+        }
+        int poolSize = configuration.getInteger(PROPERTY_BUFFER_POOL_SIZE);
+        if (poolSize < 0) {
+            poolSize = DEFAULT_BUFFER_POOL_SIZE;
+        }
+        init(pageSize, poolSize * 1024L * 1024L);
+    }
+
+    private void init(final int pageSize, final long size) {
+        this.pageSize = pageSize;
+        final long frames = size / pageSize;
+        if (frames < MIN_STRIPE_FRAMES) {
+            if (size > 0) {
+                LOG.warn("Page buffer pool of " + size + " bytes is too small, it is disabled");
+            }
+            return;
+        }
+
+        final int stripeCount = Integer.highestOneBit((int) Math.min(MAX_STRIPES, frames / MIN_STRIPE_FRAMES));
+        final long stripeFrames = frames / stripeCount;
+        if (stripeFrames > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Page buffer pool is too large: " + size);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe((int) stripeFrames);
+        }
+        this.size = stripeFrames * stripeCount * pageSize;
+
+        final NumberFormat nf = NumberFormat.getNumberInstance();
+        LOG.info("Page buffer pool: " + nf.format(this.size / 1024L) + "k; frames: " + nf.format(stripeFrames * stripeCount)
+                + "; stripes: " + stripeCount);
+    }
+
+    @Override
+    public void shutdown() {
+        if (stripes != null) {
+            for (final Stripe stripe : stripes) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * @return true if the pool has frames, i.e. a size has been configured
+     */
+    public boolean isEnabled() {
+        return stripes != null;
+    }
+
+    /**
+     * @return the size of a frame in bytes
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Register a paged file with the pool.
+     *
+     * @param name the name of the file, used for reporting
+     *
+     * @return the account through which the file uses the pool,
+     *     or null if the pool is disabled
+     */
+    public PagedFile register(final String name) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final PagedFile file = new PagedFile(nextFileId.getAndIncrement(), name);
+        files.put(file.id, file);
+        return file;
+    }
+
+    /**
+     * @return the configured size of the pool in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of frames in the pool
+     */
+    public long getFrames() {
+        return size / pageSize;
+    }
+
+    /**
+     * @return the number of frames holding a page
+     */
+    public long getUsedFrames() {
+        return sum(file -> file.frames.get());
+    }
+
+    /**
+     * @return the number of bytes of direct memory allocated by the pool
+     */
+    public long getAllocated() {
+        long allocated = 0;
+        if (stripes != null) {
+            for (final Stripe stripe : stripes) {
+                allocated += stripe.getAllocated();
+            }
+        }
+        return allocated;
+    }
+
+    public long getHits() {
+        return sum(file -> file.hits.sum());
+    }
+
+    public long getMisses() {
+        return sum(file -> file.misses.sum());
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private long sum(final ToLongFunction<PagedFile> getter) {
+        long sum = 0;
+        for (final PagedFile file : files.values()) {
+            sum += getter.applyAsLong(file);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the registered files by name
+     */
+    public Map<String, PagedFile> getFiles() {
+        final Map<String, PagedFile> byName = new HashMap<>();
+        for (final PagedFile file : files.values()) {
+            byName.put(file.getName(), file);
+        }
+        return byName;
+    }
+
+    private Stripe stripeFor(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return stripes[(int) h & stripeMask];
+    }
+
+    /**
+     * The frames of a single paged file, and their accounting.
+     */
+    @ThreadSafe
+    public final class PagedFile {
+        private final int id;
+        private final String name;
+        private final AtomicInteger frames = new AtomicInteger();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        /**
+         * Incremented by every write, so that a page read from disk is not
+         * loaded into the pool after a concurrent write of the page.
+         */
+        private final AtomicLong writes = new AtomicLong();
+
+        private volatile boolean closed = false;
+
+        private PagedFile(final int id, final String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        private long key(final long pageNum) {
+            return ((long) id << FILE_ID_SHIFT) | (pageNum & PAGE_NUM_MASK);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Copy a page from the pool.
+         *
+         * @param pageNum the page number
+         * @param page a buffer of the size of a frame
+         *
+         * @return true if the page was in the pool, false if it has to be read from disk
+         */
+        public boolean read(final long pageNum, final byte[] page) {
+            final long key = key(pageNum);
+            if (stripeFor(key).read(key, page)) {
+                hits.increment();
+                return true;
+            }
+            misses.increment();
+            return false;
+        }
+
+        /**
+         * @return the write count to pass to {@link #load(long, byte[], long)}
+         *     for a page which is about to be read from disk
+         */
+        public long getWriteCount() {
+            return writes.get();
+        }
+
+        /**
+         * Add a page which has been read from disk to the pool,
+         * unless the file has been written since.
+         *
+         * @param pageNum the page number
+         * @param page the content of the page
+         * @param writeCount the write count from before the page was read
+         */
+        public void load(final long pageNum, final byte[] page, final long writeCount) {
+            if (!closed && writes.get() == writeCount) {
+                final long key = key(pageNum);
+                stripeFor(key).put(key, page, this, true);
+            }
+        }
+
+        /**
+         * Update a page which has been written to disk.
+         *
+         * @param pageNum the page number
+         * @param page the content of the page
+         */
+        public void write(final long pageNum, final byte[] page) {
+            writes.incrementAndGet();
+            if (!closed) {
+                final long key = key(pageNum);
+                stripeFor(key).put(key, page, this, false);
+            }
+        }
+
+        /**
+         * Return the frames of the file to the pool,
+         * for example because the file was truncated.
+         */
+        public void invalidate() {
+            writes.incrementAndGet();
+            for (final Stripe stripe : stripes) {
+                stripe.removeFile(id);
+            }
+        }
+
+        /**
+         * Return the frames of the file to the pool
+         * and stop using the pool.
+         */
+        public void close() {
+            closed = true;
+            invalidate();
+            files.remove(id, this);
+        }
+
+        public int getFrames() {
+            return frames.get();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+    }
+
+    /**
+     * A part of the frames, with its own lock and clock.
+     */
+    private final class Stripe {
+        private final int frameCount;
+        private final int framesPerSlab;
+
+        @GuardedBy("this") private final ByteBuffer[] slabs;
+        @GuardedBy("this") private final long[] keys;
+        @GuardedBy("this") private final boolean[] referenced;
+        @GuardedBy("this") private final PagedFile[] owners;
+        @GuardedBy("this") private final Long2IntOpenHashMap index;
+        @GuardedBy("this") private final IntArrayList free = new IntArrayList();
+        @GuardedBy("this") private int highWater = 0;
+        @GuardedBy("this") private int clockHand = 0;
+
+        Stripe(final int frameCount) {
+            this.frameCount = frameCount;
+            this.framesPerSlab = Math.max(1, Math.min(frameCount, MAX_SLAB_SIZE / pageSize));
+            this.slabs = new ByteBuffer[(frameCount + framesPerSlab - 1) / framesPerSlab];
+            this.keys = new long[frameCount];
+            this.referenced = new boolean[frameCount];
+            this.owners = new PagedFile[frameCount];
+            this.index = new Long2IntOpenHashMap(frameCount);
+            this.index.defaultReturnValue(-1);
+        }
+
+        synchronized boolean read(final long key, final byte[] page) {
+            final int frame = index.get(key);
+            if (frame < 0) {
+                return false;
+            }
+            referenced[frame] = true;
+            position(frame).get(page, 0, pageSize);
+            return true;
+        }
+
+        synchronized void put(final long key, final byte[] page, final PagedFile owner, final boolean ifAbsent) {
+            int frame = index.get(key);
+            if (frame >= 0) {
+                if (ifAbsent) {
+                    return;
+                }
+            } else {
+                frame = allocate();
+                keys[frame] = key;
+                owners[frame] = owner;
+                index.put(key, frame);
+                owner.frames.incrementAndGet();
+            }
+            referenced[frame] = true;
+            position(frame).put(page, 0, pageSize);
+        }
+
+        synchronized void removeFile(final int fileId) {
+            for (int frame = 0; frame < highWater; frame++) {
+                if (keys[frame] != NO_KEY && (int) (keys[frame] >>> FILE_ID_SHIFT) == fileId) {
+                    release(frame);
+                    free.add(frame);
+                }
+            }
+        }
+
+        synchronized long getAllocated() {
+            long allocated = 0;
+            for (final ByteBuffer slab : slabs) {
+                if (slab != null) {
+                    allocated += slab.capacity();
+                }
+            }
+            return allocated;
+        }
+
+        synchronized void clear() {
+            for (int frame = 0; frame < highWater; frame++) {
+                if (keys[frame] != NO_KEY) {
+                    release(frame);
+                }
+            }
+            free.clear();
+            highWater = 0;
+            clockHand = 0;
+            // the direct memory is released when the buffers are garbage collected
+            for (int i = 0; i < slabs.length; i++) {
+                slabs[i] = null;
+            }
+        }
+
+        private void release(final int frame) {
+            index.remove(keys[frame]);
+            owners[frame].frames.decrementAndGet();
+            owners[frame] = null;
+            keys[frame] = NO_KEY;
+            referenced[frame] = false;
+        }
+
+        /**
+         * @return a frame which is not in use
+         */
+        private int allocate() {
+            if (!free.isEmpty()) {
+                return free.popInt();
+            }
+            if (highWater < frameCount) {
+                return highWater++;
+            }
+
+            // CLOCK: evict the first frame which has not been referenced since the last sweep
+            while (true) {
+                final int frame = clockHand;
+                clockHand = (clockHand + 1) % frameCount;
+                if (referenced[frame]) {
+                    referenced[frame] = false;
+                } else {
+                    release(frame);
+                    evictions.increment();
+                    return frame;
+                }
+            }
+        }
+
+        private ByteBuffer position(final int frame) {
+            final int slabIdx = frame / framesPerSlab;
+            ByteBuffer slab = slabs[slabIdx];
+            if (slab == null) {
+                final int frames = Math.min(framesPerSlab, frameCount - slabIdx * framesPerSlab);
+                slab = ByteBuffer.allocateDirect(frames * pageSize);
+                slabs[slabIdx] = slab;
+            }
+            slab.clear();
+            slab.position((frame % framesPerSlab) * pageSize);
+            return slab;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+/**
+ * Low-level byte store underlying a {@link Paged} file.
+ *
+ * A page store only knows about absolute file offsets, the
+ * page layout is entirely the responsibility of {@link Paged}.
+ * A page store must allow concurrent reads, and reads concurrent
+ * with a write of a different page; callers are expected to hold
+ * the lock of the paged file.
+ */
+public interface PageStore extends Closeable {
+
+    /**
+     * The available page store implementations, as
+     * selected in the {@code page-store} section of conf.xml.
+     */
+    enum Type {
+        /**
+         * Reads and writes every page through {@link RandomAccessFile}.
+         */
+        RANDOM_ACCESS("random-access"),
+
+        /**
+         * Reads and writes pages through memory-mapped regions of the file.
+         */
+        MAPPED("mapped"),
+
+        /**
+         * Compresses every page, see {@link CompressedPageStore}.
+         */
+        COMPRESSED("compressed");
+
+        private final String configName;
+
+        Type(final String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        /**
+         * Get the type of page store from its name in conf.xml.
+         *
+         * @param configName the name of the page store type
+         *
+         * @return the type of page store, or null if the name is unknown
+         */
+        public static @Nullable Type fromConfigName(final String configName) {
+            for (final Type type : values()) {
+                if (type.configName.equalsIgnoreCase(configName)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Create a page store of this type on top of an already opened file.
+         *
+         * @param file the path of the file
+         * @param raf the opened file
+         * @param readOnly true if the file was opened read-only
+         * @param pageSize the size of a page of the file
+         *
+         * @return the page store
+         *
+         * @throws IOException if the page store cannot be created
+         */
+        public PageStore create(final Path file, final RandomAccessFile raf, final boolean readOnly, final int pageSize) throws IOException {
+            switch (this) {
+                case MAPPED:
+                    return new MappedPageStore(raf, readOnly);
+
+                case COMPRESSED:
+                    return new CompressedPageStore(file, raf, readOnly, pageSize);
+
+                case RANDOM_ACCESS:
+                default:
+                    return new RandomAccessPageStore(raf);
+            }
+        }
+    }
+
+    /**
+     * Reads bytes from the store into the buffer.
+     *
+     * If the end of the store is reached before the buffer
+     * is full, the remainder of the buffer is zero filled.
+     *
+     * @param offset the absolute offset in the store
+     * @param buf the buffer to read into
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void read(long offset, byte[] buf) throws IOException;
+
+    /**
+     * Writes all bytes of the buffer to the store, growing
+     * the store if necessary.
+     *
+     * @param offset the absolute offset in the store
+     * @param buf the bytes to write
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void write(long offset, byte[] buf) throws IOException;
+
+    /**
+     * Returns the current size of the store in bytes.
+     *
+     * @return the size of the store
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    long size() throws IOException;
+
+    /**
+     * Copies the entire content of the store to the output stream.
+     *
+     * @param os the output stream
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void transferTo(OutputStream os) throws IOException;
+
+    /**
+     * Returns whether the store can only read whole pages, so that
+     * reading a part of a page costs as much as reading all of it.
+     *
+     * @return true if callers should always read whole pages
+     */
+    default boolean isPageGranular() {
+        return false;
+    }
+}
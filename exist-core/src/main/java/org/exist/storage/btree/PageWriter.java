@@ -0,0 +1,295 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.DBBroker;
+import org.exist.storage.journal.JournalException;
+import org.exist.storage.journal.JournalManager;
+import org.exist.storage.journal.Lsn;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.util.Configuration;
+import org.exist.util.FileUtils;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
+/**
+ * Background writer for the dirty pages of the {@link BTree} files.
+ *
+ * Every paged file keeps a dirty page table of the pages which have
+ * been modified by logged operations, but not yet been written. At each
+ * interval the writer writes a bounded number of these pages from the
+ * caches of the files in the order of their offset in the file, so that
+ * fewer dirty pages have to be written when they are evicted from a cache
+ * or when the database is synced.
+ *
+ * The writer never waits for a file: a file which is locked by another
+ * thread is skipped until the next interval. Only files which are guarded
+ * by a btree lock of the {@link LockManager} are written.
+ *
+ * The oldest LSN of the dirty page tables, see {@link #getRedoLsn()},
+ * is recorded by fuzzy checkpoints, from which recovery has to
+ * redo the journal.
+ */
+@ThreadSafe
+public class PageWriter implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(PageWriter.class);
+
+    public static final String CONFIGURATION_ELEMENT_NAME = "page-writer";
+    public static final String ENABLED_ATTRIBUTE = "enabled";
+    public static final String INTERVAL_ATTRIBUTE = "interval";
+    public static final String MAX_PAGES_ATTRIBUTE = "max-pages";
+    public static final String PROPERTY_ENABLED = "db-connection.page-writer.enabled";
+    public static final String PROPERTY_INTERVAL = "db-connection.page-writer.interval";
+    public static final String PROPERTY_MAX_PAGES = "db-connection.page-writer.max-pages";
+
+    public static final long DEFAULT_INTERVAL = 1000;
+    public static final int DEFAULT_MAX_PAGES = 256;
+
+    private final Set<BTree> files = ConcurrentHashMap.newKeySet();
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+
+    private boolean enabled = false;
+    private long interval = DEFAULT_INTERVAL;
+    private int maxPages = DEFAULT_MAX_PAGES;
+
+    private BrokerPool pool;
+    private LockManager lockManager;
+    private Optional<JournalManager> journalManager = Optional.empty();
+
+    @GuardedBy("this") private boolean running = false;
+    private Thread thread = null;
+
+    @Override
+    public void configure(final Configuration configuration) {
+        this.enabled = configuration.getProperty(PROPERTY_ENABLED, false);
+        this.interval = configuration.getProperty(PROPERTY_INTERVAL, DEFAULT_INTERVAL);
+        this.maxPages = configuration.getProperty(PROPERTY_MAX_PAGES, DEFAULT_MAX_PAGES);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Page writer enabled = " + enabled + "; interval = " + interval + "ms; max pages = " + maxPages);
+        }
+    }
+
+    @Override
+    public void prepare(final BrokerPool pool) {
+        this.pool = pool;
+        this.lockManager = pool.getLockManager();
+        this.journalManager = pool.getJournalManager();
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        thread = newInstanceThread(pool, "page-writer", this::run);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop(final DBBroker systemBroker) {
+        stopWriter();
+    }
+
+    @Override
+    public void shutdown() {
+        stopWriter();
+        files.clear();
+    }
+
+    /**
+     * Stops the writer thread and waits until it has finished
+     * writing pages. The thread is not interrupted, as an interrupt
+     * would close the channels of the files it is writing to.
+     */
+    private void stopWriter() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                if (running) {
+                    try {
+                        wait(interval);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        running = false;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            try {
+                writeDirtyPages(maxPages);
+            } catch (final RuntimeException e) {
+                LOG.error("Error whilst writing dirty pages: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Registers a file whose dirty pages are written by the writer.
+     *
+     * @param file the file
+     */
+    public void register(final BTree file) {
+        files.add(file);
+    }
+
+    /**
+     * Deregisters a file when it is closed.
+     *
+     * @param file the file
+     */
+    public void deregister(final BTree file) {
+        files.remove(file);
+    }
+
+    /**
+     * Writes up to maxPages dirty pages of the registered files.
+     *
+     * @param maxPages the maximum number of pages to write
+     *
+     * @return the number of pages written
+     */
+    public int writeDirtyPages(final int maxPages) {
+        int written = 0;
+        for (final BTree file : files) {
+            if (written >= maxPages) {
+                break;
+            }
+            final String lockName = file.getLockName();
+            if (lockName == null || file.getDirtyPageCount() == 0) {
+                continue;
+            }
+
+            final Optional<ManagedLock<ReentrantReadWriteLock>> maybeLock = lockManager.tryAcquireBtreeWriteLock(lockName);
+            if (!maybeLock.isPresent()) {
+                // busy, try again at the next interval
+                filesSkipped.increment();
+                continue;
+            }
+            try (final ManagedLock<ReentrantReadWriteLock> lock = maybeLock.get()) {
+                // write-ahead logging: the journal entries have to be on disk before the pages
+                if (journalManager.isPresent()) {
+                    journalManager.get().sync();
+                }
+                final int count = file.writeDirtyPages(maxPages - written);
+                written += count;
+                pagesWritten.add(count);
+            } catch (final JournalException e) {
+                LOG.warn("Unable to sync journal before writing pages of " + FileUtils.fileName(file.getFile()) + ": " + e.getMessage(), e);
+                return written;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Returns the oldest LSN of the dirty page tables of all registered files.
+     *
+     * @return the LSN from which recovery has to redo the journal, or
+     *     {@link Lsn#LSN_INVALID} if no file has dirty pages
+     */
+    public Lsn getRedoLsn() {
+        Lsn redoLsn = Lsn.LSN_INVALID;
+        for (final BTree file : files) {
+            final Lsn lsn = file.getOldestDirtyLsn();
+            if (!lsn.equals(Lsn.LSN_INVALID) && (redoLsn.equals(Lsn.LSN_INVALID) || lsn.compareTo(redoLsn) < 0)) {
+                redoLsn = lsn;
+            }
+        }
+        return redoLsn;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public int getFiles() {
+        return files.size();
+    }
+
+    /**
+     * Returns the number of pages in the dirty page tables of all registered files.
+     *
+     * @return the number of dirty pages
+     */
+    public long getDirtyPages() {
+        long dirtyPages = 0;
+        for (final BTree file : files) {
+            dirtyPages += file.getDirtyPageCount();
+        }
+        return dirtyPages;
+    }
+
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    public long getFilesSkipped() {
+        return filesSkipped.sum();
+    }
+}
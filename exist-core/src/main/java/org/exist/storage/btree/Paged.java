@@ -76,6 +76,7 @@ import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
+import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.xquery.Constants;
 
@@ -90,6 +91,8 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
@@ -120,6 +123,14 @@ public abstract class Paged implements AutoCloseable {
     public static final int OFFSET_RECORD_COUNT = OFFSET_MAX_KEY_SIZE + LENGTH_MAX_KEY_SIZE; //43
     public static final int OFFSET_REMAINDER = OFFSET_RECORD_COUNT + LENGTH_RECORD_COUNT; //51
 
+    public static final String CONFIGURATION_PAGE_STORE_ELEMENT_NAME = "page-store";
+    public static final String CONFIGURATION_PAGE_STORE_FILE_ELEMENT_NAME = "file";
+    public static final String PAGE_STORE_DEFAULT_ATTRIBUTE = "default";
+    public static final String PAGE_STORE_FILE_NAME_ATTRIBUTE = "name";
+    public static final String PAGE_STORE_FILE_TYPE_ATTRIBUTE = "type";
+    public static final String PROPERTY_PAGE_STORE_DEFAULT = "db-connection.page-store.default";
+    public static final String PROPERTY_PAGE_STORE_FILES = "db-connection.page-store.files";
+
     protected final static Logger LOG = LogManager.getLogger(Paged.class);
 
     protected final static byte DELETED = 127;
@@ -131,9 +142,19 @@ public abstract class Paged implements AutoCloseable {
     protected final short fileVersion;
     private final FileHeader fileHeader;
     private final byte[] tempPageData;
-    private final byte[] tempHeaderData;
+    private final Configuration configuration;
+    private final PageBufferPool bufferPool;
+
+    /**
+     * Dirty page table: maps the number of each page which has been
+     * modified by a logged operation, but not yet been written, to
+     * the LSN of the first operation which modified it. Sorted by
+     * page number, i.e. by offset in the file.
+     */
+    private final ConcurrentSkipListMap<Long, Lsn> dirtyPages = new ConcurrentSkipListMap<>();
 
-    private RandomAccessFile raf;
+    private PageStore pageStore;
+    private PageBufferPool.PagedFile bufferPoolFile = null;
     private Path file;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
@@ -142,7 +163,8 @@ public abstract class Paged implements AutoCloseable {
         this.fileVersion = fileVersion;
         this.fileHeader = createFileHeader(pool.getPageSize());
         this.tempPageData = new byte[fileHeader.pageSize];
-        this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        this.configuration = pool.getConfiguration();
+        this.bufferPool = pool.getPageBufferPool();
     }
 
     public final static void setPageSize(final int pageSize) {
@@ -164,8 +186,10 @@ public abstract class Paged implements AutoCloseable {
      */
     @Override
     public void close() throws DBException {
+        releaseBufferPool();
+        dirtyPages.clear();
         try {
-            raf.close();
+            pageStore.close();
         } catch (final IOException e) {
             throw new DBException("an error occurred while closing database file: " + e.getMessage());
         }
@@ -229,12 +253,7 @@ public abstract class Paged implements AutoCloseable {
      * @throws IOException if an I/O error occurs
      */
     public void backupToStream(final OutputStream os) throws IOException {
-        raf.seek(0);
-        final byte[] buf = new byte[4096];
-        int len;
-        while ((len = raf.read(buf)) > 0) {
-            os.write(buf, 0, len);
-        }
+        pageStore.transferTo(os);
     }
 
     /**
@@ -260,13 +279,16 @@ public abstract class Paged implements AutoCloseable {
      * all underlying resources and caches.
      */
     public void closeAndRemove() {
+        releaseBufferPool();
+        dirtyPages.clear();
         try {
-            raf.close();
+            pageStore.close();
         } catch (final IOException e) {
             //TODO : forward the exception ? -pb
             LOG.error("Failed to close data file: " + file.toAbsolutePath().toString());
         }
         FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(CompressedPageStore.getMapFile(file));
     }
 
     protected final Page getFreePage() throws IOException {
@@ -399,6 +421,7 @@ public abstract class Paged implements AutoCloseable {
         this.file = file;
         fileIsNew = !Files.exists(file);
         try {
+            RandomAccessFile raf;
             if ((!Files.exists(file)) || Files.isWritable(file)) {
                 try {
                     raf = new RandomAccessFile(file.toFile(), "rw");
@@ -418,12 +441,143 @@ public abstract class Paged implements AutoCloseable {
                 readOnly = true;
                 raf = new RandomAccessFile(file.toFile(), "r");
             }
+
+            PageStore.Type pageStoreType = getPageStoreType(file);
+            if (CompressedPageStore.isCompressed(file)) {
+                if (pageStoreType != PageStore.Type.COMPRESSED) {
+                    LOG.warn(FileUtils.fileName(file) + " was written with the compressed page store, which will be used instead of the configured " + pageStoreType.getConfigName() + " page store");
+                }
+                pageStoreType = PageStore.Type.COMPRESSED;
+            } else if (pageStoreType == PageStore.Type.COMPRESSED && raf.length() > 0) {
+                LOG.warn(FileUtils.fileName(file) + " was written without compression, it has to be restored from a backup to be compressed. Using the random-access page store");
+                pageStoreType = PageStore.Type.RANDOM_ACCESS;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Using " + pageStoreType.getConfigName() + " page store for " + FileUtils.fileName(file));
+            }
+            pageStore = pageStoreType.create(file, raf, readOnly, fileHeader.pageSize);
+
+            releaseBufferPool();
+            if (bufferPool != null) {
+                bufferPoolFile = bufferPool.register(FileUtils.fileName(file));
+            }
         } catch (final IOException e) {
             LOG.warn("An exception occurred while opening database file " +
                 file.toAbsolutePath().toString() + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Returns the LSN of the oldest logged operation whose modifications
+     * have not yet been written to this file. Recovery has to redo the
+     * journal from this LSN onwards.
+     *
+     * @return the oldest LSN of a dirty page, or {@link Lsn#LSN_INVALID}
+     *     if there are no dirty pages
+     */
+    public Lsn getOldestDirtyLsn() {
+        Lsn oldest = Lsn.LSN_INVALID;
+        for (final Lsn lsn : dirtyPages.values()) {
+            if (oldest.equals(Lsn.LSN_INVALID) || lsn.compareTo(oldest) < 0) {
+                oldest = lsn;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Returns the number of pages in the dirty page table.
+     *
+     * @return the number of dirty pages
+     */
+    public int getDirtyPageCount() {
+        return dirtyPages.size();
+    }
+
+    /**
+     * Writes up to maxPages pages of the dirty page table in the
+     * order of their offset in the file.
+     *
+     * The caller must hold the write lock of the file and must have
+     * flushed the journal, so that the log records of the written pages
+     * are on disk before the pages (write-ahead logging).
+     *
+     * @param maxPages the maximum number of pages to write
+     *
+     * @return the number of pages written
+     */
+    public int writeDirtyPages(final int maxPages) {
+        int written = 0;
+        for (final Long pageNum : dirtyPages.keySet()) {
+            if (written >= maxPages) {
+                break;
+            }
+            if (writeCachedPage(pageNum)) {
+                written++;
+            } else {
+                // not cached or clean: the page has been written by another path
+                dirtyPages.remove(pageNum);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes the page if it is held dirty in a cache of this file.
+     * Implementations which cache pages have to override this method.
+     *
+     * @param pageNum the number of the page
+     *
+     * @return true if the page was written
+     */
+    protected boolean writeCachedPage(final long pageNum) {
+        return false;
+    }
+
+    private void releaseBufferPool() {
+        if (bufferPoolFile != null) {
+            bufferPoolFile.close();
+            bufferPoolFile = null;
+        }
+    }
+
+    /**
+     * Pages are only kept in the {@link PageBufferPool} if they fit
+     * exactly into its frames, the page size of an existing file
+     * is only known once its header has been read.
+     *
+     * @return true if the pages of this file are kept in the buffer pool
+     */
+    private boolean usesBufferPool() {
+        return bufferPoolFile != null && fileHeader.pageSize == bufferPool.getPageSize();
+    }
+
+    /**
+     * Determines the type of page store to use for a file from the
+     * {@code page-store} section of conf.xml. A type configured for the
+     * file name takes precedence over the configured default.
+     *
+     * @param file the database file
+     *
+     * @return the type of page store
+     */
+    private PageStore.Type getPageStoreType(final Path file) {
+        if (configuration != null) {
+            final Map<String, PageStore.Type> files = (Map<String, PageStore.Type>) configuration.getProperty(PROPERTY_PAGE_STORE_FILES);
+            if (files != null) {
+                final PageStore.Type type = files.get(FileUtils.fileName(file));
+                if (type != null) {
+                    return type;
+                }
+            }
+            final PageStore.Type defaultType = (PageStore.Type) configuration.getProperty(PROPERTY_PAGE_STORE_DEFAULT);
+            if (defaultType != null) {
+                return defaultType;
+            }
+        }
+        return PageStore.Type.RANDOM_ACCESS;
+    }
+
     /**
      * Unlinks a set of pages starting at the specified page.
      *
@@ -713,8 +867,7 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void read() throws IOException {
-            raf.seek(0);
-            raf.read(buf);
+            pageStore.read(0, buf);
             read(buf);
             calculateWorkSize();
             dirty = false;
@@ -850,9 +1003,8 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void write() throws IOException {
-            raf.seek(0);
             write(buf);
-            raf.write(buf);
+            pageStore.write(0, buf);
             dirty = false;
         }
     }
@@ -876,6 +1028,7 @@ public abstract class Paged implements AutoCloseable {
 
         public Page() {
             this.header = createPageHeader();
+            this.header.page = this;
         }
 
         /**
@@ -945,17 +1098,21 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public byte[] read() throws IOException {
+            if (usesBufferPool()) {
+                return readThroughBufferPool();
+            }
+            if (pageStore.isPageGranular()) {
+                return readWholePage();
+            }
             try {
-                if (raf.getFilePointer() != offset) {
-                    raf.seek(offset);
-                }
-                Arrays.fill(tempHeaderData, (byte)0);
-                raf.read(tempHeaderData);
+                // a local buffer, pages may be read by concurrent readers
+                final byte[] headerData = new byte[fileHeader.pageHeaderSize];
+                pageStore.read(offset, headerData);
                 // Read in the header
-                header.read(tempHeaderData, 0);
+                header.read(headerData, 0);
                 // Read the working data
                 final byte[] workData = new byte[header.dataLen];
-                raf.read(workData);
+                pageStore.read(offset + headerData.length, workData);
                 return workData;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: " + getPageInfo(), e);
@@ -963,6 +1120,34 @@ public abstract class Paged implements AutoCloseable {
             }
         }
 
+        private byte[] readThroughBufferPool() throws IOException {
+            try {
+                final byte[] pageData = new byte[fileHeader.pageSize];
+                if (!bufferPoolFile.read(pageNum, pageData)) {
+                    final long writeCount = bufferPoolFile.getWriteCount();
+                    pageStore.read(offset, pageData);
+                    bufferPoolFile.load(pageNum, pageData, writeCount);
+                }
+                header.read(pageData, 0);
+                return Arrays.copyOfRange(pageData, fileHeader.pageHeaderSize, fileHeader.pageHeaderSize + header.dataLen);
+            } catch(final Exception e) {
+                LOG.warn("error while reading page: " + getPageInfo(), e);
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        private byte[] readWholePage() throws IOException {
+            try {
+                final byte[] pageData = new byte[fileHeader.pageSize];
+                pageStore.read(offset, pageData);
+                header.read(pageData, 0);
+                return Arrays.copyOfRange(pageData, fileHeader.pageHeaderSize, fileHeader.pageHeaderSize + header.dataLen);
+            } catch(final Exception e) {
+                LOG.warn("error while reading page: " + getPageInfo(), e);
+                throw new IOException(e.getMessage());
+            }
+        }
+
         public void setPageNum(final long pageNum) {
             this.pageNum = pageNum;
             offset = fileHeader.headerSize + (pageNum * fileHeader.pageSize);
@@ -973,25 +1158,41 @@ public abstract class Paged implements AutoCloseable {
         }
 
         private final void write(final byte[] data) throws IOException {
-            if(data == null) {
-                // Removed page: fill with 0
-                Arrays.fill(tempPageData, (byte)0);
-                header.setLsn(Lsn.LSN_INVALID);
-            }
-            // Write out the header
-            header.write(tempPageData, 0);
-            header.dirty = false;
-            if (data != null) {
-                if (data.length > fileHeader.workSize) {
-                    throw new IOException("page: " + getPageInfo() + ": data length too large: " + data.length);
-                } else {
-                    System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
+            // pages of a multi-reader file may be flushed by several readers
+            synchronized (tempPageData) {
+                if(data == null) {
+                    // Removed page: fill with 0
+                    Arrays.fill(tempPageData, (byte)0);
+                    header.setLsn(Lsn.LSN_INVALID);
                 }
+                // Write out the header
+                header.write(tempPageData, 0);
+                header.dirty = false;
+                if (data != null) {
+                    if (data.length > fileHeader.workSize) {
+                        throw new IOException("page: " + getPageInfo() + ": data length too large: " + data.length);
+                    } else {
+                        System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
+                    }
+                }
+                pageStore.write(offset, tempPageData);
+                if (usesBufferPool()) {
+                    bufferPoolFile.write(pageNum, tempPageData);
+                }
+                dirtyPages.remove(pageNum);
             }
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
+        }
+
+        /**
+         * Records the page in the dirty page table, unless it
+         * is already dirty.
+         *
+         * @param lsn the LSN of the operation which modified the page
+         */
+        private void setDirty(final Lsn lsn) {
+            if (!lsn.equals(Lsn.LSN_INVALID)) {
+                dirtyPages.putIfAbsent(pageNum, lsn);
             }
-            raf.write(tempPageData);
         }
 
         @Override
@@ -1011,11 +1212,8 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public void dumpPage() throws IOException {
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
             final byte[] data = new byte[fileHeader.pageSize];
-            raf.read(data);
+            pageStore.read(offset, data);
             LOG.debug("Contents of page " + pageNum + ": " + hexDump(data));
         }
     }
@@ -1034,6 +1232,9 @@ public abstract class Paged implements AutoCloseable {
         private byte status = UNUSED;
 
         private Lsn lsn = Lsn.LSN_INVALID;
+
+        /** The page which owns this header, if any */
+        private Page page = null;
         
         public PageHeader() {
         }
@@ -1098,6 +1299,9 @@ public abstract class Paged implements AutoCloseable {
 
         public final void setLsn(final Lsn lsn) {
             this.lsn = lsn;
+            if (page != null) {
+                page.setDirty(lsn);
+            }
         }
 
         public int read(final byte[] data, int offset) throws IOException {
@@ -0,0 +1,87 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Page store which performs a seek and a read or write
+ * on a {@link RandomAccessFile} for each access.
+ *
+ * This is the historic behaviour of {@link Paged} and remains
+ * the default. As the file pointer is shared, all access is
+ * serialized.
+ */
+public class RandomAccessPageStore implements PageStore {
+
+    private final RandomAccessFile raf;
+
+    public RandomAccessPageStore(final RandomAccessFile raf) {
+        this.raf = raf;
+    }
+
+    @Override
+    public synchronized void read(final long offset, final byte[] buf) throws IOException {
+        if (raf.getFilePointer() != offset) {
+            raf.seek(offset);
+        }
+        int read = 0;
+        while (read < buf.length) {
+            final int len = raf.read(buf, read, buf.length - read);
+            if (len < 0) {
+                // past the end of the file
+                Arrays.fill(buf, read, buf.length, (byte) 0);
+                break;
+            }
+            read += len;
+        }
+    }
+
+    @Override
+    public synchronized void write(final long offset, final byte[] buf) throws IOException {
+        if (raf.getFilePointer() != offset) {
+            raf.seek(offset);
+        }
+        raf.write(buf);
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        return raf.length();
+    }
+
+    @Override
+    public synchronized void transferTo(final OutputStream os) throws IOException {
+        raf.seek(0);
+        final byte[] buf = new byte[4096];
+        int len;
+        while ((len = raf.read(buf)) > 0) {
+            os.write(buf, 0, len);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -103,6 +103,16 @@ public interface Cache<T extends Cacheable> {
 
     boolean flush();
 
+    /**
+     * Write the item with the given key to disk if it is
+     * in the cache and dirty, without changing its position
+     * in the cache.
+     *
+     * @param key The key of the item
+     * @return true if the item was written
+     */
+    boolean flush(long key);
+
     /**
      * Get the size of this cache.
      * 
@@ -164,6 +174,14 @@ public interface Cache<T extends Cacheable> {
      */
     int getFails();
 
+    /**
+     * Get the number of items which have been evicted
+     * from the cache to make room for other items.
+     *
+     * @return number of items evicted from the cache
+     */
+    int getEvictions();
+
     /**
      * Get the load factor if the cache
      *
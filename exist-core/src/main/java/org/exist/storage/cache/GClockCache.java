@@ -58,6 +58,7 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 	protected int count = 0;
 	protected int used = 0;
     private int hitsOld = 0;
+    private int evictions = 0;
 	protected CacheManager cacheManager = null;
 
     public GClockCache(final String name, final Class<T> cacheableClazz, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
@@ -158,6 +159,12 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 		return flushed;
 	}
 
+	@Override
+	public boolean flush(final long key) {
+		final T cacheable = map.get(key);
+		return cacheable != null && cacheable.isDirty() && cacheable.sync(false);
+	}
+
 	@Override
 	public boolean hasDirtyItems() {
 	    for(int i = 0; i < count; i++) {
@@ -192,6 +199,7 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
                     }
 					map.remove(old.getKey());
 					old.sync(true);
+					evictions++;
 				} else {
 					used++;
 				}
@@ -235,6 +243,11 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 		return accounting.getMisses();
 	}
 
+	@Override
+	public int getEvictions() {
+		return evictions;
+	}
+
     public int getThrashing() {
         return accounting.getThrashing();
     }
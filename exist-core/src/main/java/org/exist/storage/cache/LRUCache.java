@@ -19,7 +19,7 @@
  */
 package org.exist.storage.cache;
 
-import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.storage.CacheManager;
@@ -31,10 +31,13 @@ import org.exist.util.hashtable.SequencedLongHashMap;
  * {@link org.exist.util.hashtable.SequencedLongHashMap}. Contrary
  * to the other {@link org.exist.storage.cache.Cache} implementations,
  * LRUCache ignores reference counts or timestamps.
+ *
+ * Access is synchronized, so that the cache may be shared by
+ * the concurrent readers of a multi-reader {@link org.exist.storage.btree.BTree}.
  * 
  * @author wolf
  */
-@NotThreadSafe
+@ThreadSafe
 public class LRUCache<T extends Cacheable> implements Cache<T> {
     private final static Logger LOG = LogManager.getLogger(LRUCache.class);
 
@@ -45,6 +48,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	protected SequencedLongHashMap<T> map;
     private final CacheType type;
     private int hitsOld = -1;
+    protected int evictions = 0;
     protected CacheManager cacheManager = null;
 
     public LRUCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
@@ -63,7 +67,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	}
 
 	@Override
-	public void add(final T item, final int initialRefCount) {
+	public synchronized void add(final T item, final int initialRefCount) {
 		_add(item);
 	}
 
@@ -73,7 +77,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
     }
 
     @Override
-	public void add(final T item) {
+	public synchronized void add(final T item) {
         _add(item);
 	}
 
@@ -94,7 +98,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	}
 
 	@Override
-	public T get(final long key) {
+	public synchronized T get(final long key) {
 		final T obj = map.get(key);
 		if(obj == null) {
 		    accounting.missesIncrement();
@@ -105,12 +109,12 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	}
 
 	@Override
-	public void remove(final T item) {
+	public synchronized void remove(final T item) {
 		map.remove(item.getKey());
 	}
 
 	@Override
-	public boolean flush() {
+	public synchronized boolean flush() {
 		boolean flushed = false;
 		for(SequencedLongHashMap.Entry<T> next = map.getFirstEntry(); next != null; next = next.getNext()) {
 			final T cacheable = next.getValue();
@@ -121,9 +125,15 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 		return flushed;
 	}
 
+	@Override
+	public synchronized boolean flush(final long key) {
+		final T cacheable = map.get(key);
+		return cacheable != null && cacheable.isDirty() && cacheable.sync(false);
+	}
+
 	
     @Override
-    public boolean hasDirtyItems() {
+    public synchronized boolean hasDirtyItems() {
         for(SequencedLongHashMap.Entry<T> next = map.getFirstEntry(); next != null; next = next.getNext()) {
             final T cacheable = next.getValue();
             if(cacheable.isDirty()) {
@@ -139,7 +149,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	}
 
 	@Override
-	public int getUsedBuffers() {
+	public synchronized int getUsedBuffers() {
 		return map.size();
 	}
 
@@ -152,6 +162,11 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	public int getFails() {
 		return accounting.getMisses();
 	}
+
+	@Override
+	public synchronized int getEvictions() {
+		return evictions;
+	}
  
     public int getThrashing() {
         return accounting.getThrashing();
@@ -165,6 +180,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
             if(cached.allowUnload() && cached.getKey() != item.getKey()) {
                 cached.sync(true);
                 map.remove(next.getKey());
+                evictions++;
                 removed = true;
             } else {
                 next = next.getNext();
@@ -193,7 +209,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
     }
     
     @Override
-    public void resize(final int newSize) {
+    public synchronized void resize(final int newSize) {
         if (newSize < max) {
             shrink(newSize);
         } else {
@@ -218,7 +234,7 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
     }
 
     @Override
-    public int getLoad() {
+    public synchronized int getLoad() {
         if (hitsOld == 0) {
             hitsOld = accounting.getHits();
             return Integer.MAX_VALUE;
@@ -0,0 +1,454 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+import org.exist.util.hashtable.SequencedLongHashMap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A scan resistant cache implementing the 2Q replacement policy
+ * (Johnson and Shasha, "2Q: A Low Overhead High Performance Buffer
+ * Management Replacement Algorithm").
+ *
+ * A page which enters the cache is first placed in a small FIFO
+ * probation queue (A1in). When it falls out of the probation queue,
+ * only its key is remembered in a ghost queue (A1out). Only a page which
+ * is added again while its key is in the ghost queue is admitted to the
+ * main LRU queue (Am). A full scan of a collection therefore only cycles
+ * through the probation queue and does not evict the hot working set held
+ * in the main queue.
+ *
+ * The cache is split into independent segments by the page number, each
+ * guarded by its own lock, so that concurrent readers of a multi-reader
+ * {@link org.exist.storage.btree.BTree} do not serialize on the cache.
+ *
+ * If the items are {@link BTreeCacheable}, inner pages are admitted to the
+ * main queue straight away and are preferably kept there, like the
+ * {@link BTreeCache} does.
+ *
+ * @param <T> The type that implements {@link Cacheable}
+ */
+@ThreadSafe
+public class TwoQueueCache<T extends Cacheable> implements Cache<T> {
+
+    private final static Logger LOG = LogManager.getLogger(TwoQueueCache.class);
+
+    /**
+     * Maximum number of segments of a cache.
+     */
+    static final int MAX_SEGMENTS = 16;
+
+    /**
+     * Minimum number of pages in a segment when the cache is created.
+     */
+    static final int MIN_SEGMENT_SIZE = 16;
+
+    /**
+     * Fraction of the cache used for the probation queue.
+     */
+    private static final double PROBATION_FRACTION = 0.25;
+
+    /**
+     * Number of ghost keys remembered, as a fraction of the cache size.
+     */
+    private static final double GHOST_FRACTION = 0.5;
+
+    private final String name;
+    private final CacheType type;
+    private final double growthFactor;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    @GuardedBy("accounting") private final Accounting accounting;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private volatile int max;
+    private int hitsOld = -1;
+    private volatile CacheManager cacheManager = null;
+
+    public TwoQueueCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
+        this(name, size, growthFactor, growthThreshold, type, segmentsFor(size));
+    }
+
+    TwoQueueCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type, final int segmentCount) {
+        if (Integer.bitCount(segmentCount) != 1) {
+            throw new IllegalArgumentException("Segment count must be a power of two: " + segmentCount);
+        }
+        this.name = name;
+        this.type = type;
+        this.growthFactor = growthFactor;
+        this.max = size;
+        this.accounting = new Accounting(growthThreshold);
+        this.accounting.setTotalSize(size);
+        this.segmentMask = segmentCount - 1;
+        @SuppressWarnings("unchecked") final Segment[] segments = (Segment[]) new TwoQueueCache.Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentSize(size, i));
+        }
+        this.segments = segments;
+    }
+
+    private static int segmentsFor(final int size) {
+        final int segments = Math.min(MAX_SEGMENTS, size / MIN_SEGMENT_SIZE);
+        return segments <= 1 ? 1 : Integer.highestOneBit(segments);
+    }
+
+    /**
+     * Distributes the pages of the cache between the segments,
+     * every segment has room for at least one page.
+     */
+    private int segmentSize(final int size, final int segment) {
+        final int segmentSize = size / (segmentMask + 1) + (segment < size % (segmentMask + 1) ? 1 : 0);
+        return Math.max(1, segmentSize);
+    }
+
+    private Segment segmentFor(final long key) {
+        int h = Long.hashCode(key) * 0x9E3779B9;
+        h ^= h >>> 16;
+        return segments[h & segmentMask];
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item) {
+        add(item, 1);
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        final boolean evicted = segmentFor(item.getKey()).add(item);
+        if (evicted) {
+            final boolean resizeNeeded;
+            synchronized (accounting) {
+                accounting.replacedPage(item);
+                resizeNeeded = growthFactor > 1.0 && accounting.resizeNeeded();
+            }
+            // must not hold a segment lock, the cache manager will resize this cache
+            if (resizeNeeded && cacheManager != null) {
+                cacheManager.requestMem(this);
+            }
+        }
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        final T item = segmentFor(key).get(key);
+        if (item == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return item;
+    }
+
+    @Override
+    public void remove(final T item) {
+        segmentFor(item.getKey()).remove(item.getKey());
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        for (final Segment segment : segments) {
+            if (segment.hasDirtyItems()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean flush() {
+        boolean flushed = false;
+        for (final Segment segment : segments) {
+            flushed = flushed | segment.flush();
+        }
+        return flushed;
+    }
+
+    @Override
+    public boolean flush(final long key) {
+        return segmentFor(key).flush(key);
+    }
+
+    @Override
+    public int getBuffers() {
+        return max;
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        this.max = newSize;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].resize(segmentSize(newSize, i));
+        }
+        synchronized (accounting) {
+            accounting.reset();
+            accounting.setTotalSize(newSize);
+        }
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public int getUsedBuffers() {
+        int used = 0;
+        for (final Segment segment : segments) {
+            used += segment.size();
+        }
+        return used;
+    }
+
+    @Override
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    @Override
+    public int getFails() {
+        return misses.intValue();
+    }
+
+    @Override
+    public int getEvictions() {
+        return evictions.intValue();
+    }
+
+    public int getThrashing() {
+        synchronized (accounting) {
+            return accounting.getThrashing();
+        }
+    }
+
+    @Override
+    public synchronized int getLoad() {
+        final int hits = getHits();
+        if (hitsOld == 0) {
+            hitsOld = hits;
+            return Integer.MAX_VALUE;
+        }
+        final int load = hits - hitsOld;
+        hitsOld = hits;
+        return load;
+    }
+
+    /**
+     * An independent 2Q cache for a subset of the page numbers.
+     */
+    private final class Segment {
+        @GuardedBy("this") private final SequencedLongHashMap<T> probation;
+        @GuardedBy("this") private final SequencedLongHashMap<T> main;
+        @GuardedBy("this") private final SequencedLongHashMap<Boolean> ghosts;
+        @GuardedBy("this") private int max;
+
+        Segment(final int max) {
+            this.max = max;
+            this.probation = new SequencedLongHashMap<>(max * 2);
+            this.main = new SequencedLongHashMap<>(max * 2);
+            this.ghosts = new SequencedLongHashMap<>(max * 2);
+        }
+
+        private int maxProbation() {
+            return Math.max(1, (int) (max * PROBATION_FRACTION));
+        }
+
+        private int maxGhosts() {
+            return Math.max(1, (int) (max * GHOST_FRACTION));
+        }
+
+        synchronized int size() {
+            return probation.size() + main.size();
+        }
+
+        /**
+         * @return true if a page had to be evicted to make room for the item
+         */
+        synchronized boolean add(final T item) {
+            final long key = item.getKey();
+            if (main.get(key) != null) {
+                // move to the most recently used end
+                main.put(key, item);
+                return false;
+            }
+
+            final T inProbation = probation.get(key);
+            if (inProbation != null) {
+                // correlated references do not promote a page, the position in the FIFO is kept
+                if (inProbation != item) {
+                    probation.put(key, item);
+                }
+                return false;
+            }
+
+            if (ghosts.remove(key) != null || isInnerPage(item)) {
+                // seen recently enough to be considered hot
+                main.put(key, item);
+            } else {
+                probation.put(key, item);
+            }
+            return evict(key);
+        }
+
+        synchronized T get(final long key) {
+            final T item = main.get(key);
+            if (item != null) {
+                return item;
+            }
+            return probation.get(key);
+        }
+
+        synchronized void remove(final long key) {
+            if (main.remove(key) == null) {
+                probation.remove(key);
+            }
+        }
+
+        synchronized boolean hasDirtyItems() {
+            return hasDirtyItems(probation) || hasDirtyItems(main);
+        }
+
+        private boolean hasDirtyItems(final SequencedLongHashMap<T> queue) {
+            for (SequencedLongHashMap.Entry<T> next = queue.getFirstEntry(); next != null; next = next.getNext()) {
+                if (next.getValue().isDirty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized boolean flush() {
+            return flush(probation) | flush(main);
+        }
+
+        synchronized boolean flush(final long key) {
+            final T cacheable = get(key);
+            return cacheable != null && cacheable.isDirty() && cacheable.sync(false);
+        }
+
+        private boolean flush(final SequencedLongHashMap<T> queue) {
+            boolean flushed = false;
+            for (SequencedLongHashMap.Entry<T> next = queue.getFirstEntry(); next != null; next = next.getNext()) {
+                final T cacheable = next.getValue();
+                if (cacheable.isDirty()) {
+                    flushed = flushed | cacheable.sync(false);
+                }
+            }
+            return flushed;
+        }
+
+        synchronized void resize(final int newMax) {
+            this.max = newMax;
+            evict(Long.MIN_VALUE);
+            while (ghosts.size() > maxGhosts()) {
+                ghosts.removeFirst();
+            }
+        }
+
+        /**
+         * Evict pages until the segment fits into its size.
+         *
+         * @param keep the key of a page which must not be evicted
+         *
+         * @return true if at least one page was evicted
+         */
+        private boolean evict(final long keep) {
+            boolean evicted = false;
+            while (probation.size() + main.size() > max) {
+                final boolean fromProbation = probation.size() > maxProbation() || main.size() == 0;
+                if (!(fromProbation ? evictProbation(keep) || evictMain(keep) : evictMain(keep) || evictProbation(keep))) {
+                    // every page is in use, the segment temporarily holds more pages than its size
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Unable to remove entry from cache: " + name);
+                    }
+                    break;
+                }
+                evicted = true;
+            }
+            return evicted;
+        }
+
+        private boolean evictProbation(final long keep) {
+            final T cached = removeFirstUnloadable(probation, keep, false);
+            if (cached == null) {
+                return false;
+            }
+            ghosts.put(cached.getKey(), Boolean.TRUE);
+            if (ghosts.size() > maxGhosts()) {
+                ghosts.removeFirst();
+            }
+            return true;
+        }
+
+        private boolean evictMain(final long keep) {
+            T cached = removeFirstUnloadable(main, keep, true);
+            if (cached == null) {
+                cached = removeFirstUnloadable(main, keep, false);
+            }
+            return cached != null;
+        }
+
+        private T removeFirstUnloadable(final SequencedLongHashMap<T> queue, final long keep, final boolean keepInnerPages) {
+            for (SequencedLongHashMap.Entry<T> next = queue.getFirstEntry(); next != null; next = next.getNext()) {
+                final T cached = next.getValue();
+                if (cached.allowUnload() && cached.getKey() != keep
+                        && !(keepInnerPages && isInnerPage(cached))) {
+                    cached.sync(true);
+                    queue.remove(next.getKey());
+                    evictions.increment();
+                    return cached;
+                }
+            }
+            return null;
+        }
+
+        private boolean isInnerPage(final T item) {
+            return item instanceof BTreeCacheable && ((BTreeCacheable) item).isInnerPage();
+        }
+    }
+}
@@ -78,6 +78,11 @@ public class AddLinkLoggable extends AbstractLoggable {
         domDb.undoAddLink(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - created link on page: " + pageNum + " for tid: " + tid;
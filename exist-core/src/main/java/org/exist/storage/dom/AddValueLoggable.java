@@ -101,6 +101,11 @@ public class AddValueLoggable extends AbstractLoggable {
         domDb.undoAddValue(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - added value; tid = " + tid + " to page " + pageNum;
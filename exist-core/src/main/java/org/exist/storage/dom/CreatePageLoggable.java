@@ -86,6 +86,11 @@ public class CreatePageLoggable extends AbstractLoggable {
         domDb.undoCreatePage(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - new page created: " + newPage + "; prev. page: " + prevPage + "; next page: " + nextPage;
@@ -94,6 +94,11 @@ public class InsertValueLoggable extends AbstractLoggable {
         domDb.undoInsertValue(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - inserted value; tid = " + tid + " in page " + pageNum +
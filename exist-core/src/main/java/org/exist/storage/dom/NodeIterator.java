@@ -19,7 +19,7 @@ import org.exist.util.LockException;
 import org.exist.util.sanity.SanityCheck;
 
 import java.io.IOException;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.exist.dom.persistent.NodeHandle;
 
@@ -74,7 +74,7 @@ public final class NodeIterator implements INodeIterator {
      */
     @Override
     public boolean hasNext() {
-        try(final ManagedLock<ReentrantLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
             db.setOwnerObject(broker);
             if (gotoNextPosition()) {
                 db.getPageBuffer().add(page);
@@ -103,7 +103,7 @@ public final class NodeIterator implements INodeIterator {
      */
     @Override
     public IStoredNode next() {
-        try(final ManagedLock<ReentrantLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
             db.setOwnerObject(broker);
             IStoredNode nextNode = null;
             if (gotoNextPosition()) {
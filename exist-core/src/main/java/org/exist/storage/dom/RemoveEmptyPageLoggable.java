@@ -78,6 +78,11 @@ public class RemoveEmptyPageLoggable extends AbstractLoggable {
         domDb.undoRemoveEmptyPage(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - removed page " + pageNum;
@@ -82,6 +82,11 @@ public class RemoveOverflowLoggable extends AbstractLoggable {
         domDb.undoRemoveOverflow(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - removed overflow page " + pageNum;
@@ -97,6 +97,11 @@ public class RemovePageLoggable extends AbstractLoggable {
         domDb.undoRemovePage(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - removed page " + pageNum;
@@ -98,6 +98,11 @@ public class RemoveValueLoggable extends AbstractLoggable {
         domDb.undoRemoveValue(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - removed value; tid = " + ItemId.getId(tid) + " from page " + pageNum + " at " + offset +
@@ -86,6 +86,11 @@ public class SplitPageLoggable extends AbstractLoggable implements Loggable {
         domDb.undoSplitPage(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - page split: " + pageNum + " at offset: " + splitOffset;
@@ -87,6 +87,11 @@ public class UpdateHeaderLoggable extends AbstractLoggable {
         domDb.undoUpdateHeader(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - update header of page " + pageNum + ": prev = " + prevPage +
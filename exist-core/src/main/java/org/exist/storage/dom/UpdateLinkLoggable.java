@@ -79,6 +79,11 @@ public class UpdateLinkLoggable extends AbstractLoggable {
         domDb.undoUpdateLink(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - updated link on page: " + pageNum + " at offset: " + offset;
@@ -83,6 +83,11 @@ public class WriteOverflowPageLoggable extends AbstractLoggable {
         domDb.undoWriteOverflow(this);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return domDb;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " - writing overflow page " + pageNum + "; next: " + nextPage;
@@ -63,6 +63,11 @@ public abstract class AbstractBFileLoggable extends AbstractLoggable {
         return (BFile) broker.getStorage(fileId);
     }
 
+    @Override
+    public Object getRedoTarget() {
+        return getIndexFile();
+    }
+
     public byte getFileId() {
         return fileId;
     }
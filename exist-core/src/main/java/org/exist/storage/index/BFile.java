@@ -36,7 +36,6 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
@@ -59,7 +58,7 @@ import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -145,7 +144,7 @@ public class BFile extends BTree {
         super(pool, fileId, fileVersion, recoveryEnabled, cacheManager, file);
         lockManager = pool.getLockManager();
         fileHeader = (BFileHeader) getFileHeader();
-        dataCache = new LRUCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, Cache.CacheType.DATA);
+        dataCache = cacheManager.newDataCache(FileUtils.fileName(file), 64, cacheGrowth, thresholdData);
         cacheManager.registerCache(dataCache);
         minFree = PAGE_MIN_FREE;
         maxValueSize = fileHeader.getWorkSize() / 2;
@@ -278,6 +277,11 @@ public class BFile extends BTree {
         cacheManager.deregisterCache(dataCache);
     }
 
+    @Override
+    protected boolean writeCachedPage(final long pageNum) {
+        return dataCache.flush(pageNum) || super.writeCachedPage(pageNum);
+    }
+
     private SinglePage createDataPage() {
         try {
             final SinglePage page = new SinglePage();
@@ -2335,7 +2339,7 @@ public class BFile extends BTree {
             }
 
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(getLockName())) {
                 nextPage = (SinglePage) getDataPage(next, false);
                 pageLen = nextPage.ph.getDataLength();
                 offset = 0;
@@ -2453,7 +2457,7 @@ public class BFile extends BTree {
         public void seek(final long position) throws IOException {
             final int newPage = StorageAddress.pageFromPointer(position);
             final short newOffset = StorageAddress.tidFromPointer(position);
-            try(final ManagedLock<ReentrantLock> bfileLock =  lockManager.acquireBtreeReadLock(getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock =  lockManager.acquireBtreeReadLock(getLockName())) {
                 nextPage = getSinglePage(newPage);
                 pageLen = nextPage.ph.getDataLength();
                 if (pageLen > fileHeader.getWorkSize()) {
@@ -18,7 +18,7 @@ import java.io.Writer;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Handles access to the central collection storage file (collections.dbx). 
@@ -81,7 +81,7 @@ public class CollectionStore extends BFile {
     }
 
     public void freeResourceId(int id) {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
             freeResourceIds.push(id);
         } catch (LockException e) {
             LOG.warn("Failed to acquire lock on " + FileUtils.fileName(getFile()), e);
@@ -90,7 +90,7 @@ public class CollectionStore extends BFile {
 
     public int getFreeResourceId() {
         int freeDocId = DocumentImpl.UNKNOWN_DOCUMENT_ID;
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
             if (!freeResourceIds.isEmpty()) {
                 freeDocId = freeResourceIds.pop();
             }
@@ -103,7 +103,7 @@ public class CollectionStore extends BFile {
     }
 
     public void freeCollectionId(int id) {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
             freeCollectionIds.push(id);
         } catch (LockException e) {
             LOG.warn("Failed to acquire lock on " + FileUtils.fileName(getFile()), e);
@@ -112,7 +112,7 @@ public class CollectionStore extends BFile {
 
     public int getFreeCollectionId() {
         int freeCollectionId = Collection.UNKNOWN_COLLECTION_ID;
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(getLockName())) {
             if (!freeCollectionIds.isEmpty()) {
                 freeCollectionId = freeCollectionIds.pop();
             }
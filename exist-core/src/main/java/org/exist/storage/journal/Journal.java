@@ -22,15 +22,20 @@ package org.exist.storage.journal;
 import java.io.*;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.xxhash.XXHash64;
 import net.jpountz.xxhash.XXHashFactory;
 import org.apache.logging.log4j.LogManager;
@@ -47,6 +52,9 @@ import org.exist.util.FileUtils;
 import org.exist.util.ReadOnlyException;
 import org.exist.util.sanity.SanityCheck;
 
+import javax.annotation.Nullable;
+
+import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static org.exist.util.ThreadUtils.newInstanceThread;
@@ -61,6 +69,16 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  * A buffer is used to temporarily buffer journal entries. To guarantee consistency, the buffer will be flushed
  * and the journal is synced after every commit or whenever a db page is written to disk.
  *
+ * With group commit, concurrently committing transactions share a single buffer flush and file sync,
+ * see {@link #syncToLsn(Lsn)}.
+ *
+ * If pre-allocation is enabled, journal files are pre-allocated to the size limit of the journal, so that
+ * writing entries does not change the size of the file, and the file sync does not have to write the metadata
+ * of the file. Retired journal files are recycled as the spare file {@link #SPARE_FILE}, from which the next
+ * journal file is taken; their stale entries are overwritten with zeros when they become the spare file.
+ * The end of a pre-allocated or recycled journal file is therefore marked by the first all-zero entry,
+ * and a journal file is truncated to its end when the database is shut down.
+ *
  * Each journal file has the following format:
  *
  * <pre>{@code
@@ -83,6 +101,8 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  *                              The offset for the start of the entry record can be calculated as {@code endOfRecordOffset - 8 - 2 - backLink}.
  *                              This is used when scanning the log file backwards for recovery.
  * {@code checksum}         8 bytes for a 64 bit checksum. The checksum includes the {@code entryHeader}, {@code data}, and {@code backLink}.
+ *                              The seed of the checksum is derived from the journal file number, so that an entry
+ *                              is never taken as intact in another journal file.
  *
  * The {@code entryHeader} has the format:
  *
@@ -90,10 +110,21 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  *     [entryType, transactionId, dataLength]
  * }</pre>
  *
- * {@code entryType}        1 byte indicates the type of the entry.
+ * {@code entryType}        1 byte indicates the type of the entry. If the bit {@link #LOG_ENTRY_COMPRESSED} is set,
+ *                              the {@code data} is compressed, see below.
  * {@code transactionId}    8 bytes (java.lang.long) the id of the transaction that created the record.
  * {@code dataLength}       2 bytes (java.lang.short) the length of the log entry {@code data}.
  *
+ * If compression is enabled, the {@code data} of entries larger than {@link #COMPRESSION_THRESHOLD}
+ * is LZ4 compressed, and has the format:
+ *
+ * <pre>{@code
+ *     [uncompressedLength, compressedData]
+ * }</pre>
+ *
+ * {@code uncompressedLength}   2 bytes (java.lang.short) the length of the uncompressed data.
+ * {@code compressedData}       the compressed data.
+ *
  * @author wolf
  * @author aretter
  */
@@ -112,22 +143,31 @@ public final class Journal implements Closeable {
      */
     public static final int JOURNAL_HEADER_LEN = 6;
     public static final byte[] JOURNAL_MAGIC_NUMBER = {0x0E, 0x0D, 0x0B, 0x01};
-    public static final short JOURNAL_VERSION = 6;
+    public static final short JOURNAL_VERSION = 7;
 
     public static final String RECOVERY_SYNC_ON_COMMIT_ATTRIBUTE = "sync-on-commit";
     public static final String RECOVERY_JOURNAL_DIR_ATTRIBUTE = "journal-dir";
     public static final String RECOVERY_SIZE_LIMIT_ATTRIBUTE = "size";
+    public static final String RECOVERY_PREALLOCATE_ATTRIBUTE = "preallocate";
+    public static final String RECOVERY_COMPRESS_ATTRIBUTE = "compress";
 
     public static final String PROPERTY_RECOVERY_SIZE_MIN = "db-connection.recovery.size-min";
     public static final String PROPERTY_RECOVERY_SIZE_LIMIT = "db-connection.recovery.size-limit";
     public static final String PROPERTY_RECOVERY_JOURNAL_DIR = "db-connection.recovery.journal-dir";
     public static final String PROPERTY_RECOVERY_SYNC_ON_COMMIT = "db-connection.recovery.sync-on-commit";
+    public static final String PROPERTY_RECOVERY_PREALLOCATE = "db-connection.recovery.preallocate";
+    public static final String PROPERTY_RECOVERY_COMPRESS = "db-connection.recovery.compress";
 
     public static final String LOG_FILE_SUFFIX = "log";
     public static final String BAK_FILE_SUFFIX = ".bak";
 
     public static final String LCK_FILE = "journal.lck";
 
+    /**
+     * the pre-allocated file from which the next journal file is taken
+     */
+    public static final String SPARE_FILE = "journal.spare";
+
     /**
      * the length of the header of each entry: entryType (1 byte) + transactionId (8 bytes) + length (2 bytes)
      */
@@ -148,6 +188,21 @@ public final class Journal implements Closeable {
      */
     public static final int LOG_ENTRY_BASE_LEN = LOG_ENTRY_HEADER_LEN + LOG_ENTRY_BACK_LINK_LEN + LOG_ENTRY_CHECKSUM_LEN;
 
+    /**
+     * bit of the entry type which is set if the data of the entry is compressed
+     */
+    public static final byte LOG_ENTRY_COMPRESSED = (byte) 0x80;
+
+    /**
+     * the length of the uncompressed length of compressed entry data
+     */
+    public static final int LOG_ENTRY_UNCOMPRESSED_LEN = 2;
+
+    /**
+     * minimal size of the data of an entry to be compressed
+     */
+    public static final int COMPRESSION_THRESHOLD = 1024;  // bytes
+
     /**
      * default maximum journal size
      */
@@ -227,7 +282,26 @@ public final class Journal implements Closeable {
     /**
      * stores the current LSN of the last file sync on the file
      */
-    private Lsn lastSyncLsn = Lsn.LSN_INVALID;
+    private volatile Lsn lastSyncLsn = Lsn.LSN_INVALID;
+
+    /**
+     * the number of commit (or abort) records written since the last file sync
+     */
+    private int unsyncedCommits = 0;
+
+    /**
+     * guards {@link #groupSyncInProgress}, committers waiting
+     * for a group sync wait on this object
+     */
+    private final Object groupSyncLock = new Object();
+
+    /**
+     * true while a committer is flushing and syncing the journal
+     * on behalf of all waiting committers
+     */
+    private boolean groupSyncInProgress = false;
+
+    private final JournalStatistics statistics = new JournalStatistics();
 
     /**
      * set to true while recovery is in progress
@@ -253,6 +327,30 @@ public final class Journal implements Closeable {
 
     private final XXHash64 xxHash64 = XXHashFactory.fastestInstance().hash64();
 
+    /**
+     * if set to true, journal files are pre-allocated and recycled
+     */
+    private final boolean preallocate;
+
+    /**
+     * the size of the current journal file when it was opened. Syncing entries
+     * written below this size does not have to write the metadata of the file.
+     */
+    private long allocatedSize = 0;
+
+    /**
+     * true while the spare journal file is being prepared
+     */
+    private final AtomicBoolean preparingSpare = new AtomicBoolean();
+
+    /**
+     * if set to true, the data of large entries is compressed
+     */
+    private final boolean compress;
+    @Nullable private final LZ4Compressor lz4Compressor;
+    @Nullable private final byte[] uncompressedData;
+    @Nullable private final byte[] compressedData;
+
     public Journal(final BrokerPool pool, final Path directory) throws EXistException {
         this.pool = pool;
         this.fsJournalDir = directory.resolve("fs.journal");
@@ -298,6 +396,21 @@ public final class Journal implements Closeable {
 
         this.journalSizeMin = 1024 * 1024 * pool.getConfiguration().getProperty(PROPERTY_RECOVERY_SIZE_MIN, DEFAULT_MIN_SIZE);
         this.journalSizeLimit = 1024 * 1024 * pool.getConfiguration().getProperty(PROPERTY_RECOVERY_SIZE_LIMIT, DEFAULT_MAX_SIZE);
+
+        this.preallocate = pool.getConfiguration().getProperty(PROPERTY_RECOVERY_PREALLOCATE, false);
+        this.compress = pool.getConfiguration().getProperty(PROPERTY_RECOVERY_COMPRESS, false);
+        if (compress) {
+            this.lz4Compressor = LZ4Factory.fastestJavaInstance().fastCompressor();
+            this.uncompressedData = new byte[Short.MAX_VALUE];
+            this.compressedData = new byte[lz4Compressor.maxCompressedLength(Short.MAX_VALUE)];
+        } else {
+            this.lz4Compressor = null;
+            this.uncompressedData = null;
+            this.compressedData = null;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Preallocate = " + preallocate + ", Compress = " + compress);
+        }
     }
 
     public void initialize() throws EXistException, ReadOnlyException {
@@ -332,7 +445,17 @@ public final class Journal implements Closeable {
             throw new JournalException("Journal can only write log entries of less that 32KB");
         }
 
-        final int required = size + LOG_ENTRY_BASE_LEN;
+        // the data of large entries is serialized up front to be compressed
+        final boolean serialized = compress && size >= COMPRESSION_THRESHOLD;
+        final int compressedLen;
+        try {
+            compressedLen = serialized ? compressEntry(entry, size) : -1;
+        } catch (final BufferOverflowException e) {
+            throw new JournalException("Buffer overflow while writing log record: " + entry.dump(), e);
+        }
+        final int storedSize = compressedLen < 0 ? size : LOG_ENTRY_UNCOMPRESSED_LEN + compressedLen;
+
+        final int required = storedSize + LOG_ENTRY_BASE_LEN;
         if (required > currentBuffer.remaining()) {
             flushToLog(false);
         }
@@ -347,22 +470,34 @@ public final class Journal implements Closeable {
         }
         entry.setLsn(currentLsn);
 
+        final byte logType = entry.getLogType();
+        if (logType == LogEntryTypes.TXN_COMMIT || logType == LogEntryTypes.TXN_ABORT) {
+            unsyncedCommits++;
+        }
+
         try {
             final int currentBufferEntryOffset = currentBuffer.position();
 
             // write entryHeader
-            currentBuffer.put(entry.getLogType());
+            currentBuffer.put(compressedLen < 0 ? logType : (byte) (logType | LOG_ENTRY_COMPRESSED));
             currentBuffer.putLong(entry.getTransactionId());
-            currentBuffer.putShort((short) size);
+            currentBuffer.putShort((short) storedSize);
 
             // write entry data
-            entry.write(currentBuffer);
+            if (compressedLen >= 0) {
+                currentBuffer.putShort((short) size);
+                currentBuffer.put(compressedData, 0, compressedLen);
+            } else if (serialized) {
+                currentBuffer.put(uncompressedData, 0, size);
+            } else {
+                entry.write(currentBuffer);
+            }
 
             // write backlink
-            currentBuffer.putShort((short) (size + LOG_ENTRY_HEADER_LEN));
+            currentBuffer.putShort((short) (storedSize + LOG_ENTRY_HEADER_LEN));
 
             // write checksum
-            final long checksum = xxHash64.hash(currentBuffer, currentBufferEntryOffset, currentBuffer.position() - currentBufferEntryOffset, XXHASH64_SEED);
+            final long checksum = xxHash64.hash(currentBuffer, currentBufferEntryOffset, currentBuffer.position() - currentBufferEntryOffset, checksumSeed(currentFile));
             currentBuffer.putLong(checksum);
         } catch (final BufferOverflowException e) {
             throw new JournalException("Buffer overflow while writing log record: " + entry.dump(), e);
@@ -374,6 +509,42 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Serializes the data of the entry and compresses it into {@link #compressedData}.
+     *
+     * @param entry the journal entry
+     * @param size the size of the data of the entry
+     *
+     * @return the length of the compressed data, or -1 if the data does not compress,
+     *     in which case the serialized data is left in {@link #uncompressedData}
+     */
+    private int compressEntry(final Loggable entry, final int size) {
+        entry.write(ByteBuffer.wrap(uncompressedData, 0, size));
+        final int compressedLen = lz4Compressor.compress(uncompressedData, 0, size, compressedData, 0, compressedData.length);
+        return LOG_ENTRY_UNCOMPRESSED_LEN + compressedLen < size ? compressedLen : -1;
+    }
+
+    /**
+     * Returns the seed of the checksums of the entries of a journal file.
+     *
+     * @param fileNumber the journal file number
+     *
+     * @return the checksum seed
+     */
+    static long checksumSeed(final int fileNumber) {
+        return XXHASH64_SEED ^ ((long) fileNumber << 32);
+    }
+
+    /**
+     * Returns the LSN of the last entry written to the journal,
+     * which may still be in the journal buffer.
+     *
+     * @return the current LSN
+     */
+    public synchronized Lsn getCurrentLsn() {
+        return currentLsn;
+    }
+
     /**
      * Returns the last LSN physically written to the journal.
      *
@@ -383,6 +554,15 @@ public final class Journal implements Closeable {
         return lastLsnWritten;
     }
 
+    /**
+     * Get the statistics about syncs of the journal.
+     *
+     * @return the journal statistics
+     */
+    public JournalStatistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Flush the current buffer to disk. If fsync is true, a sync will
      * be called on the file to force all changes to disk.
@@ -409,15 +589,113 @@ public final class Journal implements Closeable {
 
         try {
             if (forceSync || (fsync && syncOnCommit && currentLsn.compareTo(lastSyncLsn) > 0)) {
+                final int commits = unsyncedCommits;
+                unsyncedCommits = 0;
+                final long start = System.nanoTime();
                 sync();
+                statistics.recordSync(commits, System.nanoTime() - start);
                 lastSyncLsn = currentLsn;
             }
         } catch (final IOException e) {
             LOG.error("Could not sync Journal to disk: " + e.getMessage(), e);
         }
 
+        checkJournalSize();
+    }
+
+    /**
+     * Ensures that the journal has been synced to disk up to and including
+     * the entry with the given LSN, and waits until it has been.
+     *
+     * Concurrent callers are coalesced: one caller flushes the buffer and
+     * syncs the file on behalf of all entries written so far, whilst the
+     * others wait. Entries written whilst the sync is in progress
+     * are made durable by the next sync.
+     *
+     * Unlike {@link #flushToLog(boolean, boolean)} the file sync itself is performed
+     * without holding the lock on the journal, so that other transactions
+     * may continue to write to the journal.
+     *
+     * @param lsn the LSN of the entry which has to be durable.
+     *
+     * @throws JournalException if the thread was interrupted whilst waiting
+     */
+    public void syncToLsn(final Lsn lsn) throws JournalException {
+        if (inRecovery) {
+            return;
+        }
+
+        synchronized (groupSyncLock) {
+            while (groupSyncInProgress) {
+                if (lastSyncLsn.compareTo(lsn) >= 0) {
+                    return;
+                }
+                try {
+                    groupSyncLock.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JournalException("Interrupted whilst waiting for journal sync of: " + lsn, e);
+                }
+            }
+            if (lastSyncLsn.compareTo(lsn) >= 0) {
+                return;
+            }
+            groupSyncInProgress = true;
+        }
+
+        try {
+            groupSync();
+        } finally {
+            synchronized (groupSyncLock) {
+                groupSyncInProgress = false;
+                groupSyncLock.notifyAll();
+            }
+        }
+    }
+
+    private void groupSync() {
+        final FileChannel syncChannel;
+        final Lsn syncLsn;
+        final int commits;
+        final boolean syncMetadata;
+        synchronized (this) {
+            flushBuffer();
+            syncChannel = channel;
+            syncLsn = currentLsn;
+            commits = unsyncedCommits;
+            unsyncedCommits = 0;
+            syncMetadata = syncChannel == null || isMetadataChanged();
+        }
+
+        if (syncChannel == null) {
+            return; // the db has probably been shut down already or not fully initialized
+        }
+
+        try {
+            final long start = System.nanoTime();
+            syncChannel.force(syncMetadata);
+            statistics.recordSync(commits, System.nanoTime() - start);
+        } catch (final ClosedChannelException e) {
+            // the journal file was switched or closed, which syncs the file
+        } catch (final IOException e) {
+            LOG.error("Could not sync Journal to disk: " + e.getMessage(), e);
+        }
+
+        synchronized (this) {
+            if (syncLsn.compareTo(lastSyncLsn) > 0) {
+                lastSyncLsn = syncLsn;
+            }
+            checkJournalSize();
+        }
+    }
+
+    /**
+     * Triggers a checkpoint if the journal has exceeded its size limit.
+     */
+    private void checkJournalSize() {
         try {
-            if (channel != null && channel.size() >= journalSizeLimit) {
+            // the size of a pre-allocated file is not the size of the journal
+            if (channel != null && channel.position() >= journalSizeLimit) {
                 pool.triggerCheckpoint();
             }
         } catch (final IOException e) {
@@ -426,7 +704,21 @@ public final class Journal implements Closeable {
     }
 
     private void sync() throws IOException {
-        channel.force(true);
+        channel.force(isMetadataChanged());
+    }
+
+    /**
+     * Determines whether the size of the current journal file has changed since it was
+     * opened, and so its metadata has to be synced along with its content.
+     *
+     * @return true if the file has grown beyond its pre-allocated size
+     */
+    private boolean isMetadataChanged() {
+        try {
+            return channel.size() > allocatedSize;
+        } catch (final IOException e) {
+            return true;
+        }
     }
 
     /**
@@ -477,7 +769,8 @@ public final class Journal implements Closeable {
         try {
             if (switchLogFiles && channel != null && channel.position() > journalSizeMin) {
                 final Path oldFile = getFile(currentFile);
-                final RemoveRunnable removeRunnable = new RemoveRunnable(channel, oldFile);
+                final RemoveRunnable removeRunnable = new RemoveRunnable(channel, oldFile,
+                        preallocate && preparingSpare.compareAndSet(false, true));
                 try {
                     switchFiles();
                 } catch (final LogException e) {
@@ -493,6 +786,36 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Write a fuzzy checkpoint. Unlike {@link #checkpoint(long, boolean)}
+     * the dirty pages have not been written to disk, recovery has to redo
+     * the journal from the given LSN. As recovery only reads the current
+     * journal file, the LSN has to be in the current file.
+     *
+     * @param txnId The transaction id
+     * @param redoLsn The LSN of the oldest operation whose modifications
+     *     may not yet be on disk, or {@link Lsn#LSN_INVALID} if there are none
+     *
+     * @return false if no checkpoint was written as the LSN is
+     *     not in the current journal file
+     *
+     * @throws JournalException if the checkpoint could not be written
+     */
+    public boolean fuzzyCheckpoint(final long txnId, final Lsn redoLsn) throws JournalException {
+        if (redoLsn.equals(Lsn.LSN_INVALID)) {
+            // nothing to redo
+            checkpoint(txnId, false);
+            return true;
+        }
+        if (redoLsn.getFileNumber() != currentFile) {
+            return false;
+        }
+        LOG.debug("Fuzzy checkpoint reached, redo from: " + redoLsn);
+        writeToLog(new Checkpoint(txnId, redoLsn));
+        flushToLog(true, true);
+        return true;
+    }
+
     /**
      * Set the file number of the last file used.
      *
@@ -552,7 +875,7 @@ public final class Journal implements Closeable {
                 close();
 
                 // open new file
-                channel = (FileChannel) Files.newByteChannel(file, CREATE_NEW, WRITE);
+                channel = openFile(file);
                 writeJournalHeader(channel);
                 initialised = true;
             } catch (final IOException e) {
@@ -561,6 +884,74 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Opens a new journal file. If pre-allocation is enabled,
+     * the spare journal file is taken if there is one.
+     *
+     * @param file the journal file
+     *
+     * @return the channel of the journal file
+     *
+     * @throws IOException if the file could not be opened
+     */
+    private FileChannel openFile(final Path file) throws IOException {
+        if (preallocate) {
+            try {
+                Files.move(dir.resolve(SPARE_FILE), file, StandardCopyOption.ATOMIC_MOVE);
+                final FileChannel fileChannel = FileChannel.open(file, WRITE);
+                allocatedSize = fileChannel.size();
+                return fileChannel;
+            } catch (final NoSuchFileException e) {
+                // no spare file, prepare one for the next journal file
+                if (preparingSpare.compareAndSet(false, true)) {
+                    newInstanceThread(pool, "preallocate-journal", new RemoveRunnable(null, dir.resolve(SPARE_FILE + ".new"), true)).start();
+                }
+            }
+        }
+        allocatedSize = 0;
+        return (FileChannel) Files.newByteChannel(file, CREATE_NEW, WRITE);
+    }
+
+    /**
+     * Turns a file into the spare journal file, by filling
+     * it with zeros up to the size limit of the journal.
+     * If there already is a spare file, the file is removed.
+     *
+     * The entries of a retired journal file are overwritten too, as the
+     * end of the live entries of a journal file is marked by an all-zero entry.
+     *
+     * @param file the retired journal file, or a new file
+     */
+    private void prepareSpare(final Path file) {
+        final Path spare = dir.resolve(SPARE_FILE);
+        if (Files.exists(spare)) {
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+
+        try (final FileChannel fileChannel = FileChannel.open(file, CREATE, WRITE)) {
+            fileChannel.truncate(journalSizeLimit);
+            final ByteBuffer zeros = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = 0;
+            while (position < journalSizeLimit) {
+                zeros.clear().limit((int) Math.min(BUFFER_SIZE, journalSizeLimit - position));
+                position += fileChannel.write(zeros, position);
+            }
+            fileChannel.force(true);
+        } catch (final IOException e) {
+            LOG.warn("Failed to pre-allocate journal file: " + file.toAbsolutePath().toString() + ": " + e.getMessage(), e);
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+
+        try {
+            Files.move(file, spare, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            LOG.warn("Failed to create spare journal file: " + e.getMessage(), e);
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
     private void writeJournalHeader(final SeekableByteChannel channel) throws IOException {
         final ByteBuffer buf = ByteBuffer.allocateDirect(JOURNAL_HEADER_LEN);
 
@@ -669,6 +1060,15 @@ public final class Journal implements Closeable {
                 }
             }
             flushBuffer();
+
+            // remove the pre-allocated space, so that the end of the file is the end of the journal
+            try {
+                if (channel.size() > channel.position()) {
+                    channel.truncate(channel.position());
+                }
+            } catch (final IOException e) {
+                LOG.error("Unable to truncate Journal file: " + e.getMessage(), e);
+            }
         }
 
         try {
@@ -703,13 +1103,21 @@ public final class Journal implements Closeable {
         return hex + '.' + LOG_FILE_SUFFIX;
     }
 
-    private static class RemoveRunnable implements Runnable {
-        private final SeekableByteChannel channel;
+    private class RemoveRunnable implements Runnable {
+        @Nullable private final SeekableByteChannel channel;
         private final Path path;
-
-        RemoveRunnable(final SeekableByteChannel channel, final Path path) {
+        private final boolean recycle;
+
+        /**
+         * @param channel the channel of the file, or null if the file is not open
+         * @param path the file
+         * @param recycle true if the file should be prepared as the spare journal file
+         *     rather than being removed, in which case the caller has set {@link #preparingSpare}
+         */
+        RemoveRunnable(@Nullable final SeekableByteChannel channel, final Path path, final boolean recycle) {
             this.channel = channel;
             this.path = path;
+            this.recycle = recycle;
         }
 
         @Override
@@ -721,7 +1129,15 @@ public final class Journal implements Closeable {
             } catch (final IOException e) {
                 LOG.warn("Exception while closing journal file: " + e.getMessage(), e);
             }
-            FileUtils.deleteQuietly(path);
+            if (recycle) {
+                try {
+                    prepareSpare(path);
+                } finally {
+                    preparingSpare.set(false);
+                }
+            } else {
+                FileUtils.deleteQuietly(path);
+            }
         }
     }
 }
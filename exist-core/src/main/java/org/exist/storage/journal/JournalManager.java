@@ -43,6 +43,7 @@ public class JournalManager implements BrokerPoolService {
 
     private Path journalDir;
     private boolean groupCommits;
+    private boolean syncOnCommit;
     private Journal journal;
     private boolean journallingDisabled = false;
     private boolean initialized = false;
@@ -54,6 +55,7 @@ public class JournalManager implements BrokerPoolService {
         this.journalDir = (Path) Optional.ofNullable(configuration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR))
                 .orElse(configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR));
         this.groupCommits = configuration.getProperty(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, false);
+        this.syncOnCommit = configuration.getProperty(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, true);
         if (LOG.isDebugEnabled()) {
             LOG.debug("GroupCommits = " + groupCommits);
         }
@@ -94,6 +96,11 @@ public class JournalManager implements BrokerPoolService {
     /**
      * Write a group of entrys to the journal
      *
+     * When group commits are enabled and the journal is synced on commit,
+     * the caller waits until the entry is durable whilst concurrent callers
+     * share a single sync, see {@link Journal#syncToLsn(Lsn)}. When group
+     * commits are enabled without sync on commit, the entry is only buffered.
+     *
      * @see Journal#writeToLog(Loggable)
      * @see Journal#flushToLog(boolean)
      *
@@ -101,11 +108,24 @@ public class JournalManager implements BrokerPoolService {
      *
      * @throws JournalException of the journal group cannot be written
      */
-    public synchronized void journalGroup(final Loggable loggable) throws JournalException {
+    public void journalGroup(final Loggable loggable) throws JournalException {
         if(!journallingDisabled) {
-            journal.writeToLog(loggable);
             if (!groupCommits) {
-                journal.flushToLog(true);
+                synchronized (this) {
+                    journal.writeToLog(loggable);
+                    journal.flushToLog(true);
+                }
+            } else if (syncOnCommit) {
+                synchronized (this) {
+                    journal.writeToLog(loggable);
+                }
+                // wait for the sync outside of the lock, so that other commits may join the group
+                journal.syncToLsn(loggable.getLsn());
+            } else {
+                // the buffer is flushed when it is full
+                synchronized (this) {
+                    journal.writeToLog(loggable);
+                }
             }
         }
     }
@@ -139,6 +159,27 @@ public class JournalManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * @see Journal#fuzzyCheckpoint(long, Lsn)
+     *
+     * Create a new fuzzy checkpoint, without writing the dirty pages to disk.
+     * Journal listeners are only notified of sharp checkpoints, as recovery may
+     * still redo entries written before a fuzzy checkpoint.
+     *
+     * @param transactionId The id of the transaction for the checkpoint
+     * @param redoLsn The LSN from which recovery has to redo the journal
+     *
+     * @return false if no checkpoint was written, see {@link Journal#fuzzyCheckpoint(long, Lsn)}
+     *
+     * @throws JournalException of the journal checkpoint cannot be written
+     */
+    public synchronized boolean fuzzyCheckpoint(final long transactionId, final Lsn redoLsn) throws JournalException {
+        if(journallingDisabled) {
+            return true;
+        }
+        return journal.fuzzyCheckpoint(transactionId, redoLsn);
+    }
+
     /**
      * @param fsync true to use fsync
      * @param forceSync true to force an fsync
@@ -177,6 +218,29 @@ public class JournalManager implements BrokerPoolService {
         return journal.lastWrittenLsn();
     }
 
+    /**
+     * Ensures that all entries written to the journal so far are
+     * on disk. The sync is shared with concurrent group commits.
+     *
+     * @see Journal#syncToLsn(Lsn)
+     *
+     * @throws JournalException if the thread was interrupted whilst waiting for the sync
+     */
+    public void sync() throws JournalException {
+        if(!journallingDisabled) {
+            journal.syncToLsn(journal.getCurrentLsn());
+        }
+    }
+
+    /**
+     * @see Journal#getStatistics()
+     *
+     * @return the journal statistics, or empty if journalling is disabled
+     */
+    public Optional<JournalStatistics> getStatistics() {
+        return Optional.ofNullable(journal).map(Journal::getStatistics);
+    }
+
 
 
     public RecoveryManager.JournalRecoveryAccessor getRecoveryAccessor(final RecoveryManager recoveryManager) {
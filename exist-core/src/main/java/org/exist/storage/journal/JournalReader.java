@@ -19,6 +19,9 @@
  */
 package org.exist.storage.journal;
 
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
 import net.jpountz.xxhash.StreamingXXHash64;
 import net.jpountz.xxhash.XXHashFactory;
 import org.apache.logging.log4j.LogManager;
@@ -28,6 +31,7 @@ import org.exist.util.ByteConversion;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
@@ -41,6 +45,9 @@ import static org.exist.storage.journal.Journal.*;
  * last journal file. It uses a memory-mapped byte buffer on the file.
  * Journal entries can be read forward (during redo) or backward (during undo).
  *
+ * The data of an entry is only read once the checksum of the entry has been verified,
+ * as a pre-allocated or recycled journal file ends with an entry which is not intact.
+ *
  * @author wolf
  */
 public class JournalReader implements AutoCloseable {
@@ -54,7 +61,11 @@ public class JournalReader implements AutoCloseable {
     @Nullable
     private SeekableByteChannel fc;
 
-    private final StreamingXXHash64 xxHash64 = XXHashFactory.fastestInstance().newStreamingHash64(Journal.XXHASH64_SEED);
+    private final StreamingXXHash64 xxHash64;
+
+    private final LZ4SafeDecompressor lz4Decompressor = LZ4Factory.fastestJavaInstance().safeDecompressor();
+    @Nullable
+    private ByteBuffer uncompressed;
 
     /**
      * Opens the specified file for reading.
@@ -67,6 +78,7 @@ public class JournalReader implements AutoCloseable {
     public JournalReader(final DBBroker broker, final Path file, final int fileNumber) throws LogException {
         this.broker = broker;
         this.fileNumber = fileNumber;
+        this.xxHash64 = XXHashFactory.fastestInstance().newStreamingHash64(Journal.checksumSeed(fileNumber));
         try {
             this.fc = Files.newByteChannel(file, READ);
             validateJournalHeader(file, fc);
@@ -221,7 +233,9 @@ public class JournalReader implements AutoCloseable {
                 header.position(mark);
             }
 
-            final byte entryType = header.get();
+            final byte storedType = header.get();
+            final boolean compressed = (storedType & LOG_ENTRY_COMPRESSED) != 0;
+            final byte entryType = (byte) (storedType & ~LOG_ENTRY_COMPRESSED);
             final long transactId = header.getLong();
             final short size = header.getShort();
             if (fc.position() + size > fc.size()) {
@@ -248,15 +262,18 @@ public class JournalReader implements AutoCloseable {
             }
             payload.flip();
 
-            // read entry data
-            loggable.read(payload);
-
             // read entry backLink
+            payload.position(size);
             final short backLink = payload.getShort();
             if (backLink != size + LOG_ENTRY_HEADER_LEN) {
+                if (backLink == 0 && storedType == 0 && transactId == 0 && size == 0) {
+                    // reached the zeroed space at the end of a pre-allocated journal file
+                    fc.position(lsn.getOffset() - 1);
+                    return null;
+                }
                 LOG.error("Bad pointer to previous: backLink = " + backLink + "; size = " + size +
                         "; transactId = " + transactId);
-                throw new LogException("Bad pointer to previous in entry: " + loggable.dump());
+                throw new LogException("Bad pointer to previous in entry at: " + lsn);
             }
 
             // update the checksum for the entry data and backLink
@@ -280,12 +297,51 @@ public class JournalReader implements AutoCloseable {
                 throw new LogException("Checksum mismatch whilst reading log entry. read=" + checksum + " calculated=" + calculatedChecksum);
             }
 
+            // read entry data
+            payload.position(0).limit(size);
+            final ByteBuffer data = compressed ? decompress(payload, lsn) : payload;
+            try {
+                loggable.read(data);
+            } catch (final BufferUnderflowException e) {
+                throw new LogException("Log entry is shorter than expected: " + loggable.dump(), e);
+            }
+            if (data.hasRemaining()) {
+                throw new LogException("Log entry has " + data.remaining() + " unread bytes: " + loggable.dump());
+            }
+
             return loggable;
         } catch (final IOException e) {
             throw new LogException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Decompresses the data of an entry.
+     *
+     * @param data the compressed data
+     * @param lsn the LSN of the entry
+     *
+     * @return the uncompressed data
+     *
+     * @throws LogException if the data could not be decompressed
+     */
+    private ByteBuffer decompress(final ByteBuffer data, final Lsn lsn) throws LogException {
+        final int uncompressedLen = data.getShort();
+        if (uncompressed == null) {
+            uncompressed = ByteBuffer.allocate(Short.MAX_VALUE);
+        }
+        try {
+            final int len = lz4Decompressor.decompress(data, data.position(), data.remaining(), uncompressed, 0, uncompressedLen);
+            if (len != uncompressedLen) {
+                throw new LogException("Compressed log entry at " + lsn + " has " + len + " bytes, expected " + uncompressedLen);
+            }
+        } catch (final LZ4Exception e) {
+            throw new LogException("Unable to decompress log entry at " + lsn + ": " + e.getMessage(), e);
+        }
+        uncompressed.clear().limit(uncompressedLen);
+        return uncompressed;
+    }
+
     /**
      * Re-position the file position so it points to the start of the entry
      * with the given LSN.
@@ -0,0 +1,115 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics about the file syncs of the {@link Journal},
+ * i.e. how many commits were made durable by each sync
+ * and how long the syncs took.
+ */
+@ThreadSafe
+public class JournalStatistics {
+
+    private long syncCount = 0;
+    private long commitCount = 0;
+    private int lastBatchSize = 0;
+    private int maxBatchSize = 0;
+    private long totalSyncTime = 0;  // nanoseconds
+    private long maxSyncTime = 0;  // nanoseconds
+
+    /**
+     * Record a sync of the journal.
+     *
+     * @param batchSize the number of commit records made durable by the sync
+     * @param syncTime the duration of the sync in nanoseconds
+     */
+    synchronized void recordSync(final int batchSize, final long syncTime) {
+        syncCount++;
+        commitCount += batchSize;
+        lastBatchSize = batchSize;
+        if (batchSize > maxBatchSize) {
+            maxBatchSize = batchSize;
+        }
+        totalSyncTime += syncTime;
+        if (syncTime > maxSyncTime) {
+            maxSyncTime = syncTime;
+        }
+    }
+
+    /**
+     * @return the number of syncs of the journal
+     */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * @return the number of commit records made durable by syncs
+     */
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * @return the number of commit records made durable by the last sync
+     */
+    public synchronized int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * @return the largest number of commit records made durable by a single sync
+     */
+    public synchronized int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return the average number of commit records made durable by a sync
+     */
+    public synchronized double getAverageBatchSize() {
+        return syncCount == 0 ? 0 : commitCount / (double) syncCount;
+    }
+
+    /**
+     * @return the total time spent syncing in milliseconds
+     */
+    public synchronized long getTotalSyncTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalSyncTime);
+    }
+
+    /**
+     * @return the average duration of a sync in microseconds
+     */
+    public synchronized long getAverageSyncTime() {
+        return syncCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalSyncTime / syncCount);
+    }
+
+    /**
+     * @return the longest duration of a sync in microseconds
+     */
+    public synchronized long getMaxSyncTime() {
+        return TimeUnit.NANOSECONDS.toMicros(maxSyncTime);
+    }
+}
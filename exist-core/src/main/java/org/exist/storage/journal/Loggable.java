@@ -100,6 +100,19 @@ public interface Loggable {
      * @throws LogException if the operation cannot be undone
      */
     void undo() throws LogException;
+
+    /**
+     * Returns the storage object, e.g. the paged file, whose state is
+     * changed when the entry is redone. Recovery may redo entries with
+     * different targets concurrently, but always redoes the entries of
+     * one target in the order of the log.
+     *
+     * @return the target of {@link #redo()}, or null if the entry
+     *     has to be redone after all entries preceding it
+     */
+    default Object getRedoTarget() {
+        return null;
+    }
     
     /**
      * Returns a description of the entry for debugging purposes.
@@ -30,7 +30,9 @@ import org.exist.xmldb.XmldbURI;
 import uk.ac.ic.doc.slurp.multilock.MultiLock;
 
 import java.util.Arrays;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
@@ -58,6 +60,9 @@ import java.util.function.Consumer;
  * If it becomes necessary to eliminate such Collection/Document deadlock scenarios, Document locks
  * could be acquired using the same protocol as Collection locks (as really they are all just URI paths in a hierarchy)!
  *
+ * BTree locks are Single-Writer/Multi-Reader for those BTrees which have been registered
+ * via {@link #registerBtreeMultiReader(String)}, and exclusive for all other BTrees.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 public class LockManager {
@@ -67,6 +72,7 @@ public class LockManager {
     public final static String CONFIGURATION_WARN_WAIT_ON_READ_FOR_WRITE = "lock-manager.warn-wait-on-read-for-write";
     public final static String CONFIGURATION_COLLECTION_MULTI_WRITER = "lock-manager.collection.multi-writer";
     public final static String CONFIGURATION_DOCUMENT_MULTI_LOCK = "lock-manager.document.multi-lock";
+    public final static String CONFIGURATION_BTREE_MULTI_READER = "lock-manager.btree.multiple-readers";
 
     //TODO(AR) remove eventually!
     // legacy properties for overriding the config
@@ -101,11 +107,19 @@ public class LockManager {
      */
     private final boolean warnWaitOnReadForWrite;
 
+    /**
+     * Set to true to enable Single-Writer/Multi-Reader semantics for
+     * those BTrees that are registered as multi-reader, as opposed to
+     * an exclusive lock for both reads and writes
+     */
+    private final boolean btreeMultiReader;
+
 
     private final LockTable lockTable;
     private final WeakLazyStripes<String, MultiLock> collectionLocks;
     private final WeakLazyStripes<String, DocumentLock> documentLocks;
-    private final WeakLazyStripes<String, ReentrantLock> btreeLocks;
+    private final WeakLazyStripes<String, ReentrantReadWriteLock> btreeLocks;
+    private final Set<String> multiReaderBtrees = ConcurrentHashMap.newKeySet();
 
     /**
      * @param configuration database configuration
@@ -117,6 +131,7 @@ public class LockManager {
         this.collectionsMultiWriter = getLegacySystemPropertyOrConfigPropertyBool(PROP_ENABLE_COLLECTIONS_MULTI_WRITER, configuration, CONFIGURATION_COLLECTION_MULTI_WRITER, false);
         this.upgradeCheck = getLegacySystemPropertyOrConfigPropertyBool(PROP_UPGRADE_CHECK, configuration, CONFIGURATION_UPGRADE_CHECK, false);
         this.warnWaitOnReadForWrite = getLegacySystemPropertyOrConfigPropertyBool(PROP_WARN_WAIT_ON_READ_FOR_WRITE, configuration, CONFIGURATION_WARN_WAIT_ON_READ_FOR_WRITE, false);
+        this.btreeMultiReader = configuration != null ? configuration.getProperty(CONFIGURATION_BTREE_MULTI_READER, true) : true;
 
         this.lockTable = new LockTable(configuration);
         this.collectionLocks = new WeakLazyStripes<>(concurrencyLevel, LockManager::createCollectionLock);
@@ -184,8 +199,8 @@ public class LockManager {
      * Creates a new lock for a {@link org.exist.storage.btree.BTree}
      * will be Striped by the btreeFileName
      */
-    private static ReentrantLock createBtreeLock(final String btreeFileName) {
-        return new ReentrantLock();
+    private static ReentrantReadWriteLock createBtreeLock(final String btreeFileName) {
+        return new ReentrantReadWriteLock();
     }
 
     /**
@@ -545,12 +560,42 @@ public class LockManager {
      *
      * @return A lock for the DOMFile
      */
-    ReentrantLock getBTreeLock(final String domFileName) {
+    ReentrantReadWriteLock getBTreeLock(final String domFileName) {
         return btreeLocks.get(domFileName);
     }
 
     /**
-     * Acquire a WRITE_LOCK on a {@link org.exist.storage.btree.BTree}
+     * Registers a {@link org.exist.storage.btree.BTree} as safe for
+     * concurrent readers. Subsequent calls to {@link #acquireBtreeReadLock(String)}
+     * for the BTree will acquire a shared READ_LOCK instead of an exclusive lock,
+     * unless multiple readers have been disabled in the configuration.
+     *
+     * A thread holding the READ_LOCK of a multi-reader BTree must not
+     * attempt to acquire its WRITE_LOCK.
+     *
+     * @param btreeFileName the filename of the BTree
+     */
+    public void registerBtreeMultiReader(final String btreeFileName) {
+        if (btreeMultiReader) {
+            multiReaderBtrees.add(btreeFileName);
+        }
+    }
+
+    /**
+     * Returns true if concurrent readers are enabled for the BTree.
+     *
+     * @param btreeFileName the filename of the BTree
+     *
+     * @return true if readers of the BTree share a READ_LOCK
+     */
+    public boolean isBtreeMultiReader(final String btreeFileName) {
+        return multiReaderBtrees.contains(btreeFileName);
+    }
+
+    /**
+     * Acquire a READ_LOCK on a {@link org.exist.storage.btree.BTree}
+     *
+     * If the BTree is not registered as multi-reader, the lock is exclusive.
      *
      * @param btreeFileName the filename of the BTree
      *
@@ -558,14 +603,15 @@ public class LockManager {
      *
      * @throws LockException if the lock could not be acquired
      */
-    public ManagedLock<ReentrantLock> acquireBtreeReadLock(final String btreeFileName) throws LockException {
+    public ManagedLock<ReentrantReadWriteLock> acquireBtreeReadLock(final String btreeFileName) throws LockException {
         final long groupId = System.nanoTime();
 
-        final ReentrantLock lock = getBTreeLock(btreeFileName);
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        final java.util.concurrent.locks.Lock readLock = isBtreeMultiReader(btreeFileName) ? lock.readLock() : lock.writeLock();
         try {
             lockTable.attempt(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.READ_LOCK);
 
-            lock.lockInterruptibly();
+            readLock.lockInterruptibly();
 
             lockTable.acquired(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.READ_LOCK);
         } catch(final InterruptedException e) {
@@ -573,8 +619,8 @@ public class LockManager {
             throw new LockException("Unable to acquire READ_LOCK for: " + btreeFileName, e);
         }
 
-        return new ManagedLock(lock, () -> {
-            lock.unlock();
+        return new ManagedLock<>(lock, () -> {
+            readLock.unlock();
             lockTable.released(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.READ_LOCK);
         });
     }
@@ -588,14 +634,18 @@ public class LockManager {
      *
      * @throws LockException if the lock could not be acquired
      */
-    public ManagedLock<ReentrantLock> acquireBtreeWriteLock(final String btreeFileName) throws LockException {
+    public ManagedLock<ReentrantReadWriteLock> acquireBtreeWriteLock(final String btreeFileName) throws LockException {
         final long groupId = System.nanoTime();
 
-        final ReentrantLock lock = getBTreeLock(btreeFileName);
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+            // ReentrantReadWriteLock does not support upgrading, this would deadlock
+            throw new LockException("Unable to upgrade READ_LOCK to WRITE_LOCK for: " + btreeFileName);
+        }
         try {
             lockTable.attempt(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
 
-            lock.lockInterruptibly();
+            lock.writeLock().lockInterruptibly();
 
             lockTable.acquired(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
         } catch(final InterruptedException e) {
@@ -603,12 +653,38 @@ public class LockManager {
             throw new LockException("Unable to acquire WRITE_LOCK for: " + btreeFileName, e);
         }
 
-        return new ManagedLock(lock, () -> {
-            lock.unlock();
+        return new ManagedLock<>(lock, () -> {
+            lock.writeLock().unlock();
             lockTable.released(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
         });
     }
 
+    /**
+     * Attempt to acquire a WRITE_LOCK on a {@link org.exist.storage.btree.BTree}
+     * without waiting.
+     *
+     * @param btreeFileName the filename of the BTree
+     *
+     * @return the lock for the BTree, or empty if the BTree is locked
+     *     by another thread
+     */
+    public Optional<ManagedLock<ReentrantReadWriteLock>> tryAcquireBtreeWriteLock(final String btreeFileName) {
+        final long groupId = System.nanoTime();
+
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        lockTable.attempt(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
+        if (!lock.writeLock().tryLock()) {
+            lockTable.attemptFailed(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
+            return Optional.empty();
+        }
+        lockTable.acquired(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
+
+        return Optional.of(new ManagedLock<>(lock, () -> {
+            lock.writeLock().unlock();
+            lockTable.released(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
+        }));
+    }
+
     /**
      * Returns true if the BTree for the file name is locked.
      *
@@ -617,8 +693,8 @@ public class LockManager {
      * @return true if the Btree is locked.
      */
     public boolean isBtreeLocked(final String btreeFileName) {
-        final ReentrantLock lock = getBTreeLock(btreeFileName);
-        return lock.isLocked();
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        return lock.isWriteLocked() || lock.getReadLockCount() > 0;
     }
 
     /**
@@ -627,12 +703,10 @@ public class LockManager {
      * @param btreeFileName The name of the .dbx file.
      *
      * @return true if the Btree is locked for writes.
-     *
-     * @deprecated Just a place holder until we can make the BTree reader/writer safe
      */
-    @Deprecated
     public boolean isBtreeLockedForWrite(final String btreeFileName) {
-        return isBtreeLocked(btreeFileName);
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        return lock.isWriteLocked();
     }
 
     /**
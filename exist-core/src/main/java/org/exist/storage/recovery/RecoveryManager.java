@@ -42,6 +42,7 @@ import org.exist.storage.journal.*;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.txn.Checkpoint;
 import org.exist.util.FileUtils;
+import org.exist.util.NamedThreadFactory;
 import org.exist.util.ProgressBar;
 import com.evolvedbinary.j8fu.function.SupplierE;
 import org.exist.util.sanity.SanityCheck;
@@ -57,15 +58,34 @@ public class RecoveryManager {
 	
 	private final static Logger LOG = LogManager.getLogger(RecoveryManager.class);
 
+    /**
+     * Interval in milliseconds at which the progress of the redo is reported.
+     */
+    private static final long PROGRESS_INTERVAL = 10_000;
+
     private final DBBroker broker;
     private final JournalRecoveryAccessor journalRecovery;
     private final boolean restartOnError;
+    private final int redoThreads;
 
     public RecoveryManager(final DBBroker broker, final JournalManager journalManager, final boolean restartOnError) {
+        this(broker, journalManager, restartOnError, 1);
+	}
+
+    /**
+     * @param broker the broker used for recovery
+     * @param journalManager the journal manager
+     * @param restartOnError true if the database should start even if recovery fails
+     * @param redoThreads the number of threads used to redo the journal entries
+     *     of different files concurrently, 1 to redo all entries on the calling thread
+     */
+    public RecoveryManager(final DBBroker broker, final JournalManager journalManager, final boolean restartOnError,
+            final int redoThreads) {
         this.broker = broker;
         this.journalRecovery = journalManager.getRecoveryAccessor(this);
         this.restartOnError = restartOnError;
-	}
+        this.redoThreads = redoThreads;
+    }
 
 	/**
 	 * Checks if the database is in a consistent state. If not, start a recovery run.
@@ -102,7 +122,8 @@ public class RecoveryManager {
                     	final Checkpoint checkpoint = (Checkpoint) lastLog;
                     	// Found a checkpoint. To be sure it is indeed a valid checkpoint
                     	// record, we compare the LSN stored in it with the current LSN.
-                    	if (checkpoint.getStoredLsn().equals(checkpoint.getLsn())) {
+                    	// After a fuzzy checkpoint, dirty pages may not have been written.
+                    	if (checkpoint.getStoredLsn().equals(checkpoint.getLsn()) && !checkpoint.isFuzzy()) {
                     		checkpointFound = true;
                     		LOG.debug("Database is in clean state. Last checkpoint: " + 
                     				checkpoint.getDateString());
@@ -147,14 +168,19 @@ public class RecoveryManager {
                     }
 
 	    			// if the last checkpoint record is not the last record in the file
-	    			// we need a recovery.
-	    			if ((lastCheckpoint == null || !lastCheckpoint.getLsn().equals(lastLsn)) &&
-	    					txnsStarted.size() > 0) {
+	    			// we need a recovery. After a fuzzy checkpoint, the operations since
+	    			// its redo LSN may not have been written to disk.
+	    			final boolean fuzzy = lastCheckpoint != null && lastCheckpoint.isFuzzy();
+	    			if (fuzzy || ((lastCheckpoint == null || !lastCheckpoint.getLsn().equals(lastLsn)) &&
+	    					txnsStarted.size() > 0)) {
 	    				LOG.info("Dirty transactions: " + txnsStarted.size());
 	    				// starting recovery: reposition the log reader to the last checkpoint
 						if (lastCheckpoint == null)
 						    {reader.positionFirst();}
-						else {
+						else if (fuzzy) {
+						    LOG.info("Last checkpoint is fuzzy, redo from: " + lastCheckpoint.getRedoLsn());
+						    reader.position(lastCheckpoint.getRedoLsn());
+						} else {
 						    reader.position(lastCheckpoint.getLsn());
 						    next = reader.nextEntry();
 						}
@@ -256,40 +282,66 @@ public class RecoveryManager {
 
             // ------- REDO ---------
             if (LOG.isInfoEnabled())
-                {LOG.info("First pass: redoing " + txnCount + " transactions...");}
-            final ProgressBar progress = new ProgressBar("Redo ", FileUtils.sizeQuietly(last));
+                {LOG.info("First pass: redoing " + txnCount + " transactions using " + redoThreads + " threads...");}
+            final long journalSize = FileUtils.sizeQuietly(last);
+            final ProgressBar progress = new ProgressBar("Redo ", journalSize);
             Loggable next = null;
             int redoCnt = 0;
-            try {
-                while ((next = reader.nextEntry()) != null) {
-                    SanityCheck.ASSERT(next.getLogType() != LogEntryTypes.CHECKPOINT,
-                            "Found a checkpoint during recovery run! This should not ever happen.");
-                    if (next.getLogType() == LogEntryTypes.TXN_START) {
-                        // new transaction starts: add it to the transactions table
-                        runningTxns.put(next.getTransactionId(), next);
-                    } else if (next.getLogType() == LogEntryTypes.TXN_COMMIT) {
-                        // transaction committed: remove it from the transactions table
-                        runningTxns.remove(next.getTransactionId());
-                        redoCnt++;
-                    } else if (next.getLogType() == LogEntryTypes.TXN_ABORT) {
-                        // transaction aborted: remove it from the transactions table
-                        runningTxns.remove(next.getTransactionId());
+            final long redoStart = System.currentTimeMillis();
+            long lastReport = redoStart;
+            try (final RedoExecutor redoExecutor = new RedoExecutor(redoThreads,
+                    new NamedThreadFactory(broker.getBrokerPool(), "recovery.redo"))) {
+                try {
+                    while ((next = reader.nextEntry()) != null) {
+                        // recovery from a fuzzy checkpoint starts before the checkpoint
+                        SanityCheck.ASSERT(next.getLogType() != LogEntryTypes.CHECKPOINT || ((Checkpoint) next).isFuzzy(),
+                                "Found a checkpoint during recovery run! This should not ever happen.");
+                        if (next.getLogType() == LogEntryTypes.TXN_START) {
+                            // new transaction starts: add it to the transactions table
+                            runningTxns.put(next.getTransactionId(), next);
+                        } else if (next.getLogType() == LogEntryTypes.TXN_COMMIT) {
+                            // transaction committed: remove it from the transactions table
+                            runningTxns.remove(next.getTransactionId());
+                            redoCnt++;
+                        } else if (next.getLogType() == LogEntryTypes.TXN_ABORT) {
+                            // transaction aborted: remove it from the transactions table
+                            runningTxns.remove(next.getTransactionId());
+                        }
+            //            LOG.debug("Redo: " + next.dump());
+                        // redo the log entry. Entries which change the pages of different
+                        // files are independent of each other and may be redone concurrently.
+                        if (isTransactionControl(next)) {
+                            next.redo();
+                        } else {
+                            redoExecutor.redo(next);
+                        }
+                        progress.set(next.getLsn().getOffset());
+
+                        final long now = System.currentTimeMillis();
+                        if (now - lastReport >= PROGRESS_INTERVAL) {
+                            lastReport = now;
+                            reportRedoProgress(next.getLsn(), journalSize, redoExecutor, redoStart);
+                        }
+
+                        if (next.getLsn().equals(lastLsn))
+                            {break;} // last readable entry reached. Stop here.
                     }
-        //            LOG.debug("Redo: " + next.dump());
-                    // redo the log entry
-                    next.redo();
-                    progress.set(next.getLsn().getOffset());
-                    if (next.getLsn().equals(lastLsn))
-                        {break;} // last readable entry reached. Stop here.
+                    // all entries have to be redone before the undo starts
+                    redoExecutor.await();
+                } catch (final Exception e) {
+                    LOG.error("Exception caught while redoing transactions. Aborting recovery to avoid possible damage. " +
+                        "Before starting again, make sure to run a check via the emergency export tool.", e);
+                    final Loggable failed = redoExecutor.getFailedEntry();
+                    if (failed != null)
+                        {LOG.info("Log entry that caused the exception: " + failed.dump());}
+                    else if (next != null)
+                        {LOG.info("Log entry that caused the exception: " + next.dump());}
+                        throw new LogException("Recovery aborted. ");
+                } finally {
+                    LOG.info("Redo processed " + redoCnt + " out of " + txnCount + " transactions; " +
+                            redoExecutor.getRedone() + " entries of " + redoExecutor.getTargets() + " files redone in " +
+                            (System.currentTimeMillis() - redoStart) + "ms.");
                 }
-            } catch (final Exception e) {
-                LOG.error("Exception caught while redoing transactions. Aborting recovery to avoid possible damage. " +
-                    "Before starting again, make sure to run a check via the emergency export tool.", e);
-                if (next != null)
-                    {LOG.info("Log entry that caused the exception: " + next.dump());}
-                throw new LogException("Recovery aborted. ");
-            } finally {
-                LOG.info("Redo processed " + redoCnt + " out of " + txnCount + " transactions.");
             }
 
             // ------- UNDO ---------
@@ -336,6 +388,30 @@ public class RecoveryManager {
         }
     }
     
+    /**
+     * Transaction control entries do not change any pages, and so
+     * do not have to wait for the entries preceding them to be redone.
+     *
+     * @param entry the journal entry
+     *
+     * @return true if the entry starts, commits or aborts a transaction, or is a checkpoint
+     */
+    private static boolean isTransactionControl(final Loggable entry) {
+        final byte type = entry.getLogType();
+        return type == LogEntryTypes.TXN_START || type == LogEntryTypes.TXN_COMMIT
+                || type == LogEntryTypes.TXN_ABORT || type == LogEntryTypes.CHECKPOINT;
+    }
+
+    private void reportRedoProgress(final Lsn lsn, final long journalSize, final RedoExecutor redoExecutor,
+            final long redoStart) {
+        final long percent = journalSize > 0 ? (lsn.getOffset() * 100) / journalSize : 100;
+        final long redone = redoExecutor.getRedone();
+        final long elapsed = Math.max(1, System.currentTimeMillis() - redoStart);
+        final String status = "Redo: " + percent + "% of journal read, " + redone + " entries redone";
+        LOG.info(status + " (" + ((redone * 1000) / elapsed) + " entries/s)");
+        broker.getBrokerPool().reportStatus(status);
+    }
+
 	private void cleanDirectory(final Stream<Path> files) {
         files.forEach(FileUtils::deleteQuietly);
 	}
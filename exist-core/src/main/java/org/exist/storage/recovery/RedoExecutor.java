@@ -0,0 +1,251 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Loggable;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redoes journal entries on a number of worker threads.
+ *
+ * Entries are partitioned by their {@link Loggable#getRedoTarget()}. All
+ * entries of one target are redone by the same worker in the order in which
+ * they were submitted, whilst the entries of different targets are redone
+ * concurrently. An entry without a target is a barrier: it is redone
+ * by the calling thread once all entries submitted before it have been redone.
+ *
+ * Entries are handed to the workers in batches, and the number of
+ * batches in flight is bounded, so that the reader of the journal
+ * cannot run arbitrarily far ahead of the workers.
+ *
+ * With a single thread, all entries are redone by the calling thread.
+ */
+@NotThreadSafe
+class RedoExecutor implements AutoCloseable {
+
+    static final int BATCH_SIZE = 256;
+
+    private final ExecutorService[] workers;
+    private final int maxBatches;
+    private final Semaphore batches;
+    private final Map<Object, Lane> lanes = new IdentityHashMap<>();
+    private final AtomicReference<Failure> failure = new AtomicReference<>();
+    private final LongAdder redone = new LongAdder();
+
+    /**
+     * @param threads the number of worker threads
+     * @param threadFactory factory for the worker threads
+     */
+    RedoExecutor(final int threads, final ThreadFactory threadFactory) {
+        if (threads > 1) {
+            this.workers = new ExecutorService[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+            }
+        } else {
+            this.workers = new ExecutorService[0];
+        }
+        this.maxBatches = Math.max(1, threads) * 4;
+        this.batches = new Semaphore(maxBatches);
+    }
+
+    /**
+     * Submits an entry to be redone.
+     *
+     * @param entry the journal entry
+     *
+     * @throws LogException if an entry could not be redone
+     */
+    void redo(final Loggable entry) throws LogException {
+        checkFailure();
+
+        final Object target = entry.getRedoTarget();
+        if (workers.length == 0 || target == null) {
+            await();
+            redoEntry(entry);
+            checkFailure();
+            return;
+        }
+
+        Lane lane = lanes.get(target);
+        if (lane == null) {
+            lane = new Lane(workers[lanes.size() % workers.length]);
+            lanes.put(target, lane);
+        }
+        lane.batch.add(entry);
+        if (lane.batch.size() >= BATCH_SIZE) {
+            submit(lane);
+        }
+    }
+
+    /**
+     * Waits until all submitted entries have been redone.
+     *
+     * @throws LogException if an entry could not be redone
+     */
+    void await() throws LogException {
+        for (final Lane lane : lanes.values()) {
+            if (!lane.batch.isEmpty()) {
+                submit(lane);
+            }
+        }
+        try {
+            batches.acquire(maxBatches);
+            batches.release(maxBatches);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted whilst waiting for redo", e);
+        }
+        checkFailure();
+    }
+
+    private void submit(final Lane lane) throws LogException {
+        final List<Loggable> batch = lane.batch;
+        lane.batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            batches.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted whilst waiting for redo", e);
+        }
+        try {
+            lane.worker.execute(() -> {
+                try {
+                    for (final Loggable entry : batch) {
+                        if (failure.get() != null) {
+                            return;
+                        }
+                        redoEntry(entry);
+                    }
+                } finally {
+                    batches.release();
+                }
+            });
+        } catch (final RuntimeException e) {
+            batches.release();
+            throw e;
+        }
+    }
+
+    private void redoEntry(final Loggable entry) {
+        try {
+            entry.redo();
+            redone.increment();
+        } catch (final Throwable t) {
+            failure.compareAndSet(null, new Failure(entry, t));
+        }
+    }
+
+    private void checkFailure() throws LogException {
+        final Failure f = failure.get();
+        if (f != null) {
+            throw new LogException("Redo of " + f.entry.getLsn() + " failed: " + f.cause.getMessage(), f.cause);
+        }
+    }
+
+    /**
+     * Returns the entry which could not be redone.
+     *
+     * @return the entry, or null if all entries have been redone
+     */
+    @Nullable Loggable getFailedEntry() {
+        final Failure f = failure.get();
+        return f == null ? null : f.entry;
+    }
+
+    /**
+     * Returns the number of entries which have been redone.
+     *
+     * @return the number of entries
+     */
+    long getRedone() {
+        return redone.sum();
+    }
+
+    /**
+     * Returns the number of distinct targets of the submitted entries.
+     *
+     * @return the number of targets
+     */
+    int getTargets() {
+        return lanes.size();
+    }
+
+    /**
+     * Stops the workers, after they have finished the submitted entries.
+     *
+     * The workers are not interrupted, as an interrupt would close the
+     * channels of the files they are writing to.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        for (final ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (final ExecutorService worker : workers) {
+            while (true) {
+                try {
+                    if (worker.awaitTermination(1, TimeUnit.SECONDS)) {
+                        break;
+                    }
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Lane {
+        private final ExecutorService worker;
+        private List<Loggable> batch = new ArrayList<>(BATCH_SIZE);
+
+        Lane(final ExecutorService worker) {
+            this.worker = worker;
+        }
+    }
+
+    private static class Failure {
+        private final Loggable entry;
+        private final Throwable cause;
+
+        Failure(final Loggable entry, final Throwable cause) {
+            this.entry = entry;
+            this.cause = cause;
+        }
+    }
+}
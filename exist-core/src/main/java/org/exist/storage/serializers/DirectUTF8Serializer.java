@@ -0,0 +1,571 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.serializers;
+
+import org.exist.Namespaces;
+import org.exist.dom.persistent.AttrImpl;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.ElementImpl;
+import org.exist.dom.persistent.IStoredNode;
+import org.exist.dom.persistent.ProcessingInstructionImpl;
+import org.exist.dom.persistent.StoredNode;
+import org.exist.dom.persistent.SymbolTable;
+import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.storage.DBBroker;
+import org.exist.storage.Signatures;
+import org.exist.storage.btree.Value;
+import org.exist.storage.dom.IRawNodeIterator;
+import org.exist.util.ByteConversion;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.OutputKeys;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serializes a stored document by copying the UTF-8 encoded names and
+ * character data of its node records into an output stream. No nodes,
+ * strings or SAX events are created for the content of the document.
+ *
+ * Used by {@link NativeSerializer#serializeDirect(DocumentImpl, OutputStream)}
+ * for unindented XML output in UTF-8. Namespace declarations are written
+ * following the rules of {@link org.exist.util.serializer.SAXSerializer} and
+ * {@link org.exist.util.serializer.XMLWriter}, so that the output is the same
+ * as the output of the SAX pipeline.
+ */
+final class DirectUTF8Serializer {
+
+    private static final byte[] LT = "&lt;".getBytes(UTF_8);
+    private static final byte[] GT = "&gt;".getBytes(UTF_8);
+    private static final byte[] AMP = "&amp;".getBytes(UTF_8);
+    private static final byte[] QUOT = "&#34;".getBytes(UTF_8);
+    private static final byte[] CR = "&#xD;".getBytes(UTF_8);
+    private static final byte[] LF = "&#xA;".getBytes(UTF_8);
+    private static final byte[] TAB = "&#x9;".getBytes(UTF_8);
+    private static final byte[] XMLNS = " xmlns".getBytes(UTF_8);
+    private static final byte[] START_COMMENT = "<!--".getBytes(UTF_8);
+    private static final byte[] END_COMMENT = "-->".getBytes(UTF_8);
+    private static final byte[] START_CDATA = "<![CDATA[".getBytes(UTF_8);
+    private static final byte[] END_CDATA = "]]>".getBytes(UTF_8);
+
+    private final DBBroker broker;
+    private final SymbolTable symbols;
+    private final NodeIdFactory nodeFactory;
+    private final Buffer out;
+    private final Buffer attributes = new Buffer(null);
+    private final byte[] declaration;
+
+    private byte[][] localNames = new byte[256][];
+    private String[] namespaceURIs = new String[64];
+    private final Map<String, byte[]> prefixes = new HashMap<>();
+
+    // namespace state, see SAXSerializer and XMLWriter
+    private final NamespaceSupport nsSupport = new NamespaceSupport();
+    private final Map<String, String> namespaceDecls = new HashMap<>();
+    private final Map<String, String> optionalNamespaceDecls = new HashMap<>();
+    private Set<String> namespaces;
+    private String defaultNamespace = XMLConstants.NULL_NS_URI;
+
+    private boolean declarationWritten = false;
+    private boolean tagIsOpen = false;
+
+    DirectUTF8Serializer(final DBBroker broker, final Properties outputProperties, final OutputStream os) {
+        this.broker = broker;
+        this.symbols = broker.getBrokerPool().getSymbols();
+        this.nodeFactory = broker.getBrokerPool().getNodeFactory();
+        this.out = new Buffer(os);
+        if ("no".equals(outputProperties.getProperty(OutputKeys.OMIT_XML_DECLARATION, "yes"))) {
+            final StringBuilder decl = new StringBuilder("<?xml version=\"")
+                    .append(outputProperties.getProperty(OutputKeys.VERSION, "1.0"))
+                    .append("\" encoding=\"")
+                    .append(outputProperties.getProperty(OutputKeys.ENCODING, "UTF-8"))
+                    .append('"');
+            final String standalone = outputProperties.getProperty(OutputKeys.STANDALONE);
+            if (standalone != null) {
+                decl.append(" standalone=\"").append(standalone).append('"');
+            }
+            this.declaration = decl.append("?>\n").toString().getBytes(UTF_8);
+        } else {
+            this.declaration = null;
+        }
+    }
+
+    void serialize(final DocumentImpl doc) throws IOException {
+        final NodeList children = doc.getChildNodes();
+        IRawNodeIterator iterator = null;
+        try {
+            for (int i = 0; i < children.getLength(); i++) {
+                final IStoredNode<?> child = (IStoredNode<?>) children.item(i);
+                if (iterator == null) {
+                    iterator = broker.newRawNodeIterator(child);
+                } else {
+                    iterator.seek(child);
+                }
+                namespaces = new HashSet<>();
+                node(iterator, next(iterator));
+            }
+        } finally {
+            if (iterator != null) {
+                iterator.close();
+            }
+        }
+        out.flush();
+    }
+
+    private void node(final IRawNodeIterator iterator, final Value value) throws IOException {
+        final byte[] data = value.data();
+        final int start = value.start();
+        final int end = start + value.getLength();
+        switch (Signatures.getType(data[start])) {
+            case Node.ELEMENT_NODE:
+                element(iterator, data, start, end);
+                break;
+
+            case Node.TEXT_NODE: {
+                final int pos = skipNodeId(data, start + StoredNode.LENGTH_SIGNATURE_LENGTH);
+                // an empty text node does not close the start tag, see IndentingXMLWriter#characters
+                if (pos < end) {
+                    beforeContent();
+                    escape(out, data, pos, end, false);
+                }
+                break;
+            }
+
+            case Node.CDATA_SECTION_NODE: {
+                final int pos = skipNodeId(data, start + StoredNode.LENGTH_SIGNATURE_LENGTH);
+                closeStartTag(false);
+                out.write(START_CDATA);
+                out.write(data, pos, end - pos);
+                out.write(END_CDATA);
+                break;
+            }
+
+            case Node.COMMENT_NODE: {
+                final int pos = skipNodeId(data, start + StoredNode.LENGTH_SIGNATURE_LENGTH);
+                beforeContent();
+                out.write(START_COMMENT);
+                out.write(data, pos, end - pos);
+                out.write(END_COMMENT);
+                break;
+            }
+
+            case Node.PROCESSING_INSTRUCTION_NODE: {
+                int pos = skipNodeId(data, start + StoredNode.LENGTH_SIGNATURE_LENGTH);
+                final int targetLen = ByteConversion.byteToInt(data, pos);
+                pos += ProcessingInstructionImpl.LENGTH_TARGET_DATA;
+                beforeContent();
+                out.write('<');
+                out.write('?');
+                out.write(data, pos, targetLen);
+                pos += targetLen;
+                if (pos < end) {
+                    out.write(' ');
+                    out.write(data, pos, end - pos);
+                }
+                out.write('?');
+                out.write('>');
+                break;
+            }
+
+            default:
+                throw new IOException("Unexpected node record in document");
+        }
+    }
+
+    private void element(final IRawNodeIterator iterator, final byte[] data, final int start, final int end)
+            throws IOException {
+        int pos = start;
+        final byte idSizeType = (byte) (data[pos] & 0x03);
+        final boolean hasNamespace = (data[pos] & 0x10) == 0x10;
+        pos += StoredNode.LENGTH_SIGNATURE_LENGTH;
+        final int children = ByteConversion.byteToInt(data, pos);
+        pos += ElementImpl.LENGTH_ELEMENT_CHILD_COUNT;
+        pos = skipNodeId(data, pos);
+        final int attrCount = ByteConversion.byteToShort(data, pos);
+        pos += ElementImpl.LENGTH_ATTRIBUTES_COUNT;
+        final short nameId = (short) Signatures.read(idSizeType, data, pos);
+        pos += Signatures.getLength(idSizeType);
+        String prefix = XMLConstants.DEFAULT_NS_PREFIX;
+        String namespaceURI = XMLConstants.NULL_NS_URI;
+        if (hasNamespace) {
+            final short nsId = ByteConversion.byteToShort(data, pos);
+            pos += ElementImpl.LENGTH_NS_ID;
+            final int prefixLen = ByteConversion.byteToShort(data, pos);
+            pos += ElementImpl.LENGTH_PREFIX_LENGTH;
+            if (prefixLen > 0) {
+                prefix = new String(data, pos, prefixLen, UTF_8);
+            }
+            pos += prefixLen;
+            namespaceURI = namespaceURI(nsId);
+        }
+
+        // the prefix mappings declared by the element, see NativeSerializer#serializeToReceiver
+        String defaultNS = null;
+        if (pos < end) {
+            for (final Map.Entry<String, String> mapping : readNamespaceMappings(data, pos, end).entrySet()) {
+                final String mappingPrefix = mapping.getKey();
+                final String mappingURI = mapping.getValue();
+                if (mappingPrefix.isEmpty()) {
+                    defaultNS = mappingURI;
+                }
+                startPrefixMapping(mappingPrefix, mappingURI);
+                namespaces.add(mappingURI);
+            }
+        }
+        final String ns = defaultNS == null ? namespaceURI : defaultNS;
+        if (ns != null && !ns.isEmpty() && !namespaces.contains(ns)) {
+            startPrefixMapping(prefix, ns);
+        }
+
+        beforeContent();
+        out.write('<');
+        writeQName(out, prefix, nameId);
+        tagIsOpen = true;
+
+        namespaceDecls.clear();
+        nsSupport.pushContext();
+        if (nsSupport.getURI(prefix) == null) {
+            namespaceDecls.put(prefix, namespaceURI);
+            nsSupport.declarePrefix(prefix, namespaceURI);
+        }
+        attributes.reset();
+        for (int i = 0; i < attrCount; i++) {
+            attribute(next(iterator));
+        }
+        for (final Map.Entry<String, String> nsEntry : optionalNamespaceDecls.entrySet()) {
+            namespace(nsEntry.getKey(), nsEntry.getValue());
+            nsSupport.declarePrefix(nsEntry.getKey(), nsEntry.getValue());
+        }
+        for (final Map.Entry<String, String> nsEntry : namespaceDecls.entrySet()) {
+            if (!optionalNamespaceDecls.containsKey(nsEntry.getKey())) {
+                namespace(nsEntry.getKey(), nsEntry.getValue());
+            }
+        }
+        if (prefix.isEmpty() && !namespaceURI.equals(defaultNamespace.isEmpty() ? null : defaultNamespace)) {
+            namespace(XMLConstants.DEFAULT_NS_PREFIX, namespaceURI);
+            nsSupport.declarePrefix(XMLConstants.DEFAULT_NS_PREFIX, namespaceURI);
+        }
+        optionalNamespaceDecls.clear();
+        out.write(attributes.data, 0, attributes.len);
+
+        for (int i = attrCount; i < children; i++) {
+            node(iterator, next(iterator));
+        }
+
+        nsSupport.popContext();
+        if (tagIsOpen) {
+            closeStartTag(true);
+        } else {
+            out.write('<');
+            out.write('/');
+            writeQName(out, prefix, nameId);
+            out.write('>');
+        }
+        final String inScopeDefault = nsSupport.getURI(XMLConstants.DEFAULT_NS_PREFIX);
+        defaultNamespace = inScopeDefault == null ? XMLConstants.NULL_NS_URI : inScopeDefault;
+    }
+
+    private void attribute(final Value value) throws IOException {
+        final byte[] data = value.data();
+        int pos = value.start();
+        final int end = pos + value.getLength();
+        if (Signatures.getType(data[pos]) != Node.ATTRIBUTE_NODE) {
+            throw new IOException("Expected an attribute node record");
+        }
+        final byte idSizeType = (byte) (data[pos] & 0x3);
+        final boolean hasNamespace = (data[pos] & 0x10) == 0x10;
+        pos = skipNodeId(data, pos + StoredNode.LENGTH_SIGNATURE_LENGTH);
+        final short nameId = (short) Signatures.read(idSizeType, data, pos);
+        pos += Signatures.getLength(idSizeType);
+        String prefix = XMLConstants.DEFAULT_NS_PREFIX;
+        if (hasNamespace) {
+            final short nsId = ByteConversion.byteToShort(data, pos);
+            pos += AttrImpl.LENGTH_NS_ID;
+            final int prefixLen = ByteConversion.byteToShort(data, pos);
+            pos += AttrImpl.LENGTH_PREFIX_LENGTH;
+            if (prefixLen > 0) {
+                prefix = new String(data, pos, prefixLen, UTF_8);
+                if (nsSupport.getURI(prefix) == null) {
+                    final String uri = namespaceURI(nsId);
+                    namespaceDecls.put(prefix, uri);
+                    nsSupport.declarePrefix(prefix, uri);
+                }
+            }
+            pos += prefixLen;
+        }
+        final byte[] localName = localName(nameId);
+        if (prefix.startsWith(XMLConstants.XMLNS_ATTRIBUTE)
+                || (prefix.isEmpty() && startsWith(localName, XMLConstants.XMLNS_ATTRIBUTE))) {
+            return;
+        }
+        attributes.write(' ');
+        writeQName(attributes, prefix, nameId);
+        attributes.write('=');
+        attributes.write('"');
+        escape(attributes, data, pos, end, true);
+        attributes.write('"');
+    }
+
+    private void startPrefixMapping(final String prefix, final String namespaceURI) {
+        if (Namespaces.XML_NS.equals(namespaceURI)) {
+            return;
+        }
+        final String ns = nsSupport.getURI(prefix);
+        if (ns == null || !ns.equals(namespaceURI)) {
+            optionalNamespaceDecls.put(prefix, namespaceURI);
+        }
+    }
+
+    private void namespace(final String prefix, final String namespaceURI) throws IOException {
+        if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix) || (namespaceURI == null && prefix.isEmpty())) {
+            return;
+        }
+        if (prefix.isEmpty()) {
+            if (defaultNamespace.equals(namespaceURI)) {
+                return;
+            }
+            out.write(XMLNS);
+            defaultNamespace = namespaceURI;
+        } else {
+            out.write(XMLNS);
+            out.write(':');
+            out.write(prefix(prefix));
+        }
+        out.write('=');
+        out.write('"');
+        final byte[] uri = namespaceURI.getBytes(UTF_8);
+        escape(out, uri, 0, uri.length, true);
+        out.write('"');
+    }
+
+    private Map<String, String> readNamespaceMappings(final byte[] data, final int start, final int end)
+            throws IOException {
+        final Map<String, String> mappings = new HashMap<>(1);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, start, end - start));
+        final short prefixCount = in.readShort();
+        for (int i = 0; i < prefixCount; i++) {
+            final String prefix = in.readUTF();
+            final String namespaceURI = namespaceURI(in.readShort());
+            // as ElementImpl#addNamespaceMapping, the first mapping for a prefix wins
+            mappings.putIfAbsent(prefix, namespaceURI);
+        }
+        return mappings;
+    }
+
+    private void beforeContent() throws IOException {
+        if (!declarationWritten) {
+            declarationWritten = true;
+            if (declaration != null) {
+                out.write(declaration);
+            }
+        }
+        closeStartTag(false);
+    }
+
+    private void closeStartTag(final boolean isEmpty) throws IOException {
+        if (tagIsOpen) {
+            if (isEmpty) {
+                out.write('/');
+            }
+            out.write('>');
+            tagIsOpen = false;
+        }
+    }
+
+    private void writeQName(final Buffer buffer, final String prefix, final short nameId) throws IOException {
+        if (!prefix.isEmpty()) {
+            buffer.write(prefix(prefix));
+            buffer.write(':');
+        }
+        buffer.write(localName(nameId));
+    }
+
+    private static void escape(final Buffer buffer, final byte[] data, final int start, final int end,
+            final boolean inAttribute) throws IOException {
+        // all the special characters are ASCII, so they never occur within a multi-byte UTF-8 sequence
+        int from = start;
+        for (int i = start; i < end; i++) {
+            final byte[] entity;
+            switch (data[i]) {
+                case '<':
+                    entity = LT;
+                    break;
+                case '>':
+                    entity = GT;
+                    break;
+                case '&':
+                    entity = AMP;
+                    break;
+                case '"':
+                    entity = inAttribute ? QUOT : null;
+                    break;
+                case '\r':
+                    entity = inAttribute ? CR : null;
+                    break;
+                case '\n':
+                    entity = inAttribute ? LF : null;
+                    break;
+                case '\t':
+                    entity = inAttribute ? TAB : null;
+                    break;
+                default:
+                    entity = null;
+            }
+            if (entity != null) {
+                buffer.write(data, from, i - from);
+                buffer.write(entity);
+                from = i + 1;
+            }
+        }
+        buffer.write(data, from, end - from);
+    }
+
+    private int skipNodeId(final byte[] data, int pos) {
+        final int dlnLen = ByteConversion.byteToShort(data, pos);
+        pos += NodeId.LENGTH_NODE_ID_UNITS;
+        return pos + nodeFactory.lengthInBytes(dlnLen, data, pos);
+    }
+
+    private static Value next(final IRawNodeIterator iterator) throws IOException {
+        final Value value = iterator.next();
+        if (value == null) {
+            throw new IOException("Unexpected end of document while reading node records");
+        }
+        return value;
+    }
+
+    private byte[] localName(final short id) throws IOException {
+        if (id >= localNames.length) {
+            localNames = Arrays.copyOf(localNames, Math.max(id + 1, localNames.length * 2));
+        }
+        byte[] name = localNames[id];
+        if (name == null) {
+            final String str = symbols.getName(id);
+            if (str == null) {
+                throw new IOException("no symbol for id " + id);
+            }
+            name = str.getBytes(UTF_8);
+            localNames[id] = name;
+        }
+        return name;
+    }
+
+    private String namespaceURI(final short id) {
+        if (id == 0) {
+            return XMLConstants.NULL_NS_URI;
+        }
+        if (id >= namespaceURIs.length) {
+            namespaceURIs = Arrays.copyOf(namespaceURIs, Math.max(id + 1, namespaceURIs.length * 2));
+        }
+        String uri = namespaceURIs[id];
+        if (uri == null) {
+            uri = symbols.getNamespace(id);
+            namespaceURIs[id] = uri;
+        }
+        return uri;
+    }
+
+    private byte[] prefix(final String prefix) {
+        return prefixes.computeIfAbsent(prefix, p -> p.getBytes(UTF_8));
+    }
+
+    private static boolean startsWith(final byte[] name, final String ascii) {
+        if (name.length < ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (name[i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A byte buffer which is either flushed to an output stream
+     * when full, or grows if there is no output stream.
+     */
+    private static final class Buffer {
+
+        private final OutputStream os;
+        private byte[] data = new byte[8192];
+        private int len = 0;
+
+        Buffer(final OutputStream os) {
+            this.os = os;
+        }
+
+        void reset() {
+            len = 0;
+        }
+
+        void write(final int b) throws IOException {
+            if (len == data.length) {
+                makeRoom(1);
+            }
+            data[len++] = (byte) b;
+        }
+
+        void write(final byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        void write(final byte[] b, final int off, final int length) throws IOException {
+            if (length > data.length - len) {
+                makeRoom(length);
+                if (os != null && length > data.length) {
+                    os.write(b, off, length);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, data, len, length);
+            len += length;
+        }
+
+        void flush() throws IOException {
+            if (len > 0) {
+                os.write(data, 0, len);
+                len = 0;
+            }
+        }
+
+        private void makeRoom(final int length) throws IOException {
+            if (os != null) {
+                flush();
+            } else {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, len + length));
+            }
+        }
+    }
+}
@@ -45,6 +45,7 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -54,6 +55,7 @@ import java.util.regex.Pattern;
 import org.exist.storage.dom.INodeIterator;
 
 import javax.xml.XMLConstants;
+import javax.xml.transform.OutputKeys;
 
 /**
  * Serializer implementation for the native database backend.
@@ -84,6 +86,43 @@ public class NativeSerializer extends Serializer {
         super(broker, config, chainOfReceivers);
     }
 
+    /**
+     * Serializes the document with a {@link DirectUTF8Serializer}, which copies
+     * the names and character data from the stored node records to the output
+     * stream. This is only possible for unindented XML output in UTF-8, without
+     * stylesheets, XInclude expansion, node ids, match highlighting or
+     * document type declaration.
+     */
+    @Override
+    public boolean serializeDirect(DocumentImpl doc, OutputStream os) throws IOException {
+        if (templates != null
+                || showId != EXIST_ID_NONE
+                || customMatchListeners.getFirst() != null
+                || !"xml".equals(getProperty(OutputKeys.METHOD, "xml"))
+                || "yes".equals(getProperty(OutputKeys.INDENT, "no"))
+                || !"UTF-8".equalsIgnoreCase(getProperty(OutputKeys.ENCODING, "UTF-8"))
+                || "yes".equals(getProperty(EXistOutputKeys.XDM_SERIALIZATION, "no"))
+                || "yes".equals(getProperty(EXistOutputKeys.ENFORCE_XHTML, "no"))
+                || getProperty(OutputKeys.DOCTYPE_PUBLIC, null) != null
+                || getProperty(OutputKeys.DOCTYPE_SYSTEM, null) != null
+                || (doc.getDoctype() != null && "yes".equals(getProperty(EXistOutputKeys.OUTPUT_DOCTYPE, "no")))) {
+            return false;
+        }
+        // no stored node can be in the XInclude namespace if it was never registered
+        if ("yes".equals(getProperty(EXistOutputKeys.EXPAND_XINCLUDES, "yes"))
+                && broker.getBrokerPool().getSymbols().hasNamespace(Namespaces.XINCLUDE_NS)) {
+            return false;
+        }
+
+        final long start = System.currentTimeMillis();
+        new DirectUTF8Serializer(broker, outputProperties, os).serialize(doc);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("serializing document " + doc.getDocId() + " (" + doc.getURI() + ")"
+                    + " directly took " + (System.currentTimeMillis() - start) + " msec");
+        }
+        return true;
+    }
+
     protected void serializeToReceiver(NodeProxy p, boolean generateDocEvent, boolean checkAttributes)
     throws SAXException {
     	if(Type.subTypeOf(p.getType(), Type.DOCUMENT) || p.getNodeId() == NodeId.DOCUMENT_NODE) {
@@ -23,6 +23,7 @@
 package org.exist.storage.serializers;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URI;
@@ -492,6 +493,22 @@ public abstract class Serializer implements XMLReader {
 		releasePrettyPrinter();
 	}
 
+	/**
+	 *  Serialize a document directly to the supplied output stream, without
+	 *  generating SAX events, if the output properties allow it. Any
+	 *  stylesheets have to be prepared before by calling
+	 *  {@link #prepareStylesheets(DocumentImpl)}.
+	 *
+	 * @param doc the document
+	 * @param os the output stream
+	 * @return true if the document was serialized, false if nothing was written
+	 *     and the document has to be serialized through SAX events
+	 * @throws IOException if an error occurs while reading the document or writing the output
+	 */
+	public boolean serializeDirect(DocumentImpl doc, OutputStream os) throws IOException {
+		return false;
+	}
+
 	public String serialize(NodeValue n) throws SAXException {
 		final StringWriter out = new StringWriter();
 		serialize(n,out);
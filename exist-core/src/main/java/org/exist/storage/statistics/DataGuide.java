@@ -114,6 +114,19 @@ public class DataGuide {
         return temp.getMaxDepth();
     }
 
+    /**
+     * Get the total number of elements with the given name, summed over
+     * all paths they occur on.
+     *
+     * @param qname the element name
+     * @return the number of elements
+     */
+    public int getNodeCount(QName qname) {
+        final NodeStats temp = new NodeStats(qname);
+        root.getNodeCount(qname, temp);
+        return temp.getNodeCount();
+    }
+
     public String toString() {
         final List<StringBuilder> paths = new ArrayList<StringBuilder>();
         root.dump(new StringBuilder(), paths);
@@ -67,6 +67,10 @@ class NodeStats {
     public int getMaxDepth() {
         return maxDepth;
     }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
     
     protected void addOccurrence() {
         nodeCount++;
@@ -137,6 +141,17 @@ class NodeStats {
         }
     }
 
+    protected void getNodeCount(QName name, NodeStats total) {
+        if (qname != null && qname.equals(name)) {
+            total.nodeCount += nodeCount;
+        }
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                children[i].getNodeCount(name, total);
+            }
+        }
+    }
+
     protected void write(ByteBuffer buffer, SymbolTable symbols) {
         buffer.putShort(symbols.getNSSymbol(qname.getNamespaceURI()));
         buffer.putShort(symbols.getSymbol(qname.getLocalPart()));
@@ -22,7 +22,10 @@ package org.exist.storage.structural;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -40,6 +43,7 @@ import org.exist.storage.lock.ManagedLock;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
 import org.exist.util.LockException;
+import org.exist.util.NamedThreadFactory;
 import org.w3c.dom.Element;
 
 public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport {
@@ -58,6 +62,9 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
     protected LockManager lockManager;
     protected SymbolTable symbols;
 
+    /** Runs the partitions of parallel index scans, see {@link NativeStructuralIndexWorker} */
+    private ThreadPoolExecutor queryExecutor;
+
     public NativeStructuralIndex() {
         //Nothing to do
     }
@@ -76,6 +83,12 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         try {
             btree = new BTreeStore(pool, STRUCTURAL_INDEX_ID, FILE_FORMAT_VERSION_ID, false,
                     file, pool.getCacheManager());
+            lockManager.registerBtreeMultiReader(btree.getLockName());
+
+            final int threads = Runtime.getRuntime().availableProcessors();
+            queryExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory(pool, "structural-index.query"));
+            queryExecutor.allowCoreThreadTimeOut(true);
         } catch (final DBException e) {
             LOG.error("Failed to initialize structural index: " + e.getMessage(), e);
             throw new DatabaseConfigurationException(e.getMessage(), e);
@@ -84,6 +97,10 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
 
     @Override
     public void close() throws DBException {
+        if (queryExecutor != null) {
+            queryExecutor.shutdownNow();
+            queryExecutor = null;
+        }
         btree.close();
         btree = null;
     }
@@ -93,7 +110,7 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         if (btree == null) {
             return;
         }
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
             btree.flush();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "'", e);
@@ -109,6 +126,19 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         btree.closeAndRemove();
     }
 
+    /**
+     * The executor for the partitions of parallel index scans. Scans only run in parallel
+     * if the btree allows concurrent readers.
+     *
+     * @return the executor, or null if scans have to run serially
+     */
+    ThreadPoolExecutor getQueryExecutor() {
+        if (btree == null || !lockManager.isBtreeMultiReader(btree.getLockName())) {
+            return null;
+        }
+        return queryExecutor;
+    }
+
     @Override
     public IndexWorker getWorker(DBBroker broker) {
         return new NativeStructuralIndexWorker(this);
@@ -55,7 +55,12 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 import org.exist.security.PermissionDeniedException;
 
@@ -68,6 +73,9 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
 
     private final static Logger LOG = LogManager.getLogger(NativeStructuralIndexWorker.class);
 
+    /** The minimum number of documents in each partition of a parallel scan */
+    static final int MIN_DOCUMENTS_PER_PARTITION = 8;
+
     private NativeStructuralIndex index;
     private ReindexMode mode = ReindexMode.STORE;
     private DocumentImpl document;
@@ -108,15 +116,57 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent) {
         final NewArrayNodeSet result = new NewArrayNodeSet();
+        findElementsByTagName(type, docs, qname, selector, parent, getDocIdRanges(docs), result);
+        return result;
+    }
+
+    /**
+     * Find all nodes in the index matching a given QName. If the document set is large enough,
+     * the document id ranges are split into partitions, which are scanned in parallel on the
+     * index's query executor. As each partition covers a contiguous run of document ids,
+     * concatenating the partial results in partition order keeps them in document order.
+     *
+     * @param type the type of the element
+     * @param docs the document working set
+     * @param qname the name
+     * @param selector the selector
+     * @param parent the calling expression
+     * @param parallel true if the scan may run in parallel
+     * @return nodeset the matching nodeset
+     */
+    @Override
+    public NodeSet findElementsByTagName(final byte type, final DocumentSet docs, final QName qname,
+            final NodeSelector selector, final Expression parent, final boolean parallel) {
+        final ThreadPoolExecutor executor = parallel ? index.getQueryExecutor() : null;
+        final int documentCount = docs.getDocumentCount();
+        final int partitionCount = executor == null ? 1 : getPartitionCount(executor, documentCount);
+        if (partitionCount < 2) {
+            return findElementsByTagName(type, docs, qname, selector, parent);
+        }
+
+        final List<Callable<NewArrayNodeSet>> tasks = new ArrayList<>(partitionCount);
+        for (final List<Range> ranges : partition(getDocIdRanges(docs), documentCount, partitionCount)) {
+            tasks.add(() -> {
+                final NewArrayNodeSet partResult = new NewArrayNodeSet();
+                findElementsByTagName(type, docs, qname, selector, parent, ranges, partResult);
+                return partResult;
+            });
+        }
+        return runPartitions(executor, tasks, () -> findElementsByTagName(type, docs, qname, selector, parent));
+    }
+
+    private void findElementsByTagName(final byte type, final DocumentSet docs, final QName qname,
+            final NodeSelector selector, final Expression parent, final List<Range> ranges,
+            final NewArrayNodeSet result) {
         final FindElementsCallback callback = new FindElementsCallback(type, qname, result, docs, selector, parent);
 
         // for each document id range, scan the index to find matches
-        for (final Range range : getDocIdRanges(docs)) {
+        for (final Range range : ranges) {
             final byte[] fromKey = computeKey(type, qname, range.start);
             final byte[] toKey = computeKey(type, qname, range.end + 1);
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
 
-            try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
                 index.btree.query(query, callback);
             } catch (final LockException e) {
                 NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
@@ -126,6 +176,81 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                 NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
             }
         }
+    }
+
+    /**
+     * Determine into how many partitions a parallel scan over the given number of documents
+     * should be split.
+     *
+     * @param executor the executor running the partitions
+     * @param documentCount the number of documents to scan
+     * @return the number of partitions, less than 2 if the scan should run serially
+     */
+    private static int getPartitionCount(final ThreadPoolExecutor executor, final int documentCount) {
+        return Math.min(executor.getMaximumPoolSize(), documentCount / MIN_DOCUMENTS_PER_PARTITION);
+    }
+
+    /**
+     * Split the document id ranges into partitions of roughly the same number of documents.
+     *
+     * @param ranges the contiguous document id ranges, in ascending order
+     * @param documentCount the number of documents in the ranges
+     * @param partitionCount the number of partitions
+     * @return the ranges of each partition, in ascending order
+     */
+    static List<List<Range>> partition(final List<Range> ranges, final int documentCount, final int partitionCount) {
+        final int partitionSize = (documentCount + partitionCount - 1) / partitionCount;
+        final List<List<Range>> partitions = new ArrayList<>(partitionCount);
+        List<Range> current = new ArrayList<>();
+        int currentSize = 0;
+        for (final Range range : ranges) {
+            int start = range.start;
+            while (start <= range.end) {
+                final int end = Math.min(range.end, start + (partitionSize - currentSize) - 1);
+                current.add(new Range(start, end));
+                currentSize += end - start + 1;
+                start = end + 1;
+                if (currentSize == partitionSize) {
+                    partitions.add(current);
+                    current = new ArrayList<>();
+                    currentSize = 0;
+                }
+            }
+        }
+        if (!current.isEmpty()) {
+            partitions.add(current);
+        }
+        return partitions;
+    }
+
+    /**
+     * Run the partitions of a parallel scan on the index's query executor and concatenate
+     * their results in partition order. If any partition fails, or the scan is interrupted,
+     * the partial results are discarded and the scan is repeated serially.
+     *
+     * @param executor the executor running the partitions
+     * @param tasks the partitions to scan
+     * @param serialScan the serial scan to fall back to
+     * @return the merged result
+     */
+    private static NodeSet runPartitions(final ThreadPoolExecutor executor, final List<Callable<NewArrayNodeSet>> tasks,
+            final Supplier<NodeSet> serialScan) {
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        try {
+            for (final Future<NewArrayNodeSet> future : executor.invokeAll(tasks)) {
+                result.addAll(future.get());
+            }
+        } catch (final ExecutionException e) {
+            NativeStructuralIndex.LOG.error("Error while searching structural index in parallel, " +
+                    "falling back to a serial scan: " + e.getCause().getMessage(), e.getCause());
+            return serialScan.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            NativeStructuralIndex.LOG.warn("Interrupted while searching structural index in parallel, " +
+                    "falling back to a serial scan: " + e.getMessage(), e);
+            return serialScan.get();
+        }
+        result.updateNoSort();
         return result;
     }
 
@@ -168,6 +293,11 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             this.start = start;
             this.end = start;
         }
+
+        Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
     }
     
     /**
@@ -192,9 +322,77 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
 
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis, DocumentSet docs, NodeSet contextSet, int contextId, Expression parent) {
         final NewArrayNodeSet result = new NewArrayNodeSet();
+        findDescendantsByTagName(type, qname, axis, contextSet, contextId, parent, result);
+        result.updateNoSort();
+        return result;
+    }
+
+    /**
+     * Find all descendants (or children) of the specified node set matching the given QName. If the
+     * context set spans enough documents, it is split into partitions of whole documents, which are
+     * looked up in parallel on the index's query executor.
+     *
+     * @param type the type of node to find
+     * @param qname the node name
+     * @param axis the node axis
+     * @param docs the document set
+     * @param contextSet the context set
+     * @param contextId the id of the context
+     * @param parent the calling expression
+     * @param parallel true if the lookups may run in parallel
+     *
+     * @return the matching decendants
+     */
+    @Override
+    public NodeSet findDescendantsByTagName(final byte type, final QName qname, final int axis, final DocumentSet docs,
+            final NodeSet contextSet, final int contextId, final Expression parent, final boolean parallel) {
+        final ThreadPoolExecutor executor = parallel ? index.getQueryExecutor() : null;
+        final int documentCount = docs.getDocumentCount();
+        final int partitionCount = executor == null ? 1 : getPartitionCount(executor, documentCount);
+        if (partitionCount < 2) {
+            return findDescendantsByTagName(type, qname, axis, docs, contextSet, contextId, parent);
+        }
+
+        // iterating the context set sorts it, which has to happen on this thread
+        final int partitionSize = (documentCount + partitionCount - 1) / partitionCount;
+        final List<Callable<NewArrayNodeSet>> tasks = new ArrayList<>(partitionCount);
+        List<NodeProxy> current = new ArrayList<>();
+        int lastDocId = -1;
+        int currentDocs = 0;
+        for (final NodeProxy ancestor : contextSet) {
+            if (ancestor.getOwnerDocument().getDocId() != lastDocId) {
+                if (currentDocs == partitionSize) {
+                    tasks.add(findDescendantsTask(type, qname, axis, current, contextId, parent));
+                    current = new ArrayList<>();
+                    currentDocs = 0;
+                }
+                lastDocId = ancestor.getOwnerDocument().getDocId();
+                currentDocs++;
+            }
+            current.add(ancestor);
+        }
+        if (!current.isEmpty()) {
+            tasks.add(findDescendantsTask(type, qname, axis, current, contextId, parent));
+        }
+        return runPartitions(executor, tasks,
+                () -> findDescendantsByTagName(type, qname, axis, docs, contextSet, contextId, parent));
+    }
+
+    private Callable<NewArrayNodeSet> findDescendantsTask(final byte type, final QName qname, final int axis,
+            final List<NodeProxy> ancestors, final int contextId, final Expression parent) {
+        return () -> {
+            final NewArrayNodeSet partResult = new NewArrayNodeSet();
+            findDescendantsByTagName(type, qname, axis, ancestors, contextId, parent, partResult);
+            return partResult;
+        };
+    }
+
+    private void findDescendantsByTagName(final byte type, final QName qname, final int axis,
+            final Iterable<NodeProxy> ancestors, final int contextId, final Expression parent,
+            final NewArrayNodeSet result) {
         final FindDescendantsCallback callback = new FindDescendantsCallback(type, axis, qname, contextId, result, parent);
-        try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
-            for (final NodeProxy ancestor : contextSet) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            for (final NodeProxy ancestor : ancestors) {
                 final DocumentImpl doc = ancestor.getOwnerDocument();
                 final NodeId ancestorId = ancestor.getNodeId();
                 callback.setAncestor(doc, ancestor);
@@ -217,14 +415,12 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         } catch (final LockException e) {
             NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
         }
-        result.updateNoSort();
-        return result;
     }
 
     public NodeSet findAncestorsByTagName(byte type, QName qname, int axis, DocumentSet docs, NodeSet contextSet,
                                           int contextId) {
         final NewArrayNodeSet result = new NewArrayNodeSet();
-        try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
             for (final NodeProxy descendant : contextSet) {
                 NodeId parentId;
                 if (axis == Constants.ANCESTOR_SELF_AXIS || axis == Constants.SELF_AXIS)
@@ -270,7 +466,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             final DocumentImpl doc = ancestor.getOwnerDocument();
             final NodeId ancestorId = ancestor.getNodeId();
             final List<QName> qnames = getQNamesForDoc(doc);
-            try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
 	            for (final QName qname : qnames) {
 	            	if (test.getName() == null || test.matches(qname)) {
 	            		callback.setAncestor(doc, ancestor);
@@ -491,7 +687,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         try {
             for (final Map.Entry<QName,List<NodeProxy>> entry: pending.entrySet()) {
                 final QName qname = entry.getKey();
-                try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
                     final List<NodeProxy> nodes = entry.getValue();
                     for (final NodeProxy proxy : nodes) {
                         final NodeId nodeId = proxy.getNodeId();
@@ -517,7 +713,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             final byte[] fromKey = computeKey(qname.getNameType(), qname, docToRemove.getDocId());
             final byte[] toKey = computeKey(qname.getNameType(), qname, docToRemove.getDocId() + 1);
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
-            try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
                 index.btree.remove(query, null);
             } catch (final LockException e) {
                 NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
@@ -533,7 +729,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         final byte[] fromKey = computeDocKey(doc.getDocId());
         final byte[] toKey = computeDocKey(doc.getDocId() + 1);
         final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
-        try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             index.btree.remove(query, null);
         } catch (final LockException e) {
             NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
@@ -550,7 +746,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         final byte[] fromKey = computeDocKey(doc.getDocId());
         final byte[] toKey = computeDocKey(doc.getDocId() + 1);
         final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
-        try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             index.btree.query(query, new BTreeCallback() {
                 public boolean indexInfo(Value value, long pointer) throws TerminatedException {
                     final QName qname = readQName(value.getData());
@@ -609,7 +805,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                 final byte[] toKey = computeKey(qname.getNameType(), qname, doc.getDocId() + 1);
                 final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
 
-                try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
                     index.btree.query(query, new BTreeCallback() {
                         public boolean indexInfo(Value value, long pointer) throws TerminatedException {
                             Occurrences oc = occurrences.get(name);
@@ -676,13 +872,17 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         try {
             for (final Map.Entry<QName,List<NodeProxy>> entry: pending.entrySet()) {
                 final QName qname = entry.getKey();
-                try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
                     final List<NodeProxy> nodes = entry.getValue();
-                    for (final NodeProxy proxy : nodes) {
-                        final NodeId nodeId = proxy.getNodeId();
-                        final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
-                        index.btree.addValue(new Value(key), computeValue(proxy));
+                    // the nodes are in document order, so their keys ascend and can be added as one run
+                    final Value[] keys = new Value[nodes.size()];
+                    final long[] values = new long[nodes.size()];
+                    for (int i = 0; i < keys.length; i++) {
+                        final NodeProxy proxy = nodes.get(i);
+                        keys[i] = new Value(computeKey(qname.getNameType(), qname, document.getDocId(), proxy.getNodeId()));
+                        values[i] = computeValue(proxy);
                     }
+                    index.btree.addValues(keys, values);
                     final Value docKey = new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname));
                     if (index.btree.findValue(docKey) == -1) {
                         index.btree.addValue(docKey, 0);
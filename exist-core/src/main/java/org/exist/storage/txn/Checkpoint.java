@@ -30,6 +30,14 @@ import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Lsn;
 
 /**
+ * A checkpoint record in the journal.
+ *
+ * A sharp checkpoint is written after all dirty pages have been written
+ * to disk, recovery does not need to look at the journal before it.
+ * A fuzzy checkpoint is written without writing the dirty pages, it
+ * records the LSN of the oldest operation whose modifications may not
+ * yet be on disk, from which recovery has to redo the journal.
+ *
  * @author wolf
  */
 public class Checkpoint extends AbstractLoggable {
@@ -38,6 +46,7 @@ public class Checkpoint extends AbstractLoggable {
 
 	private long timestamp;
 	private Lsn storedLsn;
+	private Lsn redoLsn = Lsn.LSN_INVALID;
 	
 	private final DateFormat df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
 	
@@ -49,26 +58,62 @@ public class Checkpoint extends AbstractLoggable {
         super(LogEntryTypes.CHECKPOINT, transactionId);
 		timestamp = new Date().getTime();
     }
+
+    /**
+     * Creates a fuzzy checkpoint.
+     *
+     * @param transactionId the id of the transaction for the checkpoint
+     * @param redoLsn the LSN from which recovery has to redo the journal
+     */
+    public Checkpoint(final long transactionId, final Lsn redoLsn) {
+        this(null, transactionId);
+        this.redoLsn = redoLsn;
+    }
     
     @Override
     public void write(final ByteBuffer out) {
         lsn.write(out);
 		out.putLong(timestamp);
+		redoLsn.write(out);
     }
 
     @Override
     public void read(final ByteBuffer in) {
         storedLsn = Lsn.read(in);
 		timestamp = in.getLong();
+		// checkpoints written by older versions have no redo LSN
+		if (in.remaining() >= Lsn.RAW_LENGTH) {
+			redoLsn = Lsn.read(in);
+		}
     }
 
     public Lsn getStoredLsn() {
     	return storedLsn;
     }
+
+    /**
+     * Returns the LSN from which recovery has to redo the journal
+     * if this is a fuzzy checkpoint.
+     *
+     * @return the redo LSN, or {@link Lsn#LSN_INVALID} for a sharp checkpoint
+     */
+    public Lsn getRedoLsn() {
+        return redoLsn;
+    }
+
+    /**
+     * Returns true if dirty pages were not written to disk
+     * when this checkpoint was written.
+     *
+     * @return true if this is a fuzzy checkpoint
+     */
+    public boolean isFuzzy() {
+        return !redoLsn.equals(Lsn.LSN_INVALID);
+    }
     
     @Override
     public int getLogSize() {
-        return Lsn.RAW_LENGTH + TIMESTAMP_LEN;
+        return Lsn.RAW_LENGTH + TIMESTAMP_LEN + Lsn.RAW_LENGTH;
     }
 
     public String getDateString() {
@@ -77,6 +122,7 @@ public class Checkpoint extends AbstractLoggable {
 
     @Override
 	public String dump() {
-		return super.dump() + " - checkpoint at " + df.format(new Date(timestamp));
+		return super.dump() + " - checkpoint at " + df.format(new Date(timestamp)) +
+                (isFuzzy() ? "; redo from " + redoLsn : "");
 	}
 }
@@ -27,6 +27,7 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.storage.*;
 import org.exist.storage.journal.JournalException;
 import org.exist.storage.journal.JournalManager;
+import org.exist.storage.journal.Lsn;
 import org.exist.storage.sync.Sync;
 import org.exist.util.LockException;
 import org.exist.xmldb.XmldbURI;
@@ -285,6 +286,8 @@ public class TransactionManager implements BrokerPoolService {
     }
 
     private void doCommitTransaction(final Txn txn) throws TransactionException {
+        txn.signalBeforeCommit();
+
         if (journalManager.isPresent()) {
             try {
                 journalManager.get().journalGroup(new TxnCommit(txn.getId()));
@@ -453,6 +456,38 @@ public class TransactionManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Create a new fuzzy checkpoint. Unlike {@link #checkpoint(boolean)} the dirty
+     * pages are not written to disk, instead the checkpoint records the oldest LSN
+     * of the dirty page table, from which recovery has to redo the journal.
+     *
+     * This method is called from
+     * {@link org.exist.storage.BrokerPool#sync(DBBroker, Sync)} within pre-defined periods,
+     * when the database is in a stable state.
+     *
+     * @param redoLsn the oldest LSN of all dirty pages, see {@link org.exist.storage.btree.PageWriter#getRedoLsn()}
+     *
+     * @return false if the checkpoint could not be written as fuzzy checkpoint
+     *     and a sharp checkpoint is needed instead
+     *
+     * @throws TransactionException if an error occurs whilst writing the checkpoint.
+     */
+    public boolean fuzzyCheckpoint(final Lsn redoLsn) throws TransactionException {
+        if (state.get() == STATE_SHUTDOWN) {
+            throwShutdownException();
+        }
+
+        if(journalManager.isPresent()) {
+            try {
+                final long txnId = nextTxnId.getAndIncrement();
+                return journalManager.get().fuzzyCheckpoint(txnId, redoLsn);
+            } catch(final JournalException e) {
+                throw new TransactionException(e.getMessage(), e);
+            }
+        }
+        return true;
+    }
+
     /**
      * @deprecated This mixes concerns and should not be here!
      * @param broker the  eXist-db DBBroker
@@ -116,6 +116,12 @@ public class Txn implements Transaction {
         }
     }
 
+    protected void signalBeforeCommit() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).beforeCommit();
+        }
+    }
+
     protected void signalCommit() {
         state = State.COMMITTED;
         for (int i = 0; i < listeners.size(); i++) {
@@ -2,6 +2,15 @@ package org.exist.storage.txn;
 
 public interface TxnListener {
 
+    /**
+     * Called before the commit record of the transaction
+     * is written to the journal.
+     *
+     * By default there is nothing to do.
+     */
+    default void beforeCommit() {
+    }
+
     public void commit();
 
     public void abort();
@@ -53,7 +53,12 @@ import org.exist.storage.DefaultCacheManager;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
+import org.exist.storage.ResultCache;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.btree.PageBufferPool;
+import org.exist.storage.btree.PageStore;
+import org.exist.storage.btree.PageWriter;
+import org.exist.storage.btree.Paged;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
@@ -328,6 +333,14 @@ public class Configuration implements ErrorHandler
 
             config.put(LockManager.CONFIGURATION_DOCUMENT_MULTI_LOCK, documentMultiLock);
         }
+
+        final NodeList nlBtree = lockManager.getElementsByTagName("btree");
+        if(nlBtree.getLength() > 0) {
+            final Element btree = (Element)nlBtree.item(0);
+            final boolean btreeMultipleReaders = parseBoolean(getConfigAttributeValue(btree, "multiple-readers"), true);
+
+            config.put(LockManager.CONFIGURATION_BTREE_MULTI_READER, btreeMultipleReaders);
+        }
     }
 
     private void configureRepository(Element element) {
@@ -386,6 +399,22 @@ public class Configuration implements ErrorHandler
         config.put( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration.parseBoolean( raiseErrorOnFailedRetrieval, XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT ) );
         LOG.debug( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL + ": " + config.get( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL ) );
 
+        final String parallelEvaluation = getConfigAttributeValue( xquery, XQueryContext.PARALLEL_EVALUATION_ATTRIBUTE );
+        config.put( XQueryContext.PROPERTY_PARALLEL_EVALUATION, Configuration.parseBoolean( parallelEvaluation, XQueryContext.PARALLEL_EVALUATION_DEFAULT ) );
+        LOG.debug( XQueryContext.PROPERTY_PARALLEL_EVALUATION + ": " + config.get( XQueryContext.PROPERTY_PARALLEL_EVALUATION ) );
+
+        final String bytecodeCompileThreshold = getConfigAttributeValue( xquery, XQueryContext.BYTECODE_COMPILE_THRESHOLD_ATTRIBUTE );
+        config.put( XQueryContext.PROPERTY_BYTECODE_COMPILE_THRESHOLD, parseInt( bytecodeCompileThreshold, XQueryContext.BYTECODE_COMPILE_THRESHOLD_DEFAULT ) );
+        LOG.debug( XQueryContext.PROPERTY_BYTECODE_COMPILE_THRESHOLD + ": " + config.get( XQueryContext.PROPERTY_BYTECODE_COMPILE_THRESHOLD ) );
+
+        final String orderBySpillThreshold = getConfigAttributeValue( xquery, XQueryContext.ORDER_BY_SPILL_THRESHOLD_ATTRIBUTE );
+        config.put( XQueryContext.PROPERTY_ORDER_BY_SPILL_THRESHOLD, parseInt( orderBySpillThreshold, XQueryContext.ORDER_BY_SPILL_THRESHOLD_DEFAULT ) );
+        LOG.debug( XQueryContext.PROPERTY_ORDER_BY_SPILL_THRESHOLD + ": " + config.get( XQueryContext.PROPERTY_ORDER_BY_SPILL_THRESHOLD ) );
+
+        final String groupBySpillThreshold = getConfigAttributeValue( xquery, XQueryContext.GROUP_BY_SPILL_THRESHOLD_ATTRIBUTE );
+        config.put( XQueryContext.PROPERTY_GROUP_BY_SPILL_THRESHOLD, parseInt( groupBySpillThreshold, XQueryContext.GROUP_BY_SPILL_THRESHOLD_DEFAULT ) );
+        LOG.debug( XQueryContext.PROPERTY_GROUP_BY_SPILL_THRESHOLD + ": " + config.get( XQueryContext.PROPERTY_GROUP_BY_SPILL_THRESHOLD ) );
+
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
@@ -887,6 +916,23 @@ public class Configuration implements ErrorHandler
             }
         }
         
+        String bufferPoolSize = getConfigAttributeValue( con, PageBufferPool.BUFFER_POOL_SIZE_ATTRIBUTE );
+
+        if( bufferPoolSize != null ) {
+
+            if( bufferPoolSize.endsWith( "M" ) || bufferPoolSize.endsWith( "m" ) ) {
+                bufferPoolSize = bufferPoolSize.substring( 0, bufferPoolSize.length() - 1 );
+            }
+
+            try {
+                config.put( PageBufferPool.PROPERTY_BUFFER_POOL_SIZE, Integer.valueOf( bufferPoolSize ) );
+                LOG.debug( PageBufferPool.PROPERTY_BUFFER_POOL_SIZE + ": " + config.get( PageBufferPool.PROPERTY_BUFFER_POOL_SIZE ) + "m" );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn( "Cannot convert " + PageBufferPool.PROPERTY_BUFFER_POOL_SIZE + " value to integer: " + bufferPoolSize, nfe );
+            }
+        }
+
         // Process the Check Max Cache value
         
         String checkMaxCache = getConfigAttributeValue( con, DefaultCacheManager.CACHE_CHECK_MAX_SIZE_ATTRIBUTE );
@@ -898,6 +944,18 @@ public class Configuration implements ErrorHandler
         config.put( DefaultCacheManager.PROPERTY_CACHE_CHECK_MAX_SIZE, parseBoolean( checkMaxCache, true ) );
         LOG.debug( DefaultCacheManager.PROPERTY_CACHE_CHECK_MAX_SIZE + ": " + config.get( DefaultCacheManager.PROPERTY_CACHE_CHECK_MAX_SIZE ) );
 
+        final String cachePolicy = getConfigAttributeValue( con, DefaultCacheManager.CACHE_POLICY_ATTRIBUTE );
+
+        if( cachePolicy != null ) {
+            final DefaultCacheManager.CachePolicy policy = DefaultCacheManager.CachePolicy.fromConfigName( cachePolicy );
+
+            if( policy == null ) {
+                throw( new DatabaseConfigurationException( "Unknown cache policy: " + cachePolicy ) );
+            }
+            config.put( DefaultCacheManager.PROPERTY_CACHE_POLICY, policy );
+            LOG.debug( DefaultCacheManager.PROPERTY_CACHE_POLICY + ": " + config.get( DefaultCacheManager.PROPERTY_CACHE_POLICY ) );
+        }
+
         String cacheShrinkThreshold = getConfigAttributeValue( con, DefaultCacheManager.SHRINK_THRESHOLD_ATTRIBUTE );
 
         if( cacheShrinkThreshold == null ) {
@@ -1164,6 +1222,87 @@ public class Configuration implements ErrorHandler
         if( recoveries.getLength() > 0 ) {
             configureRecovery( dbHome, (Element)recoveries.item( 0 ) );
         }
+
+        final NodeList pageStores = con.getElementsByTagName( Paged.CONFIGURATION_PAGE_STORE_ELEMENT_NAME );
+
+        if( pageStores.getLength() > 0 ) {
+            configurePageStore( (Element)pageStores.item( 0 ) );
+        }
+
+        final NodeList pageWriters = con.getElementsByTagName( PageWriter.CONFIGURATION_ELEMENT_NAME );
+
+        if( pageWriters.getLength() > 0 ) {
+            configurePageWriter( (Element)pageWriters.item( 0 ) );
+        }
+    }
+
+    private void configurePageWriter( final Element pageWriter ) throws DatabaseConfigurationException
+    {
+        final String enabled = getConfigAttributeValue( pageWriter, PageWriter.ENABLED_ATTRIBUTE );
+        setProperty( PageWriter.PROPERTY_ENABLED, parseBoolean( enabled, false ) );
+        LOG.debug( PageWriter.PROPERTY_ENABLED + ": " + config.get( PageWriter.PROPERTY_ENABLED ) );
+
+        final String interval = getConfigAttributeValue( pageWriter, PageWriter.INTERVAL_ATTRIBUTE );
+
+        if( interval != null ) {
+
+            try {
+                setProperty( PageWriter.PROPERTY_INTERVAL, Long.valueOf( interval ) );
+                LOG.debug( PageWriter.PROPERTY_INTERVAL + ": " + config.get( PageWriter.PROPERTY_INTERVAL ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "interval attribute in page-writer section needs to be a number" ) );
+            }
+        }
+
+        final String maxPages = getConfigAttributeValue( pageWriter, PageWriter.MAX_PAGES_ATTRIBUTE );
+
+        if( maxPages != null ) {
+
+            try {
+                setProperty( PageWriter.PROPERTY_MAX_PAGES, Integer.valueOf( maxPages ) );
+                LOG.debug( PageWriter.PROPERTY_MAX_PAGES + ": " + config.get( PageWriter.PROPERTY_MAX_PAGES ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "max-pages attribute in page-writer section needs to be a number" ) );
+            }
+        }
+    }
+
+    private void configurePageStore( final Element pageStore ) throws DatabaseConfigurationException
+    {
+        final String defaultType = getConfigAttributeValue( pageStore, Paged.PAGE_STORE_DEFAULT_ATTRIBUTE );
+
+        if( defaultType != null ) {
+            setProperty( Paged.PROPERTY_PAGE_STORE_DEFAULT, parsePageStoreType( defaultType ) );
+            LOG.debug( Paged.PROPERTY_PAGE_STORE_DEFAULT + ": " + config.get( Paged.PROPERTY_PAGE_STORE_DEFAULT ) );
+        }
+
+        final Map<String, PageStore.Type> files = new HashMap<>();
+        final NodeList fileConf = pageStore.getElementsByTagName( Paged.CONFIGURATION_PAGE_STORE_FILE_ELEMENT_NAME );
+
+        for( int i = 0; i < fileConf.getLength(); i++ ) {
+            final Element file = (Element)fileConf.item( i );
+            final String name = getConfigAttributeValue( file, Paged.PAGE_STORE_FILE_NAME_ATTRIBUTE );
+            final String type = getConfigAttributeValue( file, Paged.PAGE_STORE_FILE_TYPE_ATTRIBUTE );
+
+            if( name == null || type == null ) {
+                throw( new DatabaseConfigurationException( "file element in page-store section needs a name and a type attribute" ) );
+            }
+            files.put( name, parsePageStoreType( type ) );
+        }
+        setProperty( Paged.PROPERTY_PAGE_STORE_FILES, files );
+        LOG.debug( Paged.PROPERTY_PAGE_STORE_FILES + ": " + config.get( Paged.PROPERTY_PAGE_STORE_FILES ) );
+    }
+
+    private PageStore.Type parsePageStoreType( final String name ) throws DatabaseConfigurationException
+    {
+        final PageStore.Type type = PageStore.Type.fromConfigName( name );
+
+        if( type == null ) {
+            throw( new DatabaseConfigurationException( "Unknown page-store type: " + name ) );
+        }
+        return type;
     }
 
 
@@ -1177,10 +1316,39 @@ public class Configuration implements ErrorHandler
         setProperty( Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, parseBoolean( option, true ) );
         LOG.debug( Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT + ": " + config.get( Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT ) );
 
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_PREALLOCATE_ATTRIBUTE );
+        setProperty( Journal.PROPERTY_RECOVERY_PREALLOCATE, parseBoolean( option, false ) );
+        LOG.debug( Journal.PROPERTY_RECOVERY_PREALLOCATE + ": " + config.get( Journal.PROPERTY_RECOVERY_PREALLOCATE ) );
+
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_COMPRESS_ATTRIBUTE );
+        setProperty( Journal.PROPERTY_RECOVERY_COMPRESS, parseBoolean( option, false ) );
+        LOG.debug( Journal.PROPERTY_RECOVERY_COMPRESS + ": " + config.get( Journal.PROPERTY_RECOVERY_COMPRESS ) );
+
         option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_GROUP_COMMIT_ATTRIBUTE );
         setProperty( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, parseBoolean( option, false ) );
         LOG.debug( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT + ": " + config.get( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT ) );
 
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_FUZZY_CHECKPOINTS_ATTRIBUTE );
+        setProperty( BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS, parseBoolean( option, false ) );
+        LOG.debug( BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS + ": " + config.get( BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS ) );
+
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_REDO_THREADS_ATTRIBUTE );
+
+        if( option != null ) {
+
+            try {
+                final int redoThreads = Integer.parseInt( option );
+                if( redoThreads < 1 ) {
+                    throw( new DatabaseConfigurationException( "redo-threads attribute in recovery section needs to be at least 1" ) );
+                }
+                setProperty( BrokerPool.PROPERTY_RECOVERY_REDO_THREADS, redoThreads );
+                LOG.debug( BrokerPool.PROPERTY_RECOVERY_REDO_THREADS + ": " + config.get( BrokerPool.PROPERTY_RECOVERY_REDO_THREADS ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "redo-threads attribute in recovery section needs to be a number" ) );
+            }
+        }
+
         option = getConfigAttributeValue( recovery, Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE );
 
         if(option != null) {
@@ -1311,6 +1479,23 @@ public class Configuration implements ErrorHandler
                 LOG.warn( e );
             }
         }
+
+        final String resultCacheSize = getConfigAttributeValue( queryPool, ResultCache.RESULT_CACHE_SIZE_ATTRIBUTE );
+
+        if( resultCacheSize != null ) {
+
+            try {
+                config.put( ResultCache.PROPERTY_RESULT_CACHE_SIZE, Integer.valueOf(resultCacheSize) );
+                LOG.debug( ResultCache.PROPERTY_RESULT_CACHE_SIZE + ": " + config.get( ResultCache.PROPERTY_RESULT_CACHE_SIZE ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String persist = getConfigAttributeValue( queryPool, XQueryPool.PERSIST_ATTRIBUTE );
+        config.put( XQueryPool.PROPERTY_PERSIST, parseBoolean( persist, false ) );
+        LOG.debug( XQueryPool.PROPERTY_PERSIST + ": " + config.get( XQueryPool.PROPERTY_PERSIST ) );
     }
     
     public static class StartupTriggerConfig {
@@ -0,0 +1,391 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.util.io;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An input stream which reads the entries of a tar archive, in the same
+ * way as {@link java.util.zip.ZipInputStream} reads the entries of a ZIP archive.
+ *
+ * Call {@link #getNextEntry()} to position the stream at the start of
+ * the next entry, and then read the content of the entry from the stream.
+ *
+ * The POSIX ustar format is supported, as well as the long names of GNU tar
+ * and the path of pax extended headers. Entries which are neither regular files
+ * nor directories, e.g. links, are skipped.
+ */
+@NotThreadSafe
+public class TarInputStream extends FilterInputStream {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static final int NAME_OFFSET = 0;
+    private static final int NAME_LENGTH = 100;
+    private static final int SIZE_OFFSET = 124;
+    private static final int SIZE_LENGTH = 12;
+    private static final int CHECKSUM_OFFSET = 148;
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final int TYPE_OFFSET = 156;
+    private static final int MAGIC_OFFSET = 257;
+    private static final int PREFIX_OFFSET = 345;
+    private static final int PREFIX_LENGTH = 155;
+
+    /**
+     * The maximum size of the content of a GNU long name or a pax extended header.
+     */
+    private static final int MAX_HEADER_SIZE = 1024 * 1024;   // 1 MB
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+
+    /**
+     * Bytes of the current entry which have not been read.
+     */
+    private long remaining;
+
+    /**
+     * Bytes of padding which follow the current entry.
+     */
+    private long padding;
+
+    private boolean endOfArchive;
+
+    public TarInputStream(final InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Reads the header of the next entry and positions the stream at
+     * the start of its content. Any unread content of the current
+     * entry is skipped.
+     *
+     * @return the next entry, or null if there are no more entries
+     *
+     * @throws IOException if an I/O error occurs or the archive is corrupt
+     */
+    public @Nullable Entry getNextEntry() throws IOException {
+        closeEntry();
+
+        String longName = null;
+        while (!endOfArchive) {
+            if (!readHeader()) {
+                endOfArchive = true;
+                return null;
+            }
+
+            final long size = parseNumber(header, SIZE_OFFSET, SIZE_LENGTH);
+            final byte type = header[TYPE_OFFSET];
+            remaining = size;
+            padding = (BLOCK_SIZE - (size % BLOCK_SIZE)) % BLOCK_SIZE;
+
+            switch (type) {
+                case 'L':
+                    // GNU tar, the long name of the next entry
+                    longName = trimNul(new String(readContent(size), StandardCharsets.UTF_8));
+                    break;
+
+                case 'x':
+                    // pax, the extended header of the next entry
+                    final String path = parsePaxPath(readContent(size));
+                    if (path != null) {
+                        longName = path;
+                    }
+                    break;
+
+                case '0':
+                case '\0':
+                case '7':
+                case '5':
+                    final String name = longName != null ? longName : parseName();
+                    final boolean directory = type == '5' || name.endsWith("/");
+                    return new Entry(name, directory ? 0 : size, directory);
+
+                default:
+                    // links, devices, global pax headers etc.
+                    longName = null;
+                    closeEntry();
+                    break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Skips the unread content of the current entry.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void closeEntry() throws IOException {
+        skipFully(remaining + padding);
+        remaining = 0;
+        padding = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of tar archive");
+        }
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        final int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of tar archive");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads the next header block.
+     *
+     * @return false at the end of the archive
+     */
+    private boolean readHeader() throws IOException {
+        int read = 0;
+        while (read < BLOCK_SIZE) {
+            final int len = in.read(header, read, BLOCK_SIZE - read);
+            if (len == -1) {
+                if (read == 0) {
+                    // archive without end of archive blocks
+                    return false;
+                }
+                throw new EOFException("Unexpected end of tar archive");
+            }
+            read += len;
+        }
+
+        boolean empty = true;
+        long checksum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            final int b = i >= CHECKSUM_OFFSET && i < CHECKSUM_OFFSET + CHECKSUM_LENGTH ? ' ' : header[i] & 0xFF;
+            checksum += b;
+            empty &= header[i] == 0;
+        }
+        if (empty) {
+            // the end of the archive is marked by empty blocks
+            return false;
+        }
+        if (checksum != parseNumber(header, CHECKSUM_OFFSET, CHECKSUM_LENGTH)) {
+            throw new IOException("Not a tar archive, or the archive is corrupt: header checksum mismatch");
+        }
+        return true;
+    }
+
+    private byte[] readContent(final long size) throws IOException {
+        if (size > MAX_HEADER_SIZE) {
+            throw new IOException("Tar header is too large: " + size);
+        }
+        final byte[] content = new byte[(int) size];
+        int read = 0;
+        while (read < content.length) {
+            final int len = read(content, read, content.length - read);
+            if (len == -1) {
+                throw new EOFException("Unexpected end of tar archive");
+            }
+            read += len;
+        }
+        closeEntry();
+        return content;
+    }
+
+    private void skipFully(long n) throws IOException {
+        while (n > 0) {
+            final long skipped = in.skip(n);
+            if (skipped > 0) {
+                n -= skipped;
+            } else if (in.read() == -1) {
+                throw new EOFException("Unexpected end of tar archive");
+            } else {
+                n--;
+            }
+        }
+    }
+
+    private String parseName() {
+        final String name = parseString(header, NAME_OFFSET, NAME_LENGTH);
+        if (parseString(header, MAGIC_OFFSET, 5).equals("ustar")) {
+            final String prefix = parseString(header, PREFIX_OFFSET, PREFIX_LENGTH);
+            if (!prefix.isEmpty()) {
+                return prefix + '/' + name;
+            }
+        }
+        return name;
+    }
+
+    private static String parseString(final byte[] buf, final int offset, final int length) {
+        int end = offset;
+        while (end < offset + length && buf[end] != 0) {
+            end++;
+        }
+        return new String(buf, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses an octal number, or a big-endian binary number
+     * if the high bit of the first byte is set (GNU tar).
+     */
+    private static long parseNumber(final byte[] buf, final int offset, final int length) throws IOException {
+        if ((buf[offset] & 0x80) != 0) {
+            long value = 0;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (buf[i] & 0xFF);
+            }
+            return value;
+        }
+
+        long value = 0;
+        int i = offset;
+        while (i < offset + length && (buf[i] == ' ' || buf[i] == 0)) {
+            i++;
+        }
+        for (; i < offset + length && buf[i] != ' ' && buf[i] != 0; i++) {
+            if (buf[i] < '0' || buf[i] > '7') {
+                throw new IOException("Not a tar archive, or the archive is corrupt: invalid number in header");
+            }
+            value = (value << 3) + (buf[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Gets the path from the records of a pax extended header,
+     * each of which has the form "length key=value\n".
+     */
+    private static @Nullable String parsePaxPath(final byte[] content) {
+        String path = null;
+        int pos = 0;
+        while (pos < content.length) {
+            final int space = indexOf(content, (byte) ' ', pos);
+            if (space == -1) {
+                break;
+            }
+            final int length;
+            try {
+                length = Integer.parseInt(new String(content, pos, space - pos, StandardCharsets.US_ASCII));
+            } catch (final NumberFormatException e) {
+                break;
+            }
+            // the record must end with a newline after the space
+            if (space + 1 >= pos + length || pos + length > content.length
+                    || content[pos + length - 1] != '\n') {
+                break;
+            }
+            final String record = new String(content, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring(5);
+            }
+            pos += length;
+        }
+        return path;
+    }
+
+    private static int indexOf(final byte[] buf, final byte b, final int from) {
+        for (int i = from; i < buf.length; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String trimNul(final String s) {
+        final int nul = s.indexOf('\0');
+        return nul == -1 ? s : s.substring(0, nul);
+    }
+
+    /**
+     * An entry of a tar archive.
+     */
+    public static final class Entry {
+        private final String name;
+        private final long size;
+        private final boolean directory;
+
+        private Entry(final String name, final long size, final boolean directory) {
+            this.name = name;
+            this.size = size;
+            this.directory = directory;
+        }
+
+        /**
+         * @return the path of the entry within the archive
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the size of the content of the entry in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+}
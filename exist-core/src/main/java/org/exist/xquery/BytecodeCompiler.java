@@ -0,0 +1,640 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.ValueSequence;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles the expression tree of a query, which was executed often enough to
+ * be considered hot, to JVM bytecode.
+ *
+ * The compiler looks for subtrees made of arithmetic operations, value and general
+ * comparisons, conditional expressions, sequence constructors, "let", "for" and
+ * "where" clauses, and calls to user-defined functions. For each subtree, it
+ * generates a class, which evaluates these expressions directly and keeps the
+ * variables of the FLWOR clauses in local variables of the JVM. Every other
+ * expression inside the subtree is still evaluated by calling its
+ * {@link Expression#eval(Sequence, Item)} method. The subtree is then replaced
+ * by a {@link BytecodeExpression}, which falls back to the original tree if needed.
+ *
+ * Expressions are only compiled if their evaluation by the interpreter can be
+ * reproduced exactly: e.g. comparisons in predicates, which may use an index,
+ * clauses with a type declaration or a positional variable, and FLWOR expressions
+ * with "order by" or "group by" clauses, are left to the interpreter.
+ */
+public class BytecodeCompiler {
+
+    private static final Logger LOG = LogManager.getLogger(BytecodeCompiler.class);
+
+    private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+    private static final String BODY = Type.getInternalName(BytecodeExpression.Body.class);
+    private static final String SUPPORT = Type.getInternalName(BytecodeSupport.class);
+    private static final String LET_BINDING = Type.getInternalName(BytecodeSupport.LetBinding.class);
+    private static final String FOR_LOOP = Type.getInternalName(BytecodeSupport.ForLoop.class);
+    private static final String EXPRESSION = Type.getInternalName(Expression.class);
+    private static final String CONTEXT = Type.getInternalName(XQueryContext.class);
+    private static final String SEQUENCE = Type.getInternalName(Sequence.class);
+    private static final String ITEM = Type.getInternalName(Item.class);
+    private static final String VALUE_SEQUENCE = Type.getInternalName(ValueSequence.class);
+
+    private static final String SEQUENCE_DESC = "L" + SEQUENCE + ";";
+    private static final String ITEM_DESC = "L" + ITEM + ";";
+    private static final String EVAL_DESC = "(" + SEQUENCE_DESC + ITEM_DESC + ")" + SEQUENCE_DESC;
+    private static final String BODY_EVAL_DESC = "(L" + CONTEXT + ";" + SEQUENCE_DESC + ITEM_DESC + ")" + SEQUENCE_DESC;
+
+    /** Local variables of the generated method */
+    private static final int THIS = 0;
+    private static final int CONTEXT_VAR = 1;
+    private static final int CONTEXT_SEQUENCE = 2;
+    private static final int CONTEXT_ITEM = 3;
+    private static final int NONE = -1;
+
+    private final XQueryContext context;
+
+    private BytecodeCompiler(final XQueryContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Compile the main module of a query and the functions it declares.
+     *
+     * @param expression the compiled query
+     * @return true if any part of the query was compiled to bytecode
+     */
+    public static boolean compile(final CompiledXQuery expression) {
+        if (!(expression instanceof PathExpr)) {
+            return false;
+        }
+        final XQueryContext context = expression.getContext();
+        final BytecodeCompiler compiler = new BytecodeCompiler(context);
+        int units = compiler.compileSteps((PathExpr) expression);
+        for (final Iterator<UserDefinedFunction> i = context.localFunctions(); i.hasNext(); ) {
+            final UserDefinedFunction function = i.next();
+            final Expression body = function.getFunctionBody();
+            if (compiler.isRoot(body)) {
+                final BytecodeExpression compiled = compiler.compileUnit(body);
+                if (compiled != null) {
+                    function.setFunctionBody(compiled);
+                    units++;
+                }
+            } else {
+                units += compiler.compileChildren(body);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Compiled " + units + " expressions of " + context.getSource() + " to bytecode");
+        }
+        return units > 0;
+    }
+
+    /**
+     * Replace the steps of a path, or the arguments of a function, by compiled code
+     * where possible.
+     *
+     * @param path the path or function
+     * @return the number of compiled expressions
+     */
+    private int compileSteps(final PathExpr path) {
+        int units = 0;
+        for (int i = 0; i < path.getLength(); i++) {
+            final Expression step = path.getExpression(i);
+            if (isRoot(step)) {
+                final BytecodeExpression compiled = compileUnit(step);
+                if (compiled != null) {
+                    path.replace(step, compiled);
+                    units++;
+                    continue;
+                }
+            }
+            units += compileChildren(step);
+        }
+        return units;
+    }
+
+    /**
+     * Look for expressions to compile below an expression, which is interpreted.
+     *
+     * @param expr the expression
+     * @return the number of compiled expressions
+     */
+    private int compileChildren(final Expression expr) {
+        if (expr instanceof InternalFunctionCall) {
+            return compileSteps(((InternalFunctionCall) expr).getFunction());
+        }
+        if (expr instanceof Function || expr instanceof EnclosedExpr || expr instanceof SequenceConstructor
+                || expr.getClass() == PathExpr.class) {
+            return compileSteps((PathExpr) expr);
+        }
+        return 0;
+    }
+
+    /**
+     * @param expr the expression
+     * @return true if the expression is worth compiling as a whole
+     */
+    private boolean isRoot(final Expression expr) {
+        return !(expr instanceof LiteralValue || expr instanceof VariableReference || expr instanceof Atomize)
+                && isCompilable(expr, new ArrayDeque<>());
+    }
+
+    /**
+     * Check if code can be generated for an expression, not considering its operands,
+     * which are evaluated by the interpreter if they cannot be compiled.
+     *
+     * @param expr the expression
+     * @param scope the variables bound by the enclosing compiled clauses
+     * @return true if code can be generated
+     */
+    private boolean isCompilable(final Expression expr, final Deque<QName> scope) {
+        final Class<?> type = expr.getClass();
+        if (expr instanceof LiteralValue || expr instanceof Atomize || expr instanceof ConditionalExpression
+                || type == SequenceConstructor.class || type == OpNumeric.class) {
+            return true;
+        } else if (type == FunctionCall.class) {
+            return ((FunctionCall) expr).getFunction() != null;
+        } else if (expr instanceof VariableReference) {
+            return scope.contains(((VariableReference) expr).getName());
+        } else if (type == GeneralComparison.class || type == ValueComparison.class) {
+            // in a predicate or "where" clause, node sets are compared by the interpreter
+            final GeneralComparison comparison = (GeneralComparison) expr;
+            final Expression left = comparison.getLeft();
+            return !comparison.inPredicate
+                    || (!(left instanceof FLWORClause)
+                        && org.exist.xquery.value.Type.subTypeOf(left.returnsType(), org.exist.xquery.value.Type.ATOMIC));
+        } else if (type == LetExpr.class || type == ForExpr.class || type == WhereClause.class) {
+            return isCompilableClause((FLWORClause) expr);
+        }
+        return false;
+    }
+
+    private boolean isCompilableClause(final FLWORClause clause) {
+        // all clauses of the FLWOR expression have to be "let", "for" or "where"
+        FLWORClause first = clause;
+        while (first.getPreviousClause() != null) {
+            first = first.getPreviousClause();
+        }
+        for (Expression next = first; next instanceof FLWORClause; next = ((FLWORClause) next).getReturnExpression()) {
+            final Class<?> type = next.getClass();
+            if (type != LetExpr.class && type != ForExpr.class && type != WhereClause.class) {
+                return false;
+            }
+        }
+        if (clause instanceof BindingExpression) {
+            final BindingExpression binding = (BindingExpression) clause;
+            if (binding.sequenceType != null || getVariableName(binding) == null) {
+                return false;
+            }
+        }
+        if (clause instanceof ForExpr) {
+            final ForExpr forExpr = (ForExpr) clause;
+            return !forExpr.hasPositionalVariable() && !forExpr.isAllowingEmpty() && forExpr.getJoin() == null;
+        }
+        return true;
+    }
+
+    private QName getVariableName(final BindingExpression binding) {
+        try {
+            return QName.parse(context, binding.getVariable(), null);
+        } catch (final QName.IllegalQNameException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate the code for an expression.
+     *
+     * @param expr the expression
+     * @return the expression to be evaluated instead, or null if the code could not be generated
+     */
+    private BytecodeExpression compileUnit(final Expression expr) {
+        final Unit unit = new Unit();
+        try {
+            final BytecodeExpression.Body body = unit.generate(expr);
+            final BytecodeExpression compiled = new BytecodeExpression(context, expr, body);
+            // expressions evaluated by the interpreter may contain further candidates
+            for (final Expression interpreted : unit.interpreted) {
+                compileChildren(interpreted);
+            }
+            return compiled;
+        } catch (final RuntimeException | LinkageError | ReflectiveOperationException e) {
+            LOG.warn("Could not compile expression " + ExpressionDumper.dump(expr) + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Generates the class for one compiled expression.
+     */
+    private class Unit {
+
+        private final String className = "org/exist/xquery/generated/Body" + CLASS_COUNT.incrementAndGet();
+        private final List<Object> nodes = new ArrayList<>();
+        private final List<Expression> interpreted = new ArrayList<>();
+        private final Deque<QName> scope = new ArrayDeque<>();
+        private final Deque<Integer> slots = new ArrayDeque<>();
+        private MethodVisitor mv;
+        private int nextLocal = CONTEXT_ITEM + 1;
+
+        BytecodeExpression.Body generate(final Expression expr) throws ReflectiveOperationException {
+            final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+                @Override
+                protected ClassLoader getClassLoader() {
+                    return BytecodeCompiler.class.getClassLoader();
+                }
+            };
+            cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object", new String[] { BODY });
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, "nodes", "[Ljava/lang/Object;", null, null).visitEnd();
+
+            final MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+            init.visitCode();
+            init.visitVarInsn(ALOAD, 0);
+            init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+            init.visitVarInsn(ALOAD, 0);
+            init.visitVarInsn(ALOAD, 1);
+            init.visitFieldInsn(PUTFIELD, className, "nodes", "[Ljava/lang/Object;");
+            init.visitInsn(RETURN);
+            init.visitMaxs(0, 0);
+            init.visitEnd();
+
+            mv = cw.visitMethod(ACC_PUBLIC, "eval", BODY_EVAL_DESC, null,
+                    new String[] { Type.getInternalName(XPathException.class) });
+            mv.visitCode();
+            emit(expr, CONTEXT_SEQUENCE, CONTEXT_ITEM);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            cw.visitEnd();
+
+            final Class<?> bodyClass = new Loader().define(className.replace('/', '.'), cw.toByteArray());
+            return (BytecodeExpression.Body) bodyClass.getConstructor(Object[].class).newInstance((Object) nodes.toArray());
+        }
+
+        /**
+         * Generate the code to evaluate an expression, leaving its result on the stack.
+         */
+        private void emit(final Expression expr, final int contextSequence, final int contextItem) {
+            if (!isCompilable(expr, scope)) {
+                emitInterpreted(expr, contextSequence, contextItem);
+            } else if (expr instanceof LiteralValue) {
+                loadNode(((LiteralValue) expr).getValue(), SEQUENCE);
+            } else if (expr instanceof VariableReference) {
+                emitVariable((VariableReference) expr);
+            } else if (expr instanceof Atomize) {
+                emit(((Atomize) expr).getExpression(), contextSequence, contextItem);
+                mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Atomize.class), "atomize",
+                        "(" + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+            } else if (expr instanceof OpNumeric) {
+                final OpNumeric op = (OpNumeric) expr;
+                loadNode(op, Type.getInternalName(OpNumeric.class));
+                emit(op.getLeft(), contextSequence, contextItem);
+                emit(op.getRight(), contextSequence, contextItem);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(OpNumeric.class), "compute",
+                        "(" + SEQUENCE_DESC + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+            } else if (expr instanceof GeneralComparison) {
+                final GeneralComparison comparison = (GeneralComparison) expr;
+                loadNode(comparison, Type.getInternalName(GeneralComparison.class));
+                emit(comparison.getLeft(), contextSequence, contextItem);
+                emit(comparison.getRight(), contextSequence, contextItem);
+                load(contextSequence);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(GeneralComparison.class), "compareValues",
+                        "(" + SEQUENCE_DESC + SEQUENCE_DESC + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+            } else if (expr instanceof ConditionalExpression) {
+                final ConditionalExpression conditional = (ConditionalExpression) expr;
+                final Label otherwise = new Label();
+                final Label end = new Label();
+                emitTest(conditional.getTestExpr(), contextSequence, contextItem, otherwise);
+                emit(conditional.getThenExpr(), contextSequence, contextItem);
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(otherwise);
+                emit(conditional.getElseExpr(), contextSequence, contextItem);
+                mv.visitLabel(end);
+            } else if (expr instanceof SequenceConstructor) {
+                emitSequence((SequenceConstructor) expr, contextSequence, contextItem);
+            } else if (expr instanceof FunctionCall) {
+                emitFunctionCall((FunctionCall) expr, contextSequence, contextItem);
+            } else if (expr instanceof LetExpr) {
+                emitLet((LetExpr) expr, contextSequence);
+            } else if (expr instanceof ForExpr) {
+                emitFor((ForExpr) expr, contextSequence);
+            } else {
+                emitWhere((WhereClause) expr);
+            }
+        }
+
+        private void emitInterpreted(final Expression expr, final int contextSequence, final int contextItem) {
+            interpreted.add(expr);
+            loadNode(expr, EXPRESSION);
+            load(contextSequence);
+            load(contextItem);
+            mv.visitMethodInsn(INVOKEINTERFACE, EXPRESSION, "eval", EVAL_DESC, true);
+        }
+
+        private void emitVariable(final VariableReference ref) {
+            // the innermost binding of the name
+            final Iterator<Integer> slot = slots.iterator();
+            for (final QName name : scope) {
+                final int local = slot.next();
+                if (name.equals(ref.getName())) {
+                    mv.visitVarInsn(ALOAD, local);
+                    return;
+                }
+            }
+            throw new IllegalStateException("Variable $" + ref.getName() + " is not bound");
+        }
+
+        /**
+         * Evaluate the effective boolean value of an expression, and jump to the label if it is false.
+         */
+        private void emitTest(final Expression expr, final int contextSequence, final int contextItem, final Label otherwise) {
+            emit(expr, contextSequence, contextItem);
+            mv.visitMethodInsn(INVOKEINTERFACE, SEQUENCE, "effectiveBooleanValue", "()Z", true);
+            mv.visitJumpInsn(IFEQ, otherwise);
+        }
+
+        private void emitSequence(final SequenceConstructor constructor, final int contextSequence, final int contextItem) {
+            loadNode(constructor, Type.getInternalName(SequenceConstructor.class));
+            mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "newSequence",
+                    "(L" + Type.getInternalName(SequenceConstructor.class) + ";)L" + VALUE_SEQUENCE + ";", false);
+            final int result = newLocal();
+            mv.visitVarInsn(ASTORE, result);
+            for (int i = 0; i < constructor.getLength(); i++) {
+                final Expression step = constructor.getExpression(i);
+                mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "pushDocumentContext", "()V", false);
+                tryFinally(() -> {
+                    mv.visitVarInsn(ALOAD, result);
+                    emit(step, contextSequence, contextItem);
+                    mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "addAll",
+                            "(L" + VALUE_SEQUENCE + ";" + SEQUENCE_DESC + ")V", false);
+                }, () -> {
+                    mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "popDocumentContext", "()V", false);
+                });
+            }
+            mv.visitVarInsn(ALOAD, result);
+            mv.visitTypeInsn(CHECKCAST, SEQUENCE);
+        }
+
+        private void emitFunctionCall(final FunctionCall call, final int contextSequence, final int contextItem) {
+            final String callType = Type.getInternalName(FunctionCall.class);
+            final int args = newLocal();
+            pushInt(call.getArgumentCount());
+            mv.visitTypeInsn(ANEWARRAY, SEQUENCE);
+            mv.visitVarInsn(ASTORE, args);
+
+            final Label start = new Label();
+            final Label end = new Label();
+            final Label handler = new Label();
+            final Label done = new Label();
+            final String exception = Type.getInternalName(XPathException.class);
+            mv.visitLabel(start);
+            for (int i = 0; i < call.getArgumentCount(); i++) {
+                mv.visitVarInsn(ALOAD, args);
+                pushInt(i);
+                emit(call.getArgument(i), contextSequence, contextItem);
+                mv.visitInsn(AASTORE);
+            }
+            mv.visitLabel(end);
+            // after the blocks nested in the arguments, so that their handlers come first
+            mv.visitTryCatchBlock(start, end, handler, exception);
+            mv.visitJumpInsn(GOTO, done);
+            mv.visitLabel(handler);
+            final int error = newLocal();
+            mv.visitVarInsn(ASTORE, error);
+            loadNode(call, callType);
+            mv.visitVarInsn(ALOAD, error);
+            mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "argumentError",
+                    "(L" + callType + ";L" + exception + ";)L" + exception + ";", false);
+            mv.visitInsn(ATHROW);
+            mv.visitLabel(done);
+
+            loadNode(call, callType);
+            load(contextSequence);
+            load(contextItem);
+            mv.visitVarInsn(ALOAD, args);
+            mv.visitMethodInsn(INVOKEVIRTUAL, callType, "evalArguments",
+                    "(" + SEQUENCE_DESC + ITEM_DESC + "[" + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+        }
+
+        private void emitLet(final LetExpr let, final int contextSequence) {
+            final String letType = Type.getInternalName(LetExpr.class);
+            final int binding = newLocal();
+            final int value = newLocal();
+            final int result = newLocal();
+            loadNode(let, letType);
+            mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "let", "(L" + letType + ";)L" + LET_BINDING + ";", false);
+            mv.visitVarInsn(ASTORE, binding);
+            mv.visitInsn(ACONST_NULL);
+            mv.visitVarInsn(ASTORE, result);
+            tryFinally(() -> {
+                mv.visitVarInsn(ALOAD, binding);
+                emit(let.getInputSequence(), contextSequence, NONE);
+                mv.visitMethodInsn(INVOKEVIRTUAL, LET_BINDING, "bind", "(" + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+                mv.visitVarInsn(ASTORE, value);
+                bind(let, value);
+                try {
+                    emit(let.getReturnExpression(), contextSequence, NONE);
+                } finally {
+                    unbind();
+                }
+                mv.visitVarInsn(ASTORE, result);
+            }, () -> {
+                mv.visitVarInsn(ALOAD, binding);
+                mv.visitVarInsn(ALOAD, result);
+                mv.visitMethodInsn(INVOKEVIRTUAL, LET_BINDING, "close", "(" + SEQUENCE_DESC + ")V", false);
+            });
+            mv.visitVarInsn(ALOAD, binding);
+            mv.visitVarInsn(ALOAD, result);
+            mv.visitMethodInsn(INVOKEVIRTUAL, LET_BINDING, "finish", "(" + SEQUENCE_DESC + ")" + SEQUENCE_DESC, false);
+        }
+
+        private void emitFor(final ForExpr forExpr, final int contextSequence) {
+            final String forType = Type.getInternalName(ForExpr.class);
+            final int loop = newLocal();
+            final int value = newLocal();
+            loadNode(forExpr, forType);
+            mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "forLoop", "(L" + forType + ";)L" + FOR_LOOP + ";", false);
+            mv.visitVarInsn(ASTORE, loop);
+            tryFinally(() -> {
+                mv.visitVarInsn(ALOAD, loop);
+                emit(forExpr.getInputSequence(), contextSequence, NONE);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FOR_LOOP, "bind", "(" + SEQUENCE_DESC + ")V", false);
+
+                final Label next = new Label();
+                final Label end = new Label();
+                mv.visitLabel(next);
+                mv.visitVarInsn(ALOAD, loop);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FOR_LOOP, "next", "()Z", false);
+                mv.visitJumpInsn(IFEQ, end);
+                mv.visitVarInsn(ALOAD, loop);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FOR_LOOP, "current", "()" + SEQUENCE_DESC, false);
+                mv.visitVarInsn(ASTORE, value);
+                mv.visitVarInsn(ALOAD, loop);
+                bind(forExpr, value);
+                try {
+                    emit(forExpr.getReturnExpression(), NONE, NONE);
+                } finally {
+                    unbind();
+                }
+                mv.visitMethodInsn(INVOKEVIRTUAL, FOR_LOOP, "add", "(" + SEQUENCE_DESC + ")V", false);
+                mv.visitJumpInsn(GOTO, next);
+                mv.visitLabel(end);
+            }, () -> {
+                mv.visitVarInsn(ALOAD, loop);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FOR_LOOP, "close", "()V", false);
+            });
+            mv.visitVarInsn(ALOAD, loop);
+            mv.visitMethodInsn(INVOKEVIRTUAL, FOR_LOOP, "finish", "()" + SEQUENCE_DESC, false);
+        }
+
+        private void emitWhere(final WhereClause where) {
+            final String whereType = Type.getInternalName(WhereClause.class);
+            final Label apply = new Label();
+            final Label otherwise = new Label();
+            final Label end = new Label();
+            loadNode(where, whereType);
+            mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "isFastTrack", "(L" + whereType + ";)Z", false);
+            mv.visitJumpInsn(IFNE, apply);
+            emitTest(where.getWhereExpr(), NONE, NONE, otherwise);
+            mv.visitLabel(apply);
+            emit(where.getReturnExpression(), NONE, NONE);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(otherwise);
+            mv.visitFieldInsn(GETSTATIC, SEQUENCE, "EMPTY_SEQUENCE", SEQUENCE_DESC);
+            mv.visitLabel(end);
+        }
+
+        /**
+         * Generate a block, followed by a second block which is also executed if the first one throws.
+         * Both blocks must leave the stack as they found it.
+         */
+        private void tryFinally(final Runnable block, final Runnable finallyBlock) {
+            final Label start = new Label();
+            final Label end = new Label();
+            final Label handler = new Label();
+            final Label done = new Label();
+            mv.visitLabel(start);
+            block.run();
+            mv.visitLabel(end);
+            // after the nested blocks, so that their handlers come first
+            mv.visitTryCatchBlock(start, end, handler, null);
+            finallyBlock.run();
+            mv.visitJumpInsn(GOTO, done);
+            mv.visitLabel(handler);
+            final int error = newLocal();
+            mv.visitVarInsn(ASTORE, error);
+            finallyBlock.run();
+            mv.visitVarInsn(ALOAD, error);
+            mv.visitInsn(ATHROW);
+            mv.visitLabel(done);
+        }
+
+        private void bind(final BindingExpression binding, final int local) {
+            scope.push(getVariableName(binding));
+            slots.push(local);
+        }
+
+        private void unbind() {
+            scope.pop();
+            slots.pop();
+        }
+
+        /**
+         * Push a node of the expression tree, or another object, cast to the given type.
+         */
+        private void loadNode(final Object node, final String type) {
+            int index = -1;
+            for (int i = 0; i < nodes.size(); i++) {
+                if (nodes.get(i) == node) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                index = nodes.size();
+                nodes.add(node);
+            }
+            mv.visitVarInsn(ALOAD, THIS);
+            mv.visitFieldInsn(GETFIELD, className, "nodes", "[Ljava/lang/Object;");
+            pushInt(index);
+            mv.visitInsn(AALOAD);
+            mv.visitTypeInsn(CHECKCAST, type);
+        }
+
+        private void load(final int local) {
+            if (local == NONE) {
+                mv.visitInsn(ACONST_NULL);
+            } else {
+                mv.visitVarInsn(ALOAD, local);
+            }
+        }
+
+        private void pushInt(final int value) {
+            if (value <= 5) {
+                mv.visitInsn(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                mv.visitIntInsn(BIPUSH, value);
+            } else if (value <= Short.MAX_VALUE) {
+                mv.visitIntInsn(SIPUSH, value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+
+        private int newLocal() {
+            return nextLocal++;
+        }
+    }
+
+    /**
+     * Defines each generated class in its own class loader, so that it can be
+     * unloaded together with the query.
+     */
+    private static class Loader extends ClassLoader {
+
+        Loader() {
+            super(BytecodeCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(final String name, final byte[] code) {
+            return defineClass(name, code, 0, code.length);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Evaluates an expression with the code generated for it by the
+ * {@link BytecodeCompiler}.
+ *
+ * The original expression is kept and used for everything but the
+ * evaluation. It is also evaluated instead of the generated code while the
+ * profiler or the debugger is active, or after the expression was analyzed
+ * again, as the optimizer may then have rewritten the tree the code was
+ * generated for.
+ */
+public class BytecodeExpression extends AbstractExpression {
+
+    /**
+     * Implemented by the generated code.
+     */
+    public interface Body {
+
+        Sequence eval(XQueryContext context, Sequence contextSequence, Item contextItem) throws XPathException;
+    }
+
+    private final Expression expression;
+    private Body body;
+
+    public BytecodeExpression(final XQueryContext context, final Expression expression, final Body body) {
+        super(context);
+        this.expression = expression;
+        this.body = body;
+        setLocation(expression.getLine(), expression.getColumn());
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return false if the original expression is evaluated instead of the generated code
+     */
+    public boolean isCompiled() {
+        return body != null;
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        body = null;
+        expression.analyze(contextInfo);
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        if (body == null || context.getProfiler().isEnabled() || context.getDebuggeeJoint() != null) {
+            return expression.eval(contextSequence, contextItem);
+        }
+        try {
+            return body.eval(context, contextSequence, contextItem);
+        } catch (final XPathException e) {
+            if (e.getLine() <= 0) {
+                e.setLocation(line, column, getSource());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        expression.dump(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    @Override
+    public int returnsType() {
+        return expression.returnsType();
+    }
+
+    @Override
+    public int getCardinality() {
+        return expression.getCardinality();
+    }
+
+    @Override
+    public int getDependencies() {
+        return expression.getDependencies();
+    }
+
+    @Override
+    public boolean allowMixedNodesInReturn() {
+        return expression.allowMixedNodesInReturn();
+    }
+
+    @Override
+    public void setContextDocSet(final DocumentSet contextSet) {
+        super.setContextDocSet(contextSet);
+        expression.setContextDocSet(contextSet);
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        expression.resetState(postOptimization);
+    }
+
+    @Override
+    public void accept(final ExpressionVisitor visitor) {
+        expression.accept(visitor);
+    }
+
+    @Override
+    public int getSubExpressionCount() {
+        return 1;
+    }
+
+    @Override
+    public Expression getSubExpression(final int index) {
+        if (index == 0) {
+            return expression;
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getSubExpressionCount());
+    }
+}
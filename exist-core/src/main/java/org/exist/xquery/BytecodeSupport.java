@@ -0,0 +1,278 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.ValueSequence;
+
+/**
+ * Runtime support for the code generated by the {@link BytecodeCompiler}.
+ *
+ * The generated classes are defined by their own class loader, so they can
+ * only call public methods. The methods of this class give them access to
+ * the parts of the expressions they need, and keep the bookkeeping of the
+ * FLWOR clauses (variable stack, document context, update listeners) the
+ * same as in the interpreter.
+ */
+public final class BytecodeSupport {
+
+    private BytecodeSupport() {
+    }
+
+    /**
+     * Add the location of a function call to an error raised while evaluating
+     * its arguments, as done by {@link FunctionCall#eval(Sequence, Item)}.
+     *
+     * @param call the function call
+     * @param e the error
+     * @return the error, to be thrown
+     */
+    public static XPathException argumentError(final FunctionCall call, final XPathException e) {
+        if (e.getLine() <= 0) {
+            e.setLocation(call.getLine(), call.getColumn(), call.getSource());
+        }
+        e.addFunctionCall(call.functionDef, call);
+        return e;
+    }
+
+    /**
+     * @param where the "where" clause
+     * @return true if the clause was already applied to the input of the enclosing "for" clause
+     */
+    public static boolean isFastTrack(final WhereClause where) {
+        return where.isFastTrack();
+    }
+
+    /**
+     * Create the result of a sequence constructor.
+     *
+     * @param constructor the sequence constructor
+     * @return an empty sequence
+     */
+    public static ValueSequence newSequence(final SequenceConstructor constructor) {
+        final ValueSequence result = new ValueSequence();
+        result.keepUnOrdered(constructor.unordered);
+        return result;
+    }
+
+    /**
+     * Add the value of an operand of a sequence constructor to its result.
+     *
+     * @param result the result of the constructor
+     * @param value the value of the operand
+     * @throws XPathException if the items cannot be added
+     */
+    public static void addAll(final ValueSequence result, final Sequence value) throws XPathException {
+        if (value != null && !value.isEmpty()) {
+            result.addAll(value);
+        }
+    }
+
+    public static LetBinding let(final LetExpr expr) throws XPathException {
+        return new LetBinding(expr);
+    }
+
+    public static ForLoop forLoop(final ForExpr expr) throws XPathException {
+        return new ForLoop(expr);
+    }
+
+    /**
+     * Binds the variable of a "let" clause, see {@link LetExpr#eval(Sequence, Item)}.
+     */
+    public static final class LetBinding {
+
+        private final LetExpr expr;
+        private final XQueryContext context;
+        private final LocalVariable mark;
+        private Sequence in = null;
+
+        private LetBinding(final LetExpr expr) throws XPathException {
+            this.expr = expr;
+            this.context = expr.getContext();
+            context.expressionStart(expr);
+            context.pushDocumentContext();
+            this.mark = context.markLocalVariables(false);
+        }
+
+        /**
+         * Declare the variable.
+         *
+         * @param in the value of the input expression
+         * @return the value of the variable
+         * @throws XPathException if the variable cannot be declared
+         */
+        public Sequence bind(final Sequence in) throws XPathException {
+            this.in = in;
+            BindingExpression.clearContext(expr.getExpressionId(), in);
+            final LocalVariable var = expr.createVariable(expr.getVariable());
+            context.declareVariableBinding(var);
+            var.setValue(in);
+            var.checkType();
+            var.setContextDocs(expr.getInputSequence().getContextDocSet());
+            expr.registerUpdateListener(in);
+            return var.getValue();
+        }
+
+        /**
+         * Restore the variable stack and document context, also if the
+         * evaluation failed.
+         *
+         * @param result the result of the return expression, or null
+         */
+        public void close(final Sequence result) {
+            try {
+                context.popLocalVariables(mark, result);
+            } finally {
+                context.popDocumentContext();
+                context.expressionEnd(expr);
+            }
+        }
+
+        /**
+         * @param result the result of the return expression
+         * @return the result of the clause
+         * @throws XPathException if the result cannot be processed
+         */
+        public Sequence finish(Sequence result) throws XPathException {
+            BindingExpression.clearContext(expr.getExpressionId(), in);
+            if (result == null) {
+                return Sequence.EMPTY_SEQUENCE;
+            }
+            if (!(result instanceof DeferredFunctionCall)) {
+                expr.setActualReturnType(result.getItemType());
+            }
+            if (expr.getPreviousClause() == null) {
+                result = expr.postEval(result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Iterates the input of a "for" clause, see {@link ForExpr#eval(Sequence, Item)}.
+     */
+    public static final class ForLoop {
+
+        private final ForExpr expr;
+        private final XQueryContext context;
+        private final LocalVariable mark;
+        private final ValueSequence result;
+        private LocalVariable var = null;
+        private Sequence in = null;
+        private SequenceIterator iterator = null;
+        private Sequence current = null;
+        private int position = -1;
+
+        private ForLoop(final ForExpr expr) throws XPathException {
+            this.expr = expr;
+            this.context = expr.getContext();
+            expr.countEvaluation();
+            context.expressionStart(expr);
+            this.mark = context.markLocalVariables(false);
+            this.result = new ValueSequence(expr.unordered);
+        }
+
+        /**
+         * Declare the variable.
+         *
+         * @param input the value of the input expression
+         * @throws XPathException if the variable cannot be declared
+         */
+        public void bind(final Sequence input) throws XPathException {
+            in = input;
+            BindingExpression.clearContext(expr.getExpressionId(), in);
+            var = expr.createVariable(expr.getVariable());
+            context.declareVariableBinding(var);
+            expr.registerUpdateListener(in);
+            var.setValue(in);
+            if (in instanceof NodeSet) {
+                var.setContextDocs(in.getDocumentSet());
+            } else {
+                var.setContextDocs(null);
+            }
+            final Expression returnExpr = expr.getReturnExpression();
+            if (expr.isOuterFor() && returnExpr instanceof FLWORClause) {
+                in = ((FLWORClause) returnExpr).preEval(in);
+            }
+            iterator = in.iterate();
+        }
+
+        /**
+         * Bind the variable to the next item of the input.
+         *
+         * @return false if all items were processed
+         * @throws XPathException if the query was terminated
+         */
+        public boolean next() throws XPathException {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            position++;
+            context.proceed(expr);
+            context.setContextSequencePosition(position, in);
+            current = iterator.nextItem().toSequence();
+            var.setValue(current);
+            var.checkType();
+            context.setContextSequencePosition(0, null);
+            return true;
+        }
+
+        /**
+         * @return the current value of the variable
+         */
+        public Sequence current() {
+            return current;
+        }
+
+        /**
+         * @param value the result of the return expression for the current item
+         * @throws XPathException if the items cannot be added
+         */
+        public void add(final Sequence value) throws XPathException {
+            result.addAll(value);
+            var.destroy(context, result);
+        }
+
+        /**
+         * Restore the variable stack, also if the evaluation failed.
+         */
+        public void close() {
+            context.popLocalVariables(mark, result);
+        }
+
+        /**
+         * @return the result of the clause
+         * @throws XPathException if the result cannot be processed
+         */
+        public Sequence finish() throws XPathException {
+            BindingExpression.clearContext(expr.getExpressionId(), in);
+            expr.setActualReturnType(result.getItemType());
+            Sequence seq = result;
+            if (expr.callPostEval()) {
+                seq = expr.postEval(seq);
+            }
+            context.expressionEnd(expr);
+            return seq;
+        }
+    }
+}
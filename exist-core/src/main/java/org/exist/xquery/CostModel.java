@@ -0,0 +1,259 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2019 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.xquery.StepPlan.AccessMethod;
+import org.exist.xquery.StepPlan.PredicateEstimate;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Estimates the selectivity and cost of the predicates of a location step, and orders them
+ * so that cheap predicates filtering out many items are evaluated first.
+ *
+ * Element counts are taken from the data guide of {@link IndexStatistics}, if the index-stats
+ * module is enabled in conf.xml. Otherwise, and for comparisons, fixed default selectivities
+ * are used, as the indexes do not keep statistics on their keys.
+ *
+ * Only predicates of a known shape are moved: comparisons and boolean functions on relative
+ * paths and context-free operands, and relative paths tested for existence. Any other
+ * predicate, in particular a positional one, keeps its position, and predicates are never
+ * moved across it.
+ */
+public class CostModel {
+
+    /** Relative cost of evaluating a predicate for one context item, by access method */
+    static final double INDEX_COST = 1.0;
+    static final double STRUCTURAL_COST = 2.0;
+    static final double SCAN_COST = 10.0;
+
+    static final double EQ_SELECTIVITY = 0.1;
+    static final double NEQ_SELECTIVITY = 0.9;
+    static final double RANGE_SELECTIVITY = 0.33;
+    static final double FUNCTION_SELECTIVITY = 0.1;
+    static final double DEFAULT_SELECTIVITY = 0.5;
+
+    /**
+     * An index pre-selection is not worth it if more than this fraction of the
+     * indexed nodes is expected to match.
+     */
+    static final double MAX_PRESELECT_SELECTIVITY = 0.5;
+
+    @Nullable private final IndexStatistics statistics;
+
+    public CostModel(final XQueryContext context) {
+        this((IndexStatistics) context.getBroker().getBrokerPool().getIndexManager().getIndexById(IndexStatistics.ID));
+    }
+
+    CostModel(@Nullable final IndexStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Estimate the predicates of the step and order them by rank, keeping predicates
+     * which can't be estimated in place.
+     *
+     * @param step the location step
+     * @return the plan for the predicates of the step
+     */
+    public StepPlan plan(final LocationStep step) {
+        final List<Predicate> predicates = step.getPredicates();
+        final List<PredicateEstimate> ordered = new ArrayList<>(predicates.size());
+        final List<PredicateEstimate> run = new ArrayList<>();
+        for (int i = 0; i < predicates.size(); i++) {
+            final PredicateEstimate estimate = estimate(step, predicates.get(i), i);
+            if (estimate.getAccessMethod() == AccessMethod.FIXED) {
+                addRun(ordered, run);
+                ordered.add(estimate);
+            } else {
+                run.add(estimate);
+            }
+        }
+        addRun(ordered, run);
+        return new StepPlan(step, getElementCount(step), ordered);
+    }
+
+    private static void addRun(final List<PredicateEstimate> ordered, final List<PredicateEstimate> run) {
+        // the sort is stable: predicates of the same rank keep their order
+        run.sort(Comparator.comparingDouble(PredicateEstimate::getRank));
+        ordered.addAll(run);
+        run.clear();
+    }
+
+    /**
+     * Check if pre-selecting the nodes matching the optimizable expressions through
+     * the index is cheaper than evaluating the predicate for each context node.
+     *
+     * @param optimizables the optimizable expressions of a predicate
+     * @return true if the index should be used for a pre-selection
+     */
+    public boolean preferIndex(final List<Optimizable> optimizables) {
+        double selectivity = 1.0;
+        for (final Optimizable optimizable : optimizables) {
+            selectivity *= getSelectivity(optimizable);
+        }
+        return selectivity <= MAX_PRESELECT_SELECTIVITY;
+    }
+
+    PredicateEstimate estimate(final LocationStep step, final Predicate predicate, final int position) {
+        final Expression inner = predicate.getSubExpressionCount() == 1 ? unwrap(predicate.getSubExpression(0)) : predicate;
+
+        if (Dependency.dependsOn(inner, Dependency.CONTEXT_POSITION)) {
+            // positional predicates must stay where they are
+            return new PredicateEstimate(predicate, AccessMethod.FIXED, 1.0, SCAN_COST, position);
+        }
+        if (inner instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) inner;
+            if (isRelativePath(comparison.getLeft()) && isContextFree(comparison.getRight())) {
+                return new PredicateEstimate(predicate, AccessMethod.INDEX, getSelectivity(comparison), INDEX_COST,
+                        position);
+            }
+        } else if (inner instanceof Function && !(inner instanceof FunctionCall)
+                && Type.subTypeOf(inner.returnsType(), Type.BOOLEAN)) {
+            final Function function = (Function) inner;
+            if (hasSimpleArguments(function)) {
+                if (function instanceof Optimizable) {
+                    return new PredicateEstimate(predicate, AccessMethod.INDEX, FUNCTION_SELECTIVITY, INDEX_COST,
+                            position);
+                }
+                return new PredicateEstimate(predicate, AccessMethod.SCAN, DEFAULT_SELECTIVITY, SCAN_COST, position);
+            }
+        } else if (isRelativePath(inner)) {
+            return new PredicateEstimate(predicate, AccessMethod.STRUCTURAL, getExistenceSelectivity(step, inner),
+                    STRUCTURAL_COST, position);
+        }
+        return new PredicateEstimate(predicate, AccessMethod.FIXED, 1.0, SCAN_COST, position);
+    }
+
+    private static double getSelectivity(final Optimizable optimizable) {
+        if (!(optimizable instanceof GeneralComparison)) {
+            return FUNCTION_SELECTIVITY;
+        }
+        switch (((GeneralComparison) optimizable).getRelation()) {
+            case EQ:
+                return EQ_SELECTIVITY;
+            case NEQ:
+                return NEQ_SELECTIVITY;
+            default:
+                return RANGE_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Estimate the fraction of context nodes having a node selected by the given path,
+     * as the number of elements selected by the first step of the path per context element,
+     * capped at 1.
+     */
+    private double getExistenceSelectivity(final LocationStep step, final Expression path) {
+        final Expression first = path instanceof PathExpr ? ((PathExpr) path).getSubExpression(0) : path;
+        final long contextCount = getElementCount(step);
+        final long count = getElementCount((LocationStep) first);
+        if (contextCount <= 0 || count < 0) {
+            return DEFAULT_SELECTIVITY;
+        }
+        return Math.min(1.0, (double) count / contextCount);
+    }
+
+    /**
+     * @return the number of elements selected by the name test of the step in the
+     *     whole database, or -1 if unknown
+     */
+    private long getElementCount(final LocationStep step) {
+        if (statistics == null) {
+            return -1;
+        }
+        final NodeTest test = step.getTest();
+        if (test.getType() != Type.ELEMENT || test.isWildcardTest()) {
+            return -1;
+        }
+        final QName qname = test.getName();
+        if (qname == null || qname.getNameType() != ElementValue.ELEMENT) {
+            return -1;
+        }
+        return statistics.getNodeCount(qname);
+    }
+
+    private boolean hasSimpleArguments(final Function function) {
+        for (int i = 0; i < function.getArgumentCount(); i++) {
+            final Expression arg = unwrap(function.getArgument(i));
+            if (!isRelativePath(arg) && !isContextFree(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the expression is a path of location steps relative to the context
+     * item. The predicates of those steps have their own focus, so they don't matter.
+     */
+    static boolean isRelativePath(final Expression expr) {
+        if (expr instanceof LocationStep) {
+            return true;
+        }
+        if (!(expr instanceof PathExpr) || expr instanceof Predicate) {
+            return false;
+        }
+        final PathExpr path = (PathExpr) expr;
+        if (path.getSubExpressionCount() == 0) {
+            return false;
+        }
+        for (int i = 0; i < path.getSubExpressionCount(); i++) {
+            if (!(path.getSubExpression(i) instanceof LocationStep)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the expression does not depend on the focus, i.e. context item,
+     * position or size.
+     */
+    private static boolean isContextFree(final Expression expr) {
+        return !Dependency.dependsOn(expr, Dependency.CONTEXT_SET)
+                && !Dependency.dependsOn(expr, Dependency.CONTEXT_ITEM)
+                && !Dependency.dependsOn(expr, Dependency.CONTEXT_POSITION);
+    }
+
+    /**
+     * Remove the wrappers added around function arguments and single expressions.
+     */
+    static Expression unwrap(Expression expr) {
+        while (expr instanceof Atomize || expr instanceof DynamicCardinalityCheck
+                || expr instanceof DynamicTypeCheck || expr instanceof UntypedValueCheck
+                || expr instanceof InternalFunctionCall
+                || (expr instanceof PathExpr && !(expr instanceof Predicate) && expr.getSubExpressionCount() == 1)) {
+            if (expr instanceof InternalFunctionCall) {
+                expr = ((InternalFunctionCall) expr).getFunction();
+            } else {
+                expr = expr.getSubExpression(0);
+            }
+        }
+        return expr;
+    }
+}
@@ -27,6 +27,7 @@ import java.util.List;
 
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.memtree.NodeImpl;
+import org.exist.xquery.functions.fn.FunPosition;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
@@ -43,6 +44,8 @@ public class FilteredExpression extends AbstractExpression {
     protected boolean abbreviated = false;
     final protected List<Predicate> predicates = new ArrayList<Predicate>(2);
     private Expression parent;
+    private ForExpr limitableClause = null;
+    private int positionalLimit = ForExpr.UNLIMITED;
 
     public FilteredExpression(XQueryContext context, Expression expr) {
         super(context);
@@ -78,9 +81,60 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+            if (!abbreviated) {
+                positionalLimit = getPositionalLimit(predicates.get(0));
+                if (positionalLimit != ForExpr.UNLIMITED) {
+                    limitableClause = ForExpr.getLimitableClause(expression);
+                }
+            }
         }
     }
 
+    /**
+     * Check if the predicate only selects items up to a fixed position,
+     * e.g. [3] or [position() le 3].
+     *
+     * @param pred the predicate
+     * @return the last position selected, or {@link ForExpr#UNLIMITED}
+     */
+    private static int getPositionalLimit(final Predicate pred) {
+        if (pred.getLength() != 1) {
+            return ForExpr.UNLIMITED;
+        }
+        final Expression inner = pred.getExpression(0).simplify();
+        if (inner instanceof LiteralValue) {
+            return getPosition((LiteralValue) inner, 0);
+        }
+        if (inner instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) inner;
+            final Expression left = comparison.getLeft().simplify();
+            final Expression right = comparison.getRight().simplify();
+            if (left instanceof FunPosition && right instanceof LiteralValue) {
+                switch (comparison.getRelation()) {
+                    case LT:
+                        return getPosition((LiteralValue) right, -1);
+                    case LTEQ:
+                    case EQ:
+                        return getPosition((LiteralValue) right, 0);
+                    default:
+                        break;
+                }
+            }
+        }
+        return ForExpr.UNLIMITED;
+    }
+
+    private static int getPosition(final LiteralValue literal, final int offset) {
+        final AtomicValue value = literal.getValue();
+        if (value instanceof IntegerValue) {
+            final long position = ((IntegerValue) value).getLong() + offset;
+            if (position > 0 && position < Integer.MAX_VALUE) {
+                return (int) position;
+            }
+        }
+        return ForExpr.UNLIMITED;
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#eval(org.exist.dom.persistent.DocumentSet, org.exist.xquery.value.Sequence, org.exist.xquery.value.Item)
      */
@@ -99,7 +153,13 @@ public class FilteredExpression extends AbstractExpression {
         if (contextItem != null)
             {contextSequence = contextItem.toSequence();}
         Sequence result;
-        final Sequence seq = expression.eval(contextSequence, contextItem);
+        final Sequence seq;
+        if (limitableClause != null) {
+            // a FLWOR expression only needs to produce the items selected by the predicate
+            seq = limitableClause.evalLimited(expression, contextSequence, contextItem, positionalLimit);
+        } else {
+            seq = expression.eval(contextSequence, contextItem);
+        }
         if (seq.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
         else {
@@ -34,9 +34,15 @@ import org.exist.xquery.value.*;
  */
 public class ForExpr extends BindingExpression {
 
+    /** Value of {@link #setResultLimit(int)} if all items have to be returned */
+    public final static int UNLIMITED = -1;
+
     private String positionalVariable = null;
     private boolean allowEmpty = false;
     private boolean isOuterFor = true;
+    private int resultLimit = UNLIMITED;
+    private HashJoin join = null;
+    private int evaluationCount = 0;
 
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
@@ -58,6 +64,134 @@ public class ForExpr extends BindingExpression {
         positionalVariable = var;
     }
 
+    boolean hasPositionalVariable() {
+        return positionalVariable != null;
+    }
+
+    boolean isAllowingEmpty() {
+        return allowEmpty;
+    }
+
+    /**
+     * Evaluate this clause as the inner side of a hash join with an enclosing "for" clause.
+     *
+     * @param join the join, as created by the optimizer
+     */
+    void setJoin(final HashJoin join) {
+        this.join = join;
+    }
+
+    HashJoin getJoin() {
+        return join;
+    }
+
+    /**
+     * @return the number of times this clause was evaluated, used by an inner
+     *     {@link HashJoin} to detect when its input has to be evaluated again
+     */
+    int getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * Count an evaluation of this clause by code generated by the {@link BytecodeCompiler},
+     * which does not call {@link #eval(Sequence, Item)}.
+     */
+    void countEvaluation() {
+        evaluationCount++;
+        resultLimit = UNLIMITED;
+    }
+
+    boolean isOuterFor() {
+        return isOuterFor;
+    }
+
+    /**
+     * Set the minimum number of items the next evaluation of this expression has to
+     * return, if the caller only needs the first items of the result (e.g. fn:subsequence
+     * or a positional predicate). The iteration over the input sequence then stops as
+     * soon as the return clause has produced that many items. If the FLWOR expression
+     * has an "order by" clause, all tuples are still iterated, but the clause only keeps
+     * the first items in sort order. The limit only applies to the next call of
+     * {@link #eval(Sequence, Item)}.
+     *
+     * @param limit the number of items required, or {@link #UNLIMITED}
+     */
+    public void setResultLimit(final int limit) {
+        this.resultLimit = limit;
+    }
+
+    /**
+     * Evaluate an expression containing this "for" clause, as returned by
+     * {@link #getLimitableClause(Expression)}, but iterate the clause only
+     * until at least limit items have been returned.
+     *
+     * @param expr the expression to evaluate
+     * @param contextSequence the context sequence
+     * @param contextItem the context item
+     * @param limit the number of items required
+     * @return the result of the expression, starting with at least limit items or all of them
+     * @throws XPathException if an error occurs during evaluation
+     */
+    public Sequence evalLimited(final Expression expr, final Sequence contextSequence, final Item contextItem,
+            final int limit) throws XPathException {
+        setResultLimit(limit);
+        try {
+            return expr.eval(contextSequence, contextItem);
+        } finally {
+            setResultLimit(UNLIMITED);
+        }
+    }
+
+    /**
+     * Check if the given expression is a FLWOR expression which can stop
+     * iterating once its first items are known. This is the case if it has
+     * a "for" clause, which is preceded only by "let" and "where" clauses,
+     * and if it has no "group by" and at most one "order by" clause.
+     *
+     * @param expr the expression
+     * @return the first "for" clause of the expression, or null if the
+     * expression cannot be cut short
+     */
+    public static ForExpr getLimitableClause(Expression expr) {
+        while (true) {
+            if (expr instanceof DynamicCardinalityCheck) {
+                expr = expr.getSubExpression(0);
+            } else if (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof LetExpr || expr instanceof WhereClause) {
+                expr = ((FLWORClause) expr).getReturnExpression();
+            } else {
+                break;
+            }
+        }
+        if (!(expr instanceof ForExpr)) {
+            return null;
+        }
+        boolean ordered = false;
+        Expression next = ((ForExpr) expr).getReturnExpression();
+        while (next instanceof FLWORClause) {
+            final ClauseType type = ((FLWORClause) next).getType();
+            if (type == ClauseType.GROUPBY || (type == ClauseType.ORDERBY && ordered)) {
+                return null;
+            }
+            ordered |= type == ClauseType.ORDERBY;
+            next = ((FLWORClause) next).getReturnExpression();
+        }
+        return (ForExpr) expr;
+    }
+
+    private OrderByClause getOrderByClause() {
+        Expression next = returnExpr;
+        while (next instanceof FLWORClause) {
+            if (next instanceof OrderByClause) {
+                return (OrderByClause) next;
+            }
+            next = ((FLWORClause) next).getReturnExpression();
+        }
+        return null;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
@@ -118,6 +252,12 @@ public class ForExpr extends BindingExpression {
                 {context.getProfiler().message(this, Profiler.START_SEQUENCES,
                 "CONTEXT ITEM", contextItem.toSequence());}
         }
+        evaluationCount++;
+        // the limit applies to this evaluation only, not to nested ones
+        final int limit = resultLimit;
+        resultLimit = UNLIMITED;
+        // with an "order by" clause, all tuples are needed, but only the first items in sort order
+        final OrderByClause orderBy = limit != UNLIMITED ? getOrderByClause() : null;
         context.expressionStart(this);
         LocalVariable var;
         Sequence in;
@@ -126,12 +266,16 @@ public class ForExpr extends BindingExpression {
         Sequence resultSequence = new ValueSequence(unordered);
         try {
             // Evaluate the "in" expression
-            in = inputSequence.eval(contextSequence, null);
+            in = join != null ? join.getInput(contextSequence) : inputSequence.eval(contextSequence, null);
             clearContext(getExpressionId(), in);
             // Declare the iteration variable
             var = createVariable(varName);
             var.setSequenceType(sequenceType);
             context.declareVariableBinding(var);
+            if (join != null) {
+                // only iterate the items matching the current item of the outer clause
+                in = join.select(var, in, contextSequence);
+            }
             registerUpdateListener(in);
             // Declare positional variable
             LocalVariable at = null;
@@ -180,6 +324,10 @@ public class ForExpr extends BindingExpression {
                                 ", got " + Cardinality.getDescription(in.getCardinality()));
             }
 
+            if (orderBy != null) {
+                orderBy.setResultLimit(limit);
+            }
+
             // Loop through each variable binding
             int p = 0;
             if (in.isEmpty() && allowEmpty) {
@@ -187,11 +335,18 @@ public class ForExpr extends BindingExpression {
             } else {
                 for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
                     processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    if (limit != UNLIMITED && orderBy == null && resultSequence.getItemCount() >= limit) {
+                        // the caller does not need any further items
+                        break;
+                    }
                 }
             }
         } catch (final QName.IllegalQNameException e) {
             throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix " + positionalVariable);
         } finally {
+            if (orderBy != null) {
+                orderBy.setResultLimit(UNLIMITED);
+            }
             // restore the local variable stack 
             context.popLocalVariables(mark, resultSequence);
         }
@@ -254,7 +409,7 @@ public class ForExpr extends BindingExpression {
         var.destroy(context, resultSequence);
     }
 
-    private boolean callPostEval() {
+    boolean callPostEval() {
         FLWORClause prev = getPreviousClause();
         while (prev != null) {
             switch (prev.getType()) {
@@ -334,6 +489,10 @@ public class ForExpr extends BindingExpression {
     */
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
+        resultLimit = UNLIMITED;
+        if (join != null) {
+            join.reset();
+        }
     }
 
     public void accept(ExpressionVisitor visitor) {
@@ -26,6 +26,8 @@ import java.util.List;
 import org.exist.dom.persistent.DocumentSet;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.VirtualNodeSet;
+import org.exist.http.servlets.ResponseWrapper;
+import org.exist.storage.ResultCache;
 import org.exist.xquery.util.Error;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
@@ -55,6 +57,10 @@ public class FunctionCall extends Function {
 
     protected VariableReference varDeps[];
 
+    // the %exist:cache policy of the function, resolved on first call
+    private ResultCache.Policy cachePolicy = null;
+    private boolean cachePolicyResolved = false;
+
     public FunctionCall(XQueryContext context, QName name, List<Expression> arguments) {
         super(context);
         this.name = name;
@@ -199,16 +205,9 @@ public class FunctionCall extends Function {
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         final Sequence[] seq = new Sequence[getArgumentCount()];
-        final DocumentSet[] contextDocs = new DocumentSet[getArgumentCount()];
         for(int i = 0; i < getArgumentCount(); i++) {
             try {
                 seq[i] = getArgument(i).eval(contextSequence, contextItem);
-                if(varDeps != null && varDeps[i] != null) {
-                    final Variable var = varDeps[i].getVariable();
-                    if(var != null) {
-                        contextDocs[i] = var.getContextDocs();
-                    }
-                }
                 //System.out.println("found " + seq[i].getLength() + " for " + getArgument(i).pprint());
             } catch(final XPathException e) {
                 if(e.getLine() <= 0) {
@@ -219,7 +218,52 @@ public class FunctionCall extends Function {
                 throw e;
             }
         }
-        
+        return evalArguments(contextSequence, contextItem, seq);
+    }
+
+    /**
+     * Forwards the values of the arguments to the user-defined function, and
+     * checks the return value against the function signature.
+     *
+     * @param contextSequence the context sequence
+     * @param contextItem the context item
+     * @param seq the values of the arguments of this call
+     * @return the result of the function
+     * @throws XPathException if an error occurs whilst evaluating the function
+     */
+    public Sequence evalArguments(Sequence contextSequence, Item contextItem, Sequence[] seq) throws XPathException {
+        final DocumentSet[] contextDocs = new DocumentSet[getArgumentCount()];
+        if(varDeps != null) {
+            for(int i = 0; i < getArgumentCount(); i++) {
+                if(varDeps[i] != null) {
+                    final Variable var = varDeps[i].getVariable();
+                    if(var != null) {
+                        contextDocs[i] = var.getContextDocs();
+                    }
+                }
+            }
+        }
+
+        final ResultCache.Policy policy = getCachePolicy();
+        List<Object> cacheKey = null;
+        long cacheGeneration = 0;
+        final ResponseWrapper response = context.getHttpContext() != null ? context.getHttpContext().getResponse() : null;
+        int responseModifications = 0;
+        if (policy != null) {
+            final ResultCache resultCache = context.getBroker().getBrokerPool().getResultCache();
+            cacheKey = resultCache.createKey(getCacheOwner(), context.getEffectiveUser().getName(), seq);
+            if (cacheKey != null) {
+                final Sequence cached = resultCache.get(cacheKey, context.getBroker());
+                if (cached != null) {
+                    return cached;
+                }
+                cacheGeneration = resultCache.getGeneration();
+                if (response != null) {
+                    responseModifications = response.getModificationCount();
+                }
+            }
+        }
+
         final Sequence result = evalFunction(contextSequence, contextItem, seq, contextDocs);
         try {
             //Don't check deferred calls : it would result in a stack overflow
@@ -236,6 +280,12 @@ public class FunctionCall extends Function {
         }
 
 	
+        // headers, cookies or a status set by the function would be missing from a cached call
+        if (cacheKey != null && !(result instanceof DeferredFunctionCall)
+                && (response == null || response.getModificationCount() == responseModifications)) {
+            context.getBroker().getBrokerPool().getResultCache().put(cacheKey, result, policy, cacheGeneration);
+        }
+
         //Annotation Triggers are bad design, disabled as breaks RESTXQ - Adam.
         /*for (Annotation ann : functionDef.getSignature().getAnnotations()) {
             AnnotationTrigger trigger = ann.getTrigger();
@@ -251,6 +301,52 @@ public class FunctionCall extends Function {
         return result;
     }
 
+    /**
+     * Get the policy for caching the results of the function, if it is
+     * annotated with %exist:cache.
+     *
+     * @return the policy, or null if results are not cached
+     * @throws XPathException if the annotation has an invalid option
+     */
+    private ResultCache.Policy getCachePolicy() throws XPathException {
+        if (!cachePolicyResolved) {
+            final Annotation[] annotations = functionDef.getSignature().getAnnotations();
+            if (annotations != null) {
+                for (final Annotation annotation : annotations) {
+                    if (ResultCache.CACHE_QNAME.equals(annotation.getName())) {
+                        final LiteralValue[] values = annotation.getValue();
+                        final String[] options = new String[values.length];
+                        for (int i = 0; i < values.length; i++) {
+                            options[i] = values[i].getValue().getStringValue();
+                        }
+                        try {
+                            cachePolicy = ResultCache.Policy.parse(options);
+                        } catch (final IllegalArgumentException e) {
+                            throw new XPathException(this, ErrorCodes.EXXQDY0005,
+                                    "Invalid %exist:cache annotation on function " + getSignature().getName() + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }
+            cachePolicyResolved = true;
+        }
+        return cachePolicy;
+    }
+
+    /**
+     * Identifies the function for the result cache: its name and arity, and
+     * the source of the module declaring it, so that functions of the same
+     * name in different modules, or in different versions of a module,
+     * don't share results.
+     *
+     * @return the owner of the cached results
+     */
+    private Object getCacheOwner() {
+        final Object module = ResultCache.getSourceVersion(functionDef.getSource());
+        // if the version of the source is unknown, only the compiled function is the same
+        return Arrays.asList(getSignature().getFunctionId(), module != null ? module : functionDef);
+    }
+
     /**
      * Evaluate the function.
      *
@@ -523,8 +523,30 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
 
     protected Sequence genericCompare( Sequence ls, Sequence contextSequence, Item contextItem ) throws XPathException
     {
-        final long           start    = System.currentTimeMillis();
-        final Sequence rs       = getRight().eval( contextSequence, contextItem );
+        final long     start = System.currentTimeMillis();
+        final Sequence rs    = getRight().eval( contextSequence, contextItem );
+        final Sequence result = compareValues( ls, rs, contextSequence );
+
+        if( context.getProfiler().traceFunctions() ) {
+            context.getProfiler().traceIndexUsage( context, PerformanceStats.RANGE_IDX_TYPE, this, PerformanceStats.NO_INDEX, System.currentTimeMillis() - start );
+        }
+        return( result );
+    }
+
+
+    /**
+     * Compare the values of the operands, without using an index.
+     *
+     * @param   ls               the value of the left operand
+     * @param   rs               the value of the right operand
+     * @param   contextSequence  the context sequence, used to evaluate the collation
+     *
+     * @return  The result of the comparison
+     *
+     * @throws  XPathException  in case of dynamic error
+     */
+    public Sequence compareValues( Sequence ls, Sequence rs, Sequence contextSequence ) throws XPathException
+    {
         final Collator collator = getCollator( contextSequence );
         Sequence       result   = BooleanValue.FALSE;
 
@@ -552,6 +574,8 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
         } else if( ls.hasOne() && rs.hasOne() && ls.itemAt(0).getType() != Type.ARRAY && rs.itemAt(0).getType() != Type.ARRAY) {
             result = BooleanValue.valueOf( compareAtomic( collator, ls.itemAt( 0 ).atomize(), rs.itemAt( 0 ).atomize() ) );
         } else {
+            // atomized once, when the first left value is compared to more than one right value
+            Sequence atomizedRs = null;
 
             for( final SequenceIterator i1 = Atomize.atomize(ls).iterate(); i1.hasNext(); ) {
                 final AtomicValue lv = i1.nextItem().atomize();
@@ -572,20 +596,24 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
                     }
                 } else {
 
-                    for( final SequenceIterator i2 = Atomize.atomize(rs).iterate(); i2.hasNext(); ) {
+                    if( atomizedRs == null ) {
+                        atomizedRs = Atomize.atomize(rs);
+                    }
+
+                    for( final SequenceIterator i2 = atomizedRs.iterate(); i2.hasNext(); ) {
 
                         if( compareAtomic( collator, lv, i2.nextItem().atomize() ) ) {
                             result = BooleanValue.TRUE;
                             break;
                         }
                     }
+
+                    if( result == BooleanValue.TRUE ) {
+                        break;
+                    }
                 }
             }
         }
-
-        if( context.getProfiler().traceFunctions() ) {
-            context.getProfiler().traceIndexUsage( context, PerformanceStats.RANGE_IDX_TYPE, this, PerformanceStats.NO_INDEX, System.currentTimeMillis() - start );
-        }
         return( result );
     }
 
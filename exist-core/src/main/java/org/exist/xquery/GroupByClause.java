@@ -1,20 +1,51 @@
 package org.exist.xquery;
 
 import com.ibm.icu.text.Collator;
-import org.exist.dom.QName;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Stream;
 
 /**
  * Implements a "group by" clause inside a FLWOR.
  *
+ * Tuples are grouped in an open-addressed hash table, keyed by their grouping
+ * values. Strings are hashed by their collation key if the group spec has a
+ * collation, so values which are equal under the collation end up in the same
+ * group. Each group stores the values of the non-grouping variables column-wise,
+ * one sequence per variable, and groups are returned in order of their first tuple.
+ *
+ * The number of groups held in the table is bounded by the group by spill
+ * threshold. Once the table is full, a tuple of a group which is not in the
+ * table is appended to one of {@link #PARTITIONS} temporary files instead,
+ * chosen by the hash of its grouping key, so that all tuples of a group end
+ * up in the same file. After the groups in memory have been returned, each
+ * file is read back and grouped on its own; the results are then put back in
+ * order of the first tuple of each group. Tuples are only written if all of
+ * their values can be restored by {@link ItemSpill}; when a tuple of a new
+ * group contains e.g. a constructed node, the files are read back into the
+ * table and grouping continues in memory only.
+ *
  * @author wolf
  */
 public class GroupByClause extends AbstractFLWORClause {
 
+    /**
+     * Number of temporary files the tuples are distributed to once the
+     * group by spill threshold is reached.
+     */
+    static final int PARTITIONS = 16;
+
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
     private final Deque<GroupByData> stack = new ArrayDeque<>();
@@ -27,22 +58,62 @@ public class GroupByClause extends AbstractFLWORClause {
      */
     private class GroupByData {
 
-        private Map<List<AtomicValue>, Tuple> groupedMap = null;
-        private Map<QName, LocalVariable> variables = null;
-        private List<LocalVariable> groupingVars = null;
+        private final Map<GroupKey, Tuple> groupedMap = new Object2ObjectLinkedOpenHashMap<>();
+        private final List<LocalVariable> variables = new ArrayList<>();
+        private final List<LocalVariable> groupingVars = new ArrayList<>();
 
         private boolean initialized = false;
 
-        public GroupByData() {
-            // check if we can use a hash map
-            if (usesDefaultCollator()) {
-                groupedMap = new HashMap<>();
-            } else {
-                // non-default collation: must use tree map
-                groupedMap = new TreeMap<>(GroupByClause.this::compareKeys);
+        private final int spillThreshold;
+        private long tupleCount = 0;
+        private boolean spillable = true;
+        private Path[] partitions = null;
+        private DataOutputStream[] partitionOutputs = null;
+        private int[] partitionSizes = null;
+        private final Map<Integer, DocumentImpl> partitionDocuments = new HashMap<>();
+
+        GroupByData(final int spillThreshold) {
+            this.spillThreshold = spillThreshold;
+        }
+
+        private void closePartitions() throws IOException {
+            if (partitionOutputs == null) {
+                return;
+            }
+            IOException error = null;
+            for (int i = 0; i < partitionOutputs.length; i++) {
+                if (partitionOutputs[i] != null) {
+                    try {
+                        partitionOutputs[i].close();
+                    } catch (final IOException e) {
+                        error = e;
+                    }
+                    partitionOutputs[i] = null;
+                }
+            }
+            if (error != null) {
+                throw error;
             }
-            variables = new HashMap<>();
-            groupingVars = new ArrayList<>();
+        }
+
+        private void releasePartitions() {
+            if (partitions == null) {
+                return;
+            }
+            try {
+                closePartitions();
+            } catch (final IOException e) {
+                // the files are removed anyway
+            }
+            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+            for (final Path partition : partitions) {
+                if (partition != null) {
+                    temporaryFileManager.returnTemporaryFile(partition);
+                }
+            }
+            partitions = null;
+            partitionOutputs = null;
+            partitionSizes = null;
         }
     }
 
@@ -57,7 +128,7 @@ public class GroupByClause extends AbstractFLWORClause {
 
     @Override
     public Sequence preEval(Sequence seq) throws XPathException {
-        stack.push(new GroupByData());
+        stack.push(new GroupByData(context.getGroupBySpillThreshold()));
         return super.preEval(seq);
     }
 
@@ -66,9 +137,10 @@ public class GroupByClause extends AbstractFLWORClause {
         final GroupByData data = stack.peek();
 
         // Evaluate group spec to create grouping key sequence
-        final List<Sequence> groupingValues = new ArrayList<>();
-        final List<AtomicValue> groupingKeys = new ArrayList<>();
-        for (GroupSpec spec: groupSpecs) {
+        final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+        final Object[] groupingKeys = new Object[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            final GroupSpec spec = groupSpecs[i];
             final Sequence groupingSeq = spec.getGroupExpression().eval(null);
             if (groupingSeq.getItemCount() > 1) {
                 throw new XPathException(this, ErrorCodes.XPTY0004, "Grouping variable " + spec.getKeyVarName() + " " +
@@ -83,33 +155,181 @@ public class GroupByClause extends AbstractFLWORClause {
                 groupingVar.setStaticType(groupingValue.getType());
                 data.groupingVars.add(groupingVar);
             }
-            groupingValues.add(groupingSeq);
-            groupingKeys.add(groupingValue);
+            groupingValues[i] = groupingSeq;
+            groupingKeys[i] = getGroupingKey(spec.getCollator(), groupingValue);
         }
 
-        // collect the current tuples into the grouping map
-        final Tuple tuple = data.groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
-
         // scan in-scope variables to collect tuples
+        final List<Sequence> values = new ArrayList<>(data.variables.size());
         LocalVariable nextVar = rootClause.getStartVariable();
         Objects.requireNonNull(nextVar);
+        int column = 0;
         while(nextVar != null) {
-            tuple.add(nextVar.getQName(), nextVar.getValue());
             if (!data.initialized) {
                 // on first call: initialize non-grouping variable for later use
                 final LocalVariable var = new LocalVariable(nextVar.getQName());
                 var.setSequenceType(nextVar.getSequenceType());
                 var.setStaticType(nextVar.getStaticType());
                 var.setContextDocs(nextVar.getContextDocs());
-                data.variables.put(var.getQName(), var);
+                data.variables.add(var);
+            } else if (column == data.variables.size() || !data.variables.get(column).getQName().equals(nextVar.getQName())) {
+                throw new XPathException(this, "Internal error: unexpected variable $" + nextVar.getQName() +
+                        " in group by");
             }
+            values.add(nextVar.getValue());
+            column++;
             nextVar = nextVar.after;
         }
 
         data.initialized = true;
+        final long first = data.tupleCount++;
+
+        // collect the current tuples into the grouping map
+        final GroupKey key = new GroupKey(groupingKeys);
+        Tuple tuple = data.groupedMap.get(key);
+        if (tuple == null) {
+            if (data.spillable && data.spillThreshold > 0 && data.groupedMap.size() >= data.spillThreshold
+                    && spill(data, key, first, groupingValues, values)) {
+                return contextSequence;
+            }
+            tuple = new Tuple(groupingValues, first);
+            data.groupedMap.put(key, tuple);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            tuple.add(i, values.get(i));
+        }
         return contextSequence;
     }
 
+    /**
+     * Appends a tuple of a group which is not held in memory to the
+     * temporary file of its partition. If the tuple cannot be written,
+     * the partitions are read back into memory and spilling is disabled.
+     *
+     * @return true if the tuple was written, false if it has to be added in memory
+     */
+    private boolean spill(final GroupByData data, final GroupKey key, final long first,
+            final Sequence[] groupingValues, final List<Sequence> values) throws XPathException {
+        if (!isSpillable(groupingValues) || !isSpillable(values.toArray(new Sequence[0]))) {
+            data.spillable = false;
+            restorePartitions(data);
+            return false;
+        }
+
+        try {
+            if (data.partitions == null) {
+                data.partitions = new Path[PARTITIONS];
+                data.partitionOutputs = new DataOutputStream[PARTITIONS];
+                data.partitionSizes = new int[PARTITIONS];
+            }
+            final int partition = partitionOf(key);
+            DataOutputStream os = data.partitionOutputs[partition];
+            if (os == null) {
+                if (data.partitions[partition] == null) {
+                    data.partitions[partition] = TemporaryFileManager.getInstance().getTemporaryFile();
+                }
+                os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(data.partitions[partition])));
+                data.partitionOutputs[partition] = os;
+            }
+
+            os.writeLong(first);
+            for (final Sequence groupingValue : groupingValues) {
+                ItemSpill.write(os, groupingValue.isEmpty() ? AtomicValue.EMPTY_VALUE : groupingValue.itemAt(0),
+                        data.partitionDocuments);
+            }
+            os.writeInt(values.size());
+            for (final Sequence value : values) {
+                os.writeInt(value.getItemCount());
+                for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+                    ItemSpill.write(os, i.nextItem(), data.partitionDocuments);
+                }
+            }
+            data.partitionSizes[partition]++;
+        } catch (final IOException e) {
+            data.releasePartitions();
+            throw new XPathException(this, "Failed to write group by tuples to a temporary file: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    private static boolean isSpillable(final Sequence[] sequences) throws XPathException {
+        for (final Sequence seq : sequences) {
+            for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+                if (!ItemSpill.isSpillable(i.nextItem())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int partitionOf(final GroupKey key) {
+        final int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), PARTITIONS);
+    }
+
+    /**
+     * Reads the tuples of all partitions back into the grouping map.
+     */
+    private void restorePartitions(final GroupByData data) throws XPathException {
+        if (data.partitions == null) {
+            return;
+        }
+        try {
+            data.closePartitions();
+            for (int i = 0; i < PARTITIONS; i++) {
+                if (data.partitions[i] != null) {
+                    readPartition(data, i, data.groupedMap);
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException(this, "Failed to read group by tuples from a temporary file: " + e.getMessage(), e);
+        } finally {
+            data.releasePartitions();
+        }
+
+        // keep the groups in order of their first tuple
+        final List<Map.Entry<GroupKey, Tuple>> groups = new ArrayList<>(data.groupedMap.entrySet());
+        groups.sort(Comparator.comparingLong(group -> group.getValue().first));
+        data.groupedMap.clear();
+        for (final Map.Entry<GroupKey, Tuple> group : groups) {
+            data.groupedMap.put(group.getKey(), group.getValue());
+        }
+    }
+
+    private void readPartition(final GroupByData data, final int partition, final Map<GroupKey, Tuple> groups)
+            throws IOException, XPathException {
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(data.partitions[partition])))) {
+            for (int n = data.partitionSizes[partition]; n > 0; n--) {
+                final long first = is.readLong();
+                final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+                final Object[] groupingKeys = new Object[groupSpecs.length];
+                for (int i = 0; i < groupSpecs.length; i++) {
+                    final Item item = ItemSpill.read(is, data.partitionDocuments);
+                    final AtomicValue groupingValue;
+                    if (item == AtomicValue.EMPTY_VALUE) {
+                        groupingValues[i] = Sequence.EMPTY_SEQUENCE;
+                        groupingValue = AtomicValue.EMPTY_VALUE;
+                    } else {
+                        groupingValues[i] = item.toSequence();
+                        groupingValue = item.atomize();
+                    }
+                    groupingKeys[i] = getGroupingKey(groupSpecs[i].getCollator(), groupingValue);
+                }
+                final Tuple tuple = groups.computeIfAbsent(new GroupKey(groupingKeys), k -> new Tuple(groupingValues, first));
+                final int columns = is.readInt();
+                for (int column = 0; column < columns; column++) {
+                    final int itemCount = is.readInt();
+                    final ValueSequence value = new ValueSequence(itemCount);
+                    for (int i = 0; i < itemCount; i++) {
+                        value.add(ItemSpill.read(is, data.partitionDocuments));
+                    }
+                    tuple.add(column, value);
+                }
+            }
+        }
+    }
+
     @Override
     public Sequence postEval(final Sequence seq) throws XPathException {
         if (!stack.isEmpty()) {
@@ -118,37 +338,45 @@ public class GroupByClause extends AbstractFLWORClause {
             final LocalVariable mark = context.markLocalVariables(false);
             try {
                 // declare non-grouping variables
-                for (LocalVariable var : data.variables.values()) {
+                for (LocalVariable var : data.variables) {
                     context.declareVariableBinding(var);
                 }
                 // declare grouping variables
                 for (LocalVariable var : data.groupingVars) {
                     context.declareVariableBinding(var);
                 }
-                // iterate over each group
-                for (Tuple tuple : data.groupedMap.values()) {
-                    context.proceed();
-
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : data.groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
-                            throw new XPathException(this, "Internal error: missing grouping value");
+                if (data.partitions == null) {
+                    // iterate over each group
+                    for (Tuple tuple : data.groupedMap.values()) {
+                        result.addAll(evalGroup(data, tuple));
+                    }
+                } else {
+                    // evaluate the groups in memory, then those of each partition, and
+                    // return the results in order of the first tuple of each group
+                    final SortedMap<Long, Sequence> results = new TreeMap<>();
+                    for (Tuple tuple : data.groupedMap.values()) {
+                        results.put(tuple.first, copy(evalGroup(data, tuple)));
+                    }
+                    data.groupedMap.clear();
+                    data.closePartitions();
+                    for (int i = 0; i < PARTITIONS; i++) {
+                        if (data.partitions[i] != null) {
+                            final Map<GroupKey, Tuple> groups = new Object2ObjectLinkedOpenHashMap<>();
+                            readPartition(data, i, groups);
+                            for (Tuple tuple : groups.values()) {
+                                results.put(tuple.first, copy(evalGroup(data, tuple)));
+                            }
                         }
                     }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = data.variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
+                    for (Sequence r : results.values()) {
+                        result.addAll(r);
                     }
-                    final Sequence r = returnExpr.eval(null);
-                    result.addAll(r);
                 }
+            } catch (final IOException e) {
+                throw new XPathException(this, "Failed to read group by tuples from a temporary file: " + e.getMessage(), e);
             } finally {
                 stack.pop();
+                data.releasePartitions();
                 context.popLocalVariables(mark, result);
             }
 
@@ -161,6 +389,26 @@ public class GroupByClause extends AbstractFLWORClause {
         return seq;
     }
 
+    private Sequence evalGroup(final GroupByData data, final Tuple tuple) throws XPathException {
+        context.proceed();
+
+        // set grouping variable values
+        for (int i = 0; i < data.groupingVars.size(); i++) {
+            data.groupingVars.get(i).setValue(tuple.groupingValues[i]);
+        }
+        // set values of non-grouping variables
+        for (int i = 0; i < data.variables.size(); i++) {
+            data.variables.get(i).setValue(tuple.getColumn(i));
+        }
+        return returnExpr.eval(null);
+    }
+
+    private static Sequence copy(final Sequence seq) throws XPathException {
+        final ValueSequence copy = new ValueSequence(seq.getItemCount());
+        copy.addAll(seq);
+        return copy;
+    }
+
     @Override
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -232,6 +480,9 @@ public class GroupByClause extends AbstractFLWORClause {
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
+        for (final GroupByData data : stack) {
+            data.releasePartitions();
+        }
         stack.clear();
         returnExpr.resetState(postOptimization);
         for (GroupSpec spec: groupSpecs) {
@@ -245,53 +496,66 @@ public class GroupByClause extends AbstractFLWORClause {
     }
 
     /**
-     * Compare keys using the collator given in the group spec. Used to
-     * sort keys into the grouping map.
+     * Get the value by which a grouping value is hashed and compared.
+     * Strings are replaced by their collation key, if a collation is given.
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
-        final int c1 = s1.size();
-        final int c2 = s2.size();
-        if (c1 == c2) {
-            try {
-                for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
-                    final Collator collator = groupSpecs[i].getCollator();
-                    final int r = v1.compareTo(collator, v2);
-                    if (r != Constants.EQUAL) {
-                        return r;
-                    }
-                }
-                return Constants.EQUAL;
-            } catch (XPathException e) {
-                return Constants.INFERIOR;
+    private static Object getGroupingKey(final Collator collator, final AtomicValue value) throws XPathException {
+        if (collator != null && !value.isEmpty()) {
+            final int type = value.getType();
+            if (Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI) {
+                return collator.getCollationKey(value.getStringValue());
             }
         }
-        return c1 < c2 ? Constants.INFERIOR : Constants.SUPERIOR;
+        return value;
     }
 
-    private boolean usesDefaultCollator() {
-        return Stream.of(groupSpecs).allMatch(spec -> spec.getCollator() == null);
+    private static final class GroupKey {
+
+        private final Object[] keys;
+        private final int hashCode;
+
+        GroupKey(final Object[] keys) {
+            this.keys = keys;
+            this.hashCode = Arrays.hashCode(keys);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof GroupKey && hashCode == ((GroupKey) obj).hashCode
+                    && Arrays.equals(keys, ((GroupKey) obj).keys);
+        }
     }
 
-    static class Tuple extends HashMap<QName, Sequence> {
+    static class Tuple {
 
-        private final List<Sequence> groupingValues;
+        private final Sequence[] groupingValues;
+        private final long first;
+        private ValueSequence[] columns = new ValueSequence[4];
 
-        public Tuple(final List<Sequence> groupingValues) {
-            super();
+        public Tuple(final Sequence[] groupingValues, final long first) {
             this.groupingValues = groupingValues;
+            this.first = first;
         }
 
-        public void add(final QName name, final Sequence val) throws XPathException {
-            Sequence seq = get(name);
+        public void add(final int column, final Sequence val) throws XPathException {
+            if (column >= columns.length) {
+                columns = Arrays.copyOf(columns, Math.max(column + 1, columns.length * 2));
+            }
+            ValueSequence seq = columns[column];
             if (seq == null) {
-                final ValueSequence temp = new ValueSequence(val.getItemCount());
-                temp.addAll(val);
-                put(name, temp);
-            } else {
-                seq.addAll(val);
+                seq = new ValueSequence(val.getItemCount());
+                columns[column] = seq;
             }
+            seq.addAll(val);
+        }
+
+        public Sequence getColumn(final int column) {
+            return column < columns.length && columns[column] != null ? columns[column] : Sequence.EMPTY_SEQUENCE;
         }
     }
 }
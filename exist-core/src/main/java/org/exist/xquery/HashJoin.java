@@ -0,0 +1,475 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2019 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.Constants.StringTruncationOperator;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an equi-join between two "for" clauses of a FLWOR expression as a hash join.
+ * Two forms are recognized:
+ *
+ * <pre>
+ * for $o in //order, $c in //customer[@id = $o/@cust]
+ * for $o in //order, $c in //customer where $c/@id = $o/@cust
+ * </pre>
+ *
+ * The input of the inner clause must not depend on the outer clause. It is then evaluated
+ * once for each evaluation of the outer clause, and its items are put into a hash table by
+ * their atomized key. For every item of the outer clause, the inner clause only iterates the
+ * items found in the table for the outer key, instead of comparing every item.
+ *
+ * The join falls back to the nested loop if an index is used for the comparison, and if
+ * the keys are not all strings or untyped values compared with the codepoint collation,
+ * for which equality of the string values is the same as equality in a general comparison.
+ * In the "where" form, the where clause still checks the items found in the table.
+ */
+public class HashJoin {
+
+    private enum Mode { UNDECIDED, HASH, NESTED_LOOP }
+
+    private final ForExpr inner;
+    private final ForExpr outer;
+
+    /** the predicate of the last step of the input, or null if the join is on a where clause */
+    @Nullable private final Predicate predicate;
+    private final GeneralComparison comparison;
+    private final Expression buildKey;
+    private final Expression probeKey;
+
+    // the state for one evaluation of the outer clause
+    private int outerEvaluation = -1;
+    private Sequence input = null;
+    private Item[] items = null;
+    private Map<String, IntArrayList> table = null;
+    private Mode mode = Mode.UNDECIDED;
+    private boolean building = false;
+    private boolean skipped = false;
+
+    private HashJoin(final ForExpr inner, final ForExpr outer, @Nullable final Predicate predicate,
+            final GeneralComparison comparison, final Expression buildKey, final Expression probeKey) {
+        this.inner = inner;
+        this.outer = outer;
+        this.predicate = predicate;
+        this.comparison = comparison;
+        this.buildKey = buildKey;
+        this.probeKey = probeKey;
+        if (predicate != null) {
+            predicate.setJoin(this);
+        }
+    }
+
+    /**
+     * Check if the "for" clause can be evaluated as the inner side of a hash join
+     * with an enclosing "for" clause of the same FLWOR expression.
+     *
+     * @param forExpr the inner "for" clause
+     * @return the join, or null if the clause is not an equi-join on an invariant input
+     * @throws XPathException if the name of the variable is invalid
+     */
+    static @Nullable HashJoin create(final ForExpr forExpr) throws XPathException {
+        ForExpr outer = null;
+        for (FLWORClause clause = forExpr.getPreviousClause(); clause != null; clause = clause.getPreviousClause()) {
+            if (clause instanceof ForExpr) {
+                outer = (ForExpr) clause;
+                break;
+            }
+        }
+        if (outer == null) {
+            return null;
+        }
+        final QName varName = parseName(forExpr.getContext(), forExpr.getVariable());
+        final Expression input = CostModel.unwrap(forExpr.getInputSequence());
+
+        // for $c in //customer[@id = $o/@cust]
+        final LocationStep lastStep = getLastStep(input);
+        if (lastStep != null && lastStep.hasPredicates()) {
+            final List<Predicate> predicates = lastStep.getPredicates();
+            final Predicate predicate = predicates.get(predicates.size() - 1);
+            if (predicate.getLength() == 1 && isInvariant(input, predicate)) {
+                final GeneralComparison comparison = getEquiJoin(predicate.getExpression(0));
+                if (comparison != null) {
+                    final Expression left = CostModel.unwrap(comparison.getLeft());
+                    final Expression right = CostModel.unwrap(comparison.getRight());
+                    if (isKeyPath(left, null) && isProbe(right, varName)) {
+                        return new HashJoin(forExpr, outer, predicate, comparison, left, right);
+                    } else if (isKeyPath(right, null) && isProbe(left, varName)) {
+                        return new HashJoin(forExpr, outer, predicate, comparison, right, left);
+                    }
+                }
+            }
+        }
+
+        // for $c in //customer where $c/@id = $o/@cust
+        if (forExpr.hasPositionalVariable() || forExpr.isAllowingEmpty()
+                || !(forExpr.getReturnExpression() instanceof WhereClause) || !isInvariant(input, null)) {
+            return null;
+        }
+        final GeneralComparison comparison = getEquiJoin(((WhereClause) forExpr.getReturnExpression()).getWhereExpr());
+        if (comparison != null) {
+            final Expression left = CostModel.unwrap(comparison.getLeft());
+            final Expression right = CostModel.unwrap(comparison.getRight());
+            if (isKeyPath(left, varName) && isProbe(right, varName)) {
+                return new HashJoin(forExpr, outer, null, comparison, left, right);
+            } else if (isKeyPath(right, varName) && isProbe(left, varName)) {
+                return new HashJoin(forExpr, outer, null, comparison, right, left);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate the input of the inner clause. Within one evaluation of the outer clause,
+     * the input is only evaluated once, without the join predicate.
+     *
+     * @param contextSequence the context sequence of the inner clause
+     * @return the input, to be passed to {@link #select(LocalVariable, Sequence, Sequence)}
+     * @throws XPathException if the input can't be evaluated
+     */
+    Sequence getInput(final Sequence contextSequence) throws XPathException {
+        if (outer.getEvaluationCount() != outerEvaluation) {
+            final long start = System.currentTimeMillis();
+            reset();
+            outerEvaluation = outer.getEvaluationCount();
+            if (predicate != null) {
+                building = true;
+                skipped = false;
+                try {
+                    input = inner.getInputSequence().eval(contextSequence, null);
+                } finally {
+                    building = false;
+                }
+                // an index was used to evaluate the step, so the predicate was not
+                // evaluated and the input only holds the items for the first key
+                if (!skipped) {
+                    mode = Mode.NESTED_LOOP;
+                    trace(start);
+                }
+            } else {
+                input = inner.getInputSequence().eval(contextSequence, null);
+            }
+        }
+        if (mode == Mode.NESTED_LOOP && predicate != null) {
+            return inner.getInputSequence().eval(contextSequence, null);
+        }
+        return input;
+    }
+
+    /**
+     * Select the items of the input matching the key of the current item of the outer clause.
+     *
+     * @param var the variable of the inner clause, to which items are bound to compute their key
+     * @param input the input returned by {@link #getInput(Sequence)}
+     * @param contextSequence the context sequence of the inner clause
+     * @return the matching items, in the order of the input
+     * @throws XPathException if a key can't be computed
+     */
+    Sequence select(final LocalVariable var, final Sequence input, final Sequence contextSequence)
+            throws XPathException {
+        if (mode == Mode.UNDECIDED) {
+            final long start = System.currentTimeMillis();
+            mode = decide(var);
+            if (mode == Mode.HASH && inner.getContext().getProfiler().isEnabled()) {
+                inner.getContext().getProfiler().message(inner, Profiler.OPTIMIZATION_FLAGS,
+                        "OPTIMIZATION CHOICE", "Hash join on " + ExpressionDumper.dump(comparison));
+            }
+            trace(start);
+        }
+        if (mode == Mode.NESTED_LOOP) {
+            // the predicate was already evaluated by getInput, a where clause filters the input
+            return input;
+        }
+
+        final BitSet matches = new BitSet(items.length);
+        final Sequence keys = probeKey.eval(null);
+        if (keys.isEmpty()) {
+            return predicate == null ? input : Sequence.EMPTY_SEQUENCE;
+        }
+        for (final SequenceIterator i = Atomize.atomize(keys).iterate(); i.hasNext(); ) {
+            final AtomicValue key = i.nextItem().atomize();
+            if (!isStringKey(key)) {
+                // e.g. a number, to which the keys of the input would be cast
+                return predicate == null ? input : inner.getInputSequence().eval(contextSequence, null);
+            }
+            final IntArrayList positions = table.get(key.getStringValue());
+            if (positions != null) {
+                for (int j = 0; j < positions.size(); j++) {
+                    matches.set(positions.getInt(j));
+                }
+            }
+        }
+
+        // the items are shared by all iterations, so return copies of stored nodes
+        final Sequence result = input instanceof NodeSet ? new NewArrayNodeSet() : new ValueSequence(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            final Item item = items[i];
+            if (item instanceof NodeProxy) {
+                final NodeProxy node = (NodeProxy) item;
+                result.add(new NodeProxy(node.getOwnerDocument(), node.getNodeId(), node.getNodeType(),
+                        node.getInternalAddress()));
+            } else {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called by the join predicate before it is evaluated.
+     *
+     * @return true if the predicate must return its context sequence unchanged, because
+     *     the input for the hash table is being evaluated
+     */
+    boolean skipPredicate() {
+        if (building) {
+            skipped = true;
+        }
+        return building;
+    }
+
+    /**
+     * Build the hash table, unless an index can be used or the keys of the input
+     * are not strings.
+     */
+    private Mode decide(final LocalVariable var) throws XPathException {
+        if (inner.getContext().getDefaultCollator() != null) {
+            return Mode.NESTED_LOOP;
+        }
+        final Expression indexed = CostModel.unwrap(predicate != null ? predicate.getExpression(0) : comparison);
+        if (indexed instanceof Optimizable && ((Optimizable) indexed).canOptimize(input)) {
+            return Mode.NESTED_LOOP;
+        }
+
+        final List<Item> list = new ArrayList<>(input.getItemCount());
+        final Map<String, IntArrayList> map = new Object2ObjectOpenHashMap<>();
+        int position = 0;
+        for (final SequenceIterator i = input.iterate(); i.hasNext(); position++) {
+            final Item item = i.nextItem();
+            list.add(item);
+            final Sequence keys;
+            if (predicate != null) {
+                keys = buildKey.eval(input, item);
+            } else {
+                var.setValue(item.toSequence());
+                keys = buildKey.eval(null);
+            }
+            for (final SequenceIterator j = Atomize.atomize(keys).iterate(); j.hasNext(); ) {
+                final AtomicValue key = j.nextItem().atomize();
+                if (!isStringKey(key)) {
+                    return Mode.NESTED_LOOP;
+                }
+                final IntArrayList positions = map.computeIfAbsent(key.getStringValue(), k -> new IntArrayList(1));
+                // an item may have the same key twice
+                if (positions.isEmpty() || positions.getInt(positions.size() - 1) != position) {
+                    positions.add(position);
+                }
+            }
+        }
+        items = list.toArray(new Item[0]);
+        table = map;
+        return Mode.HASH;
+    }
+
+    /**
+     * Report whether the join was evaluated as a hash join to the profiler.
+     */
+    private void trace(final long start) {
+        final XQueryContext context = inner.getContext();
+        if (context.getProfiler().traceFunctions()) {
+            context.getProfiler().traceIndexUsage(context, PerformanceStats.HASH_JOIN_TYPE, comparison,
+                    mode == Mode.HASH ? PerformanceStats.OPTIMIZED_INDEX : PerformanceStats.NO_INDEX,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    void reset() {
+        outerEvaluation = -1;
+        input = null;
+        items = null;
+        table = null;
+        mode = Mode.UNDECIDED;
+    }
+
+    /**
+     * Keys which are equal in a general comparison if and only if their string values are.
+     */
+    private static boolean isStringKey(final AtomicValue key) {
+        final int type = key.getType();
+        return Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI;
+    }
+
+    private static @Nullable GeneralComparison getEquiJoin(final Expression expr) {
+        final Expression unwrapped = CostModel.unwrap(expr);
+        if (!(unwrapped instanceof GeneralComparison)) {
+            return null;
+        }
+        final GeneralComparison comparison = (GeneralComparison) unwrapped;
+        if (comparison.getRelation() != Comparison.EQ || comparison.getTruncation() != StringTruncationOperator.NONE
+                || comparison.collationArg != null) {
+            return null;
+        }
+        return comparison;
+    }
+
+    private static @Nullable LocationStep getLastStep(final Expression input) {
+        if (input instanceof LocationStep) {
+            return (LocationStep) input;
+        }
+        if (input instanceof PathExpr && !(input instanceof Predicate) && ((PathExpr) input).getLength() > 0) {
+            final Expression last = ((PathExpr) input).getLastExpression();
+            if (last instanceof LocationStep) {
+                return (LocationStep) last;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the input of the inner clause has the same value for every item of the outer
+     * clause. Only paths starting at the root or at a function call with literal arguments,
+     * e.g. fn:collection, and without any predicate other than the join predicate are accepted.
+     */
+    private static boolean isInvariant(final Expression input, @Nullable final Predicate joinPredicate) {
+        final List<Expression> parts = new ArrayList<>();
+        if (input instanceof PathExpr && !(input instanceof Predicate)) {
+            for (int i = 0; i < ((PathExpr) input).getLength(); i++) {
+                parts.add(CostModel.unwrap(((PathExpr) input).getExpression(i)));
+            }
+        } else {
+            parts.add(input);
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            final Expression part = parts.get(i);
+            if (part instanceof LocationStep) {
+                if (i == 0) {
+                    // relative to the context item
+                    return false;
+                }
+                for (final Predicate predicate : ((LocationStep) part).getPredicates()) {
+                    if (predicate != joinPredicate) {
+                        return false;
+                    }
+                }
+            } else if (part instanceof Function && !(part instanceof FunctionCall)) {
+                if (i > 0 || !Type.subTypeOf(part.returnsType(), Type.NODE)) {
+                    return false;
+                }
+                final Function function = (Function) part;
+                for (int j = 0; j < function.getArgumentCount(); j++) {
+                    if (!(CostModel.unwrap(function.getArgument(j)) instanceof LiteralValue)) {
+                        return false;
+                    }
+                }
+            } else if (!(part instanceof RootNode && i == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the expression is a path of location steps without predicates, starting
+     * at the given variable, or at the context item if the variable is null.
+     */
+    private static boolean isKeyPath(final Expression expr, @Nullable final QName var) {
+        final List<Expression> parts = getParts(expr);
+        int start = 0;
+        if (var != null) {
+            if (parts.isEmpty() || !isVariable(parts.get(0), var)) {
+                return false;
+            }
+            start = 1;
+        } else if (parts.isEmpty()) {
+            return false;
+        }
+        for (int i = start; i < parts.size(); i++) {
+            final Expression part = parts.get(i);
+            if (!(part instanceof LocationStep) || ((LocationStep) part).hasPredicates()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the expression computes the key of the outer clause: a literal or a path of
+     * location steps without predicates starting at a variable other than the inner variable.
+     */
+    private static boolean isProbe(final Expression expr, final QName innerVar) {
+        if (expr instanceof LiteralValue) {
+            return true;
+        }
+        final List<Expression> parts = getParts(expr);
+        if (parts.isEmpty() || !(parts.get(0) instanceof VariableReference)
+                || isVariable(parts.get(0), innerVar)) {
+            return false;
+        }
+        for (int i = 1; i < parts.size(); i++) {
+            final Expression part = parts.get(i);
+            if (!(part instanceof LocationStep) || ((LocationStep) part).hasPredicates()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Expression> getParts(final Expression expr) {
+        final List<Expression> parts = new ArrayList<>();
+        if (expr instanceof PathExpr && !(expr instanceof Predicate)) {
+            for (int i = 0; i < ((PathExpr) expr).getLength(); i++) {
+                parts.add(CostModel.unwrap(((PathExpr) expr).getExpression(i)));
+            }
+        } else {
+            parts.add(expr);
+        }
+        return parts;
+    }
+
+    private static boolean isVariable(final Expression expr, final QName name) {
+        return expr instanceof VariableReference && ((VariableReference) expr).getName().equals(name);
+    }
+
+    private static QName parseName(final XQueryContext context, final String name) throws XPathException {
+        try {
+            return QName.parse(context, name, null);
+        } catch (final QName.IllegalQNameException e) {
+            throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix " + name);
+        }
+    }
+}
@@ -78,6 +78,9 @@ public class LocationStep extends Step {
     // Cache for the current NodeTest type
     private Integer nodeTestType = null;
 
+    // The plan for the predicates, if set by the optimizer
+    private StepPlan plan = null;
+
     /**
      * Creates a new instance.
      *
@@ -227,12 +230,19 @@ public class LocationStep extends Step {
 
     private Sequence processPredicate(Sequence outerSequence, final Sequence contextSequence) throws XPathException {
         Sequence result = contextSequence;
+        final boolean recording = plan != null && plan.isRecording();
+        if (recording) {
+            plan.recordInput(result);
+        }
         for (final Iterator<Predicate> i = predicates.iterator(); i.hasNext()
                 && (result instanceof VirtualNodeSet || !result.isEmpty()); ) {
             // TODO : log and/or profile ?
             final Predicate pred = i.next();
             pred.setContextDocSet(getContextDocSet());
             result = pred.evalPredicate(outerSequence, result, axis);
+            if (recording) {
+                plan.recordOutput(pred, result);
+            }
             // subsequent predicates operate on the result of the previous one
             outerSequence = null;
             context.setContextSequencePosition(-1, null);
@@ -625,7 +635,7 @@ public class LocationStep extends Step {
             }
             if (!contextSet.getProcessInReverseOrder()) {
                 return index.findDescendantsByTagName(ElementValue.ATTRIBUTE, test.getName(), axis, docs, contextSet,
-                        contextId, this);
+                        contextId, this, context.isParallelEvaluation());
             } else {
                 final NodeSelector selector;
                 switch (axis) {
@@ -638,11 +648,26 @@ public class LocationStep extends Step {
                     default:
                         throw new IllegalArgumentException("Unsupported axis specified");
                 }
-                return index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), selector, this);
+                return index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), selector, this,
+                        scanInParallel(contextSet));
             }
         }
     }
 
+    /**
+     * Check if an index scan using a node selector on the context set may run in parallel.
+     * The selector is then called from several threads, so the context set gets sorted here,
+     * on the calling thread, by {@link NodeSet#getLength()}. Virtual node sets are never
+     * scanned in parallel, as they are realized lazily.
+     *
+     * @param contextSet the context set of the selector
+     * @return true if the scan may run in parallel
+     */
+    private boolean scanInParallel(final NodeSet contextSet) {
+        return context.isParallelEvaluation() && !(contextSet instanceof VirtualNodeSet)
+                && contextSet.getLength() > 0;
+    }
+
     private Sequence getChildren(final XQueryContext context, final Sequence contextSequence) throws XPathException {
         if (!contextSequence.isPersistentSet()) {
             final MemoryNodeSet nodes = contextSequence.toMemNodeSet();
@@ -708,12 +733,13 @@ public class LocationStep extends Step {
                     contextSet.getLength() < INDEX_SCAN_THRESHOLD) {
                 return index.findDescendantsByTagName(ElementValue.ELEMENT,
                         test.getName(), axis, docs, contextSet,
-                        contextId, parent);
+                        contextId, parent, context.isParallelEvaluation());
             } else {
                 // if (contextSet instanceof VirtualNodeSet)
                 // ((VirtualNodeSet)contextSet).realize();
                 final NodeSelector selector = new ChildSelector(contextSet, contextId);
-                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this,
+                        scanInParallel(contextSet));
             }
         }
     }
@@ -780,7 +806,7 @@ public class LocationStep extends Step {
             if (!contextSet.getProcessInReverseOrder()
                     && (contextSet instanceof VirtualNodeSet || contextSet.getLength() < INDEX_SCAN_THRESHOLD)) {
                 return index.findDescendantsByTagName(ElementValue.ELEMENT, test.getName(), axis, docs, contextSet,
-                        contextId, this);
+                        contextId, this, context.isParallelEvaluation());
             } else {
                 final NodeSelector selector;
                 switch (axis) {
@@ -793,7 +819,8 @@ public class LocationStep extends Step {
                     default:
                         throw new IllegalArgumentException("Unsupported axis specified");
                 }
-                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this,
+                        scanInParallel(contextSet));
             }
 
         }
@@ -1176,6 +1203,24 @@ public class LocationStep extends Step {
         return ds;
     }
 
+    /**
+     * Set the plan for the predicates of this step, as chosen by the {@link CostModel}.
+     *
+     * @param plan the plan
+     */
+    public void setPlan(final StepPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Get the plan for the predicates of this step
+     *
+     * @return the plan, or null if the step was not optimized
+     */
+    public StepPlan getPlan() {
+        return plan;
+    }
+
     /**
      * Get the parent expression
      *
@@ -110,8 +110,24 @@ public class OpNumeric extends BinaryOp {
                 {context.getProfiler().message(this, Profiler.START_SEQUENCES,
                     "CONTEXT ITEM", contextItem.toSequence());}
         }
-        final Sequence lseq = Atomize.atomize(getLeft().eval(contextSequence, contextItem));
-        final Sequence rseq = Atomize.atomize(getRight().eval(contextSequence, contextItem));
+        final Sequence result = compute(getLeft().eval(contextSequence, contextItem),
+                getRight().eval(contextSequence, contextItem));
+        if (context.getProfiler().isEnabled())
+            {context.getProfiler().end(this, "", result);}
+        return result;
+    }
+
+    /**
+     * Apply the operator to the values of the operands.
+     *
+     * @param left the value of the left operand
+     * @param right the value of the right operand
+     * @return the result of the operation
+     * @throws XPathException if the operands can't be combined by the operator
+     */
+    public Sequence compute(Sequence left, Sequence right) throws XPathException {
+        final Sequence lseq = Atomize.atomize(left);
+        final Sequence rseq = Atomize.atomize(right);
         if (lseq.hasMany())
             {throw new XPathException(this, ErrorCodes.XPTY0004,
                 "Too many operands at the left of " + operator.symbol);}
@@ -172,8 +188,6 @@ public class OpNumeric extends BinaryOp {
                 throw e;
             }
         }
-        if (context.getProfiler().isEnabled())
-            {context.getProfiler().end(this, "", result);}
         //Sets the return type if not already set
         if (returnType == Type.ATOMIC)
             //TODO : refine previously set type ? -pb
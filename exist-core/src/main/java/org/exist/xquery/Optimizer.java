@@ -59,9 +59,12 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     private List<QueryRewriter> rewriters = new ArrayList<QueryRewriter>(5);
 
+    private final CostModel costModel;
+
     public Optimizer(XQueryContext context) {
         this.context = context;
         this.rewriters = context.getBroker().getIndexController().getQueryRewriters(context);
+        this.costModel = new CostModel(context);
     }
 
     public boolean hasOptimized() {
@@ -70,6 +73,19 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     public void visitLocationStep(LocationStep locationStep) {
         super.visitLocationStep(locationStep);
+        // evaluate the cheapest and most selective predicates first
+        if (locationStep.hasPredicates()) {
+            final StepPlan plan = costModel.plan(locationStep);
+            locationStep.setPlan(plan);
+            if (plan.isReordered()) {
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Reordered predicates of step: " + ExpressionDumper.dump(locationStep));
+                }
+                locationStep.setPredicates(plan.getPredicates());
+                hasOptimized = true;
+            }
+        }
+
         // check query rewriters if they want to rewrite the location step
         Pragma optimizePragma = null;
         for (QueryRewriter rewriter : rewriters) {
@@ -96,7 +112,8 @@ public class Optimizer extends DefaultExpressionVisitor {
                 final FindOptimizable find = new FindOptimizable();
                 pred.accept(find);
                 final List<Optimizable> list = find.getOptimizables();
-                if (list.size() > 0 && canOptimize(list)) {
+                // skip the index if most nodes are expected to match anyway
+                if (list.size() > 0 && canOptimize(list) && costModel.preferIndex(list)) {
                     optimize = true;
                     break;
                 }
@@ -250,6 +267,26 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    @Override
+    public void visitForExpression(ForExpr forExpr) {
+        // detect joins before the comparison is rewritten to use an index
+        if (forExpr.getJoin() == null) {
+            try {
+                final HashJoin join = HashJoin.create(forExpr);
+                if (join != null) {
+                    forExpr.setJoin(join);
+                    hasOptimized = true;
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Evaluating as hash join: " + ExpressionDumper.dump(forExpr));
+                    }
+                }
+            } catch (final XPathException e) {
+                LOG.warn("Failed to check for join: " + forExpr + ": " + e.getMessage(), e);
+            }
+        }
+        super.visitForExpression(forExpr);
+    }
+
 	public void visitOrExpr(OpOr or) {
     	if (or.isRewritable()) {
         	or.getLeft().accept(this);
@@ -21,6 +21,8 @@ public class OrderByClause extends AbstractFLWORClause {
         to track state in a stack to avoid overwrites if we're called recursively. */
     private final Deque<OrderedValueSequence> stack = new ArrayDeque<>();
 
+    private int resultLimit = ForExpr.UNLIMITED;
+
     public OrderByClause(XQueryContext context, List<OrderSpec> orderSpecs) {
         super(context);
         this.orderSpecs = orderSpecs.toArray(new OrderSpec[orderSpecs.size()]);
@@ -30,6 +32,17 @@ public class OrderByClause extends AbstractFLWORClause {
         return orderSpecs;
     }
 
+    /**
+     * Set the number of items the next ordering has to return, if the caller
+     * only needs the first items in sort order. Only that many items are then
+     * kept while the tuples are added, instead of sorting all of them.
+     *
+     * @param limit the number of items required, or {@link ForExpr#UNLIMITED}
+     */
+    public void setResultLimit(final int limit) {
+        this.resultLimit = limit;
+    }
+
     @Override
     public ClauseType getType() {
         return ClauseType.ORDERBY;
@@ -53,7 +66,9 @@ public class OrderByClause extends AbstractFLWORClause {
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         final OrderedValueSequence orderedResult;
         if (stack.isEmpty()) {
-            orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, 100, resultLimit, context.getOrderBySpillThreshold());
+            // the limit applies to this ordering only, not to nested ones
+            resultLimit = ForExpr.UNLIMITED;
         } else {
             orderedResult = stack.pop();
         }
@@ -100,6 +115,10 @@ public class OrderByClause extends AbstractFLWORClause {
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
         returnExpr.resetState(postOptimization);
+        for (final OrderedValueSequence orderedResult : stack) {
+            orderedResult.releaseRuns();
+        }
         stack.clear();
+        resultLimit = ForExpr.UNLIMITED;
     }
 }
@@ -37,6 +37,8 @@ import java.io.PrintWriter;
 public class PerformanceStats implements BrokerPoolService {
 
     public final static String RANGE_IDX_TYPE = "range";
+    /** reported for joins in FLWOR expressions, with OPTIMIZED_INDEX for a hash join */
+    public final static String HASH_JOIN_TYPE = "hash-join";
 
     public final static String XML_NAMESPACE = "http://exist-db.org/xquery/profiling";
     public final static String XML_PREFIX = "stats";
@@ -59,6 +59,8 @@ public class Predicate extends PathExpr {
 
     private Expression parent;
 
+    private HashJoin join = null;
+
     public Predicate(XQueryContext context) {
         super(context);
     }
@@ -249,6 +251,10 @@ public class Predicate extends PathExpr {
 
     public Sequence evalPredicate(Sequence outerSequence,
             Sequence contextSequence, int mode) throws XPathException {
+        if (join != null && join.skipPredicate()) {
+            // the items are selected from a hash table by the "for" clause
+            return contextSequence;
+        }
         if (context.getProfiler().isEnabled()) {
             context.getProfiler().start(this);
             context.getProfiler().message(this, Profiler.DEPENDENCIES, "DEPENDENCIES",
@@ -658,6 +664,16 @@ public class Predicate extends PathExpr {
         return executionMode;
     }
 
+    /**
+     * Mark this predicate as the join condition of a {@link HashJoin}, which
+     * evaluates the step once without it to build its hash table.
+     *
+     * @param join the join
+     */
+    void setJoin(final HashJoin join) {
+        this.join = join;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -80,6 +80,15 @@ public abstract class Step extends AbstractExpression {
         return predicates;
     }
 
+    /**
+     * Replace the predicates of the step, e.g. to evaluate them in a different order.
+     *
+     * @param predicates the new predicates
+     */
+    public void setPredicates(final List<Predicate> predicates) {
+        this.predicates = new CopyOnWriteArrayList<>(predicates);
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.AnalyzeContextInfo)
      */
@@ -0,0 +1,256 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2019 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Sequence;
+
+import javax.xml.XMLConstants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The evaluation plan of the predicates of a {@link LocationStep}, as chosen by the
+ * {@link CostModel}. Holds the estimated selectivity of each predicate and, if recording
+ * was switched on, the number of items actually passing each predicate.
+ */
+public class StepPlan {
+
+    /**
+     * How a predicate is expected to be evaluated.
+     */
+    public enum AccessMethod {
+        /** lookup in a range or full text index */
+        INDEX,
+        /** lookup in the structural index */
+        STRUCTURAL,
+        /** evaluation of the predicate for every context item */
+        SCAN,
+        /** not estimated, the predicate keeps its position */
+        FIXED
+    }
+
+    /**
+     * The estimate for a single predicate.
+     */
+    public static class PredicateEstimate {
+
+        private final Predicate predicate;
+        private final AccessMethod accessMethod;
+        private final double selectivity;
+        private final double cost;
+        private final int originalPosition;
+
+        private long actual = 0;
+
+        PredicateEstimate(final Predicate predicate, final AccessMethod accessMethod, final double selectivity,
+                final double cost, final int originalPosition) {
+            this.predicate = predicate;
+            this.accessMethod = accessMethod;
+            this.selectivity = selectivity;
+            this.cost = cost;
+            this.originalPosition = originalPosition;
+        }
+
+        public Predicate getPredicate() {
+            return predicate;
+        }
+
+        public AccessMethod getAccessMethod() {
+            return accessMethod;
+        }
+
+        /**
+         * @return the estimated fraction of the context items passing the predicate
+         */
+        public double getSelectivity() {
+            return selectivity;
+        }
+
+        /**
+         * @return the estimated cost of evaluating the predicate for one context item
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        public int getOriginalPosition() {
+            return originalPosition;
+        }
+
+        /**
+         * The rank used to order predicates: predicates which filter out many items
+         * at low cost come first.
+         *
+         * @return the rank, lower ranks are evaluated first
+         */
+        double getRank() {
+            return (selectivity - 1) / cost;
+        }
+
+        public long getActual() {
+            return actual;
+        }
+    }
+
+    private static final QName STEP_ELEMENT = new QName("step", XMLConstants.NULL_NS_URI);
+    private static final QName PREDICATE_ELEMENT = new QName("predicate", XMLConstants.NULL_NS_URI);
+    private static final QName EXPR_ATTR = new QName("expr", XMLConstants.NULL_NS_URI);
+    private static final QName LINE_ATTR = new QName("line", XMLConstants.NULL_NS_URI);
+    private static final QName COLUMN_ATTR = new QName("column", XMLConstants.NULL_NS_URI);
+    private static final QName ACCESS_ATTR = new QName("access", XMLConstants.NULL_NS_URI);
+    private static final QName POSITION_ATTR = new QName("original-position", XMLConstants.NULL_NS_URI);
+    private static final QName SELECTIVITY_ATTR = new QName("selectivity", XMLConstants.NULL_NS_URI);
+    private static final QName COST_ATTR = new QName("cost", XMLConstants.NULL_NS_URI);
+    private static final QName ESTIMATED_ATTR = new QName("estimated", XMLConstants.NULL_NS_URI);
+    private static final QName ACTUAL_ATTR = new QName("actual", XMLConstants.NULL_NS_URI);
+    private static final QName EVALUATIONS_ATTR = new QName("evaluations", XMLConstants.NULL_NS_URI);
+
+    private final LocationStep step;
+    private final long estimatedInput;
+    private final List<PredicateEstimate> estimates;
+
+    private boolean recording = false;
+    private long actualInput = 0;
+    private long evaluations = 0;
+
+    StepPlan(final LocationStep step, final long estimatedInput, final List<PredicateEstimate> estimates) {
+        this.step = step;
+        this.estimatedInput = estimatedInput;
+        this.estimates = estimates;
+    }
+
+    public LocationStep getStep() {
+        return step;
+    }
+
+    /**
+     * @return the estimated number of items selected by the step before its
+     *     predicates are applied, or -1 if unknown
+     */
+    public long getEstimatedInput() {
+        return estimatedInput;
+    }
+
+    /**
+     * @return the estimates, in the order the predicates are evaluated
+     */
+    public List<PredicateEstimate> getEstimates() {
+        return Collections.unmodifiableList(estimates);
+    }
+
+    /**
+     * @return the predicates in the order they are evaluated
+     */
+    public List<Predicate> getPredicates() {
+        final List<Predicate> predicates = new ArrayList<>(estimates.size());
+        for (final PredicateEstimate estimate : estimates) {
+            predicates.add(estimate.predicate);
+        }
+        return predicates;
+    }
+
+    /**
+     * @return true if the predicates are evaluated in a different order than written
+     */
+    public boolean isReordered() {
+        for (int i = 0; i < estimates.size(); i++) {
+            if (estimates.get(i).originalPosition != i) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Switch on counting the items passing each predicate. Counting may
+     * force lazily evaluated node sets to be realized, so it is off by default.
+     *
+     * @param recording true to count items
+     */
+    public void setRecording(final boolean recording) {
+        this.recording = recording;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    void recordInput(final Sequence input) throws XPathException {
+        evaluations++;
+        actualInput += input.getItemCountLong();
+    }
+
+    void recordOutput(final Predicate predicate, final Sequence output) throws XPathException {
+        for (final PredicateEstimate estimate : estimates) {
+            if (estimate.predicate == predicate) {
+                estimate.actual += output.getItemCountLong();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Describe the plan, with estimated and actual cardinalities, as a step element.
+     *
+     * @param builder the builder to write to
+     */
+    public void toXML(final MemTreeBuilder builder) {
+        builder.startElement(STEP_ELEMENT, null);
+        builder.addAttribute(EXPR_ATTR, step.toString());
+        builder.addAttribute(LINE_ATTR, Integer.toString(step.getLine()));
+        builder.addAttribute(COLUMN_ATTR, Integer.toString(step.getColumn()));
+        if (estimatedInput >= 0) {
+            builder.addAttribute(ESTIMATED_ATTR, Long.toString(estimatedInput));
+        }
+        if (recording) {
+            builder.addAttribute(ACTUAL_ATTR, Long.toString(actualInput));
+            builder.addAttribute(EVALUATIONS_ATTR, Long.toString(evaluations));
+        }
+
+        double estimated = estimatedInput;
+        for (final PredicateEstimate estimate : estimates) {
+            builder.startElement(PREDICATE_ELEMENT, null);
+            builder.addAttribute(EXPR_ATTR, ExpressionDumper.dump(estimate.predicate.getExpression(0)));
+            builder.addAttribute(ACCESS_ATTR, estimate.accessMethod.name().toLowerCase());
+            builder.addAttribute(POSITION_ATTR, Integer.toString(estimate.originalPosition + 1));
+            if (estimate.accessMethod != AccessMethod.FIXED) {
+                builder.addAttribute(SELECTIVITY_ATTR, String.format(Locale.ROOT, "%.3f", estimate.selectivity));
+                builder.addAttribute(COST_ATTR, String.format(Locale.ROOT, "%.1f", estimate.cost));
+            }
+            if (estimated >= 0 && estimate.accessMethod != AccessMethod.FIXED) {
+                estimated *= estimate.selectivity;
+                builder.addAttribute(ESTIMATED_ATTR, Long.toString(Math.round(estimated)));
+            } else {
+                // the output of a positional or unknown predicate can't be estimated
+                estimated = -1;
+            }
+            if (recording) {
+                builder.addAttribute(ACTUAL_ATTR, Long.toString(estimate.actual));
+            }
+            builder.endElement();
+        }
+        builder.endElement();
+    }
+}
@@ -70,6 +70,11 @@ public class ValueComparison extends GeneralComparison {
             {context.getProfiler().message(this, Profiler.OPTIMIZATION_FLAGS, "OPTIMIZATION CHOICE", "genericCompare");}  
 		final Sequence ls = getLeft().eval(contextSequence, contextItem);
 		final Sequence rs = getRight().eval(contextSequence, contextItem);
+		return compareValues(ls, rs, contextSequence);
+	}
+
+	@Override
+	public Sequence compareValues(Sequence ls, Sequence rs, Sequence contextSequence) throws XPathException {
 		if(ls.isEmpty() || rs.isEmpty())
 			{return Sequence.EMPTY_SEQUENCE;}
 		if (ls.hasOne() && rs.hasOne()) {
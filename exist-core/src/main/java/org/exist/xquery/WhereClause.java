@@ -118,6 +118,14 @@ public class WhereClause extends AbstractFLWORClause {
         return super.postEval(seq);
     }
 
+    /**
+     * @return true if {@link #preEval(Sequence)} has already filtered the input
+     *     of the enclosing "for" clause, so that the where expression is always true
+     */
+    boolean isFastTrack() {
+        return fastTrack;
+    }
+
     private boolean applyWhereExpression() throws XPathException {
         if (fastTrack) {
             return true;
@@ -29,10 +29,17 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.debuggee.Debuggee;
+import org.exist.dom.QName;
+import org.exist.http.servlets.ResponseWrapper;
 import org.exist.security.EffectiveSubject;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
@@ -42,6 +49,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ResultCache;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -218,6 +226,12 @@ public class XQuery {
         
         //do any preparation before execution
         context.prepareForExecution();
+
+        // switch to generated code once the query has been executed often enough
+        final int compileThreshold = context.getBytecodeCompileThreshold();
+        if(compileThreshold > 0 && context.countExecution() == compileThreshold) {
+            BytecodeCompiler.compile(expression);
+        }
         
         final Subject callingUser = broker.getCurrentSubject();
 
@@ -242,6 +256,8 @@ public class XQuery {
             }
         }
         
+        // node values read by the query are cached until it completes
+        broker.getNodeValueCache().open();
         try {
             if(effectiveSubject != null) {
                 broker.pushSubject(effectiveSubject); //switch to effective user (e.g. setuid/setgid)
@@ -258,7 +274,34 @@ public class XQuery {
                     }
                 }
 
+                final ResultCache.Policy cachePolicy = contextSequence == null ? getCachePolicy(context) : null;
+                List<Object> cacheKey = null;
+                long cacheGeneration = 0;
+                final ResponseWrapper response = context.getHttpContext() != null ? context.getHttpContext().getResponse() : null;
+                int responseModifications = 0;
+                if(cachePolicy != null) {
+                    final ResultCache resultCache = broker.getBrokerPool().getResultCache();
+                    cacheKey = createCacheKey(resultCache, broker, context);
+                    if(cacheKey != null) {
+                        final Sequence cached = resultCache.get(cacheKey, broker);
+                        if(cached != null) {
+                            if(outputProperties != null) {
+                                context.checkOptions(outputProperties);
+                            }
+                            return cached;
+                        }
+                        cacheGeneration = resultCache.getGeneration();
+                        if(response != null) {
+                            responseModifications = response.getModificationCount();
+                        }
+                    }
+                }
+
                 final Sequence result = expression.eval(contextSequence);
+                // headers, cookies or a status set by the query would be missing from a cached response
+                if(cacheKey != null && (response == null || response.getModificationCount() == responseModifications)) {
+                    broker.getBrokerPool().getResultCache().put(cacheKey, result, cachePolicy, cacheGeneration);
+                }
                 if(LOG.isDebugEnabled()) {
                     final NumberFormat nf = NumberFormat.getNumberInstance();
                     LOG.debug("Execution took "  +  nf.format(System.currentTimeMillis() - start) + " ms");
@@ -283,7 +326,61 @@ public class XQuery {
             if(effectiveSubject != null) {
                 broker.popSubject();
             }
+            broker.getNodeValueCache().close();
+        }
+    }
+
+    /**
+     * Get the policy for caching the result of the main module, if it declares
+     * the option exist:cache.
+     */
+    private static @Nullable ResultCache.Policy getCachePolicy(final XQueryContext context) throws XPathException {
+        final Option option = context.getOption(ResultCache.CACHE_QNAME);
+        if(option == null) {
+            return null;
+        }
+        try {
+            return ResultCache.Policy.parse(option.tokenizeContents());
+        } catch(final IllegalArgumentException e) {
+            throw new XPathException(ErrorCodes.EXXQDY0005, "Invalid option exist:cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create the key for the cached result of a main module from its source, the user,
+     * the values of the external variables and, for GET requests, the request URI.
+     *
+     * @return the key, or null if the result must not be cached
+     */
+    private static @Nullable List<Object> createCacheKey(final ResultCache resultCache, final DBBroker broker,
+            final XQueryContext context) throws XPathException {
+        final List<Object> owner = new ArrayList<>();
+        final Object sourceVersion = ResultCache.getSourceVersion(context.getSource());
+        // if the version of the source is unknown, only the compiled query is the same
+        owner.add(sourceVersion != null ? sourceVersion : context);
+        final XQueryContext.HttpContext httpContext = context.getHttpContext();
+        if(httpContext != null && httpContext.getRequest() != null) {
+            final String method = httpContext.getRequest().getMethod();
+            if(!"GET".equals(method) && !"HEAD".equals(method)) {
+                // the request body may be read by the query
+                return null;
+            }
+            owner.add(httpContext.getRequest().getRequestURI());
+            owner.add(httpContext.getRequest().getQueryString());
+        }
+
+        // only external variables are declared before the query is evaluated
+        final Map<QName, Variable> variables = new TreeMap<>(context.getGlobalVariables());
+        final List<Sequence> values = new ArrayList<>(variables.size());
+        for(final Map.Entry<QName, Variable> variable : variables.entrySet()) {
+            final Sequence value = variable.getValue().getValue();
+            if(value == null) {
+                return null;
+            }
+            owner.add(variable.getKey());
+            values.add(value);
         }
+        return resultCache.createKey(owner, broker.getCurrentSubject().getName(), values.toArray(new Sequence[0]));
     }
 
     public Sequence execute(final DBBroker broker, final String expression, final Sequence contextSequence) throws XPathException, PermissionDeniedException {
@@ -110,6 +110,10 @@ public class XQueryContext implements BinaryValueManager, Context {
     public static final String XQUERY_BACKWARD_COMPATIBLE_ATTRIBUTE = "backwardCompatible";
     public static final String XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_ATTRIBUTE = "raise-error-on-failed-retrieval";
     public static final String ENFORCE_INDEX_USE_ATTRIBUTE = "enforce-index-use";
+    public static final String PARALLEL_EVALUATION_ATTRIBUTE = "parallel-evaluation";
+    public static final String BYTECODE_COMPILE_THRESHOLD_ATTRIBUTE = "bytecode-compile-threshold";
+    public static final String ORDER_BY_SPILL_THRESHOLD_ATTRIBUTE = "order-by-spill-threshold";
+    public static final String GROUP_BY_SPILL_THRESHOLD_ATTRIBUTE = "group-by-spill-threshold";
 
     //TODO : move elsewhere ?
     public static final String BUILT_IN_MODULE_URI_ATTRIBUTE = "uri";
@@ -121,6 +125,14 @@ public class XQueryContext implements BinaryValueManager, Context {
     public static final String PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL = "xquery.raise-error-on-failed-retrieval";
     public static final boolean XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT = false;
     public static final String PROPERTY_ENFORCE_INDEX_USE = "xquery.enforce-index-use";
+    public static final String PROPERTY_PARALLEL_EVALUATION = "xquery.parallel-evaluation";
+    public static final boolean PARALLEL_EVALUATION_DEFAULT = false;
+    public static final String PROPERTY_BYTECODE_COMPILE_THRESHOLD = "xquery.bytecode-compile-threshold";
+    public static final int BYTECODE_COMPILE_THRESHOLD_DEFAULT = 0;
+    public static final String PROPERTY_ORDER_BY_SPILL_THRESHOLD = "xquery.order-by-spill-threshold";
+    public static final int ORDER_BY_SPILL_THRESHOLD_DEFAULT = 100000;
+    public static final String PROPERTY_GROUP_BY_SPILL_THRESHOLD = "xquery.group-by-spill-threshold";
+    public static final int GROUP_BY_SPILL_THRESHOLD_DEFAULT = 100000;
 
     //TODO : move elsewhere ?
     public static final String PROPERTY_BUILT_IN_MODULES = "xquery.modules";
@@ -364,6 +376,19 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     private boolean raiseErrorOnFailedRetrieval = XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT;
 
+    private boolean parallelEvaluation = PARALLEL_EVALUATION_DEFAULT;
+
+    private int bytecodeCompileThreshold = BYTECODE_COMPILE_THRESHOLD_DEFAULT;
+
+    private int orderBySpillThreshold = ORDER_BY_SPILL_THRESHOLD_DEFAULT;
+
+    private int groupBySpillThreshold = GROUP_BY_SPILL_THRESHOLD_DEFAULT;
+
+    /**
+     * Number of times the main module was executed with this context.
+     */
+    private int executionCount = 0;
+
     private boolean isShared = false;
 
     private Source source = null;
@@ -561,6 +586,10 @@ public class XQueryContext implements BinaryValueManager, Context {
         ctx.defaultCollator = this.defaultCollator;
         ctx.backwardsCompatible = this.backwardsCompatible;
         ctx.enableOptimizer = this.enableOptimizer;
+        ctx.parallelEvaluation = this.parallelEvaluation;
+        ctx.bytecodeCompileThreshold = this.bytecodeCompileThreshold;
+        ctx.orderBySpillThreshold = this.orderBySpillThreshold;
+        ctx.groupBySpillThreshold = this.groupBySpillThreshold;
         ctx.stripWhitespace = this.stripWhitespace;
         ctx.preserveNamespaces = this.preserveNamespaces;
         ctx.inheritNamespaces = this.inheritNamespaces;
@@ -1907,6 +1936,74 @@ public class XQueryContext implements BinaryValueManager, Context {
         return raiseErrorOnFailedRetrieval;
     }
 
+    /**
+     * Should location steps spread their index scans over several threads?
+     * Set by the configuration, and locally by the exist:parallel pragma.
+     *
+     * @return true if index scans may run in parallel
+     */
+    public boolean isParallelEvaluation() {
+        return parallelEvaluation;
+    }
+
+    public void setParallelEvaluation(final boolean parallelEvaluation) {
+        this.parallelEvaluation = parallelEvaluation;
+    }
+
+    /**
+     * Get the number of executions after which the expression tree of a
+     * query is compiled to bytecode by the {@link BytecodeCompiler}.
+     *
+     * @return the number of executions, or 0 if queries are never compiled
+     */
+    public int getBytecodeCompileThreshold() {
+        return bytecodeCompileThreshold;
+    }
+
+    public void setBytecodeCompileThreshold(final int bytecodeCompileThreshold) {
+        this.bytecodeCompileThreshold = bytecodeCompileThreshold;
+    }
+
+    /**
+     * Get the number of tuples an "order by" clause sorts in memory before
+     * it writes them to a temporary file and merges the sorted files.
+     *
+     * @return the number of tuples, or 0 if tuples are always sorted in memory
+     */
+    public int getOrderBySpillThreshold() {
+        return orderBySpillThreshold;
+    }
+
+    public void setOrderBySpillThreshold(final int orderBySpillThreshold) {
+        this.orderBySpillThreshold = orderBySpillThreshold;
+    }
+
+    /**
+     * Get the number of groups a "group by" clause holds in memory. Tuples
+     * of further groups are partitioned into temporary files.
+     *
+     * @return the number of groups, or 0 if all groups are held in memory
+     */
+    public int getGroupBySpillThreshold() {
+        return groupBySpillThreshold;
+    }
+
+    public void setGroupBySpillThreshold(final int groupBySpillThreshold) {
+        this.groupBySpillThreshold = groupBySpillThreshold;
+    }
+
+    /**
+     * Count an execution of the main module with this context.
+     *
+     * @return the number of executions so far, including this one
+     */
+    public int countExecution() {
+        if (executionCount < Integer.MAX_VALUE) {
+            executionCount++;
+        }
+        return executionCount;
+    }
+
     public Database getDatabase() {
         return db;
     }
@@ -2771,6 +2868,10 @@ public class XQueryContext implements BinaryValueManager, Context {
                 return new ProfilePragma(qname, contents);
             }
 
+            if (ParallelPragma.PARALLEL_PRAGMA.equals(qname)) {
+                return new ParallelPragma(this, qname, contents);
+            }
+
             if (NoIndexPragma.NO_INDEX_PRAGMA.equals(qname)) {
                 return new NoIndexPragma(qname, contents);
             }
@@ -2840,6 +2941,22 @@ public class XQueryContext implements BinaryValueManager, Context {
         final Boolean option = ((Boolean) config.getProperty(PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL));
         raiseErrorOnFailedRetrieval = (option != null) && option;
 
+        // Switch: parallelEvaluation
+        final Boolean parallel = (Boolean) config.getProperty(PROPERTY_PARALLEL_EVALUATION);
+        parallelEvaluation = (parallel != null) && parallel;
+
+        // Number of executions before a query is compiled to bytecode
+        final Integer threshold = (Integer) config.getProperty(PROPERTY_BYTECODE_COMPILE_THRESHOLD);
+        bytecodeCompileThreshold = threshold != null ? threshold : BYTECODE_COMPILE_THRESHOLD_DEFAULT;
+
+        // Number of tuples an order by clause sorts in memory
+        final Integer orderBySpill = (Integer) config.getProperty(PROPERTY_ORDER_BY_SPILL_THRESHOLD);
+        orderBySpillThreshold = orderBySpill != null ? orderBySpill : ORDER_BY_SPILL_THRESHOLD_DEFAULT;
+
+        // Number of groups a group by clause holds in memory
+        final Integer groupBySpill = (Integer) config.getProperty(PROPERTY_GROUP_BY_SPILL_THRESHOLD);
+        groupBySpillThreshold = groupBySpill != null ? groupBySpill : GROUP_BY_SPILL_THRESHOLD_DEFAULT;
+
         // Get map of built-in modules
         final Map<String, Class<Module>> builtInModules = (Map) config.getProperty(PROPERTY_BUILT_IN_MODULES);
 
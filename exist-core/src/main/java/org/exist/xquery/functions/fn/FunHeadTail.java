@@ -7,11 +7,13 @@ import org.exist.xquery.AnalyzeContextInfo;
 import org.exist.xquery.BasicFunction;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.ErrorCodes;
+import org.exist.xquery.ForExpr;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.Item;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
@@ -38,6 +40,8 @@ public class FunHeadTail extends BasicFunction {
                     },
                 new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the resulting sequence")) };
 	
+	private ForExpr limitableClause = null;
+
 	public FunHeadTail(XQueryContext context, FunctionSignature signature) {
 		super(context, signature);
 	}
@@ -49,6 +53,23 @@ public class FunHeadTail extends BasicFunction {
 			throw new XPathException(this, ErrorCodes.EXXQDY0003, "Function " + 
 					getSignature().getName() + " is only supported for xquery version \"3.0\" and later.");
 		}
+		if (isCalledAs("head")) {
+			limitableClause = ForExpr.getLimitableClause(getArgument(0));
+		}
+	}
+
+	@Override
+	public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+		if (limitableClause != null) {
+			// a FLWOR expression only needs to produce its first item
+			limitableClause.setResultLimit(1);
+			try {
+				return super.eval(contextSequence, contextItem);
+			} finally {
+				limitableClause.setResultLimit(ForExpr.UNLIMITED);
+			}
+		}
+		return super.eval(contextSequence, contextItem);
 	}
 	
 	@Override
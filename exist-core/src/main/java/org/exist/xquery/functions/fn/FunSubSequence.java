@@ -59,6 +59,8 @@ public class FunSubSequence extends Function {
                     },
                     new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the subsequence"))};
 
+    private ForExpr limitableClause = null;
+
     public FunSubSequence(final XQueryContext context, final FunctionSignature signature) {
         super(context, signature);
     }
@@ -80,6 +82,7 @@ public class FunSubSequence extends Function {
                 contextInfo.setStaticReturnType(argContextInfo.getStaticReturnType());
             }
         }
+        limitableClause = ForExpr.getLimitableClause(getArgument(0));
     }
 
     @Override
@@ -100,6 +103,20 @@ public class FunSubSequence extends Function {
         }
 
         final Sequence result;
+        if (limitableClause != null && getArgumentCount() == 3) {
+            // a FLWOR expression only needs to produce the items up to the end of the subsequence
+            final DoubleValue startLoc = (DoubleValue) getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final DoubleValue length = (DoubleValue) getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final long limit = startLoc.getLong() + length.getLong() - 1;
+            final Sequence seq;
+            if (limit > 0 && limit < Integer.MAX_VALUE) {
+                seq = limitableClause.evalLimited(getArgument(0), contextSequence, contextItem, (int) limit);
+            } else {
+                seq = getArgument(0).eval(contextSequence, contextItem);
+            }
+            return seq.isEmpty() ? Sequence.EMPTY_SEQUENCE : subsequence(seq, startLoc, length);
+        }
+
         final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
         if (seq.isEmpty()) {
             result = Sequence.EMPTY_SEQUENCE;
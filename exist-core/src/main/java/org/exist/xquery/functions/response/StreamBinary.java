@@ -26,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.dom.QName;
 import org.exist.http.servlets.ResponseWrapper;
+import org.exist.http.servlets.ServletOutputChannel;
 import org.exist.xquery.*;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.Sequence;
@@ -84,8 +85,9 @@ public class StreamBinary extends StrictResponseFunction {
         }
 
         try {
-            final OutputStream os = response.getOutputStream();
-            binary.streamBinaryTo(response.getOutputStream());
+            // a memory mapped binary is handed to the servlet container without copying
+            final OutputStream os = ServletOutputChannel.wrap(response.getOutputStream());
+            binary.streamBinaryTo(os);
             os.close();
 
             //commit the response
@@ -29,6 +29,7 @@ import org.exist.dom.persistent.BinaryDocument;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.PermissionDeniedException;
+import org.exist.storage.blob.BlobLease;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.txn.TransactionException;
 import org.exist.storage.txn.Txn;
@@ -124,8 +125,27 @@ public class BinaryDoc extends BasicFunction {
             } else if(isCalledAs(FS_BINARY_DOC_NAME)) {
                 try (final Txn transaction = context.getBroker().continueOrBeginTransaction()) {
                     final BinaryDocument bin = (BinaryDocument) doc;
-                    final InputStream is = context.getBroker().getBinaryResource(transaction, bin);
-                    final Base64BinaryDocument b64doc = Base64BinaryDocument.getInstance(context, is);
+                    final BlobLease lease = bin.getContentLength() <= Integer.MAX_VALUE
+                            ? context.getBroker().leaseBinaryResource(transaction, bin) : null;
+                    final Base64BinaryDocument b64doc;
+                    if (lease != null) {
+                        // memory map the blob file, it is leased until the value is closed
+                        try {
+                            b64doc = Base64BinaryDocument.getInstance(context, lease.getPath(), (closed, file) -> {
+                                try {
+                                    lease.close();
+                                } catch (final IOException e) {
+                                    logger.warn(path + ": unable to release blob file: " + e.getMessage(), e);
+                                }
+                            });
+                        } catch (final XPathException e) {
+                            lease.close();
+                            throw e;
+                        }
+                    } else {
+                        final InputStream is = context.getBroker().getBinaryResource(transaction, bin);
+                        b64doc = Base64BinaryDocument.getInstance(context, is);
+                    }
                     b64doc.setUrl(path);
 
                     transaction.commit();
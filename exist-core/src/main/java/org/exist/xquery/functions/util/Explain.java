@@ -0,0 +1,145 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2019 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.util;
+
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.security.PermissionDeniedException;
+import org.exist.xquery.*;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+import javax.xml.XMLConstants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles and runs a query, and reports the order in which the predicates of its
+ * location steps were evaluated, together with the estimated and actual number of
+ * items passing each predicate.
+ */
+public class Explain extends BasicFunction {
+
+    public final static FunctionSignature signature =
+            new FunctionSignature(
+                    new QName("explain", UtilModule.NAMESPACE_URI, UtilModule.PREFIX),
+                    "Compiles and executes the XQuery expression given in parameter $expression, and returns the " +
+                    "plan chosen by the query optimizer for the predicates of each location step. For every " +
+                    "predicate, the access method, the estimated selectivity and cost, as well as the estimated " +
+                    "and actual number of items passing the predicate are reported: <explain><step expr=\"...\" " +
+                    "estimated=\"...\" actual=\"...\"><predicate expr=\"...\" access=\"index|structural|scan|fixed\" " +
+                    "original-position=\"...\" selectivity=\"...\" cost=\"...\" estimated=\"...\" actual=\"...\"/>" +
+                    "</step></explain>. Estimated counts are only available if the index-stats module is enabled.",
+                    new SequenceType[] {
+                            new FunctionParameterSequenceType("expression", Type.STRING, Cardinality.EXACTLY_ONE, "The XPath/XQuery expression.")
+                    },
+                    new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the plan of the expression"));
+
+    private static final QName EXPLAIN_ELEMENT = new QName("explain", XMLConstants.NULL_NS_URI);
+
+    public Explain(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        final String expr = args[0].getStringValue();
+        final XQuery xquery = context.getBroker().getBrokerPool().getXQueryService();
+        final XQueryContext innerContext = new XQueryContext(context.getBroker().getBrokerPool());
+        innerContext.setModuleLoadPath(context.getModuleLoadPath());
+        try {
+            final CompiledXQuery compiled = xquery.compile(context.getBroker(), innerContext, expr);
+
+            final PlanCollector collector = new PlanCollector();
+            ((Expression) compiled).accept(collector);
+            // function bodies are only visited once by the expression visitors, so walk them directly
+            for (final Iterator<UserDefinedFunction> i = innerContext.localFunctions(); i.hasNext(); ) {
+                i.next().getFunctionBody().accept(collector);
+            }
+            for (final StepPlan plan : collector.plans) {
+                plan.setRecording(true);
+            }
+
+            xquery.execute(context.getBroker(), compiled, null);
+
+            context.pushDocumentContext();
+            try {
+                final MemTreeBuilder builder = context.getDocumentBuilder();
+                builder.startElement(EXPLAIN_ELEMENT, null);
+                for (final StepPlan plan : collector.plans) {
+                    plan.toXML(builder);
+                }
+                builder.endElement();
+                return builder.getDocument().getNode(1);
+            } finally {
+                context.popDocumentContext();
+            }
+        } catch (final PermissionDeniedException e) {
+            throw new XPathException(this, ErrorCodes.FOER0000, e.getMessage());
+        } finally {
+            innerContext.reset(false);
+        }
+    }
+
+    /**
+     * Collects the plans of all location steps, including those wrapped into
+     * extension expressions by the optimizer.
+     */
+    private static class PlanCollector extends DefaultExpressionVisitor {
+
+        private final Set<LocationStep> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<StepPlan> plans = new ArrayList<>();
+        private Expression current = null;
+
+        @Override
+        public void visit(final Expression expression) {
+            // expressions without a visitor method of their own call back into visit:
+            // walk their sub-expressions instead
+            if (expression == current) {
+                for (int i = 0; i < expression.getSubExpressionCount(); i++) {
+                    expression.getSubExpression(i).accept(this);
+                }
+                return;
+            }
+            final Expression previous = current;
+            current = expression;
+            expression.accept(this);
+            current = previous;
+        }
+
+        @Override
+        public void visitLocationStep(final LocationStep locationStep) {
+            if (!seen.add(locationStep)) {
+                return;
+            }
+            if (locationStep.getPlan() != null) {
+                plans.add(locationStep.getPlan());
+            }
+            super.visitLocationStep(locationStep);
+        }
+    }
+}
@@ -82,6 +82,7 @@ public class UtilModule extends AbstractInternalModule {
             new FunctionDef(Compile.signatures[0], Compile.class),
             new FunctionDef(Compile.signatures[1], Compile.class),
             new FunctionDef(Compile.signatures[2], Compile.class),
+            new FunctionDef(Explain.signature, Explain.class),
             new FunctionDef(DocumentNameOrId.docIdSignature, DocumentNameOrId.class),
             new FunctionDef(DocumentNameOrId.docNameSignature, DocumentNameOrId.class),
             new FunctionDef(DocumentNameOrId.absoluteResourceIdSignature, DocumentNameOrId.class),
@@ -142,6 +143,7 @@ public class UtilModule extends AbstractInternalModule {
             new FunctionDef(BaseConverter.signatures[0], BaseConverter.class),
             new FunctionDef(BaseConverter.signatures[1], BaseConverter.class),
             new FunctionDef(Wait.signatures[0], Wait.class),
+            new FunctionDef(WaitForIndexUpdates.signature, WaitForIndexUpdates.class),
             new FunctionDef(Base64Functions.signatures[0], Base64Functions.class),
             new FunctionDef(Base64Functions.signatures[1], Base64Functions.class),
             new FunctionDef(Base64Functions.signatures[2], Base64Functions.class),
@@ -0,0 +1,80 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.util;
+
+import org.exist.dom.QName;
+import org.exist.indexing.IndexUpdateQueue;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.BooleanValue;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+/**
+ * Waits until the deferred updates of the asynchronously updated
+ * indexes, which were committed before the call, have been applied.
+ *
+ * The wait is always limited, as the calling query holds a broker which
+ * the index updates may need when all of the brokers are in use.
+ */
+public class WaitForIndexUpdates extends BasicFunction {
+
+    private static final QName FN_NAME = new QName("wait-for-index-updates", UtilModule.NAMESPACE_URI, UtilModule.PREFIX);
+
+    public final static FunctionSignature signature = new FunctionSignature(
+            FN_NAME,
+            "Waits until the updates of the indexes which are configured " +
+                    "to be updated asynchronously (with async-update in collection.xconf), and which were committed " +
+                    "before the call, are visible to queries.",
+            new SequenceType[] {
+                    new FunctionParameterSequenceType("timeout", Type.INTEGER, Cardinality.EXACTLY_ONE,
+                            "The maximum number of milliseconds to wait.")
+            },
+            new FunctionReturnSequenceType(Type.BOOLEAN, Cardinality.EXACTLY_ONE,
+                    "true() if the updates have been applied, false() if the timeout elapsed first")
+    );
+
+    public WaitForIndexUpdates(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        final long timeout = ((IntegerValue) args[0].itemAt(0)).getLong();
+        if (timeout < 0) {
+            throw new XPathException(this, "The timeout must not be negative: " + timeout);
+        }
+
+        final IndexUpdateQueue indexUpdateQueue = context.getBroker().getBrokerPool().getIndexUpdateQueue();
+        try {
+            return BooleanValue.valueOf(indexUpdateQueue.await(indexUpdateQueue.getEnqueuedSequence(), timeout));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XPathException(this, "Interrupted whilst waiting for index updates", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2019 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Switches parallel evaluation of location steps on or off for the enclosed expression:
+ *
+ * <pre>(# exist:parallel #) { collection('/db/data')//article[.//author = 'Smith'] }</pre>
+ *
+ * With parallel evaluation, a step over a context spanning many documents splits its
+ * structural index scan by document and runs the parts concurrently. The pragma
+ * accepts "enable=no" to switch off a parallel default set in conf.xml.
+ */
+public class ParallelPragma extends Pragma {
+
+    public  final static QName PARALLEL_PRAGMA = new QName("parallel", Namespaces.EXIST_NS, "exist");
+
+    private final XQueryContext context;
+    private boolean enabled = true;
+    private Expression innerExpr = null;
+
+    public ParallelPragma(XQueryContext context, QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        this.context = context;
+        if (contents != null && contents.length() > 0) {
+            final String param[] = Option.parseKeyValuePair(contents);
+            if (param == null || !"enable".equals(param[0]))
+                {throw new XPathException("Invalid content found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                    ": " + contents);}
+            enabled = "yes".equals(param[1]);
+        }
+    }
+
+    public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        final boolean parallel = context.isParallelEvaluation();
+        context.setParallelEvaluation(enabled);
+        try {
+            return innerExpr.eval(contextSequence, contextItem);
+        } finally {
+            context.setParallelEvaluation(parallel);
+        }
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+        innerExpr = expression;
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+    }
+}
@@ -22,24 +22,52 @@
 package org.exist.xquery.value;
 
 import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.BiConsumer;
 
 /**
- * Wrapper around Base64Binary.
- *
- * @author dizzzzz
+ * The content of a binary document, either read from a stream
+ * or memory mapped from a file.
  */
-public class Base64BinaryDocument extends BinaryValueFromInputStream {
+public class Base64BinaryDocument extends BinaryValue {
 
+    private final BinaryValue content;
     private String url = null;
 
-    private Base64BinaryDocument(final BinaryValueManager manager, final InputStream is) throws XPathException {
-        super(manager, new Base64BinaryValueType(), is);
+    private Base64BinaryDocument(final BinaryValueManager manager, final BinaryValue content) {
+        super(manager, new Base64BinaryValueType());
+        this.content = content;
     }
 
     public static Base64BinaryDocument getInstance(final BinaryValueManager manager, final InputStream is) throws XPathException {
-        final Base64BinaryDocument b64BinaryDocument = new Base64BinaryDocument(manager, is);
+        final Base64BinaryDocument b64BinaryDocument = new Base64BinaryDocument(manager,
+                new BinaryValueFromInputStream(manager, new Base64BinaryValueType(), is));
+        manager.registerBinaryValueInstance(b64BinaryDocument);
+        return b64BinaryDocument;
+    }
+
+    /**
+     * Get a binary document which memory maps its content from a file,
+     * instead of caching a copy of it.
+     *
+     * @param manager the binary value manager
+     * @param file the file, it must not be modified whilst the binary document is open
+     * @param closeListener called when the binary document is closed
+     *
+     * @return the binary document
+     *
+     * @throws XPathException if the file cannot be mapped
+     */
+    public static Base64BinaryDocument getInstance(final BinaryValueManager manager, final Path file,
+            final BiConsumer<Boolean, Path> closeListener) throws XPathException {
+        final Base64BinaryDocument b64BinaryDocument = new Base64BinaryDocument(manager,
+                new BinaryValueFromFile(manager, new Base64BinaryValueType(), file, Optional.of(closeListener)));
         manager.registerBinaryValueInstance(b64BinaryDocument);
         return b64BinaryDocument;
     }
@@ -51,4 +79,54 @@ public class Base64BinaryDocument extends BinaryValueFromInputStream {
     public void setUrl(final String url) {
         this.url = url;
     }
+
+    @Override
+    public BinaryValue convertTo(final BinaryValueType binaryValueType) throws XPathException {
+        return content.convertTo(binaryValueType);
+    }
+
+    @Override
+    public void streamBinaryTo(final OutputStream os) throws IOException {
+        content.streamBinaryTo(os);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return content.getInputStream();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return content.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+
+    @Override
+    public <T> T toJavaObject() throws XPathException {
+        return content.toJavaObject();
+    }
+
+    @Override
+    public void destroy(final XQueryContext context, final Sequence contextSequence) {
+        // do not close if this object is part of the contextSequence
+        if (contextSequence == this
+                || (contextSequence instanceof ValueSequence && ((ValueSequence) contextSequence).containsValue(this))) {
+            return;
+        }
+        try {
+            this.close();
+        } catch (final IOException e) {
+            // ignore at this point
+        }
+        context.destroyBinaryValue(this);
+    }
+
+    @Override
+    public void incrementSharedReferences() {
+        content.incrementSharedReferences();
+    }
 }
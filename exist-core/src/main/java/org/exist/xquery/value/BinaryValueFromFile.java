@@ -13,6 +13,7 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.BiConsumer;
@@ -67,6 +68,18 @@ public class BinaryValueFromFile extends BinaryValue {
             throw new IOException("Underlying channel has been closed");
         }
 
+        if (os instanceof WritableByteChannel) {
+            // hand over the mapped buffer, without copying it through the heap
+            final WritableByteChannel target = (WritableByteChannel) os;
+            final ByteBuffer src = buf.duplicate();
+            src.position(0);
+            while (src.hasRemaining()) {
+                target.write(src);
+            }
+            os.flush();
+            return;
+        }
+
         try {
             final byte data[] = new byte[READ_BUFFER_SIZE];
             while (buf.hasRemaining()) {
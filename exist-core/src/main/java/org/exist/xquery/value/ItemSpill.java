@@ -0,0 +1,201 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.XPathException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes items to, and reads them back from, the temporary files used by
+ * FLWOR clauses which hold more tuples than they keep in memory.
+ *
+ * Only items which can be restored exactly are supported: atomic values of
+ * the types which can be cast from their string value, and persistent
+ * nodes without matches or context. A node is written as its document id,
+ * node id and address; the documents are kept in a map owned by the caller,
+ * which is needed to read the nodes back.
+ */
+public final class ItemSpill {
+
+    private static final byte EMPTY = 0;
+    private static final byte ATOMIC = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte FLOAT = 3;
+    private static final byte NODE = 4;
+    private static final byte DOCUMENT_NODE = 5;
+
+    private ItemSpill() {
+    }
+
+    /**
+     * @param item the item to check, may be {@link AtomicValue#EMPTY_VALUE}
+     * @return true if the item can be written with {@link #write(DataOutput, Item, Map)}
+     */
+    public static boolean isSpillable(final Item item) {
+        if (item == AtomicValue.EMPTY_VALUE) {
+            return true;
+        }
+        if (item instanceof NodeProxy) {
+            final NodeProxy proxy = (NodeProxy) item;
+            return proxy.getMatches() == null && proxy.getContext() == null;
+        }
+        if (!(item instanceof AtomicValue)) {
+            return false;
+        }
+        final int type = item.getType();
+        switch (type) {
+            case Type.DOUBLE:
+                return item instanceof DoubleValue;
+            case Type.FLOAT:
+                return item instanceof FloatValue;
+            case Type.UNTYPED_ATOMIC:
+            case Type.ANY_URI:
+            case Type.BOOLEAN:
+            case Type.DECIMAL:
+            case Type.DATE_TIME:
+            case Type.TIME:
+            case Type.DATE:
+            case Type.DURATION:
+            case Type.YEAR_MONTH_DURATION:
+            case Type.DAY_TIME_DURATION:
+            case Type.GYEAR:
+            case Type.GMONTH:
+            case Type.GDAY:
+            case Type.GYEARMONTH:
+            case Type.GMONTHDAY:
+                return true;
+            default:
+                // strings and integers, with their derived types
+                return (Type.subTypeOf(type, Type.STRING) && item instanceof StringValue)
+                        || (Type.subTypeOf(type, Type.INTEGER) && item instanceof IntegerValue);
+        }
+    }
+
+    /**
+     * Writes a spillable item.
+     *
+     * @param out the output to write to
+     * @param item the item to write, may be {@link AtomicValue#EMPTY_VALUE}
+     * @param documents the documents of the nodes written so far, by id
+     *
+     * @throws IOException if the item cannot be written
+     */
+    public static void write(final DataOutput out, final Item item, final Map<Integer, DocumentImpl> documents)
+            throws IOException {
+        if (item == AtomicValue.EMPTY_VALUE) {
+            out.writeByte(EMPTY);
+        } else if (item instanceof NodeProxy) {
+            final NodeProxy proxy = (NodeProxy) item;
+            final DocumentImpl doc = proxy.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+            final NodeId nodeId = proxy.getNodeId();
+            out.writeByte(nodeId == NodeId.DOCUMENT_NODE ? DOCUMENT_NODE : NODE);
+            out.writeInt(doc.getDocId());
+            out.writeShort(proxy.getNodeType());
+            out.writeLong(proxy.getInternalAddress());
+            if (nodeId != NodeId.DOCUMENT_NODE) {
+                out.writeShort(nodeId.units());
+                final byte[] data = new byte[nodeId.size()];
+                nodeId.serialize(data, 0);
+                out.writeShort(data.length);
+                out.write(data);
+            }
+        } else if (item.getType() == Type.DOUBLE) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits(((DoubleValue) item).getDouble()));
+        } else if (item.getType() == Type.FLOAT) {
+            out.writeByte(FLOAT);
+            out.writeInt(Float.floatToRawIntBits(((FloatValue) item).getValue()));
+        } else {
+            try {
+                out.writeByte(ATOMIC);
+                out.writeInt(item.getType());
+                final byte[] data = item.getStringValue().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(data.length);
+                out.write(data);
+            } catch (final XPathException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads an item written by {@link #write(DataOutput, Item, Map)}.
+     *
+     * @param in the input to read from
+     * @param documents the documents of the nodes which were written, by id
+     *
+     * @return the item read, or {@link AtomicValue#EMPTY_VALUE}
+     *
+     * @throws IOException if the item cannot be read
+     */
+    public static Item read(final DataInput in, final Map<Integer, DocumentImpl> documents) throws IOException {
+        final byte kind = in.readByte();
+        switch (kind) {
+            case EMPTY:
+                return AtomicValue.EMPTY_VALUE;
+            case DOUBLE:
+                return new DoubleValue(Double.longBitsToDouble(in.readLong()));
+            case FLOAT:
+                return new FloatValue(Float.intBitsToFloat(in.readInt()));
+            case ATOMIC:
+                final int type = in.readInt();
+                final byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                try {
+                    return new StringValue(new String(value, StandardCharsets.UTF_8)).convertTo(type);
+                } catch (final XPathException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            case DOCUMENT_NODE:
+            case NODE:
+                final DocumentImpl doc = document(documents, in.readInt());
+                final short nodeType = in.readShort();
+                final long address = in.readLong();
+                if (kind == DOCUMENT_NODE) {
+                    return new NodeProxy(doc, NodeId.DOCUMENT_NODE, nodeType, address);
+                }
+                final int units = in.readShort();
+                final byte[] data = new byte[in.readShort()];
+                in.readFully(data);
+                final NodeId nodeId = doc.getBrokerPool().getNodeFactory().createFromData(units, data, 0);
+                return new NodeProxy(doc, nodeId, nodeType, address);
+            default:
+                throw new IOException("Unknown kind of item: " + kind);
+        }
+    }
+
+    private static DocumentImpl document(final Map<Integer, DocumentImpl> documents, final int docId)
+            throws IOException {
+        final DocumentImpl doc = documents.get(docId);
+        if (doc == null) {
+            throw new IOException("Unknown document: " + docId);
+        }
+        return doc;
+    }
+}
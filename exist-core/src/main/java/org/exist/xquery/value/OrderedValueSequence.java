@@ -27,6 +27,7 @@ import org.exist.dom.persistent.AVLTreeNodeSet;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.numbering.NodeId;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.Constants;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
@@ -34,8 +35,20 @@ import org.exist.xquery.util.ExpressionDumper;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.stream.Stream;
 
 /**
@@ -46,21 +59,64 @@ import java.util.stream.Stream;
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
  *
+ * If a limit is given, only the first items in sort order are kept (top-k):
+ * the entries are held in a max-heap of the given size, and an added item
+ * which sorts after all of them is discarded right away.
+ *
+ * Without a limit, the entries are sorted externally once more of them have
+ * been added than the spill threshold: the entries in memory are sorted and
+ * written as a run to a temporary file, and {@link #sort()} merges the runs.
+ * This is only done while every item and sort key can be written with
+ * {@link ItemSpill}; as soon as an entry cannot, the runs are read back and
+ * all entries are sorted in memory.
+ *
  * @author wolf
  */
 public class OrderedValueSequence extends AbstractSequence {
 
     private final OrderSpec[] orderSpecs;
+    private final int limit;
+    private final int spillThreshold;
     private Entry[] items;
     private int count = 0;
+    private final List<Path> runs = new ArrayList<>();
+    private final Map<Integer, org.exist.dom.persistent.DocumentImpl> runDocuments = new HashMap<>();
+    private int spilled = 0;
+    private boolean spillable = true;
+    private int added = 0;
     private int state = 0;
 
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
 
     public OrderedValueSequence(final OrderSpec orderSpecs[], final int size) {
+        this(orderSpecs, size, -1);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the "order by" clause
+     * @param size the initial capacity
+     * @param limit the number of items to keep, or -1 to keep all
+     */
+    public OrderedValueSequence(final OrderSpec orderSpecs[], final int size, final int limit) {
+        this(orderSpecs, size, limit, 0);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the "order by" clause
+     * @param size the initial capacity
+     * @param limit the number of items to keep, or -1 to keep all
+     * @param spillThreshold the number of entries kept in memory before they
+     *     are written to a temporary file, or 0 to keep all entries in memory.
+     *     Not used if a limit is given.
+     */
+    public OrderedValueSequence(final OrderSpec orderSpecs[], final int size, final int limit,
+            final int spillThreshold) {
         this.orderSpecs = orderSpecs;
-        this.items = new Entry[size == 0 ? 1 : size];
+        this.limit = limit;
+        this.spillThreshold = limit > 0 ? 0 : spillThreshold;
+        final int capacity = limit > 0 ? Math.min(size, limit) : size;
+        this.items = new Entry[capacity == 0 ? 1 : capacity];
     }
 
     @Override
@@ -75,7 +131,7 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public long getItemCountLong() {
-        return (items == null) ? 0 : count;
+        return (items == null) ? 0 : count + spilled;
     }
 
     @Override
@@ -90,25 +146,137 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public void add(final Item item) throws XPathException {
-        if (hasOne) {
-            hasOne = false;
-        }
-        if (isEmpty) {
-            hasOne = true;
+        final Entry entry = new Entry(item, added++);
+        if (limit < 0 || count < limit) {
+            if (count == 0 && items.length == 1) {
+                items = new Entry[2];
+            } else if (count == items.length) {
+                final Entry newItems[] = new Entry[limit < 0 ? count * 2 : Math.min(count * 2, limit)];
+                System.arraycopy(items, 0, newItems, 0, count);
+                items = newItems;
+            }
+            items[count] = entry;
+            if (limit > 0) {
+                siftUp(count);
+            }
+            count++;
+            if (spillThreshold > 0) {
+                spill(entry);
+            }
+        } else if (entry.compareTo(items[0]) < 0) {
+            // replace the greatest entry kept so far
+            items[0] = entry;
+            siftDown(0);
+        } else {
+            return;
         }
         isEmpty = false;
-        if (count == 0 && items.length == 1) {
-            items = new Entry[2];
-        } else if (count == items.length) {
-            final Entry newItems[] = new Entry[count * 2];
-            System.arraycopy(items, 0, newItems, 0, count);
-            items = newItems;
-        }
-        items[count] = new Entry(item, count++);
+        hasOne = count + spilled == 1;
         checkItemType(item.getType());
         setHasChanged();
     }
 
+    /**
+     * Writes the entries in memory to a new run once the spill threshold is
+     * reached, or reads all runs back if the added entry cannot be written.
+     */
+    private void spill(final Entry added) throws XPathException {
+        if (!spillable) {
+            return;
+        }
+        if (!added.isSpillable()) {
+            spillable = false;
+            restoreRuns();
+            return;
+        }
+        if (count < spillThreshold) {
+            return;
+        }
+
+        Arrays.parallelSort(items, 0, count);
+        final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+        try {
+            final Path run = temporaryFileManager.getTemporaryFile();
+            runs.add(run);
+            try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                os.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    items[i].write(os);
+                }
+            }
+        } catch (final IOException e) {
+            releaseRuns();
+            throw new XPathException("Failed to write sorted entries to a temporary file: " + e.getMessage(), e);
+        }
+        spilled += count;
+        Arrays.fill(items, 0, count, null);
+        count = 0;
+    }
+
+    private void restoreRuns() throws XPathException {
+        if (runs.isEmpty()) {
+            return;
+        }
+        final Entry[] restored = new Entry[Math.max(items.length, count + spilled)];
+        System.arraycopy(items, 0, restored, 0, count);
+        try {
+            for (final Path run : runs) {
+                try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)))) {
+                    for (int i = is.readInt(); i > 0; i--) {
+                        restored[count++] = new Entry(is);
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Failed to read sorted entries from a temporary file: " + e.getMessage(), e);
+        } finally {
+            releaseRuns();
+        }
+        items = restored;
+    }
+
+    /**
+     * Removes the temporary files of the runs written so far.
+     */
+    public void releaseRuns() {
+        final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+        for (final Path run : runs) {
+            temporaryFileManager.returnTemporaryFile(run);
+        }
+        runs.clear();
+        spilled = 0;
+    }
+
+    private void siftUp(int pos) {
+        final Entry entry = items[pos];
+        while (pos > 0) {
+            final int parent = (pos - 1) >>> 1;
+            if (items[parent].compareTo(entry) >= 0) {
+                break;
+            }
+            items[pos] = items[parent];
+            pos = parent;
+        }
+        items[pos] = entry;
+    }
+
+    private void siftDown(int pos) {
+        final Entry entry = items[pos];
+        final int half = count >>> 1;
+        while (pos < half) {
+            int child = (pos << 1) + 1;
+            if (child + 1 < count && items[child + 1].compareTo(items[child]) > 0) {
+                child++;
+            }
+            if (entry.compareTo(items[child]) >= 0) {
+                break;
+            }
+            items[pos] = items[child];
+            pos = child;
+        }
+        items[pos] = entry;
+    }
+
     @Override
     public void addAll(final Sequence other) throws XPathException {
         if (other.hasOne()) {
@@ -123,13 +291,96 @@ public class OrderedValueSequence extends AbstractSequence {
         }
     }
 
-    public void sort() {
+    public void sort() throws XPathException {
 //		FastQSort.sort(items, 0, count - 1);
 
         Arrays.parallelSort(items, 0, count);
+        if (!runs.isEmpty()) {
+            merge();
+        }
         Arrays.stream(items, 0, count).parallel().forEach(Entry::clear);
     }
 
+    /**
+     * Merges the runs written to temporary files with the sorted entries
+     * in memory.
+     */
+    private void merge() throws XPathException {
+        final Entry[] merged = new Entry[count + spilled];
+        final List<DataInputStream> inputs = new ArrayList<>(runs.size());
+        try {
+            final PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size() + 1);
+            final Entry[] inMemory = items;
+            final int inMemoryCount = count;
+            offer(queue, new RunReader() {
+                private int pos = 0;
+
+                @Override
+                Entry read() {
+                    return pos < inMemoryCount ? inMemory[pos++] : null;
+                }
+            });
+            for (final Path run : runs) {
+                final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+                inputs.add(is);
+                final int length = is.readInt();
+                offer(queue, new RunReader() {
+                    private int remaining = length;
+
+                    @Override
+                    Entry read() throws IOException {
+                        if (remaining == 0) {
+                            return null;
+                        }
+                        remaining--;
+                        return new Entry(is);
+                    }
+                });
+            }
+
+            int pos = 0;
+            RunReader reader;
+            while ((reader = queue.poll()) != null) {
+                merged[pos++] = reader.current;
+                offer(queue, reader);
+            }
+            items = merged;
+            count = pos;
+        } catch (final IOException e) {
+            throw new XPathException("Failed to merge sorted entries from temporary files: " + e.getMessage(), e);
+        } finally {
+            for (final DataInputStream is : inputs) {
+                try {
+                    is.close();
+                } catch (final IOException e) {
+                    // nothing to do
+                }
+            }
+            releaseRuns();
+        }
+    }
+
+    private static void offer(final PriorityQueue<RunReader> queue, final RunReader reader) throws IOException {
+        reader.current = reader.read();
+        if (reader.current != null) {
+            queue.add(reader);
+        }
+    }
+
+    /**
+     * Reads the entries of one sorted run during the merge, in sort order.
+     */
+    private abstract static class RunReader implements Comparable<RunReader> {
+        Entry current;
+
+        abstract Entry read() throws IOException;
+
+        @Override
+        public int compareTo(final RunReader other) {
+            return current.compareTo(other.current);
+        }
+    }
+
     @Override
     public Item itemAt(final int pos) {
         if (items != null && pos > -1 && pos < count) {
@@ -317,6 +568,35 @@ public class OrderedValueSequence extends AbstractSequence {
             }
         }
 
+        /**
+         * Reads an entry written by {@link #write(DataOutputStream)}.
+         */
+        Entry(final DataInputStream is) throws IOException {
+            this.pos = is.readInt();
+            values = new AtomicValue[orderSpecs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (AtomicValue) ItemSpill.read(is, runDocuments);
+            }
+            this.item = ItemSpill.read(is, runDocuments);
+        }
+
+        void write(final DataOutputStream os) throws IOException {
+            os.writeInt(pos);
+            for (final AtomicValue value : values) {
+                ItemSpill.write(os, value, runDocuments);
+            }
+            ItemSpill.write(os, item, runDocuments);
+        }
+
+        boolean isSpillable() {
+            for (final AtomicValue value : values) {
+                if (!ItemSpill.isSpillable(value)) {
+                    return false;
+                }
+            }
+            return ItemSpill.isSpillable(item);
+        }
+
         @Override
         public int compareTo(final Entry other) {
             int cmp = 0;
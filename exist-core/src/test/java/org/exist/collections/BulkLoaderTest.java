@@ -0,0 +1,79 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.test.TestConstants.TEST_COLLECTION_URI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class BulkLoaderTest {
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void failedDocumentInBatch() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final BulkLoader.Report report;
+        try (final BulkLoader loader = new BulkLoader(pool, pool.getSecurityManager().getSystemSubject(),
+                TEST_COLLECTION_URI, 1, 10)) {
+            add(loader, "a.xml", "<a/>");
+            add(loader, "sub/b.xml", "<b>");
+            add(loader, "c.xml", "<c/>");
+            report = loader.finish();
+        }
+
+        assertEquals(2, report.getStored());
+        assertEquals(1, report.getFailed());
+        assertEquals(TEST_COLLECTION_URI.append("sub/b.xml").toString(), report.getFailures().get(0).getPath());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertStored(broker, "a.xml", "<a/>");
+            assertStored(broker, "c.xml", "<c/>");
+            try (final LockedDocument doc = broker.getXMLResource(TEST_COLLECTION_URI.append("sub/b.xml"), LockMode.READ_LOCK)) {
+                assertNull(doc);
+            }
+        }
+    }
+
+    private static void add(final BulkLoader loader, final String path, final String content) throws Exception {
+        loader.add(path, null, new ByteArrayInputStream(content.getBytes(UTF_8)));
+    }
+
+    private static void assertStored(final DBBroker broker, final String name, final String content) throws Exception {
+        try (final LockedDocument doc = broker.getXMLResource(TEST_COLLECTION_URI.append(name), LockMode.READ_LOCK)) {
+            assertNotNull(doc);
+            assertEquals(content, broker.getSerializer().serialize(doc.getDocument()));
+        }
+    }
+}
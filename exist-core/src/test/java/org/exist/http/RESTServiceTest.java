@@ -20,15 +20,19 @@
 package org.exist.http;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.xml.parsers.ParserConfigurationException;
 
 import com.googlecode.junittoolbox.ParallelRunner;
@@ -56,7 +60,9 @@ import org.junit.Test;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeThat;
@@ -695,6 +701,108 @@ try {
         doStoredQuery(true, true);
     }
 
+    @Test
+    public void getBinaryRanges() throws IOException {
+        doPut("0123456789abcdefghij", "ranges.txt", HttpStatus.CREATED_201);
+        final String uri = getCollectionUri() + "/ranges.txt";
+
+        HttpURLConnection connect = getConnection(uri);
+        try {
+            connect.setRequestMethod("GET");
+            connect.setRequestProperty("Range", "bytes=2-5");
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.PARTIAL_CONTENT_206, r);
+            assertEquals("bytes 2-5/20", connect.getHeaderField("Content-Range"));
+            assertEquals("2345", readResponse(connect.getInputStream()).trim());
+        } finally {
+            connect.disconnect();
+        }
+
+        connect = getConnection(uri);
+        try {
+            connect.setRequestMethod("GET");
+            connect.setRequestProperty("Range", "bytes=0-1, -2");
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.PARTIAL_CONTENT_206, r);
+            assertTrue(connect.getContentType().startsWith("multipart/byteranges; boundary="));
+            final String response = readResponse(connect.getInputStream());
+            assertTrue(response.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+            assertTrue(response.contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n"));
+        } finally {
+            connect.disconnect();
+        }
+
+        connect = getConnection(uri);
+        try {
+            connect.setRequestMethod("GET");
+            connect.setRequestProperty("Range", "bytes=20-");
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.RANGE_NOT_SATISFIABLE_416, r);
+            assertEquals("bytes */20", connect.getHeaderField("Content-Range"));
+        } finally {
+            connect.disconnect();
+        }
+    }
+
+    @Test
+    public void getIfNoneMatch() throws IOException {
+        doPut("first version", "etag.txt", HttpStatus.CREATED_201);
+        final String uri = getCollectionUri() + "/etag.txt";
+
+        final String entityTag;
+        HttpURLConnection connect = getConnection(uri);
+        try {
+            connect.setRequestMethod("GET");
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.OK_200, r);
+            entityTag = connect.getHeaderField("ETag");
+            assertNotNull(entityTag);
+            assertTrue(entityTag.startsWith("\""));
+        } finally {
+            connect.disconnect();
+        }
+
+        // answered from the validators remembered for the first request
+        for (int i = 0; i < 2; i++) {
+            connect = getConnection(uri);
+            try {
+                connect.setRequestMethod("GET");
+                connect.setRequestProperty("If-None-Match", entityTag);
+                connect.connect();
+
+                final int r = connect.getResponseCode();
+                assertEquals("Server returned response code " + r, HttpStatus.NOT_MODIFIED_304, r);
+                assertEquals(entityTag, connect.getHeaderField("ETag"));
+            } finally {
+                connect.disconnect();
+            }
+        }
+
+        doPut("second version", "etag.txt", HttpStatus.CREATED_201);
+
+        connect = getConnection(uri);
+        try {
+            connect.setRequestMethod("GET");
+            connect.setRequestProperty("If-None-Match", entityTag);
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.OK_200, r);
+            assertNotEquals(entityTag, connect.getHeaderField("ETag"));
+            assertEquals("second version", readResponse(connect.getInputStream()).trim());
+        } finally {
+            connect.disconnect();
+        }
+    }
+
     private void doPut(final String data, final String path, final int responseCode) throws IOException {
         final HttpURLConnection connect = getConnection(getCollectionUri() + '/' + path);
         try {
@@ -836,6 +944,56 @@ try {
         }
     }
 
+    @Test
+    public void postBulkZip() throws IOException {
+        final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (final ZipOutputStream zos = new ZipOutputStream(zip)) {
+            final String[][] entries = {
+                    { "bulk/a.xml", "<a>1</a>" },
+                    { "bulk/sub/b.xml", "<b>2</b>" },
+                    { "bulk/c.txt", "three" },
+                    { "bulk/bad.xml", "<bad>" }
+            };
+            for (final String[] entry : entries) {
+                zos.putNextEntry(new ZipEntry(entry[0]));
+                zos.write(entry[1].getBytes(UTF_8));
+                zos.closeEntry();
+            }
+        }
+
+        HttpURLConnection connect = getConnection(getCollectionUri() + "?_bulk=yes&_threads=2&_batch=2");
+        try {
+            connect.setRequestProperty("Authorization", "Basic " + credentials);
+            connect.setRequestMethod("POST");
+            connect.setDoOutput(true);
+            connect.setRequestProperty("Content-Type", "application/zip");
+            try (final OutputStream os = connect.getOutputStream()) {
+                os.write(zip.toByteArray());
+            }
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.OK_200, r);
+            final String response = readResponse(connect.getInputStream());
+            assertThat(response, containsString("stored=\"3\""));
+            assertThat(response, containsString("failed=\"1\""));
+            assertThat(response, containsString("bulk/bad.xml"));
+        } finally {
+            connect.disconnect();
+        }
+
+        connect = getConnection(getCollectionUri() + "/bulk/sub/b.xml");
+        try {
+            connect.setRequestMethod("GET");
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.OK_200, r);
+            assertThat(readResponse(connect.getInputStream()), containsString("<b>2</b>"));
+        } finally {
+            connect.disconnect();
+        }
+    }
+
     private HttpURLConnection preparePost(final String content, final String path) throws IOException {
         final HttpURLConnection connect = getConnection(path);
         try {
@@ -0,0 +1,152 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexUpdateQueueTest {
+
+    /**
+     * No index is registered with this id, so applying an update only advances the watermark.
+     */
+    private static final String INDEX_ID = "test-async-index";
+
+    private static final XmldbURI DOC_URI = XmldbURI.ROOT_COLLECTION_URI.append("async-update.xml");
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void enqueuedWhenTransactionCompletes() throws EXistException, PermissionDeniedException, LockException,
+            SAXException, IOException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final IndexUpdateQueue queue = pool.getIndexUpdateQueue();
+        storeDocument(pool);
+
+        final long before = queue.getEnqueuedSequence();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction();
+                final LockedDocument lockedDocument = broker.getXMLResource(DOC_URI, LockMode.READ_LOCK)) {
+            queue.enqueue(transaction, INDEX_ID, lockedDocument.getDocument());
+
+            // not visible before the transaction has committed
+            assertEquals(before, queue.getEnqueuedSequence());
+
+            transaction.commit();
+        }
+
+        final long sequence = queue.getEnqueuedSequence();
+        assertEquals(before + 1, sequence);
+        assertTrue(queue.await(sequence, 60_000));
+        assertTrue(queue.getAppliedSequence() >= sequence);
+    }
+
+    @Test
+    public void replayedOnRestartAndTruncated() throws EXistException, PermissionDeniedException, LockException,
+            SAXException, IOException, DatabaseConfigurationException, InterruptedException {
+        final int[] ids = storeDocument(existEmbeddedServer.getBrokerPool());
+
+        existEmbeddedServer.stopDb(false);
+        final Path queueFile = existEmbeddedServer.getTemporaryStorage().get().resolve("index-updates.log");
+        assertEquals(0, Files.size(queueFile));
+
+        // an update which was committed, but not applied before the database stopped
+        Files.write(queueFile, (INDEX_ID + " " + ids[0] + " " + ids[1] + "\n").getBytes(UTF_8), APPEND);
+
+        existEmbeddedServer.startDb();
+        final IndexUpdateQueue queue = existEmbeddedServer.getBrokerPool().getIndexUpdateQueue();
+        assertEquals(1, queue.getEnqueuedSequence());
+        assertTrue(queue.await(1, 60_000));
+
+        // all of the updates were applied, so the queue file is truncated on shutdown
+        existEmbeddedServer.stopDb(false);
+        assertEquals(0, Files.size(queueFile));
+
+        existEmbeddedServer.startDb();
+        assertEquals(0, existEmbeddedServer.getBrokerPool().getIndexUpdateQueue().getEnqueuedSequence());
+    }
+
+    @Test
+    public void updateOfRemovedDocumentIsSkipped() throws EXistException, PermissionDeniedException, LockException,
+            SAXException, IOException, DatabaseConfigurationException, InterruptedException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final int[] ids = storeDocument(pool);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction();
+                final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, LockMode.WRITE_LOCK)) {
+            collection.removeXMLResource(transaction, broker, DOC_URI.lastSegment());
+            transaction.commit();
+        }
+
+        existEmbeddedServer.stopDb(false);
+        final Path dataDir = existEmbeddedServer.getTemporaryStorage().get();
+        Files.write(dataDir.resolve("index-updates.log"), (INDEX_ID + " " + ids[0] + " " + ids[1] + "\n").getBytes(UTF_8), APPEND);
+
+        // the update is neither retried nor quarantined
+        existEmbeddedServer.startDb();
+        assertTrue(existEmbeddedServer.getBrokerPool().getIndexUpdateQueue().await(1, 5_000));
+        assertFalse(Files.exists(dataDir.resolve("index-updates.failed")));
+    }
+
+    /**
+     * @return the id of the collection and the id of the document
+     */
+    private static int[] storeDocument(final BrokerPool pool) throws EXistException, PermissionDeniedException,
+            LockException, SAXException, IOException {
+        final String xml = "<root><p>walross</p></root>";
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction();
+                final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, LockMode.WRITE_LOCK)) {
+            final IndexInfo indexInfo = collection.validateXMLResource(transaction, broker, DOC_URI.lastSegment(), xml);
+            collection.store(transaction, broker, indexInfo, xml);
+            final DocumentImpl doc = indexInfo.getDocument();
+            transaction.commit();
+            return new int[] { collection.getId(), doc.getDocId() };
+        }
+    }
+}
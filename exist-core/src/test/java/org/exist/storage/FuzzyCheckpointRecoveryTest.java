@@ -0,0 +1,166 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.storage.btree.BTreeCallback;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.Value;
+import org.exist.storage.dom.DOMFile;
+import org.exist.storage.journal.Lsn;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xquery.TerminatedException;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Pages which are still dirty when a fuzzy checkpoint is written
+ * must be recovered by redoing the journal from the redo LSN of the
+ * checkpoint.
+ */
+public class FuzzyCheckpointRecoveryTest {
+
+    private static final int DOC_ID = 500;
+    private static final int WRITER_DOC_ID = 501;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS, true)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void recoverFromFuzzyCheckpoint() throws EXistException, IOException, BTreeException, TerminatedException, DatabaseConfigurationException {
+        BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        BrokerPool.FORCE_CORRUPTION = true;
+
+        store(pool);
+
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.restart();
+        pool = existEmbeddedServer.getBrokerPool();
+
+        assertEquals(1500, count(pool, DOC_ID));
+    }
+
+    @Test
+    public void pageWriterWritesDirtyPages() throws EXistException, IOException, BTreeException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager mgr = pool.getTransactionManager();
+        final NodeIdFactory idFact = pool.getNodeFactory();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            domDb.setOwnerObject(this);
+
+            try (final Txn txn = mgr.beginTransaction()) {
+                for (int i = 1; i <= 1000; i++) {
+                    domDb.addValue(txn, new NativeBroker.NodeRef(WRITER_DOC_ID, idFact.createInstance(i)), i);
+                }
+                mgr.commit(txn);
+            }
+            assertTrue(domDb.getDirtyPageCount() > 0);
+            assertFalse(domDb.getOldestDirtyLsn().equals(Lsn.LSN_INVALID));
+
+            final long written = pool.getPageWriter().getPagesWritten();
+            pool.getPageWriter().writeDirtyPages(Integer.MAX_VALUE);
+
+            assertEquals(0, domDb.getDirtyPageCount());
+            assertEquals(Lsn.LSN_INVALID, domDb.getOldestDirtyLsn());
+            assertTrue(pool.getPageWriter().getPagesWritten() > written);
+        }
+
+        assertEquals(1000, count(pool, WRITER_DOC_ID));
+    }
+
+    private void store(final BrokerPool pool) throws EXistException, IOException, BTreeException, TerminatedException {
+        final TransactionManager mgr = pool.getTransactionManager();
+        final NodeIdFactory idFact = pool.getNodeFactory();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            broker.flush();
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            domDb.setOwnerObject(this);
+
+            try (final Txn txn = mgr.beginTransaction()) {
+                for (int i = 1; i <= 1000; i++) {
+                    domDb.addValue(txn, new NativeBroker.NodeRef(DOC_ID, idFact.createInstance(i)), i);
+                }
+                mgr.commit(txn);
+            }
+
+            // the fuzzy checkpoint must not write the dirty pages
+            assertTrue(domDb.getDirtyPageCount() > 0);
+            pool.sync(broker, Sync.MAJOR);
+            assertTrue(domDb.getDirtyPageCount() > 0);
+
+            try (final Txn txn = mgr.beginTransaction()) {
+                for (int i = 1001; i <= 1500; i++) {
+                    domDb.addValue(txn, new NativeBroker.NodeRef(DOC_ID, idFact.createInstance(i)), i);
+                }
+                mgr.commit(txn);
+            }
+
+            // start a dirty, uncommitted transaction. This will be rolled back by the recovery.
+            final Txn txn = mgr.beginTransaction();
+            for (int i = 2001; i <= 2500; i++) {
+                domDb.addValue(txn, new NativeBroker.NodeRef(DOC_ID, idFact.createInstance(i)), i);
+            }
+
+            // DO NOT COMMIT THE TRANSACTION!
+
+            pool.getJournalManager().get().flush(true, false);
+        }
+    }
+
+    private int count(final BrokerPool pool, final int docId) throws EXistException, IOException, BTreeException, TerminatedException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            domDb.setOwnerObject(this);
+
+            final CountingCallback callback = new CountingCallback();
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new NativeBroker.NodeRef(docId));
+            domDb.query(query, callback);
+            return callback.count;
+        }
+    }
+
+    private static final class CountingCallback implements BTreeCallback {
+        private int count = 0;
+
+        @Override
+        public boolean indexInfo(final Value value, final long pointer) {
+            count++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.numbering.DLN;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NodeValueCacheTest {
+
+    @Test
+    public void cachedWhileOpen() {
+        final NodeValueCache cache = new NodeValueCache(new NotificationService());
+        cache.put(1, new DLN("1.2"), "ignored");
+        assertNull(cache.get(1, new DLN("1.2")));
+
+        cache.open();
+        cache.put(1, new DLN("1.2"), "value");
+        assertEquals("value", cache.get(1, new DLN("1.2")));
+        assertNull(cache.get(1, new DLN("1.3")));
+        assertNull(cache.get(2, new DLN("1.2")));
+
+        // nested queries share the values
+        cache.open();
+        cache.close();
+        assertEquals("value", cache.get(1, new DLN("1.2")));
+
+        cache.close();
+        assertNull(cache.get(1, new DLN("1.2")));
+    }
+
+    @Test
+    public void clearedByUpdate() {
+        final NotificationService notificationService = new NotificationService();
+        final NodeValueCache cache = new NodeValueCache(notificationService);
+        cache.open();
+        cache.put(1, new DLN("1.2"), "value");
+        notificationService.notifyUpdate(null, UpdateListener.UPDATE);
+        assertNull(cache.get(1, new DLN("1.2")));
+        cache.close();
+    }
+
+    @Test
+    public void bounded() {
+        final NodeValueCache cache = new NodeValueCache(new NotificationService());
+        cache.open();
+        for (int i = 1; i <= NodeValueCache.MAX_ENTRIES + 1; i++) {
+            cache.put(1, new DLN(i), "value " + i);
+        }
+        assertNull(cache.get(1, new DLN(1)));
+        assertEquals("value 2", cache.get(1, new DLN(2)));
+        cache.close();
+    }
+}
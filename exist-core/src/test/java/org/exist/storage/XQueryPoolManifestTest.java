@@ -0,0 +1,169 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class XQueryPoolManifestTest {
+
+    private static final XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("test");
+    private static final XmldbURI CURRENT = TEST_COLLECTION_URI.append("current.xq");
+    private static final XmldbURI CHANGED = TEST_COLLECTION_URI.append("changed.xq");
+    private static final XmldbURI REMOVED = TEST_COLLECTION_URI.append("removed.xq");
+    private static final XmldbURI MISSING = TEST_COLLECTION_URI.append("missing.xq");
+    private static final XmldbURI LIBRARY = TEST_COLLECTION_URI.append("library.xqm");
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(XQueryPool.PROPERTY_PERSIST, true)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void precompileAfterRestart() throws EXistException, PermissionDeniedException, IOException,
+            LockException, DatabaseConfigurationException, InterruptedException {
+        BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            store(broker, CURRENT, "1 + 1");
+            store(broker, CHANGED, "2 + 2");
+            store(broker, REMOVED, "3 + 3");
+            store(broker, LIBRARY, "module namespace lib = 'http://exist-db.org/test/lib'; declare function lib:f() { 4 };");
+
+            final XQueryPool queryPool = pool.getXQueryPool();
+            assertTrue(queryPool.precompile(broker, CURRENT));
+            assertTrue(queryPool.precompile(broker, CHANGED));
+            assertTrue(queryPool.precompile(broker, REMOVED));
+
+            // library modules are not added to the pool
+            assertFalse(queryPool.precompile(broker, LIBRARY));
+
+            remove(broker, REMOVED);
+        }
+
+        // the manifest is written when the pool stops
+        existEmbeddedServer.stopDb(false);
+        final Path manifest = existEmbeddedServer.getTemporaryStorage().get().resolve(QueryPoolManifest.FILE_NAME);
+        final Map<XmldbURI, QueryPoolManifest.Entry> entries = new HashMap<>();
+        for (final QueryPoolManifest.Entry entry : QueryPoolManifest.read(manifest)) {
+            entries.put(entry.path, entry);
+        }
+        assertEquals(2, entries.size());
+        assertTrue(entries.containsKey(CURRENT));
+        assertTrue(entries.containsKey(CHANGED));
+
+        // simulate a query which changed, and a query which was removed, since the manifest was written
+        final String digest = entries.get(CURRENT).digest;
+        final String changedDigest = entries.get(CHANGED).digest;
+        final List<String> lines = new ArrayList<>();
+        lines.add(Files.readAllLines(manifest, UTF_8).get(0));
+        lines.add(CURRENT + "\t" + digest);
+        lines.add(CHANGED + "\t" + (changedDigest.startsWith("0") ? "1" : "0") + changedDigest.substring(1));
+        lines.add(MISSING + "\t" + digest);
+        Files.write(manifest, lines, UTF_8);
+
+        existEmbeddedServer.startDb();
+        pool = existEmbeddedServer.getBrokerPool();
+        assertTrue(pool.getXQueryPool().awaitWarmUp(60_000));
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertNotNull(borrow(broker, CURRENT));
+            assertNull(borrow(broker, CHANGED));
+            assertNull(borrow(broker, REMOVED));
+        }
+    }
+
+    @Test
+    public void emptyManifestWithoutStoredQueries() throws EXistException, IOException, DatabaseConfigurationException,
+            InterruptedException {
+        existEmbeddedServer.stopDb(false);
+        final Path manifest = existEmbeddedServer.getTemporaryStorage().get().resolve(QueryPoolManifest.FILE_NAME);
+        assertTrue(QueryPoolManifest.read(manifest).isEmpty());
+
+        existEmbeddedServer.startDb();
+        assertTrue(existEmbeddedServer.getBrokerPool().getXQueryPool().awaitWarmUp(60_000));
+    }
+
+    private static void store(final DBBroker broker, final XmldbURI path, final String query)
+            throws EXistException, PermissionDeniedException, IOException, LockException {
+        final BrokerPool pool = broker.getBrokerPool();
+        try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, path.removeLastSegment());
+            broker.saveCollection(transaction, collection);
+            collection.addBinaryResource(transaction, broker, path.lastSegment(), query.getBytes(UTF_8),
+                    MimeType.XQUERY_TYPE.getName());
+            transaction.commit();
+        }
+    }
+
+    private static void remove(final DBBroker broker, final XmldbURI path)
+            throws EXistException, PermissionDeniedException, IOException, LockException {
+        final BrokerPool pool = broker.getBrokerPool();
+        try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(path.removeLastSegment(), LockMode.WRITE_LOCK)) {
+            collection.removeBinaryResource(transaction, broker, path.lastSegment());
+            transaction.commit();
+        }
+    }
+
+    private static CompiledXQuery borrow(final DBBroker broker, final XmldbURI path)
+            throws PermissionDeniedException {
+        try (final LockedDocument lockedDoc = broker.getXMLResource(path, LockMode.READ_LOCK)) {
+            if (lockedDoc == null) {
+                return null;
+            }
+            final DBSource source = new DBSource(broker, (BinaryDocument) lockedDoc.getDocument(), true);
+            return broker.getBrokerPool().getXQueryPool().borrowCompiledXQuery(broker, source);
+        }
+    }
+}
@@ -179,6 +179,39 @@ public class BlobStoreImplTest {
         }
     }
 
+    @Test
+    public void lease() throws IOException {
+        final Path blobDbx = temporaryFolder.getRoot().toPath().resolve("blob.dbx");
+        final Path blobDir = temporaryFolder.newFolder("blob").toPath();
+
+        final Tuple2<byte[], MessageDigest> testFile1 = generateTestFile();
+
+        try (final BlobStore blobStore = newBlobStore(blobDbx, blobDir)) {
+            blobStore.open();
+
+            final BlobId testFileId1 = addAndVerify(blobStore, testFile1);
+
+            try (final BlobLease lease = blobStore.lease(null, testFileId1)) {
+                assertNotNull(lease);
+                assertEquals(testFile1._1.length, lease.getChannel().size());
+
+                // whole blob, memory mapped
+                try (final FastByteArrayOutputStream os = new FastByteArrayOutputStream()) {
+                    lease.transferTo(0, testFile1._1.length, os);
+                    assertArrayEquals(testFile1._1, os.toByteArray());
+                }
+
+                // small range, transferred from the channel
+                try (final FastByteArrayOutputStream os = new FastByteArrayOutputStream()) {
+                    lease.transferTo(1000, 100, os);
+                    assertArrayEquals(Arrays.copyOfRange(testFile1._1, 1000, 1100), os.toByteArray());
+                }
+            }
+
+            assertNull(blobStore.lease(null, new BlobId(new byte[DIGEST_TYPE.getDigestLengthBytes()])));
+        }
+    }
+
     @Test
     public void removeUnique() throws IOException {
         final Path blobDbx = temporaryFolder.getRoot().toPath().resolve("blob.dbx");
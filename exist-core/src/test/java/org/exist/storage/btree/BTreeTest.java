@@ -164,6 +164,74 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void addValues() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.setSplitFactor(0.7);
+            btree.create((short) -1);
+
+            final Map<String, Long> keys = new TreeMap<>();
+
+            // a sorted run
+            final Value[] values = new Value[COUNT];
+            final long[] pointers = new long[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                final String key = String.format("K%08d", i);
+                values[i] = new Value(key);
+                pointers[i] = i;
+                keys.put(key, (long) i);
+            }
+            btree.addValues(values, pointers);
+
+            // an unsorted run, which overwrites some of the keys and interleaves new ones
+            final Random rand = new Random(42);
+            for (int i = 0; i < COUNT; i++) {
+                final String key = String.format("K%08d", rand.nextInt(COUNT * 2)) + (rand.nextBoolean() ? "" : "a");
+                values[i] = new Value(key);
+                pointers[i] = COUNT + i;
+                keys.put(key, (long) (COUNT + i));
+            }
+            btree.addValues(values, pointers);
+            btree.flush();
+
+            for (final Map.Entry<String, Long> entry : keys.entrySet()) {
+                assertEquals(entry.getValue().longValue(), btree.findValue(new Value(entry.getKey())));
+            }
+
+            btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("K")), new StringIndexCallback());
+            assertEquals(keys.size(), count);
+        }
+    }
+
+    @Test
+    public void longCommonPrefix() throws DBException, IOException, TerminatedException {
+        // keys sharing more bytes than fit into the prefix length of a leaf key
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            buf.append('p');
+        }
+        final String prefixStr = buf.toString();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+            }
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+            btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr)), new StringIndexCallback());
+            assertEquals(COUNT, count);
+        }
+    }
+
     @Test
     public void stringsTruncated() throws DBException, IOException, TerminatedException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
@@ -0,0 +1,202 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressedPageStoreTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writeAndReadBack() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final CompressedPageStore store = open(file, false)) {
+            assertTrue(store.isPageGranular());
+            for (int i = 0; i < 10; i++) {
+                store.write((long) i * PAGE_SIZE, markup(i));
+            }
+            assertEquals(10 * PAGE_SIZE, store.size());
+            assertTrue(store.getCompressionRatio() > 2.0);
+            assertTrue(Files.size(file) < 10 * PAGE_SIZE / 2);
+
+            for (int i = 0; i < 10; i++) {
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf);
+                assertArrayEquals(markup(i), buf);
+            }
+        }
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final CompressedPageStore store = open(file, false)) {
+            for (int i = 0; i < 10; i++) {
+                store.write((long) i * PAGE_SIZE, i % 2 == 0 ? markup(i) : random(i));
+            }
+        }
+        assertTrue(CompressedPageStore.isCompressed(file));
+
+        final long size = Files.size(file);
+        try (final CompressedPageStore store = open(file, false)) {
+            assertEquals(10 * PAGE_SIZE, store.size());
+            for (int i = 0; i < 10; i++) {
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf);
+                assertArrayEquals(i % 2 == 0 ? markup(i) : random(i), buf);
+            }
+
+            // rewriting the pages reuses their sectors
+            for (int i = 0; i < 10; i++) {
+                store.write((long) i * PAGE_SIZE, i % 2 == 0 ? markup(i + 1) : random(i + 1));
+            }
+            assertEquals(size, Files.size(file));
+        }
+    }
+
+    @Test
+    public void partialReadAndWrite() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final CompressedPageStore store = open(file, false)) {
+            final byte[] content = new byte[3 * PAGE_SIZE];
+            for (int i = 0; i < 3; i++) {
+                System.arraycopy(markup(i), 0, content, i * PAGE_SIZE, PAGE_SIZE);
+            }
+            store.write(0, content);
+
+            // a page header spanning no page boundary, and data spanning two pages
+            final byte[] header = new byte[32];
+            store.read(PAGE_SIZE, header);
+            assertArrayEquals(Arrays.copyOfRange(content, PAGE_SIZE, PAGE_SIZE + 32), header);
+            final byte[] span = new byte[PAGE_SIZE];
+            store.read(PAGE_SIZE + 100, span);
+            assertArrayEquals(Arrays.copyOfRange(content, PAGE_SIZE + 100, 2 * PAGE_SIZE + 100), span);
+
+            final byte[] update = new byte[16];
+            Arrays.fill(update, (byte) 'x');
+            store.write(2 * PAGE_SIZE + 8, update);
+            System.arraycopy(update, 0, content, 2 * PAGE_SIZE + 8, update.length);
+
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            store.transferTo(os);
+            assertArrayEquals(content, os.toByteArray());
+        }
+    }
+
+    @Test
+    public void zeroPagesAreNotStored() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final CompressedPageStore store = open(file, false)) {
+            store.write(0, random(1));
+            final long size = Files.size(file);
+
+            store.write(PAGE_SIZE * 5, new byte[PAGE_SIZE]);
+            assertEquals(6 * PAGE_SIZE, store.size());
+            assertEquals(size, Files.size(file));
+
+            // a removed page frees its sectors
+            store.write(0, new byte[PAGE_SIZE]);
+            assertEquals(0, store.getStoredBytes());
+            store.write(PAGE_SIZE, random(2));
+            assertEquals(size, Files.size(file));
+
+            final byte[] buf = page((byte) 1);
+            store.read(PAGE_SIZE * 3, buf);
+            assertArrayEquals(new byte[PAGE_SIZE], buf);
+            store.read(PAGE_SIZE * 10, buf);
+            assertArrayEquals(new byte[PAGE_SIZE], buf);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readOnlyWrite() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final CompressedPageStore store = open(file, false)) {
+            store.write(0, markup(0));
+        }
+        try (final CompressedPageStore store = open(file, true)) {
+            store.write(0, markup(1));
+        }
+    }
+
+    @Test
+    public void sectorsBeyondEndOfFile() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final CompressedPageStore store = open(file, false)) {
+            for (int i = 0; i < 10; i++) {
+                store.write((long) i * PAGE_SIZE, random(i));
+            }
+        }
+
+        // lose the sectors of the last pages, but not their entries in the map
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        try (final CompressedPageStore store = open(file, true)) {
+            fail("Expected the truncated page store to be reported as corrupt");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is corrupt"));
+        }
+    }
+
+    private static CompressedPageStore open(final Path file, final boolean readOnly) throws IOException {
+        return new CompressedPageStore(file, new RandomAccessFile(file.toFile(), readOnly ? "r" : "rw"), readOnly, PAGE_SIZE);
+    }
+
+    /**
+     * A page of repetitive markup, as stored in the dom.dbx.
+     */
+    private static byte[] markup(final int seed) {
+        final byte[] page = new byte[PAGE_SIZE];
+        final byte[] element = ("<l n=\"" + seed + "\">Arma virumque cano</l>").getBytes();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page[i] = element[i % element.length];
+        }
+        return page;
+    }
+
+    private static byte[] random(final int seed) {
+        final byte[] page = new byte[PAGE_SIZE];
+        new Random(seed).nextBytes(page);
+        return page;
+    }
+
+    private static byte[] page(final byte value) {
+        final byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, value);
+        return page;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedPageStoreTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    // small regions, so that pages span several regions
+    private static final int REGION_SIZE = 3 * PAGE_SIZE + 17;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readPastEndIsZeroFilled() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final PageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), false, REGION_SIZE)) {
+            final byte[] buf = page((byte) 1);
+            store.read(PAGE_SIZE * 10, buf);
+            assertArrayEquals(new byte[PAGE_SIZE], buf);
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void writeGrowsAndReadsBack() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final PageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), false, REGION_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                store.write((long) i * PAGE_SIZE, page((byte) i));
+            }
+            assertEquals(10 * PAGE_SIZE, store.size());
+
+            for (int i = 0; i < 10; i++) {
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf);
+                assertArrayEquals(page((byte) i), buf);
+            }
+
+            // overwrite pages which are now mapped
+            for (int i = 0; i < 10; i++) {
+                store.write((long) i * PAGE_SIZE, page((byte) (i + 100)));
+            }
+        }
+
+        // the content must be visible to a plain RandomAccessFile
+        try (final PageStore store = new RandomAccessPageStore(new RandomAccessFile(file.toFile(), "r"))) {
+            for (int i = 0; i < 10; i++) {
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf);
+                assertArrayEquals(page((byte) (i + 100)), buf);
+            }
+        }
+    }
+
+    @Test
+    public void readExistingFile() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        final byte[] content = new byte[7 * PAGE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        Files.write(file, content);
+
+        try (final PageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "r"), true, REGION_SIZE)) {
+            final byte[] buf = new byte[PAGE_SIZE];
+            store.read(PAGE_SIZE * 5 + 11, buf);
+            assertArrayEquals(Arrays.copyOfRange(content, PAGE_SIZE * 5 + 11, PAGE_SIZE * 6 + 11), buf);
+
+            // partially past the end of the file
+            store.read(PAGE_SIZE * 6 + 11, buf);
+            final byte[] expected = new byte[PAGE_SIZE];
+            System.arraycopy(content, PAGE_SIZE * 6 + 11, expected, 0, PAGE_SIZE - 11);
+            assertArrayEquals(expected, buf);
+
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            store.transferTo(os);
+            assertArrayEquals(content, os.toByteArray());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readOnlyWrite() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        try (final PageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "r"), true, REGION_SIZE)) {
+            store.write(0, page((byte) 1));
+        }
+    }
+
+    private static byte[] page(final byte value) {
+        final byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, value);
+        return page;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PageBufferPoolTest {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int FRAMES = PageBufferPool.MIN_STRIPE_FRAMES;
+
+    @Test
+    public void disabledByDefault() {
+        final PageBufferPool pool = new PageBufferPool(PAGE_SIZE, 0);
+        assertFalse(pool.isEnabled());
+        assertNull(pool.register("test.dbx"));
+    }
+
+    @Test
+    public void loadAndRead() {
+        final PageBufferPool pool = new PageBufferPool(PAGE_SIZE, (long) FRAMES * PAGE_SIZE);
+        final PageBufferPool.PagedFile file = pool.register("test.dbx");
+        final byte[] buf = new byte[PAGE_SIZE];
+
+        assertFalse(file.read(3, buf));
+        file.load(3, page((byte) 3), file.getWriteCount());
+        assertTrue(file.read(3, buf));
+        assertArrayEquals(page((byte) 3), buf);
+
+        assertEquals(1, file.getHits());
+        assertEquals(1, file.getMisses());
+        assertEquals(1, file.getFrames());
+        assertEquals(0, pool.getAllocated() % PAGE_SIZE);
+        assertTrue(pool.getAllocated() > 0);
+    }
+
+    @Test
+    public void writeReplacesPage() {
+        final PageBufferPool pool = new PageBufferPool(PAGE_SIZE, (long) FRAMES * PAGE_SIZE);
+        final PageBufferPool.PagedFile file = pool.register("test.dbx");
+        final byte[] buf = new byte[PAGE_SIZE];
+
+        file.load(1, page((byte) 1), file.getWriteCount());
+        file.write(1, page((byte) 2));
+        assertTrue(file.read(1, buf));
+        assertArrayEquals(page((byte) 2), buf);
+
+        // a page read from disk before the write must not replace it
+        file.load(1, page((byte) 1), 0);
+        assertTrue(file.read(1, buf));
+        assertArrayEquals(page((byte) 2), buf);
+    }
+
+    @Test
+    public void staleLoadIsIgnored() {
+        final PageBufferPool pool = new PageBufferPool(PAGE_SIZE, (long) FRAMES * PAGE_SIZE);
+        final PageBufferPool.PagedFile file = pool.register("test.dbx");
+
+        final long writeCount = file.getWriteCount();
+        file.write(7, page((byte) 7));
+        file.invalidate();
+        file.load(7, page((byte) 6), writeCount);
+
+        assertFalse(file.read(7, new byte[PAGE_SIZE]));
+        assertEquals(0, file.getFrames());
+    }
+
+    @Test
+    public void filesAreSeparate() {
+        final PageBufferPool pool = new PageBufferPool(PAGE_SIZE, (long) FRAMES * PAGE_SIZE);
+        final PageBufferPool.PagedFile file1 = pool.register("one.dbx");
+        final PageBufferPool.PagedFile file2 = pool.register("two.dbx");
+        final byte[] buf = new byte[PAGE_SIZE];
+
+        file1.write(5, page((byte) 1));
+        file2.write(5, page((byte) 2));
+
+        assertTrue(file1.read(5, buf));
+        assertArrayEquals(page((byte) 1), buf);
+        assertTrue(file2.read(5, buf));
+        assertArrayEquals(page((byte) 2), buf);
+
+        file1.close();
+        assertEquals(1, pool.getUsedFrames());
+        assertEquals(1, pool.getFiles().size());
+        assertTrue(file2.read(5, buf));
+    }
+
+    @Test
+    public void evictsWhenFull() {
+        final PageBufferPool pool = new PageBufferPool(PAGE_SIZE, (long) FRAMES * PAGE_SIZE);
+        final PageBufferPool.PagedFile file = pool.register("test.dbx");
+
+        for (int i = 0; i < FRAMES * 3; i++) {
+            file.write(i, page((byte) i));
+        }
+
+        assertEquals(FRAMES, pool.getFrames());
+        assertEquals(FRAMES, pool.getUsedFrames());
+        assertEquals(FRAMES * 2, pool.getEvictions());
+        assertEquals((long) FRAMES * PAGE_SIZE, pool.getAllocated());
+
+        // whatever is still in the pool has the right content
+        final byte[] buf = new byte[PAGE_SIZE];
+        for (int i = 0; i < FRAMES * 3; i++) {
+            if (file.read(i, buf)) {
+                assertArrayEquals(page((byte) i), buf);
+            }
+        }
+    }
+
+    private static byte[] page(final byte value) {
+        final byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, value);
+        return page;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.*;
+
+public class TwoQueueCacheTest {
+
+    private static final int SIZE = 16;
+
+    @Test
+    public void scanDoesNotEvictHotPages() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", SIZE, 0.0, 1.0, Cache.CacheType.DATA, 1);
+
+        // pages 0..7 are requested twice, the second time after they left the probation queue
+        for (int i = 0; i < 8; i++) {
+            cache.add(new Page(i));
+        }
+        for (int i = 100; i < 100 + SIZE; i++) {
+            cache.add(new Page(i));
+        }
+        for (int i = 0; i < 8; i++) {
+            assertNull(cache.get(i));
+            cache.add(new Page(i));
+        }
+
+        // scan
+        for (int i = 1000; i < 2000; i++) {
+            cache.add(new Page(i));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            assertNotNull("hot page " + i + " was evicted by the scan", cache.get(i));
+        }
+        assertEquals(SIZE, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void pinnedPagesAreNotEvicted() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", SIZE, 0.0, 1.0, Cache.CacheType.DATA, 1);
+        final List<Page> pinned = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            final Page page = new Page(i);
+            page.unloadable = false;
+            pinned.add(page);
+            cache.add(page);
+        }
+
+        // the cache may temporarily hold more pages than its size
+        cache.add(new Page(SIZE));
+        assertEquals(SIZE + 1, cache.getUsedBuffers());
+        for (final Page page : pinned) {
+            assertSame(page, cache.get(page.getKey()));
+        }
+
+        for (final Page page : pinned) {
+            page.unloadable = true;
+        }
+        cache.add(new Page(SIZE + 1));
+        assertEquals(SIZE, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void evictedPagesAreSynced() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", SIZE, 0.0, 1.0, Cache.CacheType.DATA, 1);
+        final Page dirty = new Page(0);
+        dirty.dirty = true;
+        cache.add(dirty);
+        for (int i = 1; i <= SIZE; i++) {
+            cache.add(new Page(i));
+        }
+
+        assertNull(cache.get(0));
+        assertFalse(dirty.dirty);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getFails());
+    }
+
+    @Test
+    public void resize() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", SIZE * 4, 0.0, 1.0, Cache.CacheType.DATA, 1);
+        for (int i = 0; i < SIZE * 4; i++) {
+            cache.add(new Page(i));
+        }
+        assertEquals(SIZE * 4, cache.getUsedBuffers());
+
+        cache.resize(SIZE);
+        assertEquals(SIZE, cache.getBuffers());
+        assertEquals(SIZE, cache.getUsedBuffers());
+
+        cache.resize(SIZE * 2);
+        for (int i = 0; i < SIZE * 4; i++) {
+            cache.add(new Page(i));
+        }
+        assertEquals(SIZE * 2, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void innerPagesArePreferred() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", SIZE, 0.0, 1.0, Cache.CacheType.BTREE, 1);
+        final Page inner = new Page(0);
+        inner.innerPage = true;
+
+        cache.add(inner);
+
+        // admit leaf pages to the main queue, so that it has to evict pages
+        for (int i = 1; i <= SIZE; i++) {
+            cache.add(new Page(i));
+        }
+        for (int i = 1; i <= SIZE; i++) {
+            cache.add(new Page(i));
+        }
+
+        assertSame(inner, cache.get(0));
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", SIZE * 16, 0.0, 1.0, Cache.CacheType.DATA);
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        final long key = ThreadLocalRandom.current().nextInt(SIZE * 64);
+                        final Page page = cache.get(key);
+                        if (page == null) {
+                            cache.add(new Page(key));
+                        } else {
+                            assertEquals(key, page.getKey());
+                            cache.add(page);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(80_000, cache.getHits() + cache.getFails());
+        assertTrue(cache.getUsedBuffers() <= SIZE * 16);
+    }
+
+    private static class Page implements BTreeCacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+        private boolean dirty = false;
+        private boolean unloadable = true;
+        private boolean innerPage = false;
+
+        Page(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            final boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return unloadable;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        @Override
+        public boolean isInnerPage() {
+            return innerPage;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Checkpoint;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.exist.test.TestConstants.TEST_COLLECTION_URI;
+import static org.junit.Assert.*;
+
+/**
+ * Sharp and fuzzy checkpoints must be read back from the journal
+ * with the LSN they were written with.
+ */
+public class CheckpointJournalTest {
+
+    private static final String DOC = "<test>checkpoint</test>";
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @After
+    public void tearDown() {
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Test
+    public void sharpCheckpoint() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        store(pool, "doc1.xml");
+        synchronized (pool) {
+            pool.getTransactionManager().checkpoint(false);
+        }
+
+        final Checkpoint checkpoint = readLastCheckpoint();
+        assertFalse(checkpoint.isFuzzy());
+        assertEquals(Lsn.LSN_INVALID, checkpoint.getRedoLsn());
+    }
+
+    @Test
+    public void fuzzyCheckpoint() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        store(pool, "doc1.xml");
+        final Lsn redoLsn = pool.getJournalManager().get().lastWrittenLsn();
+        assertTrue(pool.getTransactionManager().fuzzyCheckpoint(redoLsn));
+
+        final Checkpoint checkpoint = readLastCheckpoint();
+        assertTrue(checkpoint.isFuzzy());
+        assertEquals(redoLsn, checkpoint.getRedoLsn());
+    }
+
+    @Test
+    public void recoverFromFuzzyCheckpoint() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        store(pool, "doc1.xml");
+        final Lsn redoLsn = pool.getJournalManager().get().lastWrittenLsn();
+        assertTrue(pool.getTransactionManager().fuzzyCheckpoint(redoLsn));
+        store(pool, "doc2.xml");
+        pool.getJournalManager().get().flush(true, false);
+
+        // shutdown without a checkpoint, recovery has to start from the fuzzy checkpoint
+        BrokerPool.FORCE_CORRUPTION = true;
+        pool.shutdown();
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        existEmbeddedServer.restart(false);
+        assertStored(existEmbeddedServer.getBrokerPool(), "doc1.xml");
+        assertStored(existEmbeddedServer.getBrokerPool(), "doc2.xml");
+    }
+
+    private static void store(final BrokerPool pool, final String name) throws Exception {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+
+            final IndexInfo indexInfo = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), DOC);
+            collection.store(transaction, broker, indexInfo, DOC);
+
+            transaction.commit();
+        }
+    }
+
+    private static void assertStored(final BrokerPool pool, final String name) throws Exception {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument doc = broker.getXMLResource(TEST_COLLECTION_URI.append(name), LockMode.READ_LOCK)) {
+            assertNotNull(doc);
+            assertEquals(DOC, broker.getSerializer().serialize(doc.getDocument()));
+        }
+    }
+
+    /**
+     * Reopens the latest journal file and reads its last entry.
+     */
+    private Checkpoint readLastCheckpoint() throws Exception {
+        // with temporary storage, the journal is in the data directory
+        final Path journalDir = existEmbeddedServer.getTemporaryStorage().get();
+        final int fileNumber;
+        try (final Stream<Path> files = Files.list(journalDir).filter(f -> f.getFileName().toString().endsWith("." + Journal.LOG_FILE_SUFFIX))) {
+            fileNumber = Journal.findLastFile(files);
+        }
+
+        try (final JournalReader reader = new JournalReader(null, journalDir.resolve(Journal.getFileName(fileNumber)), fileNumber)) {
+            final Loggable entry = reader.lastEntry();
+            assertTrue("Expected a checkpoint, found: " + entry, entry instanceof Checkpoint);
+            return (Checkpoint) entry;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.collections.Collection;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.exist.test.TestConstants.TEST_COLLECTION_URI;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Concurrent commits with group commit enabled must all
+ * be durable, and may share syncs of the journal.
+ */
+public class GroupCommitTest {
+
+    private static final int THREADS = 8;
+    private static final int COMMITS_PER_THREAD = 10;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, true)
+                    .put(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, true)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void concurrentCommits() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final JournalStatistics statistics = pool.getJournalManager().flatMap(JournalManager::getStatistics).get();
+        final long commitsBefore = statistics.getCommitCount();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                futures.add(executorService.submit(() -> {
+                    for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+                        createCollection(pool, collectionUri(thread, j));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertTrue(statistics.getCommitCount() - commitsBefore >= THREADS * COMMITS_PER_THREAD);
+        assertTrue(statistics.getSyncCount() > 0);
+        assertTrue(statistics.getMaxBatchSize() >= 1);
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            for (int i = 0; i < THREADS; i++) {
+                for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+                    assertNotNull(broker.getCollection(collectionUri(i, j)));
+                }
+            }
+        }
+    }
+
+    private static XmldbURI collectionUri(final int thread, final int commit) {
+        return TEST_COLLECTION_URI.append("group-commit-" + thread + "-" + commit);
+    }
+
+    private static void createCollection(final BrokerPool pool, final XmldbURI uri) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, uri);
+            assertNotNull(collection);
+            broker.saveCollection(transaction, collection);
+            transact.commit(transaction);
+        }
+    }
+}
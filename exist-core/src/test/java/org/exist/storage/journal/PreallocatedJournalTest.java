@@ -0,0 +1,194 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.TxnCommit;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.exist.test.TestConstants.TEST_COLLECTION_URI;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Journal files which are pre-allocated and recycled, and whose large
+ * entries are compressed, must be readable up to their last entry,
+ * both after a clean shutdown and after a crash.
+ */
+public class PreallocatedJournalTest {
+
+    private static final long SIZE_LIMIT = 1024 * 1024;
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(Journal.PROPERTY_RECOVERY_PREALLOCATE, true)
+                    .put(Journal.PROPERTY_RECOVERY_COMPRESS, true)
+                    .put(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, 1)
+                    .put(Journal.PROPERTY_RECOVERY_SIZE_MIN, 0)
+                    .build(),
+            true,
+            true);
+
+    @After
+    public void tearDown() {
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Test
+    public void journalFilesAreRecycled() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path spare = getJournalDir().resolve(Journal.SPARE_FILE);
+        awaitFile(spare);
+
+        store(pool, "doc1.xml");
+        synchronized (pool) {
+            pool.getTransactionManager().checkpoint(true);
+        }
+
+        // the new journal file is the spare file, and the old one becomes the next spare file
+        assertEquals(SIZE_LIMIT, Files.size(getLatestJournalFile()));
+        awaitFile(spare);
+
+        // the stale entries of the old journal file are overwritten
+        for (final byte b : Files.readAllBytes(spare)) {
+            assertEquals(0, b);
+        }
+
+        store(pool, "doc2.xml");
+        pool.getJournalManager().get().flush(true, false);
+
+        final List<Loggable> entries = readLatestJournalEntries();
+        assertFalse(entries.isEmpty());
+        assertTrue(entries.get(entries.size() - 1) instanceof TxnCommit);
+
+        // the pre-allocated space is removed on shutdown
+        existEmbeddedServer.stopDb(false);
+        assertTrue(Files.size(getLatestJournalFile()) < SIZE_LIMIT);
+        existEmbeddedServer.startDb();
+
+        assertStored(existEmbeddedServer.getBrokerPool(), "doc1.xml");
+        assertStored(existEmbeddedServer.getBrokerPool(), "doc2.xml");
+    }
+
+    @Test
+    public void recoverFromPreallocatedJournal() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        awaitFile(getJournalDir().resolve(Journal.SPARE_FILE));
+        synchronized (pool) {
+            pool.getTransactionManager().checkpoint(true);
+        }
+        assertEquals(SIZE_LIMIT, Files.size(getLatestJournalFile()));
+
+        BrokerPool.FORCE_CORRUPTION = true;
+        store(pool, "doc1.xml");
+        pool.getJournalManager().get().flush(true, false);
+
+        // shutdown without a checkpoint, leaving the pre-allocated space
+        pool.shutdown();
+        BrokerPool.FORCE_CORRUPTION = false;
+        assertEquals(SIZE_LIMIT, Files.size(getLatestJournalFile()));
+
+        existEmbeddedServer.restart(false);
+        assertStored(existEmbeddedServer.getBrokerPool(), "doc1.xml");
+    }
+
+    private static void store(final BrokerPool pool, final String name) throws Exception {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+
+            final String content = content(name);
+            final IndexInfo indexInfo = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), content);
+            collection.store(transaction, broker, indexInfo, content);
+
+            transaction.commit();
+        }
+    }
+
+    private static void assertStored(final BrokerPool pool, final String name) throws Exception {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument doc = broker.getXMLResource(TEST_COLLECTION_URI.append(name), LockMode.READ_LOCK)) {
+            assertNotNull(doc);
+            assertEquals(content(name), broker.getSerializer().serialize(doc.getDocument()));
+        }
+    }
+
+    /**
+     * A document with a large, compressible text node.
+     */
+    private static String content(final String name) {
+        final StringBuilder builder = new StringBuilder("<poem name=\"").append(name).append("\">");
+        for (int i = 0; i < 200; i++) {
+            builder.append("Arma virumque cano, Troiae qui primus ab oris ");
+        }
+        return builder.append("</poem>").toString();
+    }
+
+    private static void awaitFile(final Path file) throws InterruptedException {
+        for (int i = 0; i < 100 && !Files.exists(file); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue("Expected file: " + file, Files.exists(file));
+    }
+
+    private Path getJournalDir() {
+        // with temporary storage, the journal is in the data directory
+        return existEmbeddedServer.getTemporaryStorage().get();
+    }
+
+    private Path getLatestJournalFile() throws Exception {
+        final Path journalDir = getJournalDir();
+        try (final Stream<Path> files = Files.list(journalDir).filter(f -> f.getFileName().toString().endsWith("." + Journal.LOG_FILE_SUFFIX))) {
+            return journalDir.resolve(Journal.getFileName(Journal.findLastFile(files)));
+        }
+    }
+
+    private List<Loggable> readLatestJournalEntries() throws Exception {
+        final Path file = getLatestJournalFile();
+        final int fileNumber = Integer.parseInt(file.getFileName().toString().substring(0, 10), 16);
+        final List<Loggable> entries = new ArrayList<>();
+        try (final JournalReader reader = new JournalReader(null, file, fileNumber)) {
+            Loggable entry;
+            while ((entry = reader.nextEntry()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+}
@@ -13,8 +13,10 @@ import uk.ac.ic.doc.slurp.multilock.MultiLock;
 import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Stack;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.junit.Assert.*;
 
@@ -655,19 +657,19 @@ public class LockManagerTest {
     public void getBtreeLock_isStripedByPath() {
         final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
 
-        final ReentrantLock btree1Lock1 = lockManager.getBTreeLock("btree1.dbx");
+        final ReentrantReadWriteLock btree1Lock1 = lockManager.getBTreeLock("btree1.dbx");
         assertNotNull(btree1Lock1);
 
-        final ReentrantLock btree1Lock2 = lockManager.getBTreeLock("btree1.dbx");
+        final ReentrantReadWriteLock btree1Lock2 = lockManager.getBTreeLock("btree1.dbx");
         assertNotNull(btree1Lock2);
 
         assertTrue(btree1Lock1 == btree1Lock2);
 
-        final ReentrantLock btree2Lock = lockManager.getBTreeLock("btree2.dbx");
+        final ReentrantReadWriteLock btree2Lock = lockManager.getBTreeLock("btree2.dbx");
         assertNotNull(btree2Lock);
         assertFalse(btree1Lock1 == btree2Lock);
 
-        final ReentrantLock btree3Lock = lockManager.getBTreeLock("btree3.dbx");
+        final ReentrantReadWriteLock btree3Lock = lockManager.getBTreeLock("btree3.dbx");
         assertNotNull(btree3Lock);
         assertFalse(btree1Lock1 == btree3Lock);
 
@@ -685,7 +687,7 @@ public class LockManagerTest {
 
         final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
         final Stack<LockAction> events = recordLockEvents(lockManager, () -> {
-            try (final ManagedLock<ReentrantLock> btree1Lock
+            try (final ManagedLock<ReentrantReadWriteLock> btree1Lock
                          = lockManager.acquireBtreeReadLock(btree1Name)) {
                 assertNotNull(btree1Lock);
             }
@@ -721,7 +723,7 @@ public class LockManagerTest {
 
         final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
         final Stack<LockAction> events = recordLockEvents(lockManager, () -> {
-            try (final ManagedLock<ReentrantLock> btree1Lock
+            try (final ManagedLock<ReentrantReadWriteLock> btree1Lock
                          = lockManager.acquireBtreeWriteLock(btree1Name)) {
                 assertNotNull(btree1Lock);
             }
@@ -746,6 +748,80 @@ public class LockManagerTest {
         assertEquals(Lock.LockMode.WRITE_LOCK, event3.mode);
     }
 
+    /**
+     * Readers of a BTree which is not registered
+     * as multi-reader must exclude each other
+     */
+    @Test
+    public void acquireBTreeReadLock_exclusiveByDefault() throws LockException, InterruptedException {
+        final String btree1Name = "btree1.dbx";
+
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        assertFalse(lockManager.isBtreeMultiReader(btree1Name));
+
+        try (final ManagedLock<ReentrantReadWriteLock> btree1Lock = lockManager.acquireBtreeReadLock(btree1Name)) {
+            assertTrue(lockManager.isBtreeLockedForWrite(btree1Name));
+            assertFalse(acquireBtreeReadLockFromOtherThread(lockManager, btree1Name));
+        }
+    }
+
+    /**
+     * Readers of a multi-reader BTree must not block each other,
+     * but must block a writer
+     */
+    @Test
+    public void acquireBTreeReadLock_multiReader() throws LockException, InterruptedException {
+        final String btree1Name = "btree1.dbx";
+
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        lockManager.registerBtreeMultiReader(btree1Name);
+        assertTrue(lockManager.isBtreeMultiReader(btree1Name));
+
+        try (final ManagedLock<ReentrantReadWriteLock> btree1Lock = lockManager.acquireBtreeReadLock(btree1Name)) {
+            assertTrue(lockManager.isBtreeLocked(btree1Name));
+            assertFalse(lockManager.isBtreeLockedForWrite(btree1Name));
+            assertTrue(acquireBtreeReadLockFromOtherThread(lockManager, btree1Name));
+            assertFalse(btree1Lock.lock.writeLock().tryLock());
+        }
+
+        assertFalse(lockManager.isBtreeLocked(btree1Name));
+    }
+
+    /**
+     * A READ_LOCK on a multi-reader BTree cannot be upgraded
+     */
+    @Test(expected = LockException.class)
+    public void acquireBTreeWriteLock_upgradeMultiReader() throws LockException {
+        final String btree1Name = "btree1.dbx";
+
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        lockManager.registerBtreeMultiReader(btree1Name);
+
+        try (final ManagedLock<ReentrantReadWriteLock> btree1ReadLock = lockManager.acquireBtreeReadLock(btree1Name);
+             final ManagedLock<ReentrantReadWriteLock> btree1WriteLock = lockManager.acquireBtreeWriteLock(btree1Name)) {
+            fail("Upgrading the lock should not be possible");
+        }
+    }
+
+    private static boolean acquireBtreeReadLockFromOtherThread(final LockManager lockManager, final String btreeName) throws InterruptedException {
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread reader = new Thread(() -> {
+            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(btreeName)) {
+                acquired.countDown();
+            } catch (final LockException e) {
+                // not acquired
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        final boolean result = acquired.await(2, TimeUnit.SECONDS);
+        if (!result) {
+            reader.interrupt();
+        }
+        reader.join();
+        return result;
+    }
+
 
     private Stack<LockAction> recordLockEvents(final LockManager lockManager, final RunnableE<LockException> runnable) throws LockException{
         final LockTable lockTable = lockManager.getLockTable();
@@ -0,0 +1,156 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Lsn;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RedoExecutorTest {
+
+    private static final int TARGETS = 5;
+    private static final int ENTRIES = 10_000;
+
+    @Test
+    public void entriesOfTargetAreRedoneInOrder() throws LogException {
+        final List<List<Integer>> redone = new ArrayList<>();
+        final Object[] targets = new Object[TARGETS];
+        for (int i = 0; i < TARGETS; i++) {
+            redone.add(Collections.synchronizedList(new ArrayList<>()));
+            targets[i] = new Object();
+        }
+
+        try (final RedoExecutor executor = new RedoExecutor(3, Executors.defaultThreadFactory())) {
+            for (int i = 0; i < ENTRIES; i++) {
+                final int target = i % TARGETS;
+                executor.redo(new Entry(i, targets[target], redone.get(target)::add));
+            }
+            executor.await();
+
+            assertEquals(ENTRIES, executor.getRedone());
+            assertEquals(TARGETS, executor.getTargets());
+        }
+
+        for (final List<Integer> entries : redone) {
+            assertEquals(ENTRIES / TARGETS, entries.size());
+            for (int i = 1; i < entries.size(); i++) {
+                assertTrue(entries.get(i - 1) < entries.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void entryWithoutTargetWaitsForPrecedingEntries() throws LogException {
+        final AtomicInteger count = new AtomicInteger();
+        final Object target = new Object();
+
+        try (final RedoExecutor executor = new RedoExecutor(2, Executors.defaultThreadFactory())) {
+            for (int i = 0; i < 1000; i++) {
+                executor.redo(new Entry(i, target, id -> count.incrementAndGet()));
+            }
+            executor.redo(new Entry(1000, null, id -> assertEquals(1000, count.get())));
+            assertEquals(1001, executor.getRedone());
+        }
+    }
+
+    @Test
+    public void singleThreadRedoesOnCaller() throws LogException {
+        final Thread caller = Thread.currentThread();
+        try (final RedoExecutor executor = new RedoExecutor(1, Executors.defaultThreadFactory())) {
+            for (int i = 0; i < 100; i++) {
+                executor.redo(new Entry(i, new Object(), id -> assertSame(caller, Thread.currentThread())));
+            }
+            assertEquals(100, executor.getRedone());
+        }
+    }
+
+    @Test
+    public void failureIsReported() {
+        final Object target = new Object();
+        final Entry failing = new Entry(500, target, id -> {
+            throw new IllegalStateException("page not found");
+        });
+
+        try (final RedoExecutor executor = new RedoExecutor(2, Executors.defaultThreadFactory())) {
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    executor.redo(i == 500 ? failing : new Entry(i, target, id -> {}));
+                }
+                executor.await();
+                fail("Expected LogException");
+            } catch (final LogException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertSame(failing, executor.getFailedEntry());
+            assertEquals(500, executor.getRedone());
+        }
+    }
+
+    private interface RedoAction {
+        void redo(int id);
+    }
+
+    private static class Entry extends AbstractLoggable {
+        private final int id;
+        private final Object target;
+        private final RedoAction action;
+
+        Entry(final int id, final Object target, final RedoAction action) {
+            super((byte) 0, 1);
+            this.id = id;
+            this.target = target;
+            this.action = action;
+            setLsn(new Lsn((short) 0, id));
+        }
+
+        @Override
+        public void redo() {
+            action.redo(id);
+        }
+
+        @Override
+        public Object getRedoTarget() {
+            return target;
+        }
+
+        @Override
+        public void write(final ByteBuffer out) {
+        }
+
+        @Override
+        public void read(final ByteBuffer in) {
+        }
+
+        @Override
+        public int getLogSize() {
+            return 0;
+        }
+    }
+}
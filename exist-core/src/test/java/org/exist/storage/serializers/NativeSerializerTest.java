@@ -0,0 +1,155 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.serializers;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.io.FastByteArrayOutputStream;
+import org.exist.xmldb.XmldbURI;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.OutputKeys;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link NativeSerializer#serializeDirect(DocumentImpl, java.io.OutputStream)}
+ * produces the same output as the serialization through SAX events.
+ */
+public class NativeSerializerTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("direct-serialization");
+
+    private static final String SIMPLE =
+            "<?pi-before-root some data?><!-- comment before root -->" +
+            "<root a=\"1\" b=\"x &amp; &lt;y&gt; &quot;z&quot;&#9;&#10;\">" +
+            "<empty/><text>a &amp; b &lt; c &gt; d — ünïcödé 😀</text>" +
+            "<mixed>one<b>two</b>three<?pi?><!--c--><![CDATA[<raw> & stuff]]></mixed>" +
+            "<lang xml:lang=\"en\"/>" +
+            "</root>";
+
+    private static final String NAMESPACES =
+            "<r xmlns=\"http://example.com/default\" xmlns:p=\"http://example.com/p\">" +
+            "<p:a p:attr=\"v\"><b/></p:a>" +
+            "<c xmlns=\"\"><d xmlns:q=\"http://example.com/q\" q:x=\"y\"/></c>" +
+            "<e xmlns=\"http://example.com/other\"><f/></e>" +
+            "<p:g xmlns:p=\"http://example.com/p2\"/>" +
+            "</r>";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, collection);
+            store(transaction, broker, collection, "simple.xml", SIMPLE);
+            store(transaction, broker, collection, "namespaces.xml", NAMESPACES);
+            transact.commit(transaction);
+        }
+    }
+
+    @Test
+    public void simple() throws EXistException, PermissionDeniedException, SAXException, IOException {
+        assertSameOutput("simple.xml", properties("no"));
+    }
+
+    @Test
+    public void namespaces() throws EXistException, PermissionDeniedException, SAXException, IOException {
+        assertSameOutput("namespaces.xml", properties("yes"));
+    }
+
+    @Test
+    public void indentedOutputIsNotDirect() throws EXistException, PermissionDeniedException, IOException,
+            SAXException {
+        final Properties properties = properties("no");
+        properties.setProperty(OutputKeys.INDENT, "yes");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final LockedDocument lockedDoc = broker.getXMLResource(TEST_COLLECTION.append("simple.xml"), LockMode.READ_LOCK)) {
+            final Serializer serializer = broker.getSerializer();
+            serializer.reset();
+            serializer.setProperties(properties);
+            final FastByteArrayOutputStream os = new FastByteArrayOutputStream();
+            assertFalse(serializer.serializeDirect(lockedDoc.getDocument(), os));
+            assertEquals(0, os.size());
+        }
+    }
+
+    private static void assertSameOutput(final String docName, final Properties properties)
+            throws EXistException, PermissionDeniedException, SAXException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final LockedDocument lockedDoc = broker.getXMLResource(TEST_COLLECTION.append(docName), LockMode.READ_LOCK)) {
+            final DocumentImpl doc = lockedDoc.getDocument();
+            final Serializer serializer = broker.getSerializer();
+
+            serializer.reset();
+            serializer.setProperties(properties);
+            final String expected = serializer.serialize(doc);
+
+            serializer.reset();
+            serializer.setProperties(properties);
+            final FastByteArrayOutputStream os = new FastByteArrayOutputStream();
+            assertTrue(serializer.serializeDirect(doc, os));
+            assertEquals(expected, new String(os.toByteArray(), UTF_8));
+        }
+    }
+
+    private static Properties properties(final String omitXmlDeclaration) {
+        final Properties properties = new Properties();
+        properties.setProperty(OutputKeys.INDENT, "no");
+        properties.setProperty(OutputKeys.OMIT_XML_DECLARATION, omitXmlDeclaration);
+        properties.setProperty(EXistOutputKeys.EXPAND_XINCLUDES, "no");
+        return properties;
+    }
+
+    private static void store(final Txn transaction, final DBBroker broker, final Collection collection,
+            final String name, final String xml) throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException {
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), xml);
+        collection.store(transaction, broker, info, xml);
+    }
+}
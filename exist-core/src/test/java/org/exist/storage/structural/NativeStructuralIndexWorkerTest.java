@@ -131,6 +131,54 @@ public class NativeStructuralIndexWorkerTest {
         assertEquals(24, ranges.get(3).end);
     }
 
+    @Test
+    public void partition_splitsRanges() {
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+
+        final DocumentSet docs = documentIdSet(Arrays.asList(1,2,3,4,5,6,7, 20,21,22, 30));
+
+        final List<List<NativeStructuralIndexWorker.Range>> partitions =
+                NativeStructuralIndexWorker.partition(indexWorker.getDocIdRanges(docs), 11, 3);
+
+        assertEquals(3, partitions.size());
+
+        assertEquals(1, partitions.get(0).size());
+        assertEquals(1, partitions.get(0).get(0).start);
+        assertEquals(4, partitions.get(0).get(0).end);
+
+        assertEquals(2, partitions.get(1).size());
+        assertEquals(5, partitions.get(1).get(0).start);
+        assertEquals(7, partitions.get(1).get(0).end);
+        assertEquals(20, partitions.get(1).get(1).start);
+        assertEquals(20, partitions.get(1).get(1).end);
+
+        assertEquals(2, partitions.get(2).size());
+        assertEquals(21, partitions.get(2).get(0).start);
+        assertEquals(22, partitions.get(2).get(0).end);
+        assertEquals(30, partitions.get(2).get(1).start);
+        assertEquals(30, partitions.get(2).get(1).end);
+    }
+
+    @Test
+    public void partition_exactFit() {
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+
+        final DocumentSet docs = documentIdSet(Arrays.asList(1,2,3,4, 10,11,12,13));
+
+        final List<List<NativeStructuralIndexWorker.Range>> partitions =
+                NativeStructuralIndexWorker.partition(indexWorker.getDocIdRanges(docs), 8, 2);
+
+        assertEquals(2, partitions.size());
+
+        assertEquals(1, partitions.get(0).size());
+        assertEquals(1, partitions.get(0).get(0).start);
+        assertEquals(4, partitions.get(0).get(0).end);
+
+        assertEquals(1, partitions.get(1).size());
+        assertEquals(10, partitions.get(1).get(0).start);
+        assertEquals(13, partitions.get(1).get(0).end);
+    }
+
     private DocumentSet documentIdSet(final List<Integer> documentIds) {
         final DocumentSet mockDocumentSet = createMock(DocumentSet.class);
 
@@ -0,0 +1,176 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TarInputStreamTest {
+
+    @Test
+    public void readEntries() throws IOException {
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "dir/", '5', new byte[0]);
+        writeEntry(tar, "dir/a.xml", '0', "<a/>".getBytes(UTF_8));
+        writeEntry(tar, "dir/link", '2', new byte[0]);
+        writeEntry(tar, "dir/b.txt", '0', new byte[1000]);
+        writeEntry(tar, "dir/c.txt", '0', "c".getBytes(UTF_8));
+        tar.write(new byte[1024]);
+
+        try (final TarInputStream tis = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()))) {
+            TarInputStream.Entry entry = tis.getNextEntry();
+            assertEquals("dir/", entry.getName());
+            assertTrue(entry.isDirectory());
+
+            entry = tis.getNextEntry();
+            assertEquals("dir/a.xml", entry.getName());
+            assertFalse(entry.isDirectory());
+            assertEquals(4, entry.getSize());
+            assertEquals("<a/>", readAll(tis));
+
+            // the link is skipped, and the unread content of b.txt
+            entry = tis.getNextEntry();
+            assertEquals("dir/b.txt", entry.getName());
+            assertEquals(1000, entry.getSize());
+
+            entry = tis.getNextEntry();
+            assertEquals("dir/c.txt", entry.getName());
+            assertEquals("c", readAll(tis));
+
+            assertNull(tis.getNextEntry());
+            assertNull(tis.getNextEntry());
+        }
+    }
+
+    @Test
+    public void readGnuLongName() throws IOException {
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            name.append("segment-").append(i).append('/');
+        }
+        name.append("document.xml");
+
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "././@LongLink", 'L', (name + "\0").getBytes(UTF_8));
+        writeEntry(tar, name.substring(0, 100), '0', "<doc/>".getBytes(UTF_8));
+
+        try (final TarInputStream tis = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()))) {
+            final TarInputStream.Entry entry = tis.getNextEntry();
+            assertEquals(name.toString(), entry.getName());
+            assertEquals("<doc/>", readAll(tis));
+
+            // an archive without the end of archive blocks
+            assertNull(tis.getNextEntry());
+        }
+    }
+
+    @Test
+    public void readPaxPath() throws IOException {
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "PaxHeaders/a.xml", 'x', "19 path=dir/\u00e4.xml\n".getBytes(UTF_8));
+        writeEntry(tar, "a.xml", '0', "<a/>".getBytes(UTF_8));
+
+        try (final TarInputStream tis = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()))) {
+            final TarInputStream.Entry entry = tis.getNextEntry();
+            assertEquals("dir/\u00e4.xml", entry.getName());
+            assertEquals("<a/>", readAll(tis));
+        }
+    }
+
+    @Test
+    public void ignoreMalformedPaxRecord() throws IOException {
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        // the length of the record is shorter than its length field
+        writeEntry(tar, "PaxHeaders/a.xml", 'x', "1 path=b.xml\n".getBytes(UTF_8));
+        writeEntry(tar, "a.xml", '0', "<a/>".getBytes(UTF_8));
+
+        try (final TarInputStream tis = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()))) {
+            final TarInputStream.Entry entry = tis.getNextEntry();
+            assertEquals("a.xml", entry.getName());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void longNameTooLarge() throws IOException {
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "././@LongLink", 'L', new byte[1024 * 1024 + 1]);
+        writeEntry(tar, "a.xml", '0', "<a/>".getBytes(UTF_8));
+
+        try (final TarInputStream tis = new TarInputStream(new ByteArrayInputStream(tar.toByteArray()))) {
+            tis.getNextEntry();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notATar() throws IOException {
+        final byte[] data = new byte[512];
+        data[0] = 'x';
+        try (final TarInputStream tis = new TarInputStream(new ByteArrayInputStream(data))) {
+            tis.getNextEntry();
+        }
+    }
+
+    private static String readAll(final TarInputStream tis) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        InputStreamUtil.copy(tis, os);
+        return new String(os.toByteArray(), UTF_8);
+    }
+
+    private static void writeEntry(final ByteArrayOutputStream tar, final String name, final char type,
+            final byte[] content) throws IOException {
+        final byte[] header = new byte[512];
+        final byte[] nameBytes = name.getBytes(UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        writeOctal(header, 100, 8, 0644);
+        writeOctal(header, 124, 12, content.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(UTF_8), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (final byte b : header) {
+            checksum += b & 0xFF;
+        }
+        writeOctal(header, 148, 7, checksum);
+
+        tar.write(header);
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void writeOctal(final byte[] header, final int offset, final int length, final long value) {
+        final String octal = String.format("%0" + (length - 1) + "o", value);
+        System.arraycopy(octal.getBytes(UTF_8), 0, header, offset, length - 1);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that queries return the same results with and without the
+ * code generated by the {@link BytecodeCompiler}.
+ */
+public class BytecodeCompilerTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void functionsAndFlwor() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults(
+                "declare function local:fib($n) {\n" +
+                "    if ($n lt 2) then $n else local:fib($n - 1) + local:fib($n - 2)\n" +
+                "};\n" +
+                "for $i in 1 to 12\n" +
+                "let $f := local:fib($i)\n" +
+                "where $f mod 2 = 0\n" +
+                "return ($i, $i * 10 + $f)",
+                true);
+    }
+
+    @Test
+    public void comparisons() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults("(for $x in (1, 2, 3) return $x > 1, (1, 2) = (2, 3), 2 eq 3, () = ())", true);
+    }
+
+    @Test
+    public void shadowedVariables() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults("let $x := 1 let $x := $x + 1 return for $x in ($x, $x * 2) return $x + 1", true);
+    }
+
+    @Test
+    public void nodesInWhereClause() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults("for $n in (<a>1</a>, <a>2</a>) where $n = '2' return string($n)", true);
+    }
+
+    @Test
+    public void orderByIsInterpreted() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults("for $i in (3, 1, 2) order by $i descending return $i * 2", false);
+    }
+
+    @Test
+    public void errorInArgument() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final String query = "declare function local:f($a) { $a + 1 }; let $x := 0 return local:f(1 idiv $x)";
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = compile(broker, query);
+            final ErrorCodes.ErrorCode interpreted = executeWithError(broker, compiled);
+            assertTrue(BytecodeCompiler.compile(compiled));
+            assertEquals(interpreted, executeWithError(broker, compiled));
+        }
+    }
+
+    @Test
+    public void compiledAfterThreshold() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = compile(broker, "for $i in 1 to 5 return $i * 2");
+            compiled.getContext().setBytecodeCompileThreshold(2);
+            final List<String> expected = execute(broker, compiled);
+            assertFalse(((PathExpr) compiled).getExpression(0) instanceof BytecodeExpression);
+            assertEquals(expected, execute(broker, compiled));
+            assertTrue(((PathExpr) compiled).getExpression(0) instanceof BytecodeExpression);
+            assertEquals(expected, execute(broker, compiled));
+        }
+    }
+
+    private void assertSameResults(final String query, final boolean compilable)
+            throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = compile(broker, query);
+            final List<String> interpreted = execute(broker, compiled);
+            assertEquals(compilable, BytecodeCompiler.compile(compiled));
+            assertEquals(interpreted, execute(broker, compiled));
+            // evaluated again, to check that the clauses were reset
+            assertEquals(interpreted, execute(broker, compiled));
+        }
+    }
+
+    private CompiledXQuery compile(final DBBroker broker, final String query)
+            throws PermissionDeniedException, XPathException, IOException {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        return brokerPool.getXQueryService().compile(broker, new XQueryContext(brokerPool), new StringSource(query));
+    }
+
+    private List<String> execute(final DBBroker broker, final CompiledXQuery compiled)
+            throws PermissionDeniedException, XPathException {
+        final XQuery xquery = existEmbeddedServer.getBrokerPool().getXQueryService();
+        try {
+            final Sequence result = xquery.execute(broker, compiled, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                values.add(i.nextItem().getStringValue());
+            }
+            return values;
+        } finally {
+            compiled.getContext().runCleanupTasks();
+        }
+    }
+
+    private ErrorCodes.ErrorCode executeWithError(final DBBroker broker, final CompiledXQuery compiled)
+            throws PermissionDeniedException {
+        try {
+            execute(broker, compiled);
+            fail("Expected an error");
+            return null;
+        } catch (final XPathException e) {
+            return e.getErrorCode();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.exist.test.TestConstants.TEST_COLLECTION_URI;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a "group by" clause which partitions tuples into temporary
+ * files returns the same groups, in the same order, as one which groups
+ * all tuples in memory.
+ */
+public class GroupBySpillTest {
+
+    private static final int SPILL_THRESHOLD = 3;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeDocument() throws Exception {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 100; i++) {
+            xml.append("<item n='").append((i * 37) % 100).append("' g='").append(i % 3).append("'/>");
+        }
+        xml.append("</items>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo indexInfo = collection.validateXMLResource(transaction, broker, XmldbURI.create("items.xml"), xml.toString());
+            collection.store(transaction, broker, indexInfo, xml.toString());
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void atomicKeys() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults(
+                "for $i in 1 to 100\n" +
+                "let $d := xs:date('2019-01-01+02:00') + xs:dayTimeDuration('P' || $i mod 11 || 'D')\n" +
+                "group by $k := $i mod 13, $d\n" +
+                "return <g k='{$k}' d='{$d}' n='{count($i)}'>{sum($i)}</g>");
+    }
+
+    @Test
+    public void emptyAndCollatedKeys() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults(
+                "for $i in 1 to 100\n" +
+                "let $s := if ($i mod 9 = 0) then () else ('a', 'A', 'b', 'B', 'c', 'C', 'd')[$i mod 7 + 1] || $i mod 3\n" +
+                "group by $s collation 'http://www.w3.org/2013/collation/UCA?strength=secondary'\n" +
+                "return ($s, string-join($i ! string(), ','))");
+    }
+
+    @Test
+    public void storedNodes() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertSameResults(
+                "for $item in doc('" + TEST_COLLECTION_URI.append("items.xml") + "')//item\n" +
+                "let $n := $item/@n\n" +
+                "group by $g := $item/@g, $d := xs:integer($n) mod 10\n" +
+                "return ($g, $d, $item, $n)");
+    }
+
+    @Test
+    public void constructedNodesAfterSpilling() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        // the constructed node is in a group added after the first tuples were partitioned
+        assertSameResults(
+                "for $i in 1 to 100\n" +
+                "let $v := if ($i = 90) then <v>{$i}</v> else $i\n" +
+                "group by $k := $i mod 17\n" +
+                "return ($k, $v)");
+    }
+
+    private void assertSameResults(final String query)
+            throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = brokerPool.getXQueryService().compile(broker,
+                    new XQueryContext(brokerPool), new StringSource(query));
+            compiled.getContext().setGroupBySpillThreshold(0);
+            final List<String> inMemory = execute(broker, compiled);
+            compiled.getContext().setGroupBySpillThreshold(SPILL_THRESHOLD);
+            assertEquals(inMemory, execute(broker, compiled));
+        }
+    }
+
+    private List<String> execute(final DBBroker broker, final CompiledXQuery compiled)
+            throws PermissionDeniedException, XPathException {
+        final XQuery xquery = existEmbeddedServer.getBrokerPool().getXQueryService();
+        try {
+            final Sequence result = xquery.execute(broker, compiled, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                final Item item = i.nextItem();
+                values.add(Type.getTypeName(item.getType()) + ": " + item.getStringValue());
+            }
+            return values;
+        } finally {
+            compiled.getContext().runCleanupTasks();
+        }
+    }
+}
@@ -18,7 +18,7 @@ import org.exist.util.LockException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * SortIndex helps to improve the performance of 'order by' expressions in XQuery.
@@ -64,7 +64,7 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
         if (btree == null)
             return;
         final LockManager lockManager = pool.getLockManager();
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
             btree.flush();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "'", e);
@@ -26,7 +26,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class SortIndexWorker implements IndexWorker {
 
@@ -80,7 +80,7 @@ public class SortIndexWorker implements IndexWorker {
     public void createIndex(final String name, final List<SortItem> items) throws EXistException, LockException {
         // get an id for the new index
         final short id = getOrRegisterId(name);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             long idx = 0;
             for (final SortItem item : items) {
                 final byte[] key = computeKey(id, item.getNode());
@@ -109,7 +109,7 @@ public class SortIndexWorker implements IndexWorker {
      */
     public long getIndex(final String name, final NodeProxy proxy) throws EXistException, LockException {
         final short id = getId(name);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
             final byte[] key = computeKey(id, proxy);
             return index.btree.findValue(new Value(key));
         } catch (final LockException | IOException | BTreeException e) {
@@ -127,7 +127,7 @@ public class SortIndexWorker implements IndexWorker {
      */
     public void remove(final String name) throws EXistException, LockException {
         final short id = getId(name);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             final byte[] fromKey = computeKey(id);
             final byte[] toKey = computeKey((short) (id + 1));
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
@@ -145,7 +145,7 @@ public class SortIndexWorker implements IndexWorker {
     }
 
     private void remove(final DocumentImpl doc, final short id) throws LockException, EXistException {
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             final byte[] fromKey = computeKey(id, doc.getDocId());
             final byte[] toKey = computeKey(id, doc.getDocId() + 1);
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
@@ -161,7 +161,7 @@ public class SortIndexWorker implements IndexWorker {
         final byte[] fromKey = new byte[]{1};
         final byte[] endKey = new byte[]{2};
 
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(endKey));
             final FindIdCallback callback = new FindIdCallback(true);
             index.btree.query(query, callback);
@@ -191,7 +191,7 @@ public class SortIndexWorker implements IndexWorker {
             final byte[] fromKey = {1};
             final byte[] endKey = {2};
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(endKey));
-            try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
                 final FindIdCallback callback = new FindIdCallback(false);
                 index.btree.query(query, callback);
                 id = (short) (callback.max + 1);
@@ -207,7 +207,7 @@ public class SortIndexWorker implements IndexWorker {
         final byte[] key = new byte[1 + UTF8.encoded(name)];
         key[0] = 1;
         UTF8.encode(name, key, 1);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             index.btree.addValue(new Value(key), id);
         } catch (final LockException | IOException | BTreeException e) {
             throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
@@ -218,7 +218,7 @@ public class SortIndexWorker implements IndexWorker {
         final byte[] key = new byte[1 + UTF8.encoded(name)];
         key[0] = 1;
         UTF8.encode(name, key, 1);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             index.btree.removeValue(new Value(key));
         } catch (final LockException | IOException | BTreeException e) {
             throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
@@ -229,7 +229,7 @@ public class SortIndexWorker implements IndexWorker {
         final byte[] key = new byte[1 + UTF8.encoded(name)];
         key[0] = 1;
         UTF8.encode(name, key, 1);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
             return (short) index.btree.findValue(new Value(key));
         } catch (final BTreeException | IOException e) {
             throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
@@ -60,7 +60,8 @@ public class ExpathPackageModule extends AbstractInternalModule {
         new FunctionDef(InstallFunction.signatureInstallFromDB, InstallFunction.class),
         new FunctionDef(RemoveFunction.signature, RemoveFunction.class),
         new FunctionDef(GetResource.signature, GetResource.class),
-        new FunctionDef(GetAppRoot.signature, GetAppRoot.class)
+        new FunctionDef(GetAppRoot.signature, GetAppRoot.class),
+        new FunctionDef(Precompile.signature, Precompile.class)
     };
 
     public ExpathPackageModule(Map<String, List<?>> parameters) throws XPathException {
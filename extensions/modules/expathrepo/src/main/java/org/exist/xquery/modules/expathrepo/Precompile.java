@@ -0,0 +1,83 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2019 The eXist-db Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ */
+package org.exist.xquery.modules.expathrepo;
+
+import org.exist.dom.QName;
+import org.exist.repo.Deployment;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.XQueryPool;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.*;
+import org.exist.xquery.value.*;
+import org.expath.pkg.repo.PackageException;
+
+import java.util.Optional;
+
+/**
+ * Compiles all main modules of a deployed package into the query pool, so that
+ * the first requests to the application do not have to wait for the compilation.
+ */
+public class Precompile extends BasicFunction {
+
+    public final static FunctionSignature signature =
+            new FunctionSignature(
+                    new QName("precompile", ExpathPackageModule.NAMESPACE_URI, ExpathPackageModule.PREFIX),
+                    "Compiles all XQuery main modules stored in the collection into which the package, " +
+                    "pkgName, was deployed, and adds them to the query pool. Library modules are compiled " +
+                    "as part of the main modules importing them.",
+                    new SequenceType[] { new FunctionParameterSequenceType("pkgName", Type.STRING, Cardinality.EXACTLY_ONE, "package name")},
+                    new FunctionReturnSequenceType(Type.STRING, Cardinality.ZERO_OR_MORE, "the paths of the compiled queries"));
+
+    public Precompile(final XQueryContext context) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        if (!context.getSubject().hasDbaRole()) {
+            throw new XPathException(this, EXPathErrorCode.EXPDY003, "Permission denied. You need to be a member " +
+                    "of the dba group to use repo:precompile");
+        }
+
+        final String pkgName = args[0].getStringValue();
+        try {
+            final Optional<String> target = new Deployment().getTargetCollection(context.getBroker(), pkgName, context.getRepository());
+            if (!target.isPresent()) {
+                throw new XPathException(this, EXPathErrorCode.EXPDY001, "Package " + pkgName + " is not installed",
+                        new StringValue(pkgName));
+            }
+
+            final XQueryPool pool = context.getBroker().getBrokerPool().getXQueryPool();
+            final ValueSequence result = new ValueSequence();
+            for (final XmldbURI compiled : pool.precompileCollection(context.getBroker(), XmldbURI.create(target.get()))) {
+                result.add(new StringValue(compiled.toString()));
+            }
+            return result;
+        } catch (final PackageException e) {
+            throw new XPathException(this, EXPathErrorCode.EXPDY007, e.getMessage(), args[0], e);
+        } catch (final PermissionDeniedException e) {
+            throw new XPathException(this, EXPathErrorCode.EXPDY003, e.getMessage(), args[0], e);
+        } catch (final LockException e) {
+            throw new XPathException(this, ErrorCodes.FOER0000, e.getMessage(), args[0], e);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.exist.dom.persistent.BinaryDocument;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockToken;
 import org.exist.dom.persistent.LockedDocument;
+import org.exist.http.servlets.ServletOutputChannel;
 import org.exist.security.Account;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
@@ -177,9 +178,13 @@ public class ExistDocument extends ExistResource {
                     }
 
                 } else {
-                    // Stream NON-XML document
-                    broker.readBinaryResource((BinaryDocument) document, os);
-                    os.flush();
+                    // Stream NON-XML document, from the leased blob file
+                    final OutputStream channel = ServletOutputChannel.wrap(os);
+                    try (final Txn transaction = brokerPool.getTransactionManager().beginTransaction()) {
+                        broker.readBinaryResource(transaction, (BinaryDocument) document, channel);
+                        transaction.commit();
+                    }
+                    channel.flush();
                 }
             }
         } catch (EXistException e) {